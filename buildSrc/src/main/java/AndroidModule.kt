@@ -20,6 +20,7 @@ import groovy.util.ConfigSlurper
 import org.gradle.api.JavaVersion
 import org.gradle.api.Project
 import org.gradle.api.tasks.compile.JavaCompile
+import org.gradle.api.tasks.testing.Test
 import org.gradle.kotlin.dsl.*
 
 class AndroidModule(private val project: Project) {
@@ -181,6 +182,14 @@ private fun Project.defaultAndroidModule() {
     toolVersion = Deps.Jacoco.version
   }
 
+  tasks.withType<Test>().configureEach {
+    useJUnit {
+      if (!project.hasProperty("benchmark")) {
+        excludeCategories("com.criteo.publisher.util.Benchmark")
+      }
+    }
+  }
+
   afterEvaluate {
     tasks.withType<JavaCompile> {
       options.compilerArgs.add("-Xlint:deprecation")
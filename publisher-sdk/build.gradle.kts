@@ -47,6 +47,7 @@ androidLibModule {
     addBuildConfigField<Int>("maxSizeOfCsmMetricsFolder")
     addBuildConfigField<Int>("maxSizeOfCsmMetricSendingQueue")
     addBuildConfigField<Int>("estimatedSizeOfCsmMetric")
+    addBuildConfigField<Int>("csmMaxFlushLatencyInMillis")
 
     // Advanced Native
     addBuildConfigField<Int>("adChoiceIconWidthInDp")
@@ -57,6 +58,10 @@ androidLibModule {
     addBuildConfigField<String>("remoteLogQueueFilename")
     addBuildConfigField<Int>("maxSizeOfRemoteLogSendingQueue")
     addBuildConfigField<Int>("estimatedSizeOfRemoteLog")
+    addBuildConfigField<Int>("remoteLogMaxFlushLatencyInMillis")
+
+    // Advertising ID
+    addBuildConfigField<Int>("advertisingIdRefreshPeriodInMillis")
 
     // Misc
     addBuildConfigField<String>("pubSdkSharedPreferences")
@@ -121,6 +126,9 @@ dependencies {
 
     implementation(Deps.Square.Picasso.Picasso)
 
+    // Used only when present at runtime, which is generally the case as Picasso depends on it
+    compileOnly(Deps.Square.OkHttp.OkHttp)
+
     testImplementation(project(":test-utils"))
     testImplementation(Deps.JUnit.JUnit)
     testImplementation(Deps.Mockito.Core)
@@ -128,6 +136,7 @@ dependencies {
     testImplementation(Deps.AssertJ.AssertJ)
     testImplementation(Deps.Json.Json)
     testImplementation(Deps.Square.OkHttp.MockWebServer)
+    testImplementation(Deps.Square.OkHttp.OkHttpTls)
     testImplementation(Deps.Kotlin.JUnit)
     testImplementation(Deps.Mockito.Kotlin)
     testImplementation(Deps.AndroidX.Annotations)
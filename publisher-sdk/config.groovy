@@ -70,6 +70,10 @@ maxSizeOfCsmMetricsFolder = 48 * 1024
 estimatedSizeOfCsmMetric = 170
 maxSizeOfCsmMetricSendingQueue = 60 * 1024
 
+// Maximum duration in milliseconds a metric waits in the sending queue before being sent.
+// Metrics are sent earlier once a full batch is waiting, or when the application goes in background.
+csmMaxFlushLatencyInMillis = 30 * 1000
+
 /**
  * Width and height in dp of the injected AdChoice icon for advanced native.
  */
@@ -92,6 +96,20 @@ remoteLogQueueFilename = 'criteo_remote_logs_queue'
 estimatedSizeOfRemoteLog = 5000
 maxSizeOfRemoteLogSendingQueue = 250 * 1024
 
+// Maximum duration in milliseconds a log waits in the sending queue before being sent.
+// Logs are sent earlier once half of the sending queue is filled, or when the application goes in
+// background.
+remoteLogMaxFlushLatencyInMillis = 30 * 1000
+
+/**
+ * Advertising ID configuration
+ */
+
+// Maximum age in milliseconds of the advertising ID read from Play Services. An older one is still
+// served, while it is refreshed in background. So a reset ID, or a change of the limit ad tracking
+// setting, is taken into account within this delay.
+advertisingIdRefreshPeriodInMillis = 60 * 60 * 1000
+
 environments {
     debug {
         eventUrl = 'https://an.url.that.does.not.exist'
@@ -24,3 +24,5 @@
 
 -keep class com.google.android.gms.ads.** { *; }
 
+# Used in OkHttpTransport, only when OkHttp is present at runtime
+-dontwarn okhttp3.**
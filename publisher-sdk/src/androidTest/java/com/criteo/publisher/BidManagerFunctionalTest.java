@@ -39,6 +39,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
@@ -46,6 +47,7 @@ import static org.mockito.Mockito.when;
 import android.content.Context;
 import androidx.annotation.NonNull;
 import com.criteo.publisher.bid.BidLifecycleListener;
+import com.criteo.publisher.cache.BidCacheSnapshotStore;
 import com.criteo.publisher.cache.SdkCache;
 import com.criteo.publisher.context.ContextData;
 import com.criteo.publisher.context.ContextProvider;
@@ -70,8 +72,10 @@ import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.DeviceInfo;
 import com.criteo.publisher.model.Publisher;
 import com.criteo.publisher.model.RemoteConfigResponse;
+import com.criteo.publisher.model.VersionedRemoteConfig;
 import com.criteo.publisher.model.RewardedAdUnit;
 import com.criteo.publisher.model.User;
+import com.criteo.publisher.network.CircuitBreaker;
 import com.criteo.publisher.network.LiveBidRequestSender;
 import com.criteo.publisher.network.PubSdkApi;
 import com.criteo.publisher.privacy.UserPrivacyUtil;
@@ -126,6 +130,9 @@ public class BidManagerFunctionalTest {
   @SpyBean
   private LiveBidRequestSender liveBidRequestSender;
 
+  @SpyBean
+  private CircuitBreaker circuitBreaker;
+
   @MockBean
   private BidLifecycleListener bidLifecycleListener;
 
@@ -168,6 +175,9 @@ public class BidManagerFunctionalTest {
   @SpyBean
   private Executor executor;
 
+  @SpyBean
+  private BidCacheSnapshotStore bidCacheSnapshotStore;
+
   @Inject
   private Logger logger;
 
@@ -309,7 +319,7 @@ public class BidManagerFunctionalTest {
     when(config.isPrefetchOnInitEnabled()).thenReturn(false);
 
     RemoteConfigResponse response = mock(RemoteConfigResponse.class);
-    when(api.loadConfig(any())).thenReturn(response);
+    when(api.loadConfig(any(), any())).thenReturn(new VersionedRemoteConfig(response, null));
 
     List<AdUnit> prefetchAdUnits = Arrays.asList(
         mock(AdUnit.class),
@@ -336,7 +346,7 @@ public class BidManagerFunctionalTest {
   @Test
   public void prefetch_GivenNoAdUnit_ShouldUpdateConfig() throws Exception {
     RemoteConfigResponse response = mock(RemoteConfigResponse.class);
-    when(api.loadConfig(any())).thenReturn(response);
+    when(api.loadConfig(any(), any())).thenReturn(new VersionedRemoteConfig(response, null));
 
     bidManager.prefetch(emptyList());
     waitForIdleState();
@@ -407,7 +417,7 @@ public class BidManagerFunctionalTest {
         .thenReturn(response1)
         .thenThrow(IOException.class)
         .thenReturn(response3);
-    when(api.loadConfig(any())).thenReturn(remoteConfigResponse);
+    when(api.loadConfig(any(), any())).thenReturn(new VersionedRemoteConfig(remoteConfigResponse, null));
 
     bidManager = spy(bidManager);
     bidManager.prefetch(prefetchAdUnits);
@@ -422,7 +432,8 @@ public class BidManagerFunctionalTest {
     inOrder.verify(config, never()).refreshConfig(any());
     inOrder.verify(api)
         .loadCdb(argThat(cdb -> requestedAdUnits1.equals(getRequestedAdUnits(cdb))), any());
-    response1.getSlots().forEach(inOrder.verify(cache)::add);
+    response1.getSlots().forEach(slot -> inOrder.verify(cache)
+        .add(eq(slot), any(), anyInt(), any()));
     inOrder.verify(bidManager).setTimeToNextCall(1);
 
     // Second call with error
@@ -433,7 +444,8 @@ public class BidManagerFunctionalTest {
     inOrder.verify(config, never()).refreshConfig(any());
     inOrder.verify(api)
         .loadCdb(argThat(cdb -> requestedAdUnits3.equals(getRequestedAdUnits(cdb))), any());
-    response3.getSlots().forEach(inOrder.verify(cache)::add);
+    response3.getSlots().forEach(slot -> inOrder.verify(cache)
+        .add(eq(slot), any(), anyInt(), any()));
     inOrder.verify(bidManager).setTimeToNextCall(3);
 
     inOrder.verifyNoMoreInteractions();
@@ -504,6 +516,74 @@ public class BidManagerFunctionalTest {
     });
   }
 
+  @Test
+  public void getBidForAdUnitAndPrefetch_GivenCacheDepth_ShouldRequestMissingBidsInSeparateCalls()
+      throws Exception {
+    when(config.getBidCacheDepth()).thenReturn(3);
+    CacheAdUnit cacheAdUnit = sampleAdUnit();
+    AdUnit adUnit = givenMockedAdUnitMappingTo(cacheAdUnit);
+
+    CdbResponse response1 = givenMockedCdbResponseWithValidSlotFor(cacheAdUnit);
+    CdbResponse response2 = givenMockedCdbResponseWithValidSlotFor(cacheAdUnit);
+    CdbResponse response3 = givenMockedCdbResponseWithValidSlotFor(cacheAdUnit);
+    when(api.loadCdb(any(), any())).thenReturn(response1, response2, response3);
+
+    bidManager.getBidForAdUnitAndPrefetch(adUnit, contextData);
+    waitForIdleState();
+
+    verify(api, times(3)).loadCdb(argThat(cdb -> {
+      assertThat(getRequestedAdUnits(cdb)).containsExactly(cacheAdUnit);
+      return true;
+    }), any());
+    assertThat(cache.getBidCount(cacheAdUnit)).isEqualTo(3);
+  }
+
+  @Test
+  public void prefetch_GivenNotExpiredCachedBidReplacedByNewOne_NotifyForDiscardedBid()
+      throws Exception {
+    CacheAdUnit cacheAdUnit = sampleAdUnit();
+    AdUnit adUnit = givenMockedAdUnitMappingTo(cacheAdUnit);
+    CdbResponseSlot cachedSlot = givenNotExpiredValidCachedBid(cacheAdUnit);
+    CdbResponse response = givenMockedCdbResponseWithValidSlotFor(cacheAdUnit);
+    when(api.loadCdb(any(), any())).thenReturn(response);
+
+    bidManager.prefetch(singletonList(adUnit));
+    waitForIdleState();
+
+    verify(bidLifecycleListener).onBidDiscarded(cacheAdUnit, cachedSlot);
+    assertListenerIsNotNotifyForBidConsumed();
+  }
+
+  @Test
+  public void prefetch_GivenExpiredCachedBidReplacedByNewOne_NotifyForConsumedBid()
+      throws Exception {
+    CacheAdUnit cacheAdUnit = sampleAdUnit();
+    AdUnit adUnit = givenMockedAdUnitMappingTo(cacheAdUnit);
+    CdbResponseSlot cachedSlot = givenExpiredValidCachedBid(cacheAdUnit);
+    CdbResponse response = givenMockedCdbResponseWithValidSlotFor(cacheAdUnit);
+    when(api.loadCdb(any(), any())).thenReturn(response);
+
+    bidManager.prefetch(singletonList(adUnit));
+    waitForIdleState();
+
+    assertListenerIsNotifyForBidConsumed(cacheAdUnit, cachedSlot);
+    verify(bidLifecycleListener, never()).onBidDiscarded(any(), any());
+  }
+
+  private CdbResponse givenMockedCdbResponseWithValidSlotFor(CacheAdUnit cacheAdUnit) {
+    CdbResponseSlot slot = mock(CdbResponseSlot.class);
+    when(slot.isValid()).thenReturn(true);
+    when(slot.getCpmAsNumber()).thenReturn(1.);
+    when(slot.getTtlInSeconds()).thenReturn(60);
+    when(slot.getPlacementId()).thenReturn(cacheAdUnit.getPlacementId());
+    when(slot.getWidth()).thenReturn(cacheAdUnit.getSize().getWidth());
+    when(slot.getHeight()).thenReturn(cacheAdUnit.getSize().getHeight());
+
+    CdbResponse response = mock(CdbResponse.class);
+    when(response.getSlots()).thenReturn(singletonList(slot));
+    return response;
+  }
+
   private void callingCdb_GivenAdUnitAndGlobalInformation_ShouldCallCdbWithExpectedInfo(
       Consumer<AdUnit> callingCdb
   ) throws Exception {
@@ -583,7 +663,7 @@ public class BidManagerFunctionalTest {
     CdbResponseSlot bid = bidManager.getBidForAdUnitAndPrefetch(adUnit, contextData);
 
     assertEquals(slot, bid);
-    verify(cache).remove(cacheAdUnit);
+    verify(cache).remove(cacheAdUnit, slot);
     assertListenerIsNotifyForBidConsumed(cacheAdUnit, bid);
   }
 
@@ -641,7 +721,7 @@ public class BidManagerFunctionalTest {
     inOrder.verify(bidManager).getBidForAdUnitAndPrefetch(adUnit, contextData);
     inOrder.verify(api).loadCdb(any(), any());
     inOrder.verify(bidManager).getBidForAdUnitAndPrefetch(adUnit, contextData);
-    inOrder.verify(cache).add(slot);
+    inOrder.verify(cache).add(eq(slot), any(), anyInt(), any());
     inOrder.verify(bidManager).setTimeToNextCall(anyInt());
     inOrder.verifyNoMoreInteractions();
   }
@@ -672,7 +752,7 @@ public class BidManagerFunctionalTest {
     inOrder.verify(bidManager).getBidForAdUnitAndPrefetch(adUnit, contextData);
     inOrder.verify(bidManager).getBidForAdUnitAndPrefetch(adUnit, contextData);
     inOrder.verify(api, timeout(1000)).loadCdb(any(), any());
-    inOrder.verify(cache).add(slot);
+    inOrder.verify(cache).add(eq(slot), any(), anyInt(), any());
     inOrder.verify(bidManager).setTimeToNextCall(anyInt());
     inOrder.verifyNoMoreInteractions();
   }
@@ -735,7 +815,7 @@ public class BidManagerFunctionalTest {
 
     InOrder inOrder = inOrder(cache, slot);
     inOrder.verify(slot).setTimeOfDownload(42);
-    inOrder.verify(cache).add(slot);
+    inOrder.verify(cache).add(eq(slot), any(), anyInt(), any());
   }
 
   @Test
@@ -800,7 +880,7 @@ public class BidManagerFunctionalTest {
     CdbResponseSlot bid = bidManager.getBidForAdUnitAndPrefetch(adUnit, contextData);
 
     assertNull(bid);
-    verify(cache, never()).remove(cacheAdUnit);
+    verify(cache, never()).remove(eq(cacheAdUnit), any());
     assertListenerIsNotNotifyForBidConsumed();
   }
 
@@ -859,6 +939,21 @@ public class BidManagerFunctionalTest {
     assertShouldNotCallCdbAndNotPopulateCache();
   }
 
+  @Test
+  public void getBidForAdUnitAndPrefetch_GivenCdbCallsSuspended_ShouldNotCallCdbAndReturnCachedBid()
+      throws Exception {
+    CacheAdUnit cacheAdUnit = sampleAdUnit();
+    AdUnit adUnit = givenMockedAdUnitMappingTo(cacheAdUnit);
+    CdbResponseSlot cdbResponseSlot = givenNotExpiredValidCachedBid(cacheAdUnit);
+
+    givenCdbCallsSuspended();
+    CdbResponseSlot bid = bidManager.getBidForAdUnitAndPrefetch(adUnit, contextData);
+    waitForIdleState();
+
+    assertEquals(cdbResponseSlot, bid);
+    assertShouldNotCallCdbAndNotPopulateCache();
+  }
+
   @Test
   public void getBidForAdUnitAndPrefetch_GivenExpiredUserLevelSilentMode_ShouldCallCdbAndPopulateCache()
       throws Exception {
@@ -935,7 +1030,7 @@ public class BidManagerFunctionalTest {
 
     InOrder inOrder = inOrder(cache, slot);
     inOrder.verify(slot).setTtlInSeconds(DEFAULT_TTL_IN_SECONDS);
-    inOrder.verify(cache).add(slot);
+    inOrder.verify(cache).add(eq(slot), any(), anyInt(), any());
   }
 
   @Test
@@ -949,7 +1044,7 @@ public class BidManagerFunctionalTest {
     bidManager.getBidForAdUnitAndPrefetch(adUnit, contextData);
     waitForIdleState();
 
-    verify(cache, never()).add(slot);
+    verify(cache, never()).add(eq(slot), any(), anyInt(), any());
   }
 
   @Test
@@ -1043,6 +1138,23 @@ public class BidManagerFunctionalTest {
     verify(remoteLogSendingQueueConsumer).sendRemoteLogBatch();
   }
 
+  @Test
+  public void fetchForLiveBidRequest_GivenCdbCallsSuspended_AndValidCacheEntry_ShouldReturnCachedBid()
+      throws Exception {
+    CacheAdUnit cacheAdUnit = sampleAdUnit();
+    AdUnit adUnit = givenMockedAdUnitMappingTo(cacheAdUnit);
+    CdbResponseSlot cdbResponseSlot = givenNotExpiredValidCachedBid(cacheAdUnit);
+    BidListener bidListener = mock(BidListener.class);
+
+    givenCdbCallsSuspended();
+    bidManager.getLiveBidForAdUnit(adUnit, contextData, bidListener);
+    waitForIdleState();
+
+    verify(bidListener).onBidResponse(cdbResponseSlot);
+    assertLiveBidIsConsumedFromCache(cacheAdUnit, cdbResponseSlot);
+    assertShouldNotCallCdbAndNotPopulateCache();
+  }
+
   @Test
   public void fetchForLiveBidRequest_GivenGlobalSilentModeOn_AndExpiredCacheEntry_ShouldReturnNoBid()
       throws Exception {
@@ -1215,6 +1327,44 @@ public class BidManagerFunctionalTest {
     assertLiveBidIsConsumedFromCache(cacheAdUnit, slot);
   }
 
+  @Test
+  public void fetchForLiveBidRequest_ValidBidCached_LiveBidExpectedTooLate_ShouldNotifyForConsumedBidWithoutLiveCall()
+      throws Exception {
+    givenLiveBidExpectedToExceedTimeBudget(true);
+
+    CacheAdUnit cacheAdUnit = sampleAdUnit();
+    AdUnit adUnit = givenMockedAdUnitMappingTo(cacheAdUnit);
+    CdbResponseSlot slot = givenNotExpiredValidCachedBid(cacheAdUnit);
+    givenMockedCdbRespondingSlot();
+    BidListener bidListener = mock(BidListener.class);
+
+    bidManager.getLiveBidForAdUnit(adUnit, contextData, bidListener);
+    waitForIdleState();
+
+    verify(bidListener).onBidResponse(slot);
+    assertLiveBidIsConsumedFromCache(cacheAdUnit, slot);
+    verify(liveBidRequestSender, never()).sendLiveBidRequest(any(), any(), any());
+    verify(api).loadCdb(any(), any());
+  }
+
+  @Test
+  public void fetchForLiveBidRequest_NothingCached_LiveBidExpectedTooLate_ShouldStillFetchLiveBid()
+      throws Exception {
+    givenLiveBidExpectedToExceedTimeBudget(true);
+    givenTimeBudgetRespectedWhenFetchingLiveBids();
+
+    CacheAdUnit cacheAdUnit = sampleAdUnit();
+    AdUnit adUnit = givenMockedAdUnitMappingTo(cacheAdUnit);
+    CdbResponseSlot newSlot = givenMockedCdbRespondingSlot();
+    BidListener bidListener = mock(BidListener.class);
+
+    bidManager.getLiveBidForAdUnit(adUnit, contextData, bidListener);
+    waitForIdleState();
+
+    verify(liveBidRequestSender).sendLiveBidRequest(eq(cacheAdUnit), eq(contextData), any());
+    verify(bidListener).onBidResponse(newSlot);
+  }
+
   @Test
   public void fetchForLiveBidRequest_ValidBidFetched_ValidBidCached_TimeBudgetExceeded_ShouldNotifyForConsumedBidAndPopulateCache()
       throws Exception {
@@ -1235,9 +1385,9 @@ public class BidManagerFunctionalTest {
     assertLiveBidIsConsumedFromCache(cacheAdUnit, cachedSlot);
 
     InOrder inOrder = inOrder(cache, newSlot);
-    inOrder.verify(cache).remove(cacheAdUnit);
+    inOrder.verify(cache).remove(cacheAdUnit, cachedSlot);
     inOrder.verify(newSlot).setTimeOfDownload(42);
-    inOrder.verify(cache).add(newSlot);
+    inOrder.verify(cache).add(eq(newSlot), any(), anyInt(), any());
   }
 
   @Test
@@ -1553,17 +1703,61 @@ public class BidManagerFunctionalTest {
     verify(bidLifecycleListener, never()).onBidCached(any());
   }
 
+  @Test
+  public void onApplicationStopped_FlushMetricsAndRemoteLogs() throws Exception {
+    bidManager.onApplicationStopped();
+    waitForIdleState();
+
+    verify(metricSendingQueueConsumer).flushMetricBatch();
+    verify(remoteLogSendingQueueConsumer).flushRemoteLogBatch();
+  }
+
+  @Test
+  public void onApplicationStopped_GivenBidConsumedAfterward_InvalidateSnapshotOnlyOnce()
+      throws Exception {
+    CacheAdUnit cacheAdUnit = sampleAdUnit();
+    AdUnit adUnit = givenMockedAdUnitMappingTo(cacheAdUnit);
+    givenNotExpiredValidCachedBid(cacheAdUnit);
+
+    bidManager.onApplicationStopped();
+    bidManager.getBidForAdUnitAndPrefetch(adUnit, contextData);
+    givenNotExpiredValidCachedBid(cacheAdUnit);
+    bidManager.getBidForAdUnitAndPrefetch(adUnit, contextData);
+    waitForIdleState();
+
+    InOrder inOrder = inOrder(bidCacheSnapshotStore);
+    inOrder.verify(bidCacheSnapshotStore).saveAsync(any());
+    inOrder.verify(bidCacheSnapshotStore).invalidateAsync();
+    verify(bidCacheSnapshotStore, times(1)).invalidateAsync();
+  }
+
+  @Test
+  public void getBidForAdUnitAndPrefetch_GivenNoSnapshotSaved_DoNotInvalidateIt() throws Exception {
+    CacheAdUnit cacheAdUnit = sampleAdUnit();
+    AdUnit adUnit = givenMockedAdUnitMappingTo(cacheAdUnit);
+    givenNotExpiredValidCachedBid(cacheAdUnit);
+
+    bidManager.getBidForAdUnitAndPrefetch(adUnit, contextData);
+    waitForIdleState();
+
+    verify(bidCacheSnapshotStore, never()).invalidateAsync();
+  }
+
   private BidManager givenGlobalSilenceMode(boolean enabled) {
     BidManager bidManagerSpy = spy(bidManager);
     doReturn(enabled).when(bidManagerSpy).isGlobalSilenceEnabled();
     return bidManagerSpy;
   }
 
+  private void givenCdbCallsSuspended() {
+    doReturn(false).when(circuitBreaker).isCallPermitted(PubSdkApi.CDB_PATH);
+  }
+
   private void assertShouldCallCdbAndPopulateCacheOnlyOnce(
       List<CacheAdUnit> requestedAdUnits,
       CdbResponseSlot slot
   ) throws Exception {
-    verify(cache).add(slot);
+    verify(cache).add(eq(slot), any(), anyInt(), any());
     assertShouldCallCdb(requestedAdUnits);
   }
 
@@ -1579,7 +1773,7 @@ public class BidManagerFunctionalTest {
   }
 
   private void assertShouldNotCallCdbAndNotPopulateCache() throws Exception {
-    verify(cache, never()).add(any());
+    verify(cache, never()).add(any(), any(), anyInt(), any());
     verify(api, never()).loadCdb(any(), any());
     verify(bidLifecycleListener, never()).onCdbCallStarted(any());
     verify(bidLifecycleListener, never()).onCdbCallFinished(any(), any());
@@ -1596,28 +1790,28 @@ public class BidManagerFunctionalTest {
 
   private void assertLiveBidIsCached(@NonNull CdbResponseSlot cachedSlot) {
     verify(cachedSlot).setTimeOfDownload(anyLong());
-    verify(cache).add(cachedSlot);
+    verify(cache).add(eq(cachedSlot), any(), anyInt(), any());
     verify(bidLifecycleListener).onBidCached(cachedSlot);
   }
 
   private void assertNoLiveBidIsCached() {
-    verify(cache, never()).add(any());
+    verify(cache, never()).add(any(), any(), anyInt(), any());
     verify(bidLifecycleListener, never()).onBidCached(any());
   }
 
   private void assertLiveBidIsConsumedFromCache(@NonNull CacheAdUnit cacheAdUnit, @NonNull CdbResponseSlot cachedSlot) {
-    verify(cache).remove(cacheAdUnit);
+    verify(cache).remove(cacheAdUnit, cachedSlot);
     verify(bidLifecycleListener).onBidConsumed(cacheAdUnit, cachedSlot);
   }
 
   private void assertNoLiveBidIsConsumedFromCache() {
-    verify(cache, never()).remove(any());
+    verify(cache, never()).remove(any(), any());
     verify(bidLifecycleListener, never()).onBidConsumed(any(), any());
   }
 
   private void assertLiveBidIsConsumedDirectly(@NonNull CacheAdUnit cacheAdUnit, @NonNull CdbResponseSlot directSlot) {
     verify(directSlot).setTimeOfDownload(anyLong());
-    verify(cache, never()).remove(any());
+    verify(cache, never()).remove(any(), any());
     verify(bidLifecycleListener).onBidConsumed(cacheAdUnit, directSlot);
   }
 
@@ -1683,7 +1877,7 @@ public class BidManagerFunctionalTest {
   private void givenRemoteConfigWithKillSwitchEnabled() throws IOException {
     RemoteConfigResponse response = mock(RemoteConfigResponse.class);
     when(response.getKillSwitch()).thenReturn(true);
-    when(api.loadConfig(any())).thenReturn(response);
+    when(api.loadConfig(any(), any())).thenReturn(new VersionedRemoteConfig(response, null));
   }
 
   @NonNull
@@ -1808,13 +2002,17 @@ public class BidManagerFunctionalTest {
   }
 
   private void givenTimeBudgetRespectedWhenFetchingLiveBids() {
-    doNothing().when(liveBidRequestSender).scheduleTimeBudgetExceeded$publisher_sdk_debug(any());
+    doNothing().when(liveBidRequestSender).scheduleTimeBudgetExceeded$publisher_sdk_debug(any(), any());
+  }
+
+  private void givenLiveBidExpectedToExceedTimeBudget(boolean isExpectedTooLate) {
+    doReturn(isExpectedTooLate).when(liveBidRequestSender).isLiveBidExpectedToExceedTimeBudget();
   }
 
   private void givenTimeBudgetExceededWhenFetchingLiveBids() {
     doAnswer(invocation -> {
       invocation.getArgument(0, LiveCdbCallListener.class).onTimeBudgetExceeded();
       return null;
-    }).when(liveBidRequestSender).scheduleTimeBudgetExceeded$publisher_sdk_debug(any());
+    }).when(liveBidRequestSender).scheduleTimeBudgetExceeded$publisher_sdk_debug(any(), any());
   }
 }
@@ -95,6 +95,34 @@ class ConnectionTypeFetcherTest {
     assertThat(connectionType).isNull()
   }
 
+  @Test
+  fun isConnected_GivenNoActiveNetwork_ReturnFalse() {
+    givenMockedConnectivityService {
+      on { activeNetworkInfo } doReturn null
+    }
+
+    assertThat(connectionTypeFetcher.isConnected()).isFalse()
+  }
+
+  @Test
+  fun isConnected_GivenConnectedActiveNetwork_ReturnTrue() {
+    val networkInfo = mock<NetworkInfo>() {
+      on { isConnected } doReturn true
+    }
+    givenMockedConnectivityService {
+      on { activeNetworkInfo } doReturn networkInfo
+    }
+
+    assertThat(connectionTypeFetcher.isConnected()).isTrue()
+  }
+
+  @Test
+  fun isConnected_GivenNoConnectivityService_ReturnTrue() {
+    doReturn(null).whenever(context).getSystemService(any())
+
+    assertThat(connectionTypeFetcher.isConnected()).isTrue()
+  }
+
   @Test
   fun fetchConnectionType_DeprecatedWayWorking_ActiveNetwork_ReturnExpected() {
     fetchConnectionType_DeprecatedWayWorking_ActiveNetwork_ReturnExpected(TYPE_ETHERNET, expected = WIRED)
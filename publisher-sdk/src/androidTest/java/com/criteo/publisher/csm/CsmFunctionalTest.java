@@ -28,6 +28,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -91,6 +92,9 @@ public class CsmFunctionalTest {
   public void setUp() throws Exception {
     integrationRegistry.declare(Integration.IN_HOUSE);
     givenConsentGiven();
+
+    // Metrics are sent on each bid instead of waiting for a full batch
+    doReturn(0).when(buildConfigWrapper).getEstimatedSizeOfCsmMetric();
   }
 
   @Test
@@ -20,7 +20,7 @@ import static com.criteo.publisher.CriteoUtil.TEST_CP_ID;
 import static com.criteo.publisher.CriteoUtil.givenInitializedCriteo;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.AdditionalAnswers.answerVoid;
 import static org.mockito.ArgumentMatchers.any;
@@ -174,16 +174,16 @@ public class CriteoFunctionalTest {
     waitForBids();
 
     verify(api).loadCdb(any(), any());
-    verify(api).loadConfig(any());
+    verify(api).loadConfig(any(), any());
     verify(api).postAppEvent(anyInt(), any(), any(), eq("Launch"), anyInt(), any(), any());
     verify(api).postAppEvent(anyInt(), any(), any(), eq("Active"), anyInt(), any(), any());
   }
 
   @Test
-  public void init_WaitingForIdleState_BidManagerIsPrefetchOnMainThread() throws Exception {
+  public void init_WaitingForIdleState_BidManagerIsPrefetchOnWorkerThread() throws Exception {
     doAnswer(answerVoid((List<AdUnit> adUnits) -> {
       assertTrue(adUnits.isEmpty());
-      assertSame(Thread.currentThread(), Looper.getMainLooper().getThread());
+      assertNotSame(Thread.currentThread(), Looper.getMainLooper().getThread());
     })).when(bidManager).prefetch(any());
 
     givenInitializedCriteo();
@@ -205,7 +205,7 @@ public class CriteoFunctionalTest {
       assertEquals("1.2.3", request.getSdkVersion());
 
       return true;
-    }));
+    }), any());
   }
 
   @Test
@@ -43,6 +43,7 @@ import org.assertj.core.api.Assertions.assertThat
 import org.junit.Rule
 import org.junit.Test
 import org.mockito.kotlin.any
+import org.mockito.kotlin.anyOrNull
 import org.mockito.kotlin.atLeastOnce
 import org.mockito.kotlin.check
 import org.mockito.kotlin.clearInvocations
@@ -102,7 +103,7 @@ class ProfileIdFunctionalTest {
 
     verify(api).loadConfig(check {
       assertThat(it.profileId).isEqualTo(Integration.FALLBACK.profileId)
-    })
+    }, anyOrNull())
   }
 
   @Test
@@ -114,7 +115,7 @@ class ProfileIdFunctionalTest {
 
     verify(api).loadConfig(check {
       assertThat(it.profileId).isEqualTo(Integration.IN_HOUSE.profileId)
-    })
+    }, anyOrNull())
   }
 
   @Test
@@ -388,7 +389,7 @@ class ProfileIdFunctionalTest {
   private fun triggerMetricRequest() {
     metricSendingQueueProducer.pushAllInQueue(metricRepository)
     mockedDependenciesRule.waitForIdleState()
-    metricSendingQueueConsumer.sendMetricBatch()
+    metricSendingQueueConsumer.flushMetricBatch()
     mockedDependenciesRule.waitForIdleState()
   }
 
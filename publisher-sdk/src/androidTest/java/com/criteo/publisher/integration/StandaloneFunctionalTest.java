@@ -513,14 +513,14 @@ public class StandaloneFunctionalTest {
   }
 
   private void givenTimeBudgetRespectedWhenFetchingLiveBids() {
-    doNothing().when(liveBidRequestSender).scheduleTimeBudgetExceeded$publisher_sdk_debug(any());
+    doNothing().when(liveBidRequestSender).scheduleTimeBudgetExceeded$publisher_sdk_debug(any(), any());
   }
 
   private void givenTimeBudgetExceededWhenFetchingLiveBids() {
     doAnswer(invocation -> {
       invocation.getArgument(0, LiveCdbCallListener.class).onTimeBudgetExceeded();
       return null;
-    }).when(liveBidRequestSender).scheduleTimeBudgetExceeded$publisher_sdk_debug(any());
+    }).when(liveBidRequestSender).scheduleTimeBudgetExceeded$publisher_sdk_debug(any(), any());
   }
 
   private void loadAdAndWait(CriteoBannerView bannerView) {
@@ -76,11 +76,13 @@ class RemoteLoggingFunctionalTest {
     }
     mockedDependenciesRule.waitForIdleState()
 
-    // Get a new bid to trigger sending of remote logs
+    // Get a new bid to produce more remote logs, then send them without waiting for a full batch
     Criteo.getInstance().loadBid(TestAdUnits.INTERSTITIAL) {
       // ignored
     }
     mockedDependenciesRule.waitForIdleState()
+    remoteLogSendingQueueConsumer.flushRemoteLogBatch()
+    mockedDependenciesRule.waitForIdleState()
 
     verify(api, atLeastOnce()).postLogs(check {
       assertThat(it.map { it.context.deviceId }).isNotEmpty.doesNotContainNull()
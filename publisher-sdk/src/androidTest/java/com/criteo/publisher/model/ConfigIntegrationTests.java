@@ -313,7 +313,21 @@ public class ConfigIntegrationTests {
         true,
         1337,
         true,
-        RemoteLogLevel.DEBUG
+        RemoteLogLevel.DEBUG,
+        3,
+        false,
+        30,
+        600,
+        false,
+        false,
+        false,
+        256,
+        false,
+        7,
+        true,
+        1048576,
+        1800,
+        false
     );
 
     givenRemoteConfigInLocalStorage(persistedConfig);
@@ -340,6 +354,20 @@ public class ConfigIntegrationTests {
         null,
         null,
         null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
         null
     );
 
@@ -353,7 +381,21 @@ public class ConfigIntegrationTests {
         true,
         42,
         false,
-        RemoteLogLevel.INFO
+        RemoteLogLevel.INFO,
+        2,
+        true,
+        20,
+        700,
+        true,
+        true,
+        true,
+        512,
+        true,
+        3,
+        false,
+        2048,
+        60,
+        true
     );
 
     RemoteConfigResponse expectedRemoteConfig = RemoteConfigResponse.create(
@@ -366,7 +408,21 @@ public class ConfigIntegrationTests {
         true,
         42,
         false,
-        RemoteLogLevel.INFO
+        RemoteLogLevel.INFO,
+        2,
+        true,
+        20,
+        700,
+        true,
+        true,
+        true,
+        512,
+        true,
+        3,
+        false,
+        2048,
+        60,
+        true
     );
 
     givenRemoteConfigInLocalStorage(oldPersistedConfig);
@@ -386,7 +442,7 @@ public class ConfigIntegrationTests {
 
   private void givenRemoteConfigInError() throws IOException {
     doReturn(false).when(buildConfigWrapper).preconditionThrowsOnException();
-    doThrow(IOException.class).when(api).loadConfig(any());
+    doThrow(IOException.class).when(api).loadConfig(any(), any());
   }
 
   private void givenRemoteConfigResponseWithKillSwitch(Boolean isEnabled) throws Exception {
@@ -395,7 +451,7 @@ public class ConfigIntegrationTests {
   }
 
   private void givenRemoteConfigWithResponse(RemoteConfigResponse response) throws IOException {
-    doReturn(response).when(api).loadConfig(any());
+    doReturn(new VersionedRemoteConfig(response, null)).when(api).loadConfig(any(), any());
   }
 
   @Nullable
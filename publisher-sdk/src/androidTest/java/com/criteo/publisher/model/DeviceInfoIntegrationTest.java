@@ -17,14 +17,20 @@
 package com.criteo.publisher.model;
 
 import static com.criteo.publisher.concurrent.ThreadingUtil.runOnMainThreadAndWait;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import com.criteo.publisher.concurrent.RunOnUiThreadExecutor;
 import com.criteo.publisher.mock.MockedDependenciesRule;
+import com.criteo.publisher.util.SharedPreferencesFactory;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.inject.Inject;
@@ -40,17 +46,23 @@ public class DeviceInfoIntegrationTest {
   @Inject
   private Context context;
 
+  @Inject
+  private SharedPreferencesFactory sharedPreferencesFactory;
+
   private RunOnUiThreadExecutor runOnUiThreadExecutor;
 
+  private SharedPreferences sharedPreferences;
+
   @Before
   public void setUp() throws Exception {
     runOnUiThreadExecutor = mockedDependenciesRule.getDependencyProvider()
         .provideRunOnUiThreadExecutor();
+    sharedPreferences = sharedPreferencesFactory.getInternal();
   }
 
   @Test
   public void initialize_GivenPreviouslyFetchedUserAgent_RetrieveUserAgentOnce() throws Exception {
-    DeviceInfo deviceInfo = spy(new DeviceInfo(context, runOnUiThreadExecutor));
+    DeviceInfo deviceInfo = spy(new DeviceInfo(context, runOnUiThreadExecutor, sharedPreferences));
 
     deviceInfo.getUserAgent().get();
     waitForIdleState();
@@ -63,7 +75,7 @@ public class DeviceInfoIntegrationTest {
 
   @Test
   public void getUserAgent_GivenInitializedDeviceInfo_ReturnsCompletedFuture() throws Exception {
-    DeviceInfo deviceInfo = new DeviceInfo(context, runOnUiThreadExecutor);
+    DeviceInfo deviceInfo = new DeviceInfo(context, runOnUiThreadExecutor, sharedPreferences);
 
     deviceInfo.initialize();
     Future<String> userAgent = deviceInfo.getUserAgent();
@@ -74,7 +86,7 @@ public class DeviceInfoIntegrationTest {
   @Test
   public void getUserAgent_GivenUninitializedDeviceInfoAndWaitForIdleState_ReturnsCompletedFuture()
       throws Exception {
-    DeviceInfo deviceInfo = new DeviceInfo(context, runOnUiThreadExecutor);
+    DeviceInfo deviceInfo = new DeviceInfo(context, runOnUiThreadExecutor, sharedPreferences);
 
     Future<String> userAgent = deviceInfo.getUserAgent();
     waitForIdleState();
@@ -85,7 +97,7 @@ public class DeviceInfoIntegrationTest {
   @Test
   public void getUserAgent_WhenOnMainThreadAndWaitForIdleState_RunAsyncAndReturnUncompletedFuture()
       throws Exception {
-    DeviceInfo deviceInfo = new DeviceInfo(context, runOnUiThreadExecutor);
+    DeviceInfo deviceInfo = new DeviceInfo(context, runOnUiThreadExecutor, sharedPreferences);
     AtomicReference<Future<String>> userAgentAsyncRef = new AtomicReference<>();
 
     runOnMainThreadAndWait(() -> {
@@ -95,6 +107,33 @@ public class DeviceInfoIntegrationTest {
     assertNotNull(userAgentAsyncRef.get().get());
   }
 
+  @Test
+  public void getUserAgent_GivenUserAgentPersistedWithSameWebView_DoNotResolveItAgain()
+      throws Exception {
+    String userAgent = new DeviceInfo(context, runOnUiThreadExecutor, sharedPreferences)
+        .getUserAgent()
+        .get();
+
+    DeviceInfo deviceInfo = spy(new DeviceInfo(context, runOnUiThreadExecutor, sharedPreferences));
+    Future<String> userAgentFuture = deviceInfo.getUserAgent();
+
+    assertTrue(userAgentFuture.isDone());
+    assertEquals(userAgent, userAgentFuture.get());
+    verify(deviceInfo, never()).resolveUserAgent();
+  }
+
+  @Test
+  public void getUserAgent_GivenUserAgentPersistedWithAnotherWebView_ResolveItAgain()
+      throws Exception {
+    new DeviceInfo(context, runOnUiThreadExecutor, sharedPreferences).getUserAgent().get();
+
+    DeviceInfo deviceInfo = spy(new DeviceInfo(context, runOnUiThreadExecutor, sharedPreferences));
+    doReturn("updatedWebView").when(deviceInfo).computeUserAgentCacheKey();
+    deviceInfo.getUserAgent().get();
+
+    verify(deviceInfo).resolveUserAgent();
+  }
+
   private void waitForIdleState() {
     mockedDependenciesRule.waitForIdleState();
   }
@@ -111,7 +111,7 @@ public class PubSdkApiIntegrationTest {
     // The app represented by the android tests is not (and should not) be configured.
     RemoteConfigRequest request = remoteConfigRequestFactory.createRequest();
 
-    RemoteConfigResponse response = api.loadConfig(request);
+    RemoteConfigResponse response = api.loadConfig(request, null).getConfig();
 
     assertThat(response).isEqualTo(defaultRemoteConfigResponse());
   }
@@ -379,7 +379,21 @@ public class PubSdkApiIntegrationTest {
         DefaultConfig.LIVE_BIDDING_ENABLED,
         DefaultConfig.LIVE_BIDDING_TIME_BUDGET_IN_MILLIS,
         DefaultConfig.PREFETCH_ON_INIT_ENABLED,
-        DefaultConfig.REMOTE_LOG_LEVEL
+        DefaultConfig.REMOTE_LOG_LEVEL,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null
     );
   }
 }
@@ -16,6 +16,7 @@
 package com.criteo.publisher.util
 
 import android.content.Context
+import com.criteo.publisher.Clock
 import androidx.test.filters.FlakyTest
 import com.criteo.publisher.concurrent.ThreadingUtil.callOnMainThreadAndWait
 import com.criteo.publisher.concurrent.ThreadingUtil.runOnMainThreadAndWait
@@ -28,6 +29,7 @@ import org.mockito.kotlin.any
 import org.mockito.kotlin.doAnswer
 import org.mockito.kotlin.doReturn
 import org.mockito.kotlin.spy
+import org.mockito.kotlin.times
 import org.mockito.kotlin.verify
 import org.mockito.kotlin.whenever
 import java.util.concurrent.Executor
@@ -49,6 +51,15 @@ class AdvertisingInfoTest {
   @Inject
   private lateinit var executor: Executor
 
+  @Inject
+  private lateinit var sharedPreferencesFactory: SharedPreferencesFactory
+
+  @Inject
+  private lateinit var clock: Clock
+
+  @Inject
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
   @SpyBean
   private lateinit var advertisingInfo: AdvertisingInfo
 
@@ -158,13 +169,61 @@ class AdvertisingInfoTest {
     val advertisingIdClient = spy(AdvertisingInfo.SafeAdvertisingIdClient()) {
       doReturn(AdvertisingInfo.AdvertisingIdResult("something", true)).whenever(mock).getAdvertisingIdResult(any())
     }
-    advertisingInfo = AdvertisingInfo(context, executor, advertisingIdClient)
+    advertisingInfo = createAdvertisingInfo(advertisingIdClient)
 
     val advertisingId = advertisingInfo.advertisingId
 
     assertThat(advertisingId).isEqualTo(DEVICE_ID_LIMITED)
   }
 
+  @Test
+  fun getAdvertisingId_CalledFromUiThreadAfterFetchInPreviousSession_ReturnPersistedIdUntilRefreshed() {
+    val advertisingIdClient = spy(AdvertisingInfo.SafeAdvertisingIdClient()) {
+      doReturn(AdvertisingInfo.AdvertisingIdResult("previousSessionId", false)).whenever(mock)
+          .getAdvertisingIdResult(any())
+    }
+    createAdvertisingInfo(advertisingIdClient).advertisingId
+
+    val newAdvertisingIdClient = spy(AdvertisingInfo.SafeAdvertisingIdClient()) {
+      doReturn(AdvertisingInfo.AdvertisingIdResult("newSessionId", false)).whenever(mock)
+          .getAdvertisingIdResult(any())
+    }
+    advertisingInfo = createAdvertisingInfo(newAdvertisingIdClient)
+    val advertisingIdBeforeRefresh = callOnMainThreadAndWait {
+      advertisingInfo.advertisingId
+    }
+    mockedDependenciesRule.waitForIdleState()
+    val advertisingIdAfterRefresh = callOnMainThreadAndWait {
+      advertisingInfo.advertisingId
+    }
+
+    assertThat(advertisingIdBeforeRefresh).isEqualTo("previousSessionId")
+    assertThat(advertisingIdAfterRefresh).isEqualTo("newSessionId")
+    verify(newAdvertisingIdClient).getAdvertisingIdResult(any())
+  }
+
+  @Test
+  fun refreshOncePerProcess_CalledTwiceAfterFetchInPreviousSession_FetchOnlyOnce() {
+    val advertisingIdClient = spy(AdvertisingInfo.SafeAdvertisingIdClient()) {
+      doReturn(AdvertisingInfo.AdvertisingIdResult("previousSessionId", false)).whenever(mock)
+          .getAdvertisingIdResult(any())
+    }
+    createAdvertisingInfo(advertisingIdClient).advertisingId
+
+    val newAdvertisingIdClient = spy(AdvertisingInfo.SafeAdvertisingIdClient()) {
+      doReturn(AdvertisingInfo.AdvertisingIdResult("newSessionId", false)).whenever(mock)
+          .getAdvertisingIdResult(any())
+    }
+    advertisingInfo = createAdvertisingInfo(newAdvertisingIdClient)
+    advertisingInfo.refreshOncePerProcess()
+    mockedDependenciesRule.waitForIdleState()
+    advertisingInfo.refreshOncePerProcess()
+    mockedDependenciesRule.waitForIdleState()
+
+    verify(newAdvertisingIdClient, times(1)).getAdvertisingIdResult(any())
+    assertThat(advertisingInfo.advertisingId).isEqualTo("newSessionId")
+  }
+
   @Test
   @FlakyTest(detail="Fetching the advertising info can yield TimeoutException on flaky network")
   fun isLimitAdTrackingEnabled_GivenPlayServiceAdsIdentifierInClasspath_ReturnFalse() {
@@ -185,4 +244,13 @@ class AdvertisingInfoTest {
 
     assertThat(isLimitAdTrackingEnabled).isFalse()
   }
+
+  private fun createAdvertisingInfo(advertisingIdClient: AdvertisingInfo.SafeAdvertisingIdClient) = AdvertisingInfo(
+      context,
+      executor,
+      advertisingIdClient,
+      sharedPreferencesFactory.internal,
+      clock,
+      buildConfigWrapper
+  )
 }
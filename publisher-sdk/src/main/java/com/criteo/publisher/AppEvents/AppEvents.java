@@ -19,6 +19,8 @@ package com.criteo.publisher.AppEvents;
 import android.content.Context;
 import androidx.annotation.NonNull;
 import com.criteo.publisher.Clock;
+import com.criteo.publisher.concurrent.PrioritizedRunnable;
+import com.criteo.publisher.concurrent.TaskPriority;
 import com.criteo.publisher.model.DeviceInfo;
 import com.criteo.publisher.network.AppEventTask;
 import com.criteo.publisher.network.PubSdkApi;
@@ -78,7 +80,7 @@ public class AppEvents implements AppEventResponseListener, ApplicationStoppedLi
       return;
     }
 
-    executor.execute(new AppEventTask(
+    Runnable task = new PrioritizedRunnable(TaskPriority.TELEMETRY, new AppEventTask(
         mContext,
         this,
         advertisingInfo,
@@ -87,6 +89,14 @@ public class AppEvents implements AppEventResponseListener, ApplicationStoppedLi
         userPrivacyUtil,
         eventType
     ));
+
+    // The event is only sent once the user agent is known, so it does not block a thread meanwhile
+    deviceInfo.getUserAgent().whenComplete(new Runnable() {
+      @Override
+      public void run() {
+        executor.execute(task);
+      }
+    });
   }
 
   @Override
@@ -16,11 +16,12 @@
 
 package com.criteo.publisher;
 
-import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.criteo.publisher.bid.BidLifecycleListener;
+import com.criteo.publisher.cache.BidCacheSnapshotStore;
+import com.criteo.publisher.cache.BidExpiryWheel;
 import com.criteo.publisher.cache.SdkCache;
 import com.criteo.publisher.context.ContextData;
 import com.criteo.publisher.csm.MetricSendingQueueConsumer;
@@ -35,11 +36,15 @@ import com.criteo.publisher.model.CdbResponse;
 import com.criteo.publisher.model.CdbResponseSlot;
 import com.criteo.publisher.model.Config;
 import com.criteo.publisher.network.BidRequestSender;
+import com.criteo.publisher.network.CircuitBreaker;
 import com.criteo.publisher.network.LiveBidRequestSender;
+import com.criteo.publisher.network.PubSdkApi;
 import com.criteo.publisher.privacy.ConsentData;
 import com.criteo.publisher.util.ApplicationStoppedListener;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class BidManager implements ApplicationStoppedListener {
@@ -53,12 +58,15 @@ public class BidManager implements ApplicationStoppedListener {
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
   @NonNull
-  @GuardedBy("cacheLock")
   private final SdkCache cache;
-  private final Object cacheLock = new Object();
 
   private final AtomicLong cdbTimeToNextCall = new AtomicLong(0);
 
+  /**
+   * Indicate if a snapshot of the cache was saved and no bid was removed from the cache since.
+   */
+  private final AtomicBoolean isSnapshotSaved = new AtomicBoolean(false);
+
   @NonNull
   private final Config config;
 
@@ -86,6 +94,18 @@ public class BidManager implements ApplicationStoppedListener {
   @NonNull
   private final ConsentData consentData;
 
+  @NonNull
+  private final BidExpiryWheel bidExpiryWheel;
+
+  @NonNull
+  private final BidCacheSnapshotStore bidCacheSnapshotStore;
+
+  @NonNull
+  private final BidRefillScheduler bidRefillScheduler;
+
+  @NonNull
+  private final CircuitBreaker circuitBreaker;
+
   BidManager(
       @NonNull SdkCache sdkCache,
       @NonNull Config config,
@@ -96,7 +116,11 @@ public class BidManager implements ApplicationStoppedListener {
       @NonNull BidLifecycleListener bidLifecycleListener,
       @NonNull MetricSendingQueueConsumer metricSendingQueueConsumer,
       @NonNull RemoteLogSendingQueueConsumer remoteLogSendingQueueConsumer,
-      @NonNull ConsentData consentData
+      @NonNull ConsentData consentData,
+      @NonNull BidExpiryWheel bidExpiryWheel,
+      @NonNull BidCacheSnapshotStore bidCacheSnapshotStore,
+      @NonNull BidRefillScheduler bidRefillScheduler,
+      @NonNull CircuitBreaker circuitBreaker
   ) {
     this.cache = sdkCache;
     this.config = config;
@@ -108,6 +132,10 @@ public class BidManager implements ApplicationStoppedListener {
     this.metricSendingQueueConsumer = metricSendingQueueConsumer;
     this.remoteLogSendingQueueConsumer = remoteLogSendingQueueConsumer;
     this.consentData = consentData;
+    this.bidExpiryWheel = bidExpiryWheel;
+    this.bidCacheSnapshotStore = bidCacheSnapshotStore;
+    this.bidRefillScheduler = bidRefillScheduler;
+    this.circuitBreaker = circuitBreaker;
   }
 
   /**
@@ -186,56 +214,56 @@ public class BidManager implements ApplicationStoppedListener {
       return null;
     }
 
-    synchronized (cacheLock) {
-      if (!isSilencedFor(cacheAdUnit)) {
-        fetchForCache(cacheAdUnit, contextData);
-      }
-
-      return consumeCachedBid(cacheAdUnit);
+    if (!isSilencedFor(cacheAdUnit)) {
+      fetchForCache(cacheAdUnit, contextData);
     }
+
+    CdbResponseSlot cdbResponseSlot = consumeCachedBid(cacheAdUnit);
+    bidRefillScheduler.onBidRequested(cacheAdUnit, contextData, cdbResponseSlot != null);
+    return cdbResponseSlot;
   }
 
   private boolean isSilencedFor(@NonNull CacheAdUnit cacheAdUnit) {
-    if (isGlobalSilenceEnabled()) {
+    if (isGlobalSilenceEnabled() || isCdbSuspended()) {
       return true;
     }
 
-    synchronized (cacheLock) {
-      CdbResponseSlot cdbResponseSlot = cache.peekAdUnit(cacheAdUnit);
-      return isBidCurrentlySilent(cdbResponseSlot);
-    }
+    CdbResponseSlot cdbResponseSlot = cache.peekAdUnit(cacheAdUnit);
+    return isBidCurrentlySilent(cdbResponseSlot);
+  }
+
+  private boolean hasUsableCachedBid(@NonNull CacheAdUnit cacheAdUnit) {
+    CdbResponseSlot cdbResponseSlot = cache.peekAdUnit(cacheAdUnit);
+    return cdbResponseSlot != null
+        && getCpm(cdbResponseSlot) > 0
+        && !hasBidExpired(cdbResponseSlot);
   }
 
   private void consumeCachedBidIfExpired(@NonNull CacheAdUnit cacheAdUnit) {
-    synchronized (cacheLock) {
-      CdbResponseSlot cdbResponseSlot = cache.peekAdUnit(cacheAdUnit);
-      if (cdbResponseSlot != null && hasBidExpired(cdbResponseSlot)) {
-        cache.remove(cacheAdUnit);
-        bidLifecycleListener.onBidConsumed(cacheAdUnit, cdbResponseSlot);
-      }
-    }
+    cache.consume(
+        cacheAdUnit,
+        slot -> false,
+        this::hasBidExpired,
+        this::onBidRemoved
+    );
   }
 
+  @Nullable
   private CdbResponseSlot consumeCachedBid(@NonNull CacheAdUnit cacheAdUnit) {
-    synchronized (cacheLock) {
-      CdbResponseSlot cdbResponseSlot = cache.peekAdUnit(cacheAdUnit);
-
-      if (cdbResponseSlot != null) {
-        boolean isBidSilent = isBidCurrentlySilent(cdbResponseSlot);
-        boolean hasBidExpired = hasBidExpired(cdbResponseSlot);
-
-        if (!isBidSilent) {
-          cache.remove(cacheAdUnit);
-          bidLifecycleListener.onBidConsumed(cacheAdUnit, cdbResponseSlot);
-        }
-
-        if (!isBidSilent && !hasBidExpired) {
-          return cdbResponseSlot;
-        }
-      }
+    // Silent bids are kept in cache until they expire, expired ones are discarded
+    CdbResponseSlot cdbResponseSlot = cache.consume(
+        cacheAdUnit,
+        slot -> !isBidCurrentlySilent(slot),
+        this::hasBidExpired,
+        this::onBidRemoved
+    );
 
+    if (cdbResponseSlot == null) {
       return null;
     }
+
+    onBidRemoved(cacheAdUnit, cdbResponseSlot);
+    return cdbResponseSlot;
   }
 
   void consumeCachedBid(@NonNull CacheAdUnit cacheAdUnit, @NonNull BidListener bidListener) {
@@ -249,9 +277,29 @@ public class BidManager implements ApplicationStoppedListener {
 
   /**
    * load data for next time
+   * <p>
+   * The cache is refilled up to the configured depth, counting the bid that is about to be
+   * consumed.
    */
   private void fetchForCache(@NonNull CacheAdUnit cacheAdUnit, @NonNull ContextData contextData) {
-    sendBidRequest(Collections.singletonList(cacheAdUnit), contextData);
+    int depth = config.getBidCacheDepth();
+    int missingBids = Math.min(depth, depth - cache.getBidCount(cacheAdUnit) + 1);
+    sendBidRequest(cacheAdUnit, contextData, Math.max(1, missingBids));
+  }
+
+  /**
+   * Proactively fetch bids for the given ad unit, on behalf of the {@link BidRefillScheduler}.
+   */
+  private boolean refillAhead(
+      @NonNull CacheAdUnit cacheAdUnit,
+      @NonNull ContextData contextData,
+      int bidCount
+  ) {
+    if (isSilencedFor(cacheAdUnit)) {
+      return false;
+    }
+
+    return sendBidRequest(cacheAdUnit, contextData, bidCount);
   }
 
   @VisibleForTesting
@@ -271,28 +319,61 @@ public class BidManager implements ApplicationStoppedListener {
       return;
     }
 
-    synchronized (cacheLock) {
-      consumeCachedBidIfExpired(cacheAdUnit);
+    consumeCachedBidIfExpired(cacheAdUnit);
 
-      if (isSilencedFor(cacheAdUnit)) {
-        consumeCachedBid(cacheAdUnit, bidListener);
-      } else {
-        liveBidRequestSender.sendLiveBidRequest(
-            cacheAdUnit,
-            contextData,
-            new LiveCdbCallListener(
-                bidListener,
-                bidLifecycleListener,
-                this,
-                cacheAdUnit,
-                consentData
-            )
-        );
-      }
+    if (isSilencedFor(cacheAdUnit)) {
+      consumeCachedBid(cacheAdUnit, bidListener);
+    } else if (hasUsableCachedBid(cacheAdUnit)
+        && liveBidRequestSender.isLiveBidExpectedToExceedTimeBudget()) {
+      // The live bid would arrive too late anyway: serve the cached one now and only refill the cache
+      fetchForCache(cacheAdUnit, contextData);
+      consumeCachedBid(cacheAdUnit, bidListener);
+    } else {
+      liveBidRequestSender.sendLiveBidRequest(
+          cacheAdUnit,
+          contextData,
+          new LiveCdbCallListener(
+              bidListener,
+              bidLifecycleListener,
+              this,
+              cacheAdUnit,
+              consentData
+          )
+      );
+    }
 
-      metricSendingQueueConsumer.sendMetricBatch();
-      remoteLogSendingQueueConsumer.sendRemoteLogBatch();
+    metricSendingQueueConsumer.sendMetricBatch();
+    remoteLogSendingQueueConsumer.sendRemoteLogBatch();
+  }
+
+  /**
+   * Request the given number of bids for a single ad unit.
+   * <p>
+   * CDB is not asked for the same ad unit several times in a single call. Instead, bids are
+   * requested one call after the other, and the next call is only sent once the previous bid was
+   * cached and while the cache is not full.
+   */
+  /**
+   * @return <code>true</code> if a request was sent, <code>false</code> if it was not allowed or if
+   * a request for this ad unit is already pending
+   */
+  private boolean sendBidRequest(
+      @NonNull CacheAdUnit cacheAdUnit,
+      @NonNull ContextData contextData,
+      int bidCount
+  ) {
+    if (killSwitchEngaged()) {
+      return false;
     }
+
+    boolean isSent = bidRequestSender.sendBidRequest(
+        Collections.singletonList(cacheAdUnit),
+        contextData,
+        new CacheOnlyCdbCallListener(cacheAdUnit, contextData, bidCount - 1)
+    );
+    metricSendingQueueConsumer.sendMetricBatch();
+    remoteLogSendingQueueConsumer.sendRemoteLogBatch();
+    return isSent;
   }
 
   private void sendBidRequest(
@@ -306,32 +387,71 @@ public class BidManager implements ApplicationStoppedListener {
     bidRequestSender.sendBidRequest(
         prefetchCacheAdUnits,
         contextData,
-        new CacheOnlyCdbCallListener()
+        new CacheOnlyCdbCallListener(null, contextData, 0)
     );
     metricSendingQueueConsumer.sendMetricBatch();
     remoteLogSendingQueueConsumer.sendRemoteLogBatch();
   }
 
-  void setCacheAdUnits(@NonNull List<CdbResponseSlot> slots) {
-    synchronized (cacheLock) {
-      for (CdbResponseSlot slot : slots) {
-        CdbResponseSlot cachedSlot = cache.peekAdUnit(cache.detectCacheAdUnit(slot));
-        if (isBidCurrentlySilent(cachedSlot)) {
-          // Do not override silence bid that was concurrently cached.
-          continue;
-        }
+  /**
+   * @return <code>true</code> if at least one of the given slots was cached
+   */
+  boolean setCacheAdUnits(@NonNull List<CdbResponseSlot> slots) {
+    boolean isAnyCached = false;
+    for (CdbResponseSlot slot : slots) {
+      if (!slot.isValid()) {
+        continue;
+      }
 
-        if (slot.isValid()) {
-          boolean isImmediateBid = getCpm(slot) > 0 && slot.getTtlInSeconds() == 0;
-          if (isImmediateBid) {
-            slot.setTtlInSeconds(DEFAULT_TTL_IN_SECONDS);
-          }
+      boolean isImmediateBid = getCpm(slot) > 0 && slot.getTtlInSeconds() == 0;
+      if (isImmediateBid) {
+        slot.setTtlInSeconds(DEFAULT_TTL_IN_SECONDS);
+      }
 
-          cache.add(slot);
-          bidLifecycleListener.onBidCached(slot);
-        }
+      // Do not override silence bid that was concurrently cached.
+      if (cache.add(
+          slot,
+          this::isBidCurrentlySilent,
+          config.getBidCacheDepth(),
+          this::onBidDiscarded
+      )) {
+        bidLifecycleListener.onBidCached(slot);
+        bidExpiryWheel.schedule(slot);
+        isAnyCached = true;
       }
     }
+    return isAnyCached;
+  }
+
+  private void onBidRemoved(@NonNull CacheAdUnit cacheAdUnit, @NonNull CdbResponseSlot slot) {
+    forgetRemovedBid(slot);
+    bidLifecycleListener.onBidConsumed(cacheAdUnit, slot);
+  }
+
+  /**
+   * Only expired bids are notified as consumed. Bids evicted or replaced by a better one, and new
+   * bids that are not cached, never reach the user while they could have.
+   */
+  private void onBidDiscarded(@NonNull CacheAdUnit cacheAdUnit, @NonNull CdbResponseSlot slot) {
+    forgetRemovedBid(slot);
+    if (hasBidExpired(slot)) {
+      bidLifecycleListener.onBidConsumed(cacheAdUnit, slot);
+    } else {
+      bidLifecycleListener.onBidDiscarded(cacheAdUnit, slot);
+    }
+  }
+
+  /**
+   * Bids consumed or replaced in the cache do not need to be evicted when they expire.
+   * <p>
+   * The snapshot saved when the application was stopped is not up to date anymore: it is
+   * invalidated, else this bid would be restored and consumed again after a crash.
+   */
+  private void forgetRemovedBid(@NonNull CdbResponseSlot slot) {
+    if (isSnapshotSaved.compareAndSet(true, false)) {
+      bidCacheSnapshotStore.invalidateAsync();
+    }
+    bidExpiryWheel.cancel(slot);
   }
 
   @Nullable
@@ -365,9 +485,48 @@ public class BidManager implements ApplicationStoppedListener {
     return cdbTimeToNextCall.get() > clock.getCurrentTimeInMillis();
   }
 
+  /**
+   * CDB is failing: only cached bids are served until the {@link CircuitBreaker} lets a new call
+   * through.
+   */
+  private boolean isCdbSuspended() {
+    return !circuitBreaker.isCallPermitted(PubSdkApi.CDB_PATH);
+  }
+
   @Override
   public void onApplicationStopped() {
     bidRequestSender.cancelAllPendingTasks();
+    isSnapshotSaved.set(true);
+    bidCacheSnapshotStore.saveAsync(cache.getAllBids());
+    bidRefillScheduler.logStatistics();
+
+    // The application may be killed while in background, before pending batches are sent
+    metricSendingQueueConsumer.flushMetricBatch();
+    remoteLogSendingQueueConsumer.flushRemoteLogBatch();
+  }
+
+  /**
+   * Asynchronously put back in cache the bids saved when the application was last stopped.
+   * <p>
+   * Restored bids follow the same lifecycle as freshly downloaded ones. Ad units that already got
+   * new bids in the meantime are left untouched.
+   */
+  public void restoreCachedBids() {
+    if (killSwitchEngaged()) {
+      return;
+    }
+
+    bidCacheSnapshotStore.restoreAsync(slots -> {
+      List<CdbResponseSlot> slotsToRestore = new ArrayList<>(slots.size());
+      for (CdbResponseSlot slot : slots) {
+        CacheAdUnit cacheAdUnit = cache.detectCacheAdUnit(slot);
+        if (cacheAdUnit != null && cache.getBidCount(cacheAdUnit) == 0) {
+          slotsToRestore.add(slot);
+        }
+      }
+
+      setCacheAdUnits(slotsToRestore);
+    });
   }
 
   /**
@@ -377,6 +536,7 @@ public class BidManager implements ApplicationStoppedListener {
    */
   public void prefetch(@NonNull List<AdUnit> adUnits) {
     bidRequestSender.sendRemoteConfigRequest(config);
+    bidRefillScheduler.start(this::refillAhead);
 
     if (config.isPrefetchOnInitEnabled()) {
       List<List<CacheAdUnit>> requestedAdUnitsChunks = adUnitMapper.mapToChunks(adUnits);
@@ -400,8 +560,26 @@ public class BidManager implements ApplicationStoppedListener {
    */
   private class CacheOnlyCdbCallListener extends CdbCallListener {
 
-    public CacheOnlyCdbCallListener() {
+    /**
+     * Ad unit to request again, up to the given number of times, once this call succeeded.
+     */
+    @Nullable
+    private final CacheAdUnit cacheAdUnit;
+
+    @NonNull
+    private final ContextData contextData;
+
+    private final int remainingBidCount;
+
+    public CacheOnlyCdbCallListener(
+        @Nullable CacheAdUnit cacheAdUnit,
+        @NonNull ContextData contextData,
+        int remainingBidCount
+    ) {
       super(bidLifecycleListener, BidManager.this, consentData);
+      this.cacheAdUnit = cacheAdUnit;
+      this.contextData = contextData;
+      this.remainingBidCount = remainingBidCount;
     }
 
     @Override
@@ -409,8 +587,14 @@ public class BidManager implements ApplicationStoppedListener {
         @NonNull CdbRequest cdbRequest,
         @NonNull CdbResponse cdbResponse
     ) {
-      setCacheAdUnits(cdbResponse.getSlots());
+      boolean isCached = setCacheAdUnits(cdbResponse.getSlots());
       super.onCdbResponse(cdbRequest, cdbResponse);
+
+      if (isCached && cacheAdUnit != null && remainingBidCount > 0
+          && !isSilencedFor(cacheAdUnit)
+          && cache.getBidCount(cacheAdUnit) < config.getBidCacheDepth()) {
+        sendBidRequest(cacheAdUnit, contextData, remainingBidCount);
+      }
     }
 
     @Override
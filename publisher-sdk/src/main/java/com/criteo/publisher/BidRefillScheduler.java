@@ -0,0 +1,370 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.criteo.publisher.bid.BidLifecycleListener;
+import com.criteo.publisher.cache.SdkCache;
+import com.criteo.publisher.context.ContextData;
+import com.criteo.publisher.logging.Logger;
+import com.criteo.publisher.logging.LoggerFactory;
+import com.criteo.publisher.model.CacheAdUnit;
+import com.criteo.publisher.model.CdbRequest;
+import com.criteo.publisher.model.CdbResponse;
+import com.criteo.publisher.model.CdbResponseSlot;
+import com.criteo.publisher.model.Config;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Refill the bid cache ahead of the expected demand, instead of only after a consumption.
+ * <p>
+ * For each ad unit, the consumption rate is tracked as an exponentially weighted moving average.
+ * Periodically, the number of cached bids that are still valid over the next
+ * {@link #LOOK_AHEAD_IN_MILLIS} is compared to the expected number of consumptions over the same
+ * period, and missing bids are requested. Bids about to expire are then replaced before they are
+ * needed, while rarely used ad units are never refilled proactively.
+ * <p>
+ * The number of proactive requests is bounded by a global budget. The silence (global or specific
+ * to an ad unit) is enforced by the {@link RefillHandler}.
+ * <p>
+ * This scheduler is also a {@link BidLifecycleListener} to count the bids that expired unused.
+ */
+public class BidRefillScheduler implements BidLifecycleListener {
+
+  @VisibleForTesting
+  static final long EVALUATION_PERIOD_IN_MILLIS = 5_000;
+
+  @VisibleForTesting
+  static final long LOOK_AHEAD_IN_MILLIS = 30_000;
+
+  @VisibleForTesting
+  static final long IDLE_TIMEOUT_IN_MILLIS = 10 * 60 * 1000;
+
+  @VisibleForTesting
+  static final double MIN_EXPECTED_DEMAND = 0.5;
+
+  @VisibleForTesting
+  static final int MAX_REFILL_REQUESTS_PER_MINUTE = 12;
+
+  private static final double SMOOTHING_FACTOR = 0.3;
+
+  @NonNull
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  @NonNull
+  private final SdkCache cache;
+
+  @NonNull
+  private final Config config;
+
+  @NonNull
+  private final Clock clock;
+
+  @NonNull
+  private final ScheduledExecutorService scheduledExecutorService;
+
+  @NonNull
+  private final ConcurrentMap<CacheAdUnit, ConsumptionRate> rates = new ConcurrentHashMap<>();
+
+  private final AtomicBoolean isEvaluating = new AtomicBoolean(false);
+
+  private final AtomicLong hitCount = new AtomicLong(0);
+  private final AtomicLong missCount = new AtomicLong(0);
+  private final AtomicLong wastedBidCount = new AtomicLong(0);
+  private final AtomicLong refillRequestCount = new AtomicLong(0);
+
+  @Nullable
+  private volatile RefillHandler refillHandler;
+
+  // Only accessed while evaluating, that is synchronized
+  private long budgetWindowStart = -1;
+  private int budgetWindowRequestCount = 0;
+
+  public BidRefillScheduler(
+      @NonNull SdkCache cache,
+      @NonNull Config config,
+      @NonNull Clock clock,
+      @NonNull ScheduledExecutorService scheduledExecutorService
+  ) {
+    this.cache = cache;
+    this.config = config;
+    this.clock = clock;
+    this.scheduledExecutorService = scheduledExecutorService;
+  }
+
+  /**
+   * Indicate where refill requests should be sent. Nothing is refilled before this is called.
+   */
+  public void start(@NonNull RefillHandler refillHandler) {
+    this.refillHandler = refillHandler;
+  }
+
+  /**
+   * Record a request of bid on the given ad unit, that was served from the cache or not.
+   * <p>
+   * The context of the last request is kept, so the bids refilled for this ad unit target the same
+   * context.
+   */
+  public void onBidRequested(
+      @NonNull CacheAdUnit cacheAdUnit,
+      @NonNull ContextData contextData,
+      boolean isHit
+  ) {
+    if (isHit) {
+      hitCount.incrementAndGet();
+    } else {
+      missCount.incrementAndGet();
+    }
+
+    if (!config.isPredictiveRefillEnabled()) {
+      return;
+    }
+
+    ConsumptionRate rate = rates.get(cacheAdUnit);
+    if (rate == null) {
+      ConsumptionRate newRate = new ConsumptionRate();
+      rate = rates.putIfAbsent(cacheAdUnit, newRate);
+      if (rate == null) {
+        rate = newRate;
+      }
+    }
+
+    rate.onRequest(clock.getCurrentTimeInMillis(), contextData);
+    startEvaluatingIfNeeded();
+  }
+
+  /**
+   * Request the missing bids of the tracked ad units, within the global budget.
+   */
+  @VisibleForTesting
+  synchronized void evaluate() {
+    RefillHandler handler = refillHandler;
+    if (handler == null || !config.isPredictiveRefillEnabled()) {
+      return;
+    }
+
+    long now = clock.getCurrentTimeInMillis();
+    if (budgetWindowStart < 0 || now - budgetWindowStart >= TimeUnit.MINUTES.toMillis(1)) {
+      budgetWindowStart = now;
+      budgetWindowRequestCount = 0;
+    }
+
+    Iterator<Map.Entry<CacheAdUnit, ConsumptionRate>> iterator = rates.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<CacheAdUnit, ConsumptionRate> entry = iterator.next();
+      CacheAdUnit cacheAdUnit = entry.getKey();
+      ConsumptionRate rate = entry.getValue();
+
+      if (rate.isIdle(now)) {
+        iterator.remove();
+        continue;
+      }
+
+      int missingBids = getMissingBidCount(cacheAdUnit, rate.getRatePerMillis(now), now);
+      if (missingBids <= 0 || budgetWindowRequestCount >= MAX_REFILL_REQUESTS_PER_MINUTE) {
+        continue;
+      }
+
+      if (handler.refill(cacheAdUnit, rate.getLastContextData(), missingBids)) {
+        budgetWindowRequestCount++;
+        refillRequestCount.incrementAndGet();
+      }
+    }
+  }
+
+  private int getMissingBidCount(@NonNull CacheAdUnit cacheAdUnit, double ratePerMillis, long now) {
+    double expectedDemand = ratePerMillis * LOOK_AHEAD_IN_MILLIS;
+    if (expectedDemand < MIN_EXPECTED_DEMAND) {
+      return 0;
+    }
+
+    // Bids expiring before the end of the look ahead period are considered as already missing
+    int validBids = 0;
+    for (CdbResponseSlot slot : cache.getBids(cacheAdUnit)) {
+      long expiryTime = slot.getTimeOfDownload() + slot.getTtlInSeconds() * 1000L;
+      if (expiryTime > now + LOOK_AHEAD_IN_MILLIS) {
+        validBids++;
+      }
+    }
+
+    int targetBids = Math.min(config.getBidCacheDepth(), (int) Math.ceil(expectedDemand));
+    return targetBids - validBids;
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Ratio of bid requests served from the cache, or <code>0</code> if there was no request.
+   */
+  public double getHitRate() {
+    long hits = hitCount.get();
+    long total = hits + missCount.get();
+    return total == 0 ? 0.0 : (double) hits / total;
+  }
+
+  /**
+   * Number of bids (other than silent ones) that were removed from the cache because they expired.
+   */
+  public long getWastedBidCount() {
+    return wastedBidCount.get();
+  }
+
+  public long getRefillRequestCount() {
+    return refillRequestCount.get();
+  }
+
+  void logStatistics() {
+    logger.log(BiddingLogMessage.onBidCacheStatistics(
+        getHitRate(),
+        getHitCount(),
+        getMissCount(),
+        getWastedBidCount(),
+        getRefillRequestCount()
+    ));
+  }
+
+  private void startEvaluatingIfNeeded() {
+    if (!rates.isEmpty() && isEvaluating.compareAndSet(false, true)) {
+      scheduledExecutorService.schedule(
+          new EvaluationTask(),
+          EVALUATION_PERIOD_IN_MILLIS,
+          TimeUnit.MILLISECONDS
+      );
+    }
+  }
+
+  @Override
+  public void onSdkInitialized() {
+    // not used
+  }
+
+  @Override
+  public void onCdbCallStarted(@NonNull CdbRequest request) {
+    // not used
+  }
+
+  @Override
+  public void onCdbCallFinished(@NonNull CdbRequest request, @NonNull CdbResponse response) {
+    // not used
+  }
+
+  @Override
+  public void onCdbCallFailed(@NonNull CdbRequest request, @NonNull Exception exception) {
+    // not used
+  }
+
+  @Override
+  public void onBidConsumed(@NonNull CacheAdUnit adUnit, @NonNull CdbResponseSlot consumedBid) {
+    Double cpm = consumedBid.getCpmAsNumber();
+    boolean isSilent = cpm == null || cpm == 0.0;
+    if (!isSilent && consumedBid.isExpired(clock)) {
+      wastedBidCount.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void onBidDiscarded(@NonNull CacheAdUnit adUnit, @NonNull CdbResponseSlot discardedBid) {
+    // not used
+  }
+
+  @Override
+  public void onBidCached(@NonNull CdbResponseSlot cachedBid) {
+    // not used
+  }
+
+  public interface RefillHandler {
+
+    /**
+     * Request new bids for the given ad unit.
+     *
+     * @param contextData context of the last request of bid on this ad unit
+     * @return <code>true</code> if a request was sent, <code>false</code> if it was not allowed or
+     * if a request for this ad unit is already pending
+     */
+    boolean refill(@NonNull CacheAdUnit cacheAdUnit, @NonNull ContextData contextData, int bidCount);
+  }
+
+  private class EvaluationTask extends SafeRunnable {
+
+    @Override
+    public void runSafely() {
+      try {
+        evaluate();
+      } finally {
+        isEvaluating.set(false);
+        startEvaluatingIfNeeded();
+      }
+    }
+  }
+
+  /**
+   * Exponentially weighted moving average of the consumption rate of a single ad unit.
+   */
+  private static class ConsumptionRate {
+
+    private double ratePerMillis = 0.0;
+    private long lastRequestTime = -1;
+
+    @NonNull
+    private ContextData lastContextData = new ContextData();
+
+    synchronized void onRequest(long now, @NonNull ContextData contextData) {
+      lastContextData = contextData;
+      if (lastRequestTime >= 0) {
+        double instantRate = 1.0 / Math.max(1, now - lastRequestTime);
+        ratePerMillis = SMOOTHING_FACTOR * instantRate + (1 - SMOOTHING_FACTOR) * ratePerMillis;
+      }
+      lastRequestTime = now;
+    }
+
+    /**
+     * The rate is capped by the time since the last request, so it decreases when an ad unit stops
+     * being requested.
+     */
+    synchronized double getRatePerMillis(long now) {
+      long elapsed = now - lastRequestTime;
+      if (elapsed <= 0) {
+        return ratePerMillis;
+      }
+      return Math.min(ratePerMillis, 1.0 / elapsed);
+    }
+
+    @NonNull
+    synchronized ContextData getLastContextData() {
+      return lastContextData;
+    }
+
+    synchronized boolean isIdle(long now) {
+      return now - lastRequestTime > IDLE_TIMEOUT_IN_MILLIS;
+    }
+  }
+}
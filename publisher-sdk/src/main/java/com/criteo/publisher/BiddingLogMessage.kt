@@ -34,6 +34,18 @@ internal object BiddingLogMessage {
     "Silent mode is enabled, no requests will be fired for the next $seconds seconds"
   )
 
+  @JvmStatic
+  fun onBidCacheStatistics(
+      hitRate: Double,
+      hitCount: Long,
+      missCount: Long,
+      wastedBidCount: Long,
+      refillRequestCount: Long
+  ) = LogMessage(message =
+    "Bid cache statistics: hitRate=$hitRate, hits=$hitCount, misses=$missCount, " +
+        "wastedBids=$wastedBidCount, refillRequests=$refillRequestCount"
+  )
+
   @JvmStatic
   fun onInvalidAdUnit(adUnit: CacheAdUnit) = LogMessage(
       level = Log.WARN,
@@ -94,6 +94,13 @@ public abstract class Criteo {
       return this;
     }
 
+    /**
+     * Initialize the SDK.
+     * <p>
+     * Only the registration to the application lifecycle is done on the calling thread. The rest of
+     * the init, including the storage of the privacy settings given to this builder, continues in
+     * background after this method returns.
+     */
     public Criteo init() throws CriteoInitException {
       return Criteo.init(this);
     }
@@ -162,12 +169,21 @@ public abstract class Criteo {
 
   public abstract void enrichAdObjectWithBid(Object object, @Nullable Bid bid);
 
+  /**
+   * Bids requested while the SDK is initializing are only requested once the privacy settings given
+   * at init are stored.
+   */
   abstract void getBidForAdUnit(
       @Nullable AdUnit adUnit,
       @NonNull ContextData contextData,
       @NonNull BidListener bidListener
   );
 
+  /**
+   * Load a bid for the given ad unit, without any context.
+   *
+   * @see #loadBid(AdUnit, ContextData, BidResponseListener)
+   */
   public void loadBid(
       @NonNull AdUnit adUnit,
       @NonNull BidResponseListener bidResponseListener
@@ -175,6 +191,13 @@ public abstract class Criteo {
     loadBid(adUnit, new ContextData(), bidResponseListener);
   }
 
+  /**
+   * Load a bid for the given ad unit and context, and give it to the listener on the UI thread.
+   * <p>
+   * If the SDK is still initializing, the bid is only loaded once the privacy settings given at
+   * init are stored. So the listener may be answered after bids requested later, once the init is
+   * done.
+   */
   public abstract void loadBid(
       @NonNull AdUnit adUnit,
       @NonNull ContextData contextData,
@@ -207,8 +230,20 @@ public abstract class Criteo {
   @NonNull
   public abstract CriteoBannerEventController createBannerController(@NonNull CriteoBannerView bannerView);
 
+  /**
+   * Store the US privacy opt-out of the user.
+   * <p>
+   * If the SDK is still initializing, the value is stored once the one given at init is, so it is
+   * never overridden by it.
+   */
   public abstract void setUsPrivacyOptOut(boolean usPrivacyOptOut);
 
+  /**
+   * Store the MoPub consent of the user.
+   * <p>
+   * If the SDK is still initializing, the value is stored once the one given at init is, so it is
+   * never overridden by it.
+   */
   public abstract void setMopubConsent(@Nullable String mopubConsent);
 
   public abstract void setUserData(@NonNull UserData userData);
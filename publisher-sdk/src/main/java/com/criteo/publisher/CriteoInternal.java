@@ -17,14 +17,16 @@
 package com.criteo.publisher;
 
 import static com.criteo.publisher.ErrorLogMessage.onUncaughtErrorAtPublicApi;
+import static com.criteo.publisher.SdkInitLogMessage.onSdkStartupTraced;
 
 import android.app.Application;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.criteo.publisher.bid.BidLifecycleListener;
+import com.criteo.publisher.concurrent.PrioritizedRunnable;
+import com.criteo.publisher.concurrent.TaskPriority;
 import com.criteo.publisher.context.ContextData;
 import com.criteo.publisher.context.UserData;
-import com.criteo.publisher.headerbidding.HeaderBidding;
 import com.criteo.publisher.interstitial.InterstitialActivityHelper;
 import com.criteo.publisher.logging.Logger;
 import com.criteo.publisher.logging.LoggerFactory;
@@ -32,6 +34,7 @@ import com.criteo.publisher.model.AdUnit;
 import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.DeviceInfo;
 import com.criteo.publisher.privacy.UserPrivacyUtil;
+import com.criteo.publisher.util.CompletableFuture;
 import java.util.List;
 import java.util.concurrent.Executor;
 
@@ -44,26 +47,29 @@ class CriteoInternal extends Criteo {
   private final DependencyProvider dependencyProvider;
 
   @NonNull
-  private final BidManager bidManager;
-
-  @NonNull
-  private final DeviceInfo deviceInfo;
-
-  @NonNull
-  private final Config config;
-
-  @NonNull
-  private final UserPrivacyUtil userPrivacyUtil;
-
-  @NonNull
-  private final ConsumableBidLoader consumableBidLoader;
-
-  @NonNull
-  private final HeaderBidding headerBidding;
+  private final StartupTrace startupTrace;
 
+  /**
+   * Completed once the privacy settings given at init are stored. Bids are only requested after it,
+   * so they never miss those settings.
+   */
   @NonNull
-  private final InterstitialActivityHelper interstitialActivityHelper;
+  private final CompletableFuture<Void> initialPrivacyStored = new CompletableFuture<>();
 
+  /**
+   * Only what needs the calling thread, usually the main thread, is done in this constructor: the
+   * lifecycle callbacks are registered, so no activity event is missed. All the other init stages,
+   * that may read the disk or wait for other services, are run on workers and recorded in the
+   * {@link StartupTrace}:
+   * <ul>
+   *   <li>the dependency graph is built first,</li>
+   *   <li>then the user agent, the advertising ID and the CSM recovery are warmed up in
+   *   parallel,</li>
+   *   <li>the persisted config is loaded, then the privacy settings are stored, and the cached bids
+   *   restored,</li>
+   *   <li>ad units are prefetched once both the config and the CSM are ready.</li>
+   * </ul>
+   */
   CriteoInternal(
       Application application,
       @NonNull List<AdUnit> adUnits,
@@ -73,51 +79,131 @@ class CriteoInternal extends Criteo {
   ) {
     this.dependencyProvider = dependencyProvider;
 
-    dependencyProvider.provideSession();
-
-    deviceInfo = dependencyProvider.provideDeviceInfo();
-    deviceInfo.initialize();
-
-    dependencyProvider.provideAdvertisingInfo().prefetchAsync();
-
-    config = dependencyProvider.provideConfig();
-
-    bidManager = dependencyProvider.provideBidManager();
-    consumableBidLoader = dependencyProvider.provideConsumableBidLoader();
-    headerBidding = dependencyProvider.provideHeaderBidding();
+    startupTrace = dependencyProvider.provideStartupTrace();
 
-    interstitialActivityHelper = dependencyProvider.provideInterstitialActivityHelper();
+    StartupTrace.Span lifecycleSpan = startupTrace.begin("lifecycle");
+    application.registerActivityLifecycleCallbacks(dependencyProvider.provideAppLifecycleUtil());
+    dependencyProvider.provideTopActivityFinder().registerActivityLifecycleFor(application);
+    lifecycleSpan.end();
 
-    userPrivacyUtil = dependencyProvider.provideUserPrivacyUtil();
-    if (usPrivacyOptout != null) {
-      userPrivacyUtil.storeUsPrivacyOptout(usPrivacyOptout);
-    }
+    executeStage("dependencies", new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        try {
+          buildDependencies();
+        } finally {
+          warmUpAsync(adUnits, usPrivacyOptout, mopubConsent);
+        }
+      }
+    });
+  }
 
-    // this null check ensures that instantiating Criteo object with null mopub consent value,
-    // doesn't erase the previously stored consent value
-    if (mopubConsent != null) {
-      userPrivacyUtil.storeMopubConsent(mopubConsent);
-    }
+  /**
+   * Creates the dependencies used by the next init stages and by the public API, so that none of
+   * them pays for it later.
+   */
+  private void buildDependencies() {
+    dependencyProvider.provideSession();
+    dependencyProvider.provideDeviceInfo();
+    dependencyProvider.provideConfig();
+    dependencyProvider.provideBidManager();
+    dependencyProvider.provideConsumableBidLoader();
+    dependencyProvider.provideHeaderBidding();
+    dependencyProvider.provideInterstitialActivityHelper();
+    dependencyProvider.provideUserPrivacyUtil();
+  }
 
-    application.registerActivityLifecycleCallbacks(dependencyProvider.provideAppLifecycleUtil());
+  private void warmUpAsync(
+      @NonNull List<AdUnit> adUnits,
+      @Nullable Boolean usPrivacyOptout,
+      @Nullable String mopubConsent
+  ) {
+    CompletableFuture<Void> csmRecovered = new CompletableFuture<>();
 
-    dependencyProvider.provideTopActivityFinder().registerActivityLifecycleFor(application);
+    executeStage("user-agent", new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        dependencyProvider.provideDeviceInfo().initialize();
+      }
+    });
 
-    BidLifecycleListener bidLifecycleListener = dependencyProvider.provideBidLifecycleListener();
-    bidLifecycleListener.onSdkInitialized();
+    executeStage("advertising-id", new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        dependencyProvider.provideAdvertisingInfo().refreshOncePerProcess();
+      }
+    });
 
-    prefetchAdUnits(dependencyProvider.provideRunOnUiThreadExecutor(), adUnits);
-  }
+    executeStage("csm-recovery", new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        try {
+          BidLifecycleListener bidLifecycleListener = dependencyProvider.provideBidLifecycleListener();
+          bidLifecycleListener.onSdkInitialized();
+        } finally {
+          csmRecovered.complete(null);
+        }
+      }
+    });
 
-  private void prefetchAdUnits(Executor executor, List<AdUnit> adUnits) {
-    executor.execute(new SafeRunnable() {
+    executeStage("config", new SafeRunnable() {
       @Override
       public void runSafely() {
-        bidManager.prefetch(adUnits);
+        try {
+          dependencyProvider.provideConfig().preload();
+        } finally {
+          startupTrace.traced("privacy", new SafeRunnable() {
+            @Override
+            public void runSafely() {
+              storeInitialPrivacy(usPrivacyOptout, mopubConsent);
+            }
+          }).run();
+        }
+
+        startupTrace.traced("cached-bids", new SafeRunnable() {
+          @Override
+          public void runSafely() {
+            dependencyProvider.provideConnectionPrewarmer().prewarmAsync();
+            dependencyProvider.provideBidManager().restoreCachedBids();
+          }
+        }).run();
+
+        csmRecovered.whenComplete(startupTrace.traced("prefetch", new SafeRunnable() {
+          @Override
+          public void runSafely() {
+            try {
+              dependencyProvider.provideBidManager().prefetch(adUnits);
+            } finally {
+              logger.log(onSdkStartupTraced(startupTrace.getStages()));
+            }
+          }
+        }));
       }
     });
   }
 
+  private void storeInitialPrivacy(@Nullable Boolean usPrivacyOptout, @Nullable String mopubConsent) {
+    try {
+      UserPrivacyUtil userPrivacyUtil = dependencyProvider.provideUserPrivacyUtil();
+      if (usPrivacyOptout != null) {
+        userPrivacyUtil.storeUsPrivacyOptout(usPrivacyOptout);
+      }
+
+      // this null check ensures that instantiating Criteo object with null mopub consent value,
+      // doesn't erase the previously stored consent value
+      if (mopubConsent != null) {
+        userPrivacyUtil.storeMopubConsent(mopubConsent);
+      }
+    } finally {
+      initialPrivacyStored.complete(null);
+    }
+  }
+
+  private void executeStage(@NonNull String name, @NonNull Runnable stage) {
+    Executor executor = dependencyProvider.provideThreadPoolExecutor();
+    executor.execute(new PrioritizedRunnable(TaskPriority.BID, startupTrace.traced(name, stage)));
+  }
+
   @Override
   public void enrichAdObjectWithBid(Object object, @Nullable Bid bid) {
     try {
@@ -128,7 +214,7 @@ class CriteoInternal extends Criteo {
   }
 
   private void doSetBidsForAdUnit(Object object, @Nullable Bid bid) {
-    headerBidding.enrichBid(object, bid);
+    dependencyProvider.provideHeaderBidding().enrichBid(object, bid);
   }
 
   /**
@@ -136,7 +222,12 @@ class CriteoInternal extends Criteo {
    */
   @Override
   void getBidForAdUnit(@Nullable AdUnit adUnit, @NonNull ContextData contextData, @NonNull BidListener bidListener) {
-    bidManager.getBidForAdUnit(adUnit, contextData, bidListener);
+    initialPrivacyStored.whenComplete(new Runnable() {
+      @Override
+      public void run() {
+        dependencyProvider.provideBidManager().getBidForAdUnit(adUnit, contextData, bidListener);
+      }
+    });
   }
 
   @Override
@@ -145,30 +236,36 @@ class CriteoInternal extends Criteo {
       @NonNull ContextData contextData,
       @NonNull BidResponseListener bidResponseListener
   ) {
-    try {
-      consumableBidLoader.loadBid(adUnit, contextData, bidResponseListener);
-    } catch (Throwable e) {
-      logger.log(onUncaughtErrorAtPublicApi(e));
-      bidResponseListener.onResponse(null);
-    }
+    initialPrivacyStored.whenComplete(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          dependencyProvider.provideConsumableBidLoader().loadBid(adUnit, contextData, bidResponseListener);
+        } catch (Throwable e) {
+          logger.log(onUncaughtErrorAtPublicApi(e));
+          // This may run on a worker once the init is done, while the listener expects the UI thread
+          dependencyProvider.provideRunOnUiThreadExecutor().executeAsync(() -> bidResponseListener.onResponse(null));
+        }
+      }
+    });
   }
 
   @NonNull
   @Override
   DeviceInfo getDeviceInfo() {
-    return deviceInfo;
+    return dependencyProvider.provideDeviceInfo();
   }
 
   @NonNull
   @Override
   Config getConfig() {
-    return config;
+    return dependencyProvider.provideConfig();
   }
 
   @NonNull
   @Override
   InterstitialActivityHelper getInterstitialActivityHelper() {
-    return interstitialActivityHelper;
+    return dependencyProvider.provideInterstitialActivityHelper();
   }
 
   @NonNull
@@ -184,12 +281,23 @@ class CriteoInternal extends Criteo {
 
   @Override
   public void setUsPrivacyOptOut(boolean usPrivacyOptOut) {
-    userPrivacyUtil.storeUsPrivacyOptout(usPrivacyOptOut);
+    // Stored after the value given at init, so this one is never overridden by it
+    initialPrivacyStored.whenComplete(new Runnable() {
+      @Override
+      public void run() {
+        dependencyProvider.provideUserPrivacyUtil().storeUsPrivacyOptout(usPrivacyOptOut);
+      }
+    });
   }
 
   @Override
   public void setMopubConsent(@Nullable String mopubConsent) {
-    userPrivacyUtil.storeMopubConsent(mopubConsent);
+    initialPrivacyStored.whenComplete(new Runnable() {
+      @Override
+      public void run() {
+        dependencyProvider.provideUserPrivacyUtil().storeMopubConsent(mopubConsent);
+      }
+    });
   }
 
   @Override
@@ -42,9 +42,12 @@ import com.criteo.publisher.bid.BidLifecycleListener;
 import com.criteo.publisher.bid.CompositeBidLifecycleListener;
 import com.criteo.publisher.bid.LoggingBidLifecycleListener;
 import com.criteo.publisher.bid.UniqueIdGenerator;
+import com.criteo.publisher.cache.BidCacheSnapshotStore;
+import com.criteo.publisher.cache.BidExpiryWheel;
 import com.criteo.publisher.cache.SdkCache;
 import com.criteo.publisher.concurrent.AsyncResources;
 import com.criteo.publisher.concurrent.NoOpAsyncResources;
+import com.criteo.publisher.concurrent.PriorityExecutor;
 import com.criteo.publisher.concurrent.RunOnUiThreadExecutor;
 import com.criteo.publisher.concurrent.ThreadPoolExecutorFactory;
 import com.criteo.publisher.context.ConnectionTypeFetcher;
@@ -82,12 +85,21 @@ import com.criteo.publisher.logging.RemoteLogSendingQueueConfiguration;
 import com.criteo.publisher.logging.RemoteLogSendingQueueConsumer;
 import com.criteo.publisher.model.AdUnitMapper;
 import com.criteo.publisher.model.CdbRequestFactory;
+import com.criteo.publisher.model.CdbResponse;
 import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.DeviceInfo;
 import com.criteo.publisher.model.RemoteConfigRequestFactory;
 import com.criteo.publisher.network.BidRequestSender;
+import com.criteo.publisher.network.CdbLatencyEstimator;
+import com.criteo.publisher.network.CircuitBreaker;
+import com.criteo.publisher.network.ConnectionPrewarmer;
+import com.criteo.publisher.network.HttpTransport;
 import com.criteo.publisher.network.LiveBidRequestSender;
+import com.criteo.publisher.network.NetworkMetrics;
+import com.criteo.publisher.network.OkHttpTransport;
 import com.criteo.publisher.network.PubSdkApi;
+import com.criteo.publisher.network.SwitchingHttpTransport;
+import com.criteo.publisher.network.UrlConnectionHttpTransport;
 import com.criteo.publisher.privacy.ConsentData;
 import com.criteo.publisher.privacy.UserPrivacyUtil;
 import com.criteo.publisher.privacy.gdpr.GdprDataFetcher;
@@ -108,11 +120,12 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.squareup.picasso.Picasso;
 import java.util.Arrays;
+import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import kotlin.jvm.functions.Function0;
 
 /**
@@ -198,16 +211,79 @@ public class DependencyProvider {
   public PubSdkApi providePubSdkApi() {
     return getOrCreate(PubSdkApi.class, () -> new PubSdkApi(
         provideBuildConfigWrapper(),
-        provideJsonSerializer()
+        provideJsonSerializer(),
+        provideConfig(),
+        provideHttpTransport(),
+        provideCircuitBreaker(),
+        provideNetworkMetrics(),
+        provideContextProvider()
+    ));
+  }
+
+  @NonNull
+  public ConnectionPrewarmer provideConnectionPrewarmer() {
+    return getOrCreate(ConnectionPrewarmer.class, () -> new ConnectionPrewarmer(
+        provideBuildConfigWrapper(),
+        provideHttpTransport(),
+        provideConfig(),
+        provideNetworkMetrics(),
+        provideThreadPoolExecutor()
+    ));
+  }
+
+  @NonNull
+  public CircuitBreaker provideCircuitBreaker() {
+    return getOrCreate(CircuitBreaker.class, () -> new CircuitBreaker(
+        provideClock(),
+        provideConfig(),
+        new Random()
+    ));
+  }
+
+  @NonNull
+  public NetworkMetrics provideNetworkMetrics() {
+    return getOrCreate(NetworkMetrics.class, () -> new NetworkMetrics(
+        provideClock()
+    ));
+  }
+
+  @NonNull
+  public StartupTrace provideStartupTrace() {
+    return getOrCreate(StartupTrace.class, () -> new StartupTrace(
+        provideClock()
     ));
   }
 
+  @NonNull
+  public HttpTransport provideHttpTransport() {
+    return getOrCreate(HttpTransport.class, () -> new SwitchingHttpTransport(
+        provideConfig(),
+        new UrlConnectionHttpTransport(),
+        new LazyDependency<>("OkHttpTransport", this::createOkHttpTransportIfSupported)
+    ));
+  }
+
+  @Nullable
+  private HttpTransport createOkHttpTransportIfSupported() {
+    try {
+      if (OkHttpTransport.isSupported()) {
+        return new OkHttpTransport();
+      }
+    } catch (LinkageError e) {
+      // OkHttp version of the application is not compatible, fallback on the platform connection
+    }
+    return null;
+  }
+
   @NonNull
   public AdvertisingInfo provideAdvertisingInfo() {
     return getOrCreate(AdvertisingInfo.class, () -> new AdvertisingInfo(
         provideContext(),
         provideThreadPoolExecutor(),
-        provideSafeAdvertisingIdClient()
+        provideSafeAdvertisingIdClient(),
+        provideSharedPreferencesFactory().getInternal(),
+        provideClock(),
+        provideBuildConfigWrapper()
     ));
   }
 
@@ -233,12 +309,24 @@ public class DependencyProvider {
 
   @NonNull
   public Executor provideThreadPoolExecutor() {
-    return getOrCreate(Executor.class, new ThreadPoolExecutorFactory());
+    return getOrCreate(Executor.class, this::providePriorityExecutor);
+  }
+
+  @NonNull
+  public PriorityExecutor providePriorityExecutor() {
+    return getOrCreate(PriorityExecutor.class, new ThreadPoolExecutorFactory(provideClock()));
   }
 
   @NonNull
   public ScheduledExecutorService provideScheduledExecutorService() {
-    return getOrCreate(ScheduledExecutorService.class, Executors::newSingleThreadScheduledExecutor);
+    return getOrCreate(ScheduledExecutorService.class, () -> {
+      ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+      if (android.os.Build.VERSION.SDK_INT >= VERSION_CODES.LOLLIPOP) {
+        // Cancelled timers, such as the live bidding time budgets, are dropped instead of waiting for their deadline
+        executor.setRemoveOnCancelPolicy(true);
+      }
+      return executor;
+    });
   }
 
   @NonNull
@@ -280,7 +368,11 @@ public class DependencyProvider {
         provideBidLifecycleListener(),
         provideMetricSendingQueueConsumer(),
         provideRemoteLogSendingQueueConsumer(),
-        provideConsentData()
+        provideConsentData(),
+        provideBidExpiryWheel(),
+        provideBidCacheSnapshotStore(),
+        provideBidRefillScheduler(),
+        provideCircuitBreaker()
     ));
   }
 
@@ -291,11 +383,43 @@ public class DependencyProvider {
     ));
   }
 
+  @NonNull
+  public BidRefillScheduler provideBidRefillScheduler() {
+    return getOrCreate(BidRefillScheduler.class, () -> new BidRefillScheduler(
+        provideSdkCache(),
+        provideConfig(),
+        provideClock(),
+        provideScheduledExecutorService()
+    ));
+  }
+
+  @NonNull
+  public BidCacheSnapshotStore provideBidCacheSnapshotStore() {
+    return getOrCreate(BidCacheSnapshotStore.class, () -> new BidCacheSnapshotStore(
+        provideContext(),
+        provideJsonSerializer(),
+        provideClock(),
+        provideUserPrivacyUtil(),
+        provideThreadPoolExecutor()
+    ));
+  }
+
+  @NonNull
+  public BidExpiryWheel provideBidExpiryWheel() {
+    return getOrCreate(BidExpiryWheel.class, () -> new BidExpiryWheel(
+        provideSdkCache(),
+        provideClock(),
+        provideScheduledExecutorService(),
+        provideBidLifecycleListener()
+    ));
+  }
+
   @NonNull
   public DeviceInfo provideDeviceInfo() {
     return getOrCreate(DeviceInfo.class, () -> new DeviceInfo(
         provideContext(),
-        provideRunOnUiThreadExecutor()
+        provideRunOnUiThreadExecutor(),
+        provideSharedPreferencesFactory().getInternal()
     ));
   }
 
@@ -323,8 +447,8 @@ public class DependencyProvider {
   @NonNull
   public AppLifecycleUtil provideAppLifecycleUtil() {
     return getOrCreate(AppLifecycleUtil.class, () -> new AppLifecycleUtil(
-        provideAppEvents(),
-        provideBidManager()
+        new LazyDependency<>("AppEvents", this::provideAppEvents),
+        new LazyDependency<>("BidManager", this::provideBidManager)
     ));
   }
 
@@ -374,7 +498,9 @@ public class DependencyProvider {
         provideRemoteConfigRequestFactory(),
         provideClock(),
         providePubSdkApi(),
-        provideThreadPoolExecutor()
+        provideThreadPoolExecutor(),
+        provideScheduledExecutorService(),
+        provideConfig()
     ));
   }
 
@@ -386,7 +512,17 @@ public class DependencyProvider {
         provideClock(),
         provideThreadPoolExecutor(),
         provideScheduledExecutorService(),
-        provideConfig()
+        provideConfig(),
+        provideCdbLatencyEstimator()
+    ));
+  }
+
+  @NonNull
+  public CdbLatencyEstimator provideCdbLatencyEstimator() {
+    return getOrCreate(CdbLatencyEstimator.class, () -> new CdbLatencyEstimator(
+        provideClock(),
+        provideContextProvider(),
+        provideBuildConfigWrapper()
     ));
   }
 
@@ -395,6 +531,8 @@ public class DependencyProvider {
     return getOrCreate(BidLifecycleListener.class, () -> {
       CompositeBidLifecycleListener listener = new CompositeBidLifecycleListener();
       listener.add(new LoggingBidLifecycleListener(provideRemoteLogSendingQueueConsumer()));
+      listener.add(provideBidRefillScheduler());
+      listener.add(provideCdbLatencyEstimator());
 
       if (android.os.Build.VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN_MR1) {
         listener.add(new CsmBidLifecycleListener(
@@ -529,7 +667,7 @@ public class DependencyProvider {
     return getOrCreate(HeaderBidding.class, () -> new HeaderBidding(
         asList(
             new MoPubHeaderBidding(),
-            new DfpHeaderBidding(provideAndroidUtil(), provideDeviceUtil()),
+            new DfpHeaderBidding(provideDeviceUtil()),
             new OtherAdServersHeaderBidding()
         ),
         provideIntegrationRegistry()
@@ -558,7 +696,8 @@ public class DependencyProvider {
         providePubSdkApi(),
         provideBuildConfigWrapper(),
         provideConfig(),
-        provideThreadPoolExecutor()
+        provideThreadPoolExecutor(),
+        provideScheduledExecutorService()
     ));
   }
 
@@ -623,6 +762,7 @@ public class DependencyProvider {
   public Gson provideGson() {
     return getOrCreate(Gson.class, () -> new GsonBuilder()
         .registerTypeAdapterFactory(CustomAdapterFactory.create())
+        .registerTypeAdapterFactory(CdbResponse.typeAdapterFactory())
         .create());
   }
 
@@ -721,7 +861,8 @@ public class DependencyProvider {
         providePubSdkApi(),
         provideBuildConfigWrapper(),
         provideAdvertisingInfo(),
-        provideThreadPoolExecutor()
+        provideThreadPoolExecutor(),
+        provideScheduledExecutorService()
     ));
   }
 
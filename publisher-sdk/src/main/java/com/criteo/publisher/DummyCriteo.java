@@ -28,7 +28,7 @@ import com.criteo.publisher.model.AdUnit;
 import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.DeviceInfo;
 import com.criteo.publisher.tasks.InterstitialListenerNotifier;
-import java.util.concurrent.Future;
+import com.criteo.publisher.util.CompletableFuture;
 
 public class DummyCriteo extends Criteo {
 
@@ -102,12 +102,12 @@ public class DummyCriteo extends Criteo {
   private static class DummyDeviceInfo extends DeviceInfo {
 
     private DummyDeviceInfo() {
-      super(null, new RunOnUiThreadExecutor());
+      super(null, new RunOnUiThreadExecutor(), null);
     }
 
     @NonNull
     @Override
-    public Future<String> getUserAgent() {
+    public CompletableFuture<String> getUserAgent() {
       return completedFuture("");
     }
 
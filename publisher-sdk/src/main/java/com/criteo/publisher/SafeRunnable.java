@@ -22,6 +22,7 @@ import static com.criteo.publisher.ErrorLogMessage.onUncaughtExpectedExceptionIn
 import androidx.annotation.NonNull;
 import com.criteo.publisher.logging.Logger;
 import com.criteo.publisher.logging.LoggerFactory;
+import com.criteo.publisher.network.CircuitBreakerOpenException;
 import com.criteo.publisher.util.PreconditionsUtil;
 import java.net.ProtocolException;
 import java.net.SocketException;
@@ -75,6 +76,7 @@ public abstract class SafeRunnable implements Runnable {
         || throwable instanceof SSLException // when there is a connection issue during SSL handshake
         || throwable instanceof ProtocolException // when there is an issue at protocol level (TCP)
         || throwable instanceof SocketTimeoutException // when there is a timeout during connection
+        || throwable instanceof CircuitBreakerOpenException // when an endpoint is failing, calls are suspended
         ;
   }
 }
\ No newline at end of file
@@ -37,6 +37,12 @@ internal object SdkInitLogMessage {
 ${adUnits.joinToString("\n") { "- $it" }}"""
   )
 
+  @JvmStatic
+  fun onSdkStartupTraced(stages: List<StartupTrace.Stage>) = LogMessage(level = Log.DEBUG, message =
+    """Criteo SDK initialization stages:
+${stages.joinToString("\n") { "- $it" }}"""
+  )
+
   @JvmStatic
   fun onSdkInitializedMoreThanOnce() = LogMessage(message =
     "Criteo SDK initialization method cannot be called more than once. " +
@@ -0,0 +1,91 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher
+
+import com.criteo.publisher.annotation.OpenForTesting
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Timings of the stages of the SDK initialization.
+ *
+ * The SDK init is a pipeline: only what requires it stays on the thread calling [Criteo.Builder.init], usually the
+ * main thread, and the rest is warmed up on workers. Each stage is recorded with the thread it ran on, so the time
+ * taken from the main thread can be checked against a budget.
+ */
+@OpenForTesting
+class StartupTrace internal constructor(private val clock: Clock) {
+
+  private val startTimeInMillis = clock.currentTimeInMillis
+
+  private val stages = CopyOnWriteArrayList<Stage>()
+
+  /**
+   * Start a new stage on the calling thread. It is recorded once [Span.end] is called.
+   */
+  fun begin(name: String): Span = Span(name, Thread.currentThread(), clock.currentTimeInMillis)
+
+  /**
+   * Wrap the given task so it is recorded as a stage on the thread running it.
+   */
+  fun traced(name: String, task: Runnable) = Runnable {
+    val span = begin(name)
+    try {
+      task.run()
+    } finally {
+      span.end()
+    }
+  }
+
+  /**
+   * Recorded stages, by ending order.
+   */
+  fun getStages(): List<Stage> = stages.toList()
+
+  /**
+   * Total time spent by the recorded stages that ran on the given thread.
+   */
+  fun getDurationOnThreadInMillis(thread: Thread): Long {
+    return stages.filter { it.thread == thread }.sumOf { it.durationInMillis }
+  }
+
+  inner class Span internal constructor(
+      private val name: String,
+      private val thread: Thread,
+      private val beginTimeInMillis: Long
+  ) {
+    fun end() {
+      stages += Stage(
+          name,
+          thread,
+          beginTimeInMillis - startTimeInMillis,
+          clock.currentTimeInMillis - beginTimeInMillis
+      )
+    }
+  }
+
+  /**
+   * @property startOffsetInMillis time between the creation of the trace and the beginning of this stage
+   */
+  data class Stage internal constructor(
+      val name: String,
+      val thread: Thread,
+      val startOffsetInMillis: Long,
+      val durationInMillis: Long
+  ) {
+    override fun toString() = "$name on ${thread.name}: +${startOffsetInMillis}ms, ${durationInMillis}ms"
+  }
+}
@@ -18,7 +18,9 @@ package com.criteo.publisher.advancednative;
 
 import androidx.annotation.NonNull;
 import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.concurrent.PrioritizedRunnable;
 import com.criteo.publisher.concurrent.RunOnUiThreadExecutor;
+import com.criteo.publisher.concurrent.TaskPriority;
 import com.criteo.publisher.network.PubSdkApi;
 import java.io.IOException;
 import java.io.InputStream;
@@ -55,7 +57,8 @@ public class ImpressionHelper {
    */
   void firePixels(@NonNull Iterable<URL> pixels) {
     for (URL impressionPixel : pixels) {
-      executor.execute(new PixelTask(impressionPixel, api));
+      PixelTask task = new PixelTask(impressionPixel, api);
+      executor.execute(new PrioritizedRunnable(TaskPriority.DISPLAY, task));
     }
   }
 
@@ -80,6 +80,17 @@ public interface BidLifecycleListener {
    */
   void onBidConsumed(@NonNull CacheAdUnit adUnit, @NonNull CdbResponseSlot consumedBid);
 
+  /**
+   * Callback invoked when a bid that is not expired is discarded without being consumed.
+   * <p>
+   * This happens when the bid is evicted from, or replaced in, the bid cache by a better one, or
+   * when a new bid is not cached at all. Such a bid never reaches the user.
+   *
+   * @param adUnit ad unit representing the bid
+   * @param discardedBid bid that was discarded
+   */
+  void onBidDiscarded(@NonNull CacheAdUnit adUnit, @NonNull CdbResponseSlot discardedBid);
+
   /**
    * Callback invoked when a bid is cached.
    *
@@ -68,6 +68,13 @@ public class CompositeBidLifecycleListener implements BidLifecycleListener {
     }
   }
 
+  @Override
+  public void onBidDiscarded(@NonNull CacheAdUnit adUnit, @NonNull CdbResponseSlot discardedBid) {
+    for (BidLifecycleListener delegate : delegates) {
+      delegate.onBidDiscarded(adUnit, discardedBid);
+    }
+  }
+
   @Override
   public void onBidCached(@NonNull CdbResponseSlot cachedBid) {
     for (BidLifecycleListener delegate : delegates) {
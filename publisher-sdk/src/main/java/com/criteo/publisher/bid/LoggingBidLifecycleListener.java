@@ -65,6 +65,11 @@ public class LoggingBidLifecycleListener implements BidLifecycleListener {
     logger.debug("onBidConsumed: %s", consumedBid);
   }
 
+  @Override
+  public void onBidDiscarded(@NonNull CacheAdUnit adUnit, @NonNull CdbResponseSlot discardedBid) {
+    logger.debug("onBidDiscarded: %s", discardedBid);
+  }
+
   @Override
   public void onBidCached(@NonNull CdbResponseSlot cachedBid) {
     logger.debug("onBidCached: %s", cachedBid);
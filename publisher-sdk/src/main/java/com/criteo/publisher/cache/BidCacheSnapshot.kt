@@ -0,0 +1,31 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.cache
+
+import com.criteo.publisher.model.CdbResponseSlot
+import com.google.gson.annotations.SerializedName
+
+/**
+ * Content of the bid cache persisted between two sessions. See [BidCacheSnapshotStore].
+ *
+ * The privacy state is the one of the user when the bids were saved, so they are not restored if
+ * it changed meanwhile.
+ */
+internal data class BidCacheSnapshot(
+    @SerializedName("bids") val bids: List<CdbResponseSlot> = emptyList(),
+    @SerializedName("privacyState") val privacyState: String? = null
+)
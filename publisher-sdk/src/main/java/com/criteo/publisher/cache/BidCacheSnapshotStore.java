@@ -0,0 +1,247 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.cache;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.logging.Logger;
+import com.criteo.publisher.logging.LoggerFactory;
+import com.criteo.publisher.model.CdbResponseSlot;
+import com.criteo.publisher.privacy.UserPrivacyUtil;
+import com.criteo.publisher.util.JsonSerializer;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persist the bids of the {@link SdkCache} in the app-private storage, so the ones that are still
+ * valid after a process restart can be displayed without waiting for a first CDB call.
+ * <p>
+ * A snapshot is read at most once: it is deleted when restored, so the same bids can not be
+ * restored (and notified as cached) twice. It should also be invalidated as soon as one of its bids
+ * is consumed, else the bid would be restored and consumed again after a crash.
+ * <p>
+ * Bids are not restored if the user privacy (GDPR, CCPA or MoPub consent) changed since they were
+ * saved, or if the user opted out.
+ */
+public class BidCacheSnapshotStore {
+
+  @VisibleForTesting
+  static final String SNAPSHOT_FILE_NAME = "criteo_bid_cache_snapshot.json";
+
+  @NonNull
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  @NonNull
+  private final Context context;
+
+  @NonNull
+  private final JsonSerializer jsonSerializer;
+
+  @NonNull
+  private final Clock clock;
+
+  @NonNull
+  private final UserPrivacyUtil userPrivacyUtil;
+
+  @NonNull
+  private final Executor executor;
+
+  /**
+   * Incremented at each invalidation, so a save that was requested before is not executed after.
+   */
+  @NonNull
+  private final AtomicInteger generation = new AtomicInteger(0);
+
+  public BidCacheSnapshotStore(
+      @NonNull Context context,
+      @NonNull JsonSerializer jsonSerializer,
+      @NonNull Clock clock,
+      @NonNull UserPrivacyUtil userPrivacyUtil,
+      @NonNull Executor executor
+  ) {
+    this.context = context;
+    this.jsonSerializer = jsonSerializer;
+    this.clock = clock;
+    this.userPrivacyUtil = userPrivacyUtil;
+    this.executor = executor;
+  }
+
+  /**
+   * Asynchronously replace the current snapshot by the given bids. Expired bids are not written.
+   */
+  public void saveAsync(@NonNull List<CdbResponseSlot> slots) {
+    int savedGeneration = generation.get();
+    executor.execute(new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        save(slots, savedGeneration);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously delete the current snapshot, and cancel the saves requested before.
+   */
+  public void invalidateAsync() {
+    generation.incrementAndGet();
+    executor.execute(new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        invalidate();
+      }
+    });
+  }
+
+  /**
+   * Asynchronously read and delete the current snapshot, and give its not expired bids to the
+   * listener. If there is no snapshot, or if it can not be read, the listener is not called.
+   */
+  public void restoreAsync(@NonNull RestoreListener listener) {
+    executor.execute(new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        List<CdbResponseSlot> slots = restore();
+        if (!slots.isEmpty()) {
+          listener.onRestored(slots);
+        }
+      }
+    });
+  }
+
+  @VisibleForTesting
+  void save(@NonNull List<CdbResponseSlot> slots) {
+    save(slots, generation.get());
+  }
+
+  private synchronized void save(@NonNull List<CdbResponseSlot> slots, int savedGeneration) {
+    if (savedGeneration != generation.get()) {
+      // Invalidated meanwhile
+      return;
+    }
+
+    List<CdbResponseSlot> validSlots = removeExpired(slots);
+    File snapshotFile = getSnapshotFile();
+
+    if (validSlots.isEmpty()) {
+      snapshotFile.delete();
+      return;
+    }
+
+    // Write in a temporary file first, so a crash while writing does not leave a corrupted snapshot
+    File tmpFile = new File(snapshotFile.getPath() + ".tmp");
+    try {
+      try (OutputStream outputStream = new FileOutputStream(tmpFile)) {
+        jsonSerializer.write(new BidCacheSnapshot(validSlots, getPrivacyState()), outputStream);
+      }
+
+      if (!tmpFile.renameTo(snapshotFile)) {
+        throw new IOException("Could not rename " + tmpFile + " to " + snapshotFile);
+      }
+
+      logger.log(CacheLogMessage.onBidCacheSnapshotSaved(validSlots.size()));
+    } catch (IOException e) {
+      tmpFile.delete();
+      logger.log(CacheLogMessage.onErrorWhenSavingBidCacheSnapshot(e));
+    }
+  }
+
+  @NonNull
+  @VisibleForTesting
+  synchronized List<CdbResponseSlot> restore() {
+    File snapshotFile = getSnapshotFile();
+    if (!snapshotFile.exists()) {
+      return Collections.emptyList();
+    }
+
+    try {
+      BidCacheSnapshot snapshot;
+      try (InputStream inputStream = new FileInputStream(snapshotFile)) {
+        snapshot = jsonSerializer.read(BidCacheSnapshot.class, inputStream);
+      }
+
+      if (!isPrivacyUnchanged(snapshot.getPrivacyState())) {
+        logger.log(CacheLogMessage.onBidCacheSnapshotDiscardedForPrivacy());
+        return Collections.emptyList();
+      }
+
+      List<CdbResponseSlot> validSlots = removeExpired(snapshot.getBids());
+      logger.log(CacheLogMessage.onBidCacheSnapshotRestored(validSlots.size()));
+      return validSlots;
+    } catch (IOException e) {
+      logger.log(CacheLogMessage.onErrorWhenRestoringBidCacheSnapshot(e));
+      return Collections.emptyList();
+    } finally {
+      snapshotFile.delete();
+    }
+  }
+
+  @VisibleForTesting
+  synchronized void invalidate() {
+    getSnapshotFile().delete();
+  }
+
+  private boolean isPrivacyUnchanged(@Nullable String savedPrivacyState) {
+    return getPrivacyState().equals(savedPrivacyState)
+        && userPrivacyUtil.isCCPAConsentGivenOrNotApplicable()
+        && userPrivacyUtil.isMopubConsentGivenOrNotApplicable();
+  }
+
+  @NonNull
+  private String getPrivacyState() {
+    String gdprConsentData = userPrivacyUtil.getGdprConsentData();
+    return (gdprConsentData == null ? "" : gdprConsentData)
+        + "|" + userPrivacyUtil.getIabUsPrivacyString()
+        + "|" + userPrivacyUtil.getUsPrivacyOptout()
+        + "|" + userPrivacyUtil.getMopubConsent();
+  }
+
+  @NonNull
+  private List<CdbResponseSlot> removeExpired(@NonNull List<CdbResponseSlot> slots) {
+    List<CdbResponseSlot> validSlots = new ArrayList<>(slots.size());
+    for (CdbResponseSlot slot : slots) {
+      // Gson may put null elements in the list if the snapshot is malformed
+      if (slot != null && !slot.isExpired(clock)) {
+        validSlots.add(slot);
+      }
+    }
+    return validSlots;
+  }
+
+  @NonNull
+  @VisibleForTesting
+  File getSnapshotFile() {
+    return new File(context.getFilesDir(), SNAPSHOT_FILE_NAME);
+  }
+
+  public interface RestoreListener {
+
+    void onRestored(@NonNull List<CdbResponseSlot> slots);
+  }
+}
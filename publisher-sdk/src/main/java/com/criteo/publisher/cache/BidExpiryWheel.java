@@ -0,0 +1,307 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.cache;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.bid.BidLifecycleListener;
+import com.criteo.publisher.model.CacheAdUnit;
+import com.criteo.publisher.model.CdbResponseSlot;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evict cached bids from the {@link SdkCache} as soon as they expire.
+ * <p>
+ * Without this, expired bids are only noticed when their ad unit is requested again, so they
+ * occupy memory and their metrics are never ready to be sent.
+ * <p>
+ * This is a hashed timing wheel: a bid expiring at a given time is put in the bucket of the
+ * corresponding tick, modulo the number of buckets. A single task processes the buckets of the
+ * elapsed ticks and evicts the bids that are expired. It is only scheduled at the tick of the next
+ * non-empty bucket, so an idle wheel never wakes up. A bid expiring after more than a full round of
+ * the wheel stays in its bucket until its round. So scheduling a bid is O(1) and each bid is visited
+ * once per round until it expires.
+ * <p>
+ * Bids consumed or replaced in the cache should be cancelled, so they do not keep the wheel
+ * ticking. Evicted bids are notified as consumed to the {@link BidLifecycleListener}. Bids that were
+ * removed from the cache without being cancelled are ignored.
+ */
+public class BidExpiryWheel {
+
+  @VisibleForTesting
+  static final long TICK_DURATION_IN_MILLIS = 1000;
+
+  @VisibleForTesting
+  static final int WHEEL_SIZE = 64;
+
+  @NonNull
+  private final SdkCache cache;
+
+  @NonNull
+  private final Clock clock;
+
+  @NonNull
+  private final ScheduledExecutorService scheduledExecutorService;
+
+  @NonNull
+  private final BidLifecycleListener bidLifecycleListener;
+
+  private final Object lock = new Object();
+
+  @NonNull
+  @GuardedBy("lock")
+  private final List<Set<Entry>> buckets;
+
+  /**
+   * Pending entries by slot. Slots are data classes with a structural equality, but here the
+   * instance matters.
+   */
+  @NonNull
+  @GuardedBy("lock")
+  private final Map<CdbResponseSlot, Entry> entries = new IdentityHashMap<>();
+
+  @GuardedBy("lock")
+  private long lastProcessedTick;
+
+  @Nullable
+  @GuardedBy("lock")
+  private ScheduledFuture<?> tickTask;
+
+  @GuardedBy("lock")
+  private long tickTaskTick = Long.MAX_VALUE;
+
+  public BidExpiryWheel(
+      @NonNull SdkCache cache,
+      @NonNull Clock clock,
+      @NonNull ScheduledExecutorService scheduledExecutorService,
+      @NonNull BidLifecycleListener bidLifecycleListener
+  ) {
+    this.cache = cache;
+    this.clock = clock;
+    this.scheduledExecutorService = scheduledExecutorService;
+    this.bidLifecycleListener = bidLifecycleListener;
+
+    this.buckets = new ArrayList<>(WHEEL_SIZE);
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      buckets.add(new HashSet<>());
+    }
+
+    this.lastProcessedTick = toTick(clock.getCurrentTimeInMillis());
+  }
+
+  /**
+   * Schedule the eviction of the given cached slot when it expires.
+   *
+   * @param slot slot that was just put in the cache
+   */
+  public void schedule(@NonNull CdbResponseSlot slot) {
+    CacheAdUnit key = cache.detectCacheAdUnit(slot);
+    if (key == null) {
+      return;
+    }
+
+    long expiryTimeInMillis = slot.getTimeOfDownload() + slot.getTtlInSeconds() * 1000L;
+
+    // Round up, so the bid is expired when its tick is processed. Elapsed ticks will not be
+    // processed again before a full round, so the bid goes to the next one.
+    long expiryTick = (expiryTimeInMillis + TICK_DURATION_IN_MILLIS - 1) / TICK_DURATION_IN_MILLIS;
+
+    synchronized (lock) {
+      removeEntry(slot);
+
+      long tick = Math.max(expiryTick, lastProcessedTick + 1);
+      Entry entry = new Entry(key, slot, expiryTimeInMillis, tick);
+      bucketOf(tick).add(entry);
+      entries.put(slot, entry);
+
+      scheduleTickTaskAt(tick);
+    }
+  }
+
+  /**
+   * Stop tracking the given slot because it was consumed or replaced in the cache.
+   */
+  public void cancel(@NonNull CdbResponseSlot slot) {
+    synchronized (lock) {
+      removeEntry(slot);
+
+      if (entries.isEmpty() && tickTask != null) {
+        tickTask.cancel(false);
+        tickTask = null;
+        tickTaskTick = Long.MAX_VALUE;
+      }
+    }
+  }
+
+  /**
+   * Evict all the bids that are expired in the buckets of the ticks elapsed since the last call.
+   */
+  @VisibleForTesting
+  void tick() {
+    long now = clock.getCurrentTimeInMillis();
+    long currentTick = toTick(now);
+    List<Entry> expiredEntries = new ArrayList<>();
+
+    synchronized (lock) {
+      // There is no need to visit a bucket twice in a single call
+      long firstTick = Math.max(lastProcessedTick + 1, currentTick - WHEEL_SIZE + 1);
+
+      for (long tick = firstTick; tick <= currentTick; tick++) {
+        Iterator<Entry> iterator = bucketOf(tick).iterator();
+        while (iterator.hasNext()) {
+          Entry entry = iterator.next();
+          if (entry.expiryTimeInMillis <= now) {
+            iterator.remove();
+            entries.remove(entry.slot);
+            expiredEntries.add(entry);
+          }
+        }
+      }
+
+      if (currentTick > lastProcessedTick) {
+        lastProcessedTick = currentTick;
+      }
+
+      tickTask = null;
+      tickTaskTick = Long.MAX_VALUE;
+      scheduleNextTickTask();
+    }
+
+    for (Entry entry : expiredEntries) {
+      evict(entry);
+    }
+  }
+
+  @VisibleForTesting
+  int getPendingCount() {
+    synchronized (lock) {
+      return entries.size();
+    }
+  }
+
+  private void evict(@NonNull Entry entry) {
+    if (cache.remove(entry.key, entry.slot)) {
+      bidLifecycleListener.onBidConsumed(entry.key, entry.slot);
+    }
+  }
+
+  @GuardedBy("lock")
+  private void removeEntry(@NonNull CdbResponseSlot slot) {
+    Entry entry = entries.remove(slot);
+    if (entry != null) {
+      bucketOf(entry.tick).remove(entry);
+    }
+  }
+
+  /**
+   * Schedule the task at the tick of the next non-empty bucket, if any.
+   */
+  @GuardedBy("lock")
+  private void scheduleNextTickTask() {
+    if (entries.isEmpty()) {
+      return;
+    }
+
+    for (long tick = lastProcessedTick + 1; tick <= lastProcessedTick + WHEEL_SIZE; tick++) {
+      if (!bucketOf(tick).isEmpty()) {
+        scheduleTickTaskAt(tick);
+        return;
+      }
+    }
+  }
+
+  @GuardedBy("lock")
+  private void scheduleTickTaskAt(long tick) {
+    // Bids of later rounds are visited when the wheel passes by their bucket in this round.
+    long wheelTick = tick - ((tick - lastProcessedTick - 1) / WHEEL_SIZE) * WHEEL_SIZE;
+    if (wheelTick >= tickTaskTick) {
+      return;
+    }
+
+    if (tickTask != null) {
+      tickTask.cancel(false);
+    }
+
+    long delayInMillis = Math.max(
+        0,
+        wheelTick * TICK_DURATION_IN_MILLIS - clock.getCurrentTimeInMillis()
+    );
+
+    tickTaskTick = wheelTick;
+    tickTask = scheduledExecutorService.schedule(
+        new TickTask(),
+        delayInMillis,
+        TimeUnit.MILLISECONDS
+    );
+  }
+
+  @NonNull
+  @GuardedBy("lock")
+  private Set<Entry> bucketOf(long tick) {
+    return buckets.get((int) (tick % WHEEL_SIZE));
+  }
+
+  private static long toTick(long timeInMillis) {
+    return timeInMillis / TICK_DURATION_IN_MILLIS;
+  }
+
+  private class TickTask extends SafeRunnable {
+
+    @Override
+    public void runSafely() {
+      tick();
+    }
+  }
+
+  private static class Entry {
+
+    @NonNull
+    private final CacheAdUnit key;
+
+    @NonNull
+    private final CdbResponseSlot slot;
+
+    private final long expiryTimeInMillis;
+
+    private final long tick;
+
+    private Entry(
+        @NonNull CacheAdUnit key,
+        @NonNull CdbResponseSlot slot,
+        long expiryTimeInMillis,
+        long tick
+    ) {
+      this.key = key;
+      this.slot = slot;
+      this.expiryTimeInMillis = expiryTimeInMillis;
+      this.tick = tick;
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.cache
+
+import android.util.Log
+import com.criteo.publisher.logging.LogMessage
+
+internal object CacheLogMessage {
+
+  @JvmStatic
+  fun onBidCacheSnapshotSaved(bidCount: Int) = LogMessage(message =
+    "Bid cache snapshot saved with $bidCount bid(s)"
+  )
+
+  @JvmStatic
+  fun onBidCacheSnapshotRestored(bidCount: Int) = LogMessage(message =
+    "Bid cache snapshot restored with $bidCount not expired bid(s)"
+  )
+
+  @JvmStatic
+  fun onBidCacheSnapshotDiscardedForPrivacy() = LogMessage(message =
+    "Bid cache snapshot discarded because the user privacy changed since it was saved"
+  )
+
+  @JvmStatic
+  fun onErrorWhenSavingBidCacheSnapshot(exception: Exception) = LogMessage(
+      Log.WARN,
+      "Error while saving bid cache snapshot",
+      exception,
+      "onErrorWhenSavingBidCacheSnapshot"
+  )
+
+  @JvmStatic
+  fun onErrorWhenRestoringBidCacheSnapshot(exception: Exception) = LogMessage(
+      Log.WARN,
+      "Error while restoring bid cache snapshot. It is ignored",
+      exception,
+      "onErrorWhenRestoringBidCacheSnapshot"
+  )
+}
@@ -0,0 +1,145 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.cache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.criteo.publisher.model.CdbResponseSlot;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable and bounded list of bids cached for a single ad unit.
+ * <p>
+ * Bids are ordered from the best to the worst: higher CPM first, then, for the same CPM, the one
+ * expiring first. So the head of this list is the bid that should be consumed next.
+ * <p>
+ * Instances are compared by identity, which allows {@link SdkCache} to update them with
+ * compare-and-set operations.
+ */
+final class CachedBids {
+
+  private static final Comparator<CdbResponseSlot> BEST_FIRST = new Comparator<CdbResponseSlot>() {
+    @Override
+    public int compare(CdbResponseSlot slot1, CdbResponseSlot slot2) {
+      int cpmComparison = Double.compare(getCpm(slot2), getCpm(slot1));
+      if (cpmComparison != 0) {
+        return cpmComparison;
+      }
+      return compareLong(getExpiryTime(slot1), getExpiryTime(slot2));
+    }
+  };
+
+  @NonNull
+  private final List<CdbResponseSlot> slots;
+
+  private CachedBids(@NonNull List<CdbResponseSlot> slots) {
+    this.slots = slots;
+  }
+
+  @NonNull
+  static CachedBids of(@NonNull CdbResponseSlot slot) {
+    return new CachedBids(Collections.singletonList(slot));
+  }
+
+  @NonNull
+  CdbResponseSlot peek() {
+    return slots.get(0);
+  }
+
+  @NonNull
+  List<CdbResponseSlot> getSlots() {
+    return slots;
+  }
+
+  int size() {
+    return slots.size();
+  }
+
+  boolean contains(@NonNull CdbResponseSlot slot) {
+    return indexOf(slot) >= 0;
+  }
+
+  /**
+   * Return new bids containing the given slot, inserted at its rank, and keeping only the best
+   * bids if the given depth is exceeded. So the given slot itself is dropped if it is worse than
+   * all the previously cached bids.
+   * <p>
+   * With a depth of one, the given slot always replaces the older one.
+   */
+  @NonNull
+  CachedBids with(@NonNull CdbResponseSlot slot, int maxDepth) {
+    if (maxDepth <= 1) {
+      return of(slot);
+    }
+
+    List<CdbResponseSlot> newSlots = new ArrayList<>(slots.size() + 1);
+    newSlots.addAll(slots);
+    newSlots.add(slot);
+    Collections.sort(newSlots, BEST_FIRST);
+
+    while (newSlots.size() > maxDepth) {
+      newSlots.remove(newSlots.size() - 1);
+    }
+
+    return new CachedBids(Collections.unmodifiableList(newSlots));
+  }
+
+  /**
+   * Return new bids without the given slot, or <code>null</code> if there is no remaining bid.
+   */
+  @Nullable
+  CachedBids without(@NonNull CdbResponseSlot slot) {
+    int index = indexOf(slot);
+    if (index < 0) {
+      return this;
+    }
+    if (slots.size() == 1) {
+      return null;
+    }
+
+    List<CdbResponseSlot> newSlots = new ArrayList<>(slots);
+    newSlots.remove(index);
+    return new CachedBids(Collections.unmodifiableList(newSlots));
+  }
+
+  private int indexOf(@NonNull CdbResponseSlot slot) {
+    // Slots are data classes with a structural equality, but here the instance matters.
+    for (int i = 0; i < slots.size(); i++) {
+      if (slots.get(i) == slot) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static double getCpm(@NonNull CdbResponseSlot slot) {
+    Double cpm = slot.getCpmAsNumber();
+    return cpm == null ? 0.0 : cpm;
+  }
+
+  private static long getExpiryTime(@NonNull CdbResponseSlot slot) {
+    return slot.getTimeOfDownload() + slot.getTtlInSeconds() * 1000L;
+  }
+
+  private static int compareLong(long x, long y) {
+    // Long.compare is only available since API 19
+    return (x < y) ? -1 : ((x == y) ? 0 : 1);
+  }
+}
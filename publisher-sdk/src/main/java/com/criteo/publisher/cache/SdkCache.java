@@ -29,23 +29,157 @@ import com.criteo.publisher.model.CacheAdUnit;
 import com.criteo.publisher.model.CdbResponseSlot;
 import com.criteo.publisher.util.AdUnitType;
 import com.criteo.publisher.util.DeviceUtil;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Cache of bids indexed by {@link CacheAdUnit}.
+ * <p>
+ * Many bids can be kept for a same ad unit, up to a depth given by the caller. They are ranked from
+ * the best one (higher CPM, then sooner expiry) to the worst one, and consumers always get the best
+ * one. When the depth is exceeded, the worst bid is evicted.
+ * <p>
+ * This cache is thread-safe and does not rely on a global lock: each ad unit is updated atomically
+ * and independently of the others. Operations that depend on the currently cached bids (such as
+ * consuming a bid or caching a new one unless the current one is protected) are done through
+ * compare-and-set loops, so concurrent callers on different ad units never block each other.
+ */
 public class SdkCache {
 
-  private final Map<CacheAdUnit, CdbResponseSlot> slotMap;
+  private final ConcurrentMap<CacheAdUnit, CachedBids> slotMap;
   private final DeviceUtil deviceUtil;
 
   public SdkCache(@NonNull DeviceUtil deviceUtil) {
-    slotMap = new HashMap<>();
+    slotMap = new ConcurrentHashMap<>();
     this.deviceUtil = deviceUtil;
   }
 
   public void add(@NonNull CdbResponseSlot slot) {
     CacheAdUnit key = detectCacheAdUnit(slot);
     if (key != null) {
-      slotMap.put(key, slot);
+      slotMap.put(key, CachedBids.of(slot));
+    }
+  }
+
+  /**
+   * Atomically cache the given slot, unless the best slot currently cached for the same ad unit is
+   * protected according to the given predicate.
+   * <p>
+   * If the new slot is itself protected, it replaces all the bids cached for its ad unit. Else it
+   * is inserted at its rank and, if there are now more than <code>maxDepth</code> bids, only the
+   * best ones are kept. Bids removed from the cache this way, including the new slot if it is the
+   * worst one, are given to the discard listener.
+   * <p>
+   * If no ad unit can be detected for the given slot, nothing is cached but this is not considered
+   * as a rejection.
+   *
+   * @param slot new slot to cache
+   * @param isProtected indicate if the currently cached slot should not be overridden
+   * @param maxDepth maximum number of bids to keep for the ad unit, at least one is always kept
+   * @param discardListener listener notified of cached bids that are evicted
+   * @return <code>false</code> if the slot was not cached because of a protected slot or because
+   * better bids already fill the cache
+   */
+  public boolean add(
+      @NonNull CdbResponseSlot slot,
+      @NonNull SlotPredicate isProtected,
+      int maxDepth,
+      @NonNull DiscardListener discardListener
+  ) {
+    CacheAdUnit key = detectCacheAdUnit(slot);
+    if (key == null) {
+      return true;
+    }
+
+    int depth = Math.max(1, maxDepth);
+    CachedBids newBids = CachedBids.of(slot);
+
+    while (true) {
+      CachedBids cachedBids = slotMap.get(key);
+      if (cachedBids == null) {
+        if (slotMap.putIfAbsent(key, newBids) == null) {
+          return true;
+        }
+        continue;
+      }
+
+      if (isProtected.test(cachedBids.peek())) {
+        return false;
+      }
+
+      CachedBids updatedBids = isProtected.test(slot) ? newBids : cachedBids.with(slot, depth);
+
+      if (slotMap.replace(key, cachedBids, updatedBids)) {
+        for (CdbResponseSlot cachedSlot : cachedBids.getSlots()) {
+          if (!updatedBids.contains(cachedSlot)) {
+            discardListener.onDiscarded(key, cachedSlot);
+          }
+        }
+
+        if (!updatedBids.contains(slot)) {
+          discardListener.onDiscarded(key, slot);
+          return false;
+        }
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Atomically remove and return the best slot cached for the given ad unit if it matches the given
+   * predicate.
+   * <p>
+   * Before looking at the best slot, all the expired ones are removed from the cache and given to
+   * the discard listener.
+   * <p>
+   * A given cached slot is returned (or discarded) at most once, even if many threads try to
+   * consume it concurrently.
+   *
+   * @param key ad unit of the slot to consume
+   * @param canBeConsumed indicate if the best cached slot can be consumed
+   * @param isExpired indicate if a cached slot is expired and should be discarded
+   * @param discardListener listener notified of expired bids removed from the cache
+   * @return consumed slot or <code>null</code> if there was none or if it can not be consumed
+   */
+  @Nullable
+  public CdbResponseSlot consume(
+      @NonNull CacheAdUnit key,
+      @NonNull SlotPredicate canBeConsumed,
+      @NonNull SlotPredicate isExpired,
+      @NonNull DiscardListener discardListener
+  ) {
+    while (true) {
+      CachedBids cachedBids = slotMap.get(key);
+      if (cachedBids == null) {
+        return null;
+      }
+
+      boolean hasDiscarded = false;
+      for (CdbResponseSlot cachedSlot : cachedBids.getSlots()) {
+        if (isExpired.test(cachedSlot)) {
+          hasDiscarded = true;
+          if (remove(key, cachedSlot)) {
+            discardListener.onDiscarded(key, cachedSlot);
+          }
+        }
+      }
+
+      if (hasDiscarded) {
+        // Look again at the remaining bids
+        continue;
+      }
+
+      CdbResponseSlot bestSlot = cachedBids.peek();
+      if (!canBeConsumed.test(bestSlot)) {
+        return null;
+      }
+
+      if (remove(key, bestSlot)) {
+        return bestSlot;
+      }
     }
   }
 
@@ -69,24 +203,15 @@ public class SdkCache {
       return CRITEO_REWARDED;
     }
 
-    AdSize currentScreenSize = deviceUtil.getCurrentScreenSize();
-    AdSize transposedScreenSize = transpose(currentScreenSize);
-    AdSize slotSize = new AdSize(slot.getWidth(), slot.getHeight());
-
-    if (slotSize.equals(currentScreenSize) || slotSize.equals(transposedScreenSize)) {
+    if (deviceUtil.getScreenGeometry().isFullScreen(slot.getWidth(), slot.getHeight())) {
       return CRITEO_INTERSTITIAL;
     }
 
     return CRITEO_BANNER;
   }
 
-  @NonNull
-  private AdSize transpose(@NonNull AdSize size) {
-    return new AdSize(size.getHeight(), size.getWidth());
-  }
-
   /**
-   * Get the slot corresponding to the given key.
+   * Get the best slot corresponding to the given key.
    * <p>
    * If no slot match the given key, then <code>null</code> is returned.
    *
@@ -95,20 +220,94 @@ public class SdkCache {
    */
   @Nullable
   public CdbResponseSlot peekAdUnit(CacheAdUnit key) {
-    return slotMap.get(key);
+    CachedBids cachedBids = slotMap.get(key);
+    return cachedBids == null ? null : cachedBids.peek();
+  }
+
+  /**
+   * Get the number of bids currently cached for the given key.
+   */
+  public int getBidCount(@NonNull CacheAdUnit key) {
+    CachedBids cachedBids = slotMap.get(key);
+    return cachedBids == null ? 0 : cachedBids.size();
   }
 
   public void remove(CacheAdUnit key) {
     slotMap.remove(key);
   }
 
+  /**
+   * Remove the given slot from the bids cached for the given key, if it is still cached.
+   *
+   * @return <code>true</code> if the expected slot was removed
+   */
+  public boolean remove(@NonNull CacheAdUnit key, @NonNull CdbResponseSlot expectedSlot) {
+    while (true) {
+      CachedBids cachedBids = slotMap.get(key);
+      if (cachedBids == null || !cachedBids.contains(expectedSlot)) {
+        return false;
+      }
+
+      CachedBids remainingBids = cachedBids.without(expectedSlot);
+      boolean isUpdated;
+      if (remainingBids == null) {
+        isUpdated = slotMap.remove(key, cachedBids);
+      } else {
+        isUpdated = slotMap.replace(key, cachedBids, remainingBids);
+      }
+
+      if (isUpdated) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Get the bids currently cached for the given key, from the best to the worst one.
+   */
+  @NonNull
+  public List<CdbResponseSlot> getBids(@NonNull CacheAdUnit key) {
+    CachedBids cachedBids = slotMap.get(key);
+    return cachedBids == null ? Collections.<CdbResponseSlot>emptyList() : cachedBids.getSlots();
+  }
+
+  /**
+   * Get all the bids currently cached, for all ad units.
+   */
+  @NonNull
+  public List<CdbResponseSlot> getAllBids() {
+    List<CdbResponseSlot> slots = new ArrayList<>();
+    for (CachedBids cachedBids : slotMap.values()) {
+      slots.addAll(cachedBids.getSlots());
+    }
+    return slots;
+  }
+
   @VisibleForTesting
   int getItemCount() {
-    return slotMap.size();
+    int count = 0;
+    for (CachedBids cachedBids : slotMap.values()) {
+      count += cachedBids.size();
+    }
+    return count;
   }
 
   @VisibleForTesting
   public void put(@NonNull CacheAdUnit cacheAdUnit, @Nullable CdbResponseSlot slot) {
-    slotMap.put(cacheAdUnit, slot);
+    if (slot == null) {
+      slotMap.remove(cacheAdUnit);
+    } else {
+      slotMap.put(cacheAdUnit, CachedBids.of(slot));
+    }
+  }
+
+  public interface SlotPredicate {
+
+    boolean test(@NonNull CdbResponseSlot slot);
+  }
+
+  public interface DiscardListener {
+
+    void onDiscarded(@NonNull CacheAdUnit key, @NonNull CdbResponseSlot slot);
   }
 }
@@ -0,0 +1,90 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Declare the priority of a task submitted to an {@link java.util.concurrent.Executor}.
+ * <p>
+ * The priority is only used by a {@link PriorityExecutor}. Other executors run this as any other
+ * task.
+ */
+public final class PrioritizedRunnable implements Runnable {
+
+  @NonNull
+  private final TaskPriority priority;
+
+  @NonNull
+  private final Runnable delegate;
+
+  @Nullable
+  private final Runnable dropHandler;
+
+  public PrioritizedRunnable(@NonNull TaskPriority priority, @NonNull Runnable delegate) {
+    this(priority, delegate, null);
+  }
+
+  /**
+   * @param dropHandler called instead of the task if it is dropped without being run, because the
+   * queue of its priority is full
+   */
+  public PrioritizedRunnable(
+      @NonNull TaskPriority priority,
+      @NonNull Runnable delegate,
+      @Nullable Runnable dropHandler
+  ) {
+    this.priority = priority;
+    this.delegate = delegate;
+    this.dropHandler = dropHandler;
+  }
+
+  @NonNull
+  public TaskPriority getPriority() {
+    return priority;
+  }
+
+  @Override
+  public void run() {
+    delegate.run();
+  }
+
+  /**
+   * Return the declared priority of the given task, or {@link TaskPriority#DISPLAY} if it does not
+   * declare any.
+   */
+  @NonNull
+  public static TaskPriority getPriorityOf(@NonNull Runnable command) {
+    if (command instanceof PrioritizedRunnable) {
+      return ((PrioritizedRunnable) command).priority;
+    }
+    return TaskPriority.DISPLAY;
+  }
+
+  /**
+   * Notify the given task that it was dropped and will never be run.
+   */
+  public static void notifyDropped(@NonNull Runnable command) {
+    if (command instanceof PrioritizedRunnable) {
+      Runnable dropHandler = ((PrioritizedRunnable) command).dropHandler;
+      if (dropHandler != null) {
+        dropHandler.run();
+      }
+    }
+  }
+}
@@ -0,0 +1,290 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.criteo.publisher.Clock;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Executor running tasks on a limited number of workers, the most urgent ones first.
+ * <p>
+ * Tasks declare their {@link TaskPriority} by being submitted as a {@link PrioritizedRunnable}.
+ * Each priority has its own queue. When a worker is free, it takes the oldest task of the most
+ * urgent priority that is not already running at its maximum concurrency.
+ * <p>
+ * When the queue of a priority is full, new tasks are dropped. Only the least urgent priorities
+ * have a bounded queue, so tasks are never rejected.
+ */
+public class PriorityExecutor implements Executor {
+
+  private final Object lock = new Object();
+
+  @NonNull
+  private final Executor workerExecutor;
+
+  private final int maxWorkerCount;
+
+  @NonNull
+  private final Clock clock;
+
+  @GuardedBy("lock")
+  private final PriorityQueue[] queues;
+
+  @GuardedBy("lock")
+  private int workerCount = 0;
+
+  /**
+   * @param workerExecutor executor on which workers are started. It should be able to run
+   * <code>maxWorkerCount</code> workers at the same time.
+   * @param maxWorkerCount maximum number of tasks running at the same time, all priorities included
+   */
+  public PriorityExecutor(
+      @NonNull Executor workerExecutor,
+      int maxWorkerCount,
+      @NonNull Clock clock
+  ) {
+    this.workerExecutor = workerExecutor;
+    this.maxWorkerCount = maxWorkerCount;
+    this.clock = clock;
+
+    TaskPriority[] priorities = TaskPriority.values();
+    this.queues = new PriorityQueue[priorities.length];
+    for (TaskPriority priority : priorities) {
+      queues[priority.ordinal()] = new PriorityQueue(priority);
+    }
+  }
+
+  /**
+   * Execute the given task once a worker is free for its priority, or drop it if the queue of its
+   * priority is full.
+   */
+  @Override
+  public void execute(@NonNull Runnable command) {
+    TaskPriority priority = PrioritizedRunnable.getPriorityOf(command);
+
+    synchronized (lock) {
+      PriorityQueue queue = queues[priority.ordinal()];
+      if (queue.tasks.size() < priority.getQueueCapacity()) {
+        queue.tasks.add(new QueuedTask(command, clock.getCurrentTimeInMillis()));
+        startWorkerIfNeeded(queue);
+        return;
+      }
+
+      queue.droppedCount++;
+    }
+
+    // Nothing is logged: remote logs are themselves executed with this priority
+    PrioritizedRunnable.notifyDropped(command);
+  }
+
+  /**
+   * Return a snapshot of the usage of the given priority.
+   */
+  @NonNull
+  public Statistics getStatistics(@NonNull TaskPriority priority) {
+    synchronized (lock) {
+      PriorityQueue queue = queues[priority.ordinal()];
+      return new Statistics(
+          queue.tasks.size(),
+          queue.runningCount,
+          queue.startedCount,
+          queue.droppedCount,
+          queue.totalWaitTimeInMillis,
+          queue.maxWaitTimeInMillis
+      );
+    }
+  }
+
+  @GuardedBy("lock")
+  private void startWorkerIfNeeded(@NonNull PriorityQueue queue) {
+    if (workerCount >= maxWorkerCount || !queue.canStartTask()) {
+      // A running worker takes the task once it is done with its current one
+      return;
+    }
+
+    workerCount++;
+    try {
+      workerExecutor.execute(new Worker());
+    } catch (RuntimeException e) {
+      workerCount--;
+      throw e;
+    }
+  }
+
+  /**
+   * Take the next task to run, or stop the calling worker if there is none.
+   */
+  @Nullable
+  private QueuedTask pollNextTask() {
+    synchronized (lock) {
+      for (PriorityQueue queue : queues) {
+        if (queue.canStartTask()) {
+          QueuedTask task = queue.tasks.poll();
+          queue.onTaskStarted(clock.getCurrentTimeInMillis() - task.submissionTimeInMillis);
+          return task;
+        }
+      }
+
+      workerCount--;
+      return null;
+    }
+  }
+
+  private void onTaskEnded(@NonNull TaskPriority priority, boolean isWorkerStopped) {
+    synchronized (lock) {
+      queues[priority.ordinal()].runningCount--;
+
+      if (isWorkerStopped) {
+        // Otherwise, the worker itself takes the next task
+        workerCount--;
+        for (PriorityQueue queue : queues) {
+          startWorkerIfNeeded(queue);
+        }
+      }
+    }
+  }
+
+  private class Worker implements Runnable {
+
+    @Override
+    public void run() {
+      QueuedTask task;
+      while ((task = pollNextTask()) != null) {
+        boolean isCompleted = false;
+        try {
+          // A task cancelled with an interruption, like a FutureTask, does not clear it. As the
+          // thread is shared by the tasks, the interruption must not leak to the next one.
+          Thread.interrupted();
+          task.command.run();
+          isCompleted = true;
+        } finally {
+          Thread.interrupted();
+          // On failure, the exception goes up to the worker thread, so a new worker takes over
+          onTaskEnded(PrioritizedRunnable.getPriorityOf(task.command), !isCompleted);
+        }
+      }
+    }
+  }
+
+  private static class QueuedTask {
+
+    @NonNull
+    private final Runnable command;
+
+    private final long submissionTimeInMillis;
+
+    private QueuedTask(@NonNull Runnable command, long submissionTimeInMillis) {
+      this.command = command;
+      this.submissionTimeInMillis = submissionTimeInMillis;
+    }
+  }
+
+  private static class PriorityQueue {
+
+    @NonNull
+    private final TaskPriority priority;
+
+    private final ArrayDeque<QueuedTask> tasks = new ArrayDeque<>();
+
+    private int runningCount = 0;
+    private long startedCount = 0;
+    private long droppedCount = 0;
+    private long totalWaitTimeInMillis = 0;
+    private long maxWaitTimeInMillis = 0;
+
+    private PriorityQueue(@NonNull TaskPriority priority) {
+      this.priority = priority;
+    }
+
+    private boolean canStartTask() {
+      return !tasks.isEmpty() && runningCount < priority.getMaxConcurrency();
+    }
+
+    private void onTaskStarted(long waitTimeInMillis) {
+      runningCount++;
+      startedCount++;
+      totalWaitTimeInMillis += waitTimeInMillis;
+      maxWaitTimeInMillis = Math.max(maxWaitTimeInMillis, waitTimeInMillis);
+    }
+  }
+
+  /**
+   * Usage of a priority at a given time.
+   */
+  public static class Statistics {
+
+    private final int queueDepth;
+    private final int runningCount;
+    private final long startedCount;
+    private final long droppedCount;
+    private final long totalWaitTimeInMillis;
+    private final long maxWaitTimeInMillis;
+
+    Statistics(
+        int queueDepth,
+        int runningCount,
+        long startedCount,
+        long droppedCount,
+        long totalWaitTimeInMillis,
+        long maxWaitTimeInMillis
+    ) {
+      this.queueDepth = queueDepth;
+      this.runningCount = runningCount;
+      this.startedCount = startedCount;
+      this.droppedCount = droppedCount;
+      this.totalWaitTimeInMillis = totalWaitTimeInMillis;
+      this.maxWaitTimeInMillis = maxWaitTimeInMillis;
+    }
+
+    /**
+     * Number of tasks waiting for a worker.
+     */
+    public int getQueueDepth() {
+      return queueDepth;
+    }
+
+    public int getRunningCount() {
+      return runningCount;
+    }
+
+    public long getStartedCount() {
+      return startedCount;
+    }
+
+    /**
+     * Number of tasks dropped or rejected because the queue was full.
+     */
+    public long getDroppedCount() {
+      return droppedCount;
+    }
+
+    /**
+     * Sum of the times spent by the started tasks between their submission and their start.
+     */
+    public long getTotalWaitTimeInMillis() {
+      return totalWaitTimeInMillis;
+    }
+
+    public long getMaxWaitTimeInMillis() {
+      return maxWaitTimeInMillis;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent;
+
+/**
+ * Class of the tasks executed by the {@link PriorityExecutor}, from the most to the least urgent.
+ * <p>
+ * Each class has its own queue. Some classes are also limited in how many threads they can occupy
+ * at once, so a burst of them cannot delay the more urgent ones.
+ */
+public enum TaskPriority {
+
+  /**
+   * Bid requests and what they depend on, such as the remote config: a publisher is waiting for
+   * them to fill an ad slot.
+   */
+  BID(Integer.MAX_VALUE, Integer.MAX_VALUE),
+
+  /**
+   * Creative downloads and impression pixels: a displayed ad depends on them. This is the class of
+   * the tasks not declaring any priority.
+   */
+  DISPLAY(Integer.MAX_VALUE, Integer.MAX_VALUE),
+
+  /**
+   * CSM, remote logs and app events. Those can be delayed, and even dropped under load.
+   */
+  TELEMETRY(64, 2);
+
+  private final int queueCapacity;
+  private final int maxConcurrency;
+
+  TaskPriority(int queueCapacity, int maxConcurrency) {
+    this.queueCapacity = queueCapacity;
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  /**
+   * Maximum number of tasks of this class waiting for a thread. Tasks submitted while the queue is
+   * full are dropped.
+   * <p>
+   * The queues of bids and displays are not bounded: a publisher or a user is waiting for those
+   * tasks, and their callers have no way to retry them. They cannot grow without bounds anyway, as
+   * they follow the ad requests of the publisher.
+   */
+  int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  /**
+   * Maximum number of tasks of this class running at the same time.
+   */
+  int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+}
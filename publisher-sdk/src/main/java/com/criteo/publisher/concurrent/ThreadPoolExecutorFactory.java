@@ -16,27 +16,30 @@
 
 package com.criteo.publisher.concurrent;
 
-import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
+import com.criteo.publisher.Clock;
 import com.criteo.publisher.DependencyProvider.Factory;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.RejectedExecutionHandler;
-import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-public class ThreadPoolExecutorFactory implements Factory<ThreadPoolExecutor> {
+public class ThreadPoolExecutorFactory implements Factory<PriorityExecutor> {
 
   /**
    * These constants were taken from the default {@link android.os.AsyncTask} configuration as of
    * API level 29.
    */
-  private static final int CORE_POOL_SIZE = 1;
   private static final int MAXIMUM_POOL_SIZE = 20;
-  private static final int BACKUP_POOL_SIZE = 5;
   private static final int KEEP_ALIVE_SECONDS = 3;
 
+  @NonNull
+  private final Clock clock;
+
+  public ThreadPoolExecutorFactory(@NonNull Clock clock) {
+    this.clock = clock;
+  }
+
   /**
    * Create new thread pools independent from the {@linkplain android.os.AsyncTask#THREAD_POOL_EXECUTOR
    * Android one}.
@@ -46,46 +49,24 @@ public class ThreadPoolExecutorFactory implements Factory<ThreadPoolExecutor> {
    *   <li>Tasks are IO bounds</li>
    *   <li>Tasks are independent, this means that a long task should not limit another one</li>
    *   <li>There is a burst of tasks at the initialization of the SDK</li>
+   *   <li>Bid requests should not wait behind less urgent tasks, see {@link TaskPriority}</li>
    * </ul>
    */
   @NonNull
   @Override
-  public ThreadPoolExecutor create() {
+  public PriorityExecutor create() {
+    // The priority executor never starts more workers than the pool size, so the queue of the pool
+    // only holds workers waiting for an idle thread to pick them.
     ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
-        CORE_POOL_SIZE,
+        MAXIMUM_POOL_SIZE,
         MAXIMUM_POOL_SIZE,
         KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
-        new SynchronousQueue<>(),
+        new LinkedBlockingQueue<>(),
         Executors.defaultThreadFactory()
     );
+    threadPoolExecutor.allowCoreThreadTimeOut(true);
 
-    threadPoolExecutor.setRejectedExecutionHandler(new BackupExecutionHandler());
-
-    return threadPoolExecutor;
-  }
-
-  private static class BackupExecutionHandler implements RejectedExecutionHandler {
-
-    @GuardedBy("this")
-    private ThreadPoolExecutor backupExecutor;
-
-    @Override
-    public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
-      // As a last ditch fallback, run it on an executor with an unbounded queue.
-      // Create this executor lazily, hopefully almost never.
-      synchronized (this) {
-        if (backupExecutor == null) {
-          backupExecutor = new ThreadPoolExecutor(
-              BACKUP_POOL_SIZE,
-              BACKUP_POOL_SIZE,
-              KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
-              new LinkedBlockingQueue<>(),
-              Executors.defaultThreadFactory());
-        }
-      }
-
-      backupExecutor.execute(r);
-    }
+    return new PriorityExecutor(threadPoolExecutor, MAXIMUM_POOL_SIZE, clock);
   }
 
 }
@@ -51,6 +51,22 @@ internal class ConnectionTypeFetcher(
     }
   }
 
+  /**
+   * Indicate if the device currently has a connected network. If this is unknown, the device is assumed connected.
+   */
+  @Suppress("DEPRECATION")
+  fun isConnected(): Boolean {
+    val connectivityManager = context.getSystemService(Context.CONNECTIVITY_SERVICE)
+        as? ConnectivityManager ?: return true
+
+    return try {
+      connectivityManager.activeNetworkInfo?.isConnected == true
+    } catch (e: LinkageError) {
+      logger.debug("Deprecated way to get the network state is not available", e)
+      true
+    }
+  }
+
   @RequiresApi(Build.VERSION_CODES.M)
   private fun fetchNewDeviceConnectionType(connectivityManager: ConnectivityManager): ConnectionType? {
     val network = connectivityManager.activeNetwork
@@ -65,6 +65,11 @@ internal class ContextProvider(
     return connectionTypeFetcher.fetchConnectionType()?.openRtbValue
   }
 
+  /**
+   * Indicate if the device has no connected network, so network calls cannot reach any endpoint.
+   */
+  fun isOffline(): Boolean = !connectionTypeFetcher.isConnected()
+
   /**
    * OpenRTB field: `user.geo.country`
    *
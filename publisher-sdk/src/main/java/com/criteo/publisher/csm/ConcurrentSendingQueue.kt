@@ -44,6 +44,8 @@ internal interface ConcurrentSendingQueue<T> {
   /**
    * Return the size in bytes of all elements stored in this queue.
    *
+   * This is read each time a batch of the queue may be sent, so it should be cheap to get.
+   *
    * @return total size in bytes of stored elements
    */
   val totalSize: Int
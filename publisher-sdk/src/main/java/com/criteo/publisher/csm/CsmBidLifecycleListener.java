@@ -20,6 +20,8 @@ import androidx.annotation.NonNull;
 import com.criteo.publisher.Clock;
 import com.criteo.publisher.SafeRunnable;
 import com.criteo.publisher.bid.BidLifecycleListener;
+import com.criteo.publisher.concurrent.PrioritizedRunnable;
+import com.criteo.publisher.concurrent.TaskPriority;
 import com.criteo.publisher.csm.MetricRepository.MetricUpdater;
 import com.criteo.publisher.model.CacheAdUnit;
 import com.criteo.publisher.model.CdbRequest;
@@ -86,7 +88,7 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
+    executeTelemetryTask(new SafeRunnable() {
       @Override
       public void runSafely() {
         sendingQueueProducer.pushAllInQueue(repository);
@@ -106,7 +108,7 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
+    executeTelemetryTask(new SafeRunnable() {
       @Override
       public void runSafely() {
         long currentTimeInMillis = clock.getCurrentTimeInMillis();
@@ -143,7 +145,7 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
+    executeTelemetryTask(new SafeRunnable() {
       @Override
       public void runSafely() {
         long currentTimeInMillis = clock.getCurrentTimeInMillis();
@@ -190,7 +192,7 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
+    executeTelemetryTask(new SafeRunnable() {
       @Override
       public void runSafely() {
         // InterruptedIOException was thrown in older versions of Okio
@@ -240,7 +242,7 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
+    executeTelemetryTask(new SafeRunnable() {
       @Override
       public void runSafely() {
         String impressionId = consumedBid.getImpressionId();
@@ -264,13 +266,42 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
     });
   }
 
+  /**
+   * On bid discard, the metric associated to the bid is flagged as ready to send.
+   * <p>
+   * The bid was evicted or replaced before reaching the user, so no elapsed timestamp is marked,
+   * even if the bid was not expired.
+   *
+   * @param adUnit ad unit representing the bid
+   * @param discardedBid bid that was discarded
+   */
+  @Override
+  public void onBidDiscarded(@NonNull CacheAdUnit adUnit, @NonNull CdbResponseSlot discardedBid) {
+    if (isCsmDisabled()) {
+      return;
+    }
+
+    executeTelemetryTask(new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        String impressionId = discardedBid.getImpressionId();
+        if (impressionId == null) {
+          return;
+        }
+
+        repository.addOrUpdateById(impressionId, builder -> builder.setReadyToSend(true));
+        sendingQueueProducer.pushInQueue(repository, impressionId);
+      }
+    });
+  }
+
   @Override
   public void onBidCached(@NonNull CdbResponseSlot bidCached) {
     if (isCsmDisabled()) {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
+    executeTelemetryTask(new SafeRunnable() {
       @Override
       public void runSafely() {
         String impressionId = bidCached.getImpressionId();
@@ -293,6 +324,10 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
     }
   }
 
+  private void executeTelemetryTask(@NonNull Runnable task) {
+    executor.execute(new PrioritizedRunnable(TaskPriority.TELEMETRY, task));
+  }
+
   private boolean isCsmDisabled() {
     return !config.isCsmEnabled() || !consentData.isConsentGiven();
   }
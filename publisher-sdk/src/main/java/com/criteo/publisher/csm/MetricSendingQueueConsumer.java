@@ -21,36 +21,40 @@ import com.criteo.publisher.model.Config;
 import com.criteo.publisher.network.PubSdkApi;
 import com.criteo.publisher.util.BuildConfigWrapper;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class MetricSendingQueueConsumer {
 
-  @NonNull
-  private final MetricSendingQueue queue;
-
-  @NonNull
-  private final PubSdkApi api;
-
-  @NonNull
-  private final BuildConfigWrapper buildConfigWrapper;
-
   @NonNull
   private final Config config;
 
   @NonNull
-  private final Executor executor;
+  private final SendingQueueFlushScheduler flushScheduler;
 
   public MetricSendingQueueConsumer(
       @NonNull MetricSendingQueue queue,
       @NonNull PubSdkApi api,
       @NonNull BuildConfigWrapper buildConfigWrapper,
       @NonNull Config config,
-      @NonNull Executor executor
+      @NonNull Executor executor,
+      @NonNull ScheduledExecutorService scheduledExecutorService
   ) {
-    this.queue = queue;
-    this.api = api;
-    this.buildConfigWrapper = buildConfigWrapper;
     this.config = config;
-    this.executor = executor;
+
+    // Wait for a full batch before sending it, instead of sending many small ones
+    int flushThresholdInBytes = Math.min(
+        buildConfigWrapper.getCsmBatchSize() * buildConfigWrapper.getEstimatedSizeOfCsmMetric(),
+        buildConfigWrapper.getMaxSizeOfCsmMetricSendingQueue() / 2
+    );
+
+    this.flushScheduler = new SendingQueueFlushScheduler(
+        queue,
+        () -> new MetricSendingTask(queue, api, buildConfigWrapper).run(),
+        flushThresholdInBytes,
+        buildConfigWrapper.getCsmMaxFlushLatencyInMillis(),
+        executor,
+        scheduledExecutorService
+    );
   }
 
   /**
@@ -62,10 +66,26 @@ public class MetricSendingQueueConsumer {
    * The batch is polled from the queue (instead of peeked). Data loss is tolerated if the process
    * is terminated while the batch is being sent to the CSM backed. This is to ensure that the same
    * metric will never be sent to CSM backend twice.
+   * <p>
+   * Calls are coalesced: the batch is only sent once it is full, or after a maximum latency. See
+   * {@link SendingQueueFlushScheduler}.
    */
   public void sendMetricBatch() {
     if (config.isCsmEnabled()) {
-      executor.execute(new MetricSendingTask(queue, api, buildConfigWrapper));
+      flushScheduler.requestSend();
+    }
+  }
+
+  /**
+   * Send asynchronously a new batch of metrics to the CSM backend, without waiting for it to be
+   * full.
+   * <p>
+   * This should be called when the application goes in background, as it may be killed before the
+   * maximum latency is reached.
+   */
+  public void flushMetricBatch() {
+    if (config.isCsmEnabled()) {
+      flushScheduler.flush();
     }
   }
 
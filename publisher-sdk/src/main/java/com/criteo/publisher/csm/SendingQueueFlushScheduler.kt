@@ -0,0 +1,146 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm
+
+import androidx.annotation.GuardedBy
+import com.criteo.publisher.annotation.OpenForTesting
+import com.criteo.publisher.concurrent.PrioritizedRunnable
+import com.criteo.publisher.concurrent.TaskPriority
+import java.util.concurrent.Executor
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Decide when a batch of a [ConcurrentSendingQueue] is sent, so that many triggers result in few sending tasks.
+ *
+ * A batch is sent:
+ * - as soon as the queue holds at least [flushThresholdInBytes],
+ * - at most [maxLatencyInMillis] after a trigger,
+ * - or immediately when [flush] is called, for instance when the application goes in background.
+ *
+ * At most one batch of the queue is in flight at the same time. Triggers received meanwhile are coalesced and handled
+ * once the current batch is sent.
+ */
+@OpenForTesting
+internal class SendingQueueFlushScheduler(
+    private val sendingQueue: ConcurrentSendingQueue<*>,
+    private val sendBatchTask: Runnable,
+    private val flushThresholdInBytes: Int,
+    private val maxLatencyInMillis: Long,
+    private val executor: Executor,
+    private val scheduledExecutorService: ScheduledExecutorService
+) {
+
+  private val lock = Any()
+
+  @GuardedBy("lock")
+  private var isSending = false
+
+  @GuardedBy("lock")
+  private var isFlushRequestedWhileSending = false
+
+  @GuardedBy("lock")
+  private var isSendRequestedWhileSending = false
+
+  @GuardedBy("lock")
+  private var scheduledFlush: ScheduledFuture<*>? = null
+
+  /**
+   * Notify that new elements may be waiting in the queue.
+   *
+   * A batch is sent now if the queue is big enough, else a single flush is scheduled within the max latency.
+   */
+  fun requestSend() {
+    if (sendingQueue.totalSize >= flushThresholdInBytes) {
+      flush()
+      return
+    }
+
+    synchronized(lock) {
+      if (isSending) {
+        isSendRequestedWhileSending = true
+      } else if (scheduledFlush == null) {
+        scheduledFlush = scheduledExecutorService.schedule(
+            Runnable { flush() },
+            maxLatencyInMillis,
+            TimeUnit.MILLISECONDS
+        )
+      }
+    }
+  }
+
+  /**
+   * Send a batch now, or just after the one in flight if any.
+   */
+  fun flush() {
+    synchronized(lock) {
+      scheduledFlush?.cancel(false)
+      scheduledFlush = null
+
+      if (isSending) {
+        isFlushRequestedWhileSending = true
+        return
+      }
+
+      isSending = true
+    }
+
+    val sendingTask = PrioritizedRunnable(
+        TaskPriority.TELEMETRY,
+        Runnable {
+          try {
+            sendBatchTask.run()
+          } finally {
+            onSendEnded()
+          }
+        },
+        Runnable { onSendEnded() }
+    )
+
+    var isSubmitted = false
+    try {
+      executor.execute(sendingTask)
+      isSubmitted = true
+    } finally {
+      if (!isSubmitted) {
+        synchronized(lock) {
+          isSending = false
+        }
+      }
+    }
+  }
+
+  private fun onSendEnded() {
+    val isFlushRequested: Boolean
+    val isSendRequested: Boolean
+
+    synchronized(lock) {
+      isSending = false
+      isFlushRequested = isFlushRequestedWhileSending
+      isSendRequested = isSendRequestedWhileSending
+      isFlushRequestedWhileSending = false
+      isSendRequestedWhileSending = false
+    }
+
+    if (isFlushRequested) {
+      flush()
+    } else if (isSendRequested) {
+      requestSend()
+    }
+  }
+}
@@ -36,6 +36,8 @@ import java.util.List;
 
 class TapeSendingQueue<T> implements ConcurrentSendingQueue<T> {
 
+  private static final int UNKNOWN_SIZE = -1;
+
   @NonNull
   private final Logger logger = LoggerFactory.getLogger(TapeSendingQueue.class);
 
@@ -46,6 +48,12 @@ class TapeSendingQueue<T> implements ConcurrentSendingQueue<T> {
   @GuardedBy("queueLock")
   private ObjectQueue<T> queue;
 
+  /**
+   * Total size of the queue, updated after each change of the queue. It is read without taking the
+   * lock, as the queue is checked on each trigger of its flush.
+   */
+  private volatile int totalSize = UNKNOWN_SIZE;
+
   @Nullable
   private Method usedBytesMethod;
 
@@ -79,6 +87,8 @@ class TapeSendingQueue<T> implements ConcurrentSendingQueue<T> {
       } catch (FileException e) {
         PreconditionsUtil.throwOrLog(e);
         return false;
+      } finally {
+        totalSize = computeTotalSize(queue);
       }
     }
   }
@@ -86,6 +96,10 @@ class TapeSendingQueue<T> implements ConcurrentSendingQueue<T> {
   @NonNull
   @Override
   public List<T> poll(int max) {
+    if (max <= 0) {
+      return new ArrayList<>();
+    }
+
     synchronized (queueLock) {
       ObjectQueue<T> queue = createQueueIfNecessary();
 
@@ -131,38 +145,49 @@ class TapeSendingQueue<T> implements ConcurrentSendingQueue<T> {
         logger.log(onErrorWhenPollingQueueFile(exception));
       }
 
+      totalSize = computeTotalSize(queue);
       return elements;
     }
   }
 
   @Override
   public int getTotalSize() {
-    synchronized (queueLock) {
-      // This size is mainly used to bound this queue. For this, it is not enough to get the size of
-      // the queue file. The file grows in power of 2. Even if it is the real size, then this means
-      // that if the limit is just after a power of 2, then we will have a lot of available space,
-      // but we would not use it. If the limit is just before a power of 2, then we will lose half
-      // the capacity of the queue.
-      // Moreover the file is shrinked after some removal. This is a detail of the implementation.
-      // And even if we make some room in the queue, we will not see it.
-      // There is a usedBytes method in the internal queueFile of the file object queue. This method
-      // is used to get the real size of the queue.
+    int size = totalSize;
+    if (size != UNKNOWN_SIZE) {
+      return size;
+    }
 
-      ObjectQueue<T> queue = createQueueIfNecessary();
+    synchronized (queueLock) {
+      size = computeTotalSize(createQueueIfNecessary());
+      totalSize = size;
+      return size;
+    }
+  }
 
-      if (queue instanceof FileObjectQueue) {
-        try {
-          Method usedBytesMethod = getUsedBytesMethod();
-          QueueFile queueFile = getQueueFile((FileObjectQueue) queue);
-          return (Integer) usedBytesMethod.invoke(queueFile);
-        } catch (Exception e) {
-          PreconditionsUtil.throwOrLog(e);
-        }
+  @GuardedBy("queueLock")
+  private int computeTotalSize(@NonNull ObjectQueue<T> queue) {
+    // This size is mainly used to bound this queue. For this, it is not enough to get the size of
+    // the queue file. The file grows in power of 2. Even if it is the real size, then this means
+    // that if the limit is just after a power of 2, then we will have a lot of available space,
+    // but we would not use it. If the limit is just before a power of 2, then we will lose half
+    // the capacity of the queue.
+    // Moreover the file is shrinked after some removal. This is a detail of the implementation.
+    // And even if we make some room in the queue, we will not see it.
+    // There is a usedBytes method in the internal queueFile of the file object queue. This method
+    // is used to get the real size of the queue.
+
+    if (queue instanceof FileObjectQueue) {
+      try {
+        Method usedBytesMethod = getUsedBytesMethod();
+        QueueFile queueFile = getQueueFile((FileObjectQueue) queue);
+        return (Integer) usedBytesMethod.invoke(queueFile);
+      } catch (Exception e) {
+        PreconditionsUtil.throwOrLog(e);
       }
-
-      // In case of error or in-memory queue, we fallback on estimation
-      return queue.size() * sendingQueueConfiguration.getEstimatedSize();
     }
+
+    // In case of error or in-memory queue, we fallback on estimation
+    return queue.size() * sendingQueueConfiguration.getEstimatedSize();
   }
 
   @NonNull
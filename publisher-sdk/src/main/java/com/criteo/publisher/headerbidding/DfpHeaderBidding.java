@@ -29,9 +29,9 @@ import com.criteo.publisher.model.CdbResponseSlot;
 import com.criteo.publisher.model.nativeads.NativeAssets;
 import com.criteo.publisher.model.nativeads.NativeProduct;
 import com.criteo.publisher.util.AdUnitType;
-import com.criteo.publisher.util.AndroidUtil;
 import com.criteo.publisher.util.DeviceUtil;
 import com.criteo.publisher.util.PreconditionsUtil;
+import com.criteo.publisher.util.ScreenGeometry;
 import com.criteo.publisher.util.TextUtils;
 import com.google.android.gms.ads.admanager.AdManagerAdRequest;
 import com.google.android.gms.ads.admanager.AdManagerAdRequest.Builder;
@@ -67,20 +67,13 @@ public class DfpHeaderBidding implements HeaderBiddingHandler {
 
   private static final String VIDEO = "video";
 
-  @NonNull
-  private final AndroidUtil androidUtil;
-
   @NonNull
   private final DeviceUtil deviceUtil;
 
   @NonNull
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
-  public DfpHeaderBidding(
-      @NonNull AndroidUtil androidUtil,
-      @NonNull DeviceUtil deviceUtil
-  ) {
-    this.androidUtil = androidUtil;
+  public DfpHeaderBidding(@NonNull DeviceUtil deviceUtil) {
     this.deviceUtil = deviceUtil;
   }
 
@@ -170,9 +163,10 @@ public class DfpHeaderBidding implements HeaderBiddingHandler {
    */
   @NonNull
   private String getDfpSizeForFullScreen(@NonNull CdbResponseSlot slot) {
-    boolean isPortrait = androidUtil.getOrientation() == Configuration.ORIENTATION_PORTRAIT;
+    ScreenGeometry screenGeometry = deviceUtil.getScreenGeometry();
+    boolean isPortrait = screenGeometry.getOrientation() == Configuration.ORIENTATION_PORTRAIT;
 
-    if (deviceUtil.isTablet()) {
+    if (screenGeometry.isTablet()) {
       // This dimension are when device is in landscape and should be transposed for portrait.
       int minTabletWidth = 1024;
       int minTabletHeight = 768;
@@ -26,6 +26,7 @@ import com.criteo.publisher.integration.IntegrationLogMessage.onNoDeclaredIntegr
 import com.criteo.publisher.integration.IntegrationLogMessage.onUnknownIntegrationName
 import com.criteo.publisher.logging.LoggerFactory
 import com.criteo.publisher.util.SafeSharedPreferences
+import java.util.concurrent.atomic.AtomicInteger
 
 @OpenForTesting
 class IntegrationRegistry(
@@ -35,6 +36,7 @@ class IntegrationRegistry(
 
   private val safeSharedPreferences = SafeSharedPreferences(sharedPreferences)
   private val logger = LoggerFactory.getLogger(javaClass)
+  private val declarationCount = AtomicInteger()
 
   /**
    * Profile ID used by the SDK, so CDB and the Supply chain can recognize that the request comes
@@ -43,12 +45,23 @@ class IntegrationRegistry(
   val profileId: Int
     get() = readIntegration().profileId
 
+  /**
+   * Version of the declared integration, incremented at each declaration.
+   *
+   * Values derived from [readIntegration] may be kept as long as this version is the same. The detected mediation
+   * adapters are not concerned, as they cannot change at runtime.
+   */
+  val declarationVersion: Int
+    get() = declarationCount.get()
+
   fun declare(integration: Integration) {
     logger.log(onIntegrationDeclared(integration))
 
     sharedPreferences.edit()
         .putString(IntegrationStorageKey, integration.name)
         .apply()
+
+    declarationCount.incrementAndGet()
   }
 
   @Suppress("SwallowedException") // Exception is not really swallowed as the issue get logged
@@ -20,4 +20,12 @@ internal interface LogHandler {
 
   @Throws(Exception::class)
   fun log(tag: String, logMessage: LogMessage)
+
+  /**
+   * Indicate if a message with the given level may be handled by this handler.
+   *
+   * This lets callers skip building expensive messages that would be ignored anyway. By default, every level is
+   * considered loggable.
+   */
+  fun isLoggable(level: Int): Boolean = true
 }
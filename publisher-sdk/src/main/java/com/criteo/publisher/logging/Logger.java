@@ -100,6 +100,24 @@ public class Logger {
     log(new LogMessage(Log.DEBUG, String.format(message, args), null, null));
   }
 
+  /**
+   * Indicate if a message with the given level would be handled by at least one handler.
+   * <p>
+   * This should be used to skip the building of expensive messages, such as rendering of payloads.
+   */
+  public boolean isLoggable(int level) {
+    for (LazyDependency<LogHandler> handler : handlers) {
+      try {
+        if (handler.get().isLoggable(level)) {
+          return true;
+        }
+      } catch (Exception e) {
+        // Handlers that are not available are ignored, like when logging
+      }
+    }
+    return false;
+  }
+
   public void log(@NonNull LogMessage logMessage) {
     int depth = logRecursionDepth.get();
     if (depth > 1) {
@@ -20,6 +20,8 @@ import android.os.Looper
 import androidx.annotation.VisibleForTesting
 import com.criteo.publisher.SafeRunnable
 import com.criteo.publisher.annotation.OpenForTesting
+import com.criteo.publisher.concurrent.PrioritizedRunnable
+import com.criteo.publisher.concurrent.TaskPriority
 import com.criteo.publisher.csm.ConcurrentSendingQueue
 import com.criteo.publisher.logging.RemoteLogRecords.RemoteLogLevel.Companion.fromAndroidLogLevel
 import com.criteo.publisher.model.Config
@@ -35,25 +37,33 @@ internal class RemoteHandler(
     private val consentData: ConsentData
 ) : LogHandler {
   override fun log(tag: String, logMessage: LogMessage) {
-    if (!consentData.isConsentGiven()) {
+    if (!isLoggable(logMessage.level)) {
       return
     }
 
-    fromAndroidLogLevel(logMessage.level)?.takeIf { it >= config.remoteLogLevel } ?: return
     remoteLogRecordsFactory.createLogRecords(logMessage)?.let {
       if (isMainThread()) {
         // Asynchronously post log to avoid doing IO on the main thread
-        executor.execute(object : SafeRunnable() {
+        executor.execute(PrioritizedRunnable(TaskPriority.TELEMETRY, object : SafeRunnable() {
           override fun runSafely() {
             sendingQueue.offer(it)
           }
-        })
+        }))
       } else {
         sendingQueue.offer(it)
       }
     }
   }
 
+  override fun isLoggable(level: Int): Boolean {
+    if (!consentData.isConsentGiven()) {
+      return false
+    }
+
+    val remoteLogLevel = fromAndroidLogLevel(level) ?: return false
+    return remoteLogLevel >= config.remoteLogLevel
+  }
+
   @VisibleForTesting
   internal fun isMainThread(): Boolean {
     return Thread.currentThread() == Looper.getMainLooper()?.thread
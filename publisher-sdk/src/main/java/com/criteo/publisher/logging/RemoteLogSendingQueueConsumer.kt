@@ -19,10 +19,12 @@ package com.criteo.publisher.logging
 import com.criteo.publisher.SafeRunnable
 import com.criteo.publisher.annotation.OpenForTesting
 import com.criteo.publisher.csm.ConcurrentSendingQueue
+import com.criteo.publisher.csm.SendingQueueFlushScheduler
 import com.criteo.publisher.network.PubSdkApi
 import com.criteo.publisher.util.AdvertisingInfo
 import com.criteo.publisher.util.BuildConfigWrapper
 import java.util.concurrent.Executor
+import java.util.concurrent.ScheduledExecutorService
 
 @OpenForTesting
 internal class RemoteLogSendingQueueConsumer(
@@ -30,10 +32,35 @@ internal class RemoteLogSendingQueueConsumer(
     private val api: PubSdkApi,
     private val buildConfigWrapper: BuildConfigWrapper,
     private val advertisingInfo: AdvertisingInfo,
-    private val executor: Executor
+    executor: Executor,
+    scheduledExecutorService: ScheduledExecutorService
 ) {
+
+  private val flushScheduler = SendingQueueFlushScheduler(
+      sendingQueue,
+      Runnable { RemoteLogSendingTask(sendingQueue, api, buildConfigWrapper, advertisingInfo).run() },
+      // The sending queue is smaller than a full batch: flush it before it is full, so logs are not dropped
+      minOf(
+          buildConfigWrapper.remoteLogBatchSize * buildConfigWrapper.estimatedSizeOfRemoteLog,
+          buildConfigWrapper.maxSizeOfRemoteLogSendingQueue / 2
+      ),
+      buildConfigWrapper.remoteLogMaxFlushLatencyInMillis.toLong(),
+      executor,
+      scheduledExecutorService
+  )
+
+  /**
+   * Send asynchronously a batch of logs, once enough logs are waiting or after a maximum latency.
+   */
   fun sendRemoteLogBatch() {
-    executor.execute(RemoteLogSendingTask(sendingQueue, api, buildConfigWrapper, advertisingInfo))
+    flushScheduler.requestSend()
+  }
+
+  /**
+   * Send asynchronously a batch of logs now, for instance before the application is killed.
+   */
+  fun flushRemoteLogBatch() {
+    flushScheduler.flush()
   }
 
   class RemoteLogSendingTask(
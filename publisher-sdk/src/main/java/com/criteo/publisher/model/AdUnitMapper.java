@@ -35,6 +35,8 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class AdUnitMapper {
 
@@ -50,7 +52,14 @@ public class AdUnitMapper {
    * <p>
    * Although, the reason may change over time and it would require a proper study.
    */
-  private static final int CHUNK_SIZE = 8;
+  public static final int CHUNK_SIZE = 8;
+
+  /**
+   * Maximum number of mappings kept by {@link #map(AdUnit)}. Publishers generally have a handful of
+   * ad units, this only protects against ad units created on the fly.
+   */
+  @VisibleForTesting
+  static final int MAX_MAPPED_AD_UNITS = 256;
 
   /**
    * Special size representing a native ad.
@@ -74,6 +83,9 @@ public class AdUnitMapper {
   @NonNull
   private final IntegrationRegistry integrationRegistry;
 
+  @NonNull
+  private final ConcurrentMap<AdUnit, MappedAdUnit> mappedAdUnits = new ConcurrentHashMap<>();
+
   public AdUnitMapper(
       @NonNull DeviceUtil deviceUtil,
       @NonNull IntegrationRegistry integrationRegistry
@@ -115,7 +127,7 @@ public class AdUnitMapper {
         return bannerAdUnit.getSize();
       case CRITEO_INTERSTITIAL:
       case CRITEO_REWARDED:
-        return deviceUtil.getCurrentScreenSize();
+        return deviceUtil.getScreenGeometry().getSize();
       case CRITEO_CUSTOM_NATIVE:
         return NATIVE_SIZE;
       default:
@@ -135,12 +147,45 @@ public class AdUnitMapper {
    * </ul>
    * <p>
    * If the ad unit is not valid, then <code>null</code> is returned instead.
+   * <p>
+   * Mappings are memoized, so a same ad unit always gives the same {@link CacheAdUnit} instance, until
+   * the screen configuration or the declared integration changes.
    *
    * @param adUnit to transform
    * @return internal ad unit representation or <code>null</code> if given ad unit is invalid
    */
   @Nullable
   public CacheAdUnit map(@Nullable AdUnit adUnit) {
+    if (adUnit == null) {
+      return null;
+    }
+
+    // Versions are read before mapping, so a concurrent change only makes the new entry outdated
+    int screenConfigurationVersion = deviceUtil.getScreenConfigurationVersion();
+    int integrationVersion = integrationRegistry.getDeclarationVersion();
+
+    MappedAdUnit mappedAdUnit = mappedAdUnits.get(adUnit);
+    if (mappedAdUnit != null
+        && mappedAdUnit.screenConfigurationVersion == screenConfigurationVersion
+        && mappedAdUnit.integrationVersion == integrationVersion) {
+      return mappedAdUnit.cacheAdUnit;
+    }
+
+    CacheAdUnit cacheAdUnit = mapWithoutCache(adUnit);
+
+    if (mappedAdUnits.size() >= MAX_MAPPED_AD_UNITS) {
+      mappedAdUnits.clear();
+    }
+    mappedAdUnits.put(
+        adUnit,
+        new MappedAdUnit(cacheAdUnit, screenConfigurationVersion, integrationVersion)
+    );
+
+    return cacheAdUnit;
+  }
+
+  @Nullable
+  private CacheAdUnit mapWithoutCache(@NonNull AdUnit adUnit) {
     List<List<CacheAdUnit>> validAdUnits = mapToChunks(Collections.singletonList(adUnit));
     if (validAdUnits.isEmpty() || validAdUnits.get(0).isEmpty()) {
       return null;
@@ -200,4 +245,23 @@ public class AdUnitMapper {
     return chunks;
   }
 
+  private static class MappedAdUnit {
+
+    @Nullable
+    final CacheAdUnit cacheAdUnit;
+
+    final int screenConfigurationVersion;
+
+    final int integrationVersion;
+
+    MappedAdUnit(
+        @Nullable CacheAdUnit cacheAdUnit,
+        int screenConfigurationVersion,
+        int integrationVersion
+    ) {
+      this.cacheAdUnit = cacheAdUnit;
+      this.screenConfigurationVersion = screenConfigurationVersion;
+      this.integrationVersion = integrationVersion;
+    }
+  }
 }
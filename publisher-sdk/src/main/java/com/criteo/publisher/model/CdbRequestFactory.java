@@ -30,6 +30,7 @@ import com.criteo.publisher.integration.IntegrationRegistry;
 import com.criteo.publisher.privacy.UserPrivacyUtil;
 import com.criteo.publisher.util.AdvertisingInfo;
 import com.criteo.publisher.util.BuildConfigWrapper;
+import com.criteo.publisher.util.CompletableFuture;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.IdentityHashMap;
@@ -38,7 +39,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.Future;
 
 public class CdbRequestFactory {
 
@@ -153,7 +153,7 @@ public class CdbRequestFactory {
   }
 
   @NonNull
-  public Future<String> getUserAgent() {
+  public CompletableFuture<String> getUserAgent() {
     return deviceInfo.getUserAgent();
   }
 
@@ -18,12 +18,23 @@ package com.criteo.publisher.model;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import com.criteo.publisher.DependencyProvider;
 import com.criteo.publisher.logging.Logger;
 import com.criteo.publisher.logging.LoggerFactory;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import org.json.JSONArray;
-import org.json.JSONException;
+import java.util.Map;
 import org.json.JSONObject;
 
 public class CdbResponse {
@@ -40,6 +51,12 @@ public class CdbResponse {
   @Nullable
   private final Boolean consentGiven;
 
+  /**
+   * Index of the slots by impression ID, lazily built on the first lookup
+   */
+  @Nullable
+  private volatile Map<String, CdbResponseSlot> slotsByImpressionId;
+
   public CdbResponse(
       @NonNull List<CdbResponseSlot> slots,
       int timeToNextCall,
@@ -50,48 +67,20 @@ public class CdbResponse {
     this.consentGiven = consentGiven;
   }
 
+  /**
+   * Read a response from an already parsed JSON.
+   * <p>
+   * Responses coming from the network should rather be read directly from the stream with the
+   * {@linkplain #typeAdapterFactory() Gson adapter}, so the payload is not copied.
+   */
   @NonNull
   public static CdbResponse fromJson(@NonNull JSONObject json) {
-    Logger logger = LoggerFactory.getLogger(CdbResponse.class);
-
-    int timeToNextCall = 0;
-    List<CdbResponseSlot> slots = new ArrayList<>();
-
-    if (json.has(TIME_TO_NEXT_CALL)) {
-      try {
-        timeToNextCall = json.getInt(TIME_TO_NEXT_CALL);
-      } catch (JSONException ex) {
-        logger.debug("Exception while reading cdb time to next call" + ex.getMessage());
-      }
-    }
-
-    if (json.has(SLOTS)) {
-      JSONArray array = new JSONArray();
-      try {
-        array = json.getJSONArray(SLOTS);
-      } catch (JSONException ex) {
-        logger.debug("Exception while reading slots array", ex);
-      }
-      for (int i = 0; i < array.length(); i++) {
-        try {
-          JSONObject slotStr = array.getJSONObject(i);
-          slots.add(CdbResponseSlot.fromJson(slotStr));
-        } catch (Exception ex) {
-          logger.debug("Exception while reading slot from slots array", ex);
-        }
-      }
-    }
-
-    Boolean consentGiven = null;
-    if (json.has(CONSENT_GIVEN)) {
-      try {
-        consentGiven = json.getBoolean(CONSENT_GIVEN);
-      } catch (JSONException ex) {
-        logger.debug("Exception while reading consentGiven", ex);
-      }
-    }
+    Gson gson = DependencyProvider.getInstance().provideGson();
+    return gson.fromJson(json.toString(), CdbResponse.class);
+  }
 
-    return new CdbResponse(slots, timeToNextCall, consentGiven);
+  public static TypeAdapterFactory typeAdapterFactory() {
+    return new GsonTypeAdapterFactory();
   }
 
   @NonNull
@@ -108,12 +97,24 @@ public class CdbResponse {
 
   @Nullable
   public CdbResponseSlot getSlotByImpressionId(@NonNull String impressionId) {
-    for (CdbResponseSlot slot : slots) {
-      if (impressionId.equals(slot.getImpressionId())) {
-        return slot;
+    return getSlotsByImpressionId().get(impressionId);
+  }
+
+  @NonNull
+  private Map<String, CdbResponseSlot> getSlotsByImpressionId() {
+    // Concurrent callers may build the index twice, but they all build the same one
+    Map<String, CdbResponseSlot> index = slotsByImpressionId;
+    if (index == null) {
+      index = new HashMap<>();
+      for (CdbResponseSlot slot : slots) {
+        String impressionId = slot.getImpressionId();
+        if (impressionId != null && !index.containsKey(impressionId)) {
+          index.put(impressionId, slot);
+        }
       }
+      slotsByImpressionId = index;
     }
-    return null;
+    return index;
   }
 
   @NonNull
@@ -125,4 +126,163 @@ public class CdbResponse {
         ", consentGiven = " + consentGiven +
         '}';
   }
+
+  private static class GsonTypeAdapterFactory implements TypeAdapterFactory {
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      if (type.getRawType() != CdbResponse.class) {
+        return null;
+      }
+
+      return (TypeAdapter<T>) new GsonTypeAdapter(
+          gson.getAdapter(CdbResponseSlot.class),
+          gson.getAdapter(JsonElement.class)
+      );
+    }
+  }
+
+  /**
+   * Read a response in a single pass over the JSON stream.
+   * <p>
+   * Reading is as lenient as it used to be with org.json: invalid top-level values are replaced by
+   * their default, and invalid slots are skipped so they do not make the whole response fail. To
+   * this end, each slot is first read as a small JSON tree before being bound.
+   */
+  private static class GsonTypeAdapter extends TypeAdapter<CdbResponse> {
+
+    private final Logger logger = LoggerFactory.getLogger(CdbResponse.class);
+
+    @NonNull
+    private final TypeAdapter<CdbResponseSlot> slotAdapter;
+
+    @NonNull
+    private final TypeAdapter<JsonElement> jsonElementAdapter;
+
+    GsonTypeAdapter(
+        @NonNull TypeAdapter<CdbResponseSlot> slotAdapter,
+        @NonNull TypeAdapter<JsonElement> jsonElementAdapter
+    ) {
+      this.slotAdapter = slotAdapter;
+      this.jsonElementAdapter = jsonElementAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, CdbResponse value) throws IOException {
+      if (value == null) {
+        out.nullValue();
+        return;
+      }
+
+      out.beginObject();
+      out.name(SLOTS);
+      out.beginArray();
+      for (CdbResponseSlot slot : value.slots) {
+        slotAdapter.write(out, slot);
+      }
+      out.endArray();
+      out.name(TIME_TO_NEXT_CALL).value(value.timeToNextCall);
+      if (value.consentGiven != null) {
+        out.name(CONSENT_GIVEN).value(value.consentGiven);
+      }
+      out.endObject();
+    }
+
+    @Override
+    public CdbResponse read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+
+      int timeToNextCall = 0;
+      List<CdbResponseSlot> slots = new ArrayList<>();
+      Boolean consentGiven = null;
+
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case TIME_TO_NEXT_CALL:
+            timeToNextCall = readTimeToNextCall(in);
+            break;
+          case SLOTS:
+            slots = readSlots(in);
+            break;
+          case CONSENT_GIVEN:
+            consentGiven = readConsentGiven(in);
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+
+      return new CdbResponse(slots, timeToNextCall, consentGiven);
+    }
+
+    private int readTimeToNextCall(@NonNull JsonReader in) throws IOException {
+      JsonToken token = in.peek();
+      if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+        String value = in.nextString();
+        try {
+          return (int) Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+          logger.debug("Exception while reading cdb time to next call", e);
+          return 0;
+        }
+      }
+
+      logger.debug("Unexpected cdb time to next call: %s", token);
+      in.skipValue();
+      return 0;
+    }
+
+    @NonNull
+    private List<CdbResponseSlot> readSlots(@NonNull JsonReader in) throws IOException {
+      List<CdbResponseSlot> slots = new ArrayList<>();
+      if (in.peek() != JsonToken.BEGIN_ARRAY) {
+        logger.debug("Unexpected slots array: %s", in.peek());
+        in.skipValue();
+        return slots;
+      }
+
+      in.beginArray();
+      while (in.hasNext()) {
+        JsonElement slotJson = jsonElementAdapter.read(in);
+        try {
+          CdbResponseSlot slot = slotAdapter.fromJsonTree(slotJson);
+          if (slot != null) {
+            slots.add(slot);
+          }
+        } catch (JsonParseException | IllegalStateException e) {
+          logger.debug("Exception while reading slot from slots array", e);
+        }
+      }
+      in.endArray();
+
+      return slots;
+    }
+
+    @Nullable
+    private Boolean readConsentGiven(@NonNull JsonReader in) throws IOException {
+      JsonToken token = in.peek();
+      if (token == JsonToken.BOOLEAN) {
+        return in.nextBoolean();
+      } else if (token == JsonToken.STRING) {
+        String value = in.nextString();
+        if ("true".equalsIgnoreCase(value)) {
+          return true;
+        } else if ("false".equalsIgnoreCase(value)) {
+          return false;
+        }
+      } else {
+        in.skipValue();
+      }
+
+      logger.debug("Unexpected consentGiven: %s", token);
+      return null;
+    }
+  }
 }
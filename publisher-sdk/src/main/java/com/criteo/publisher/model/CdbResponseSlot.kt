@@ -62,7 +62,11 @@ data class CdbResponseSlot(
     }
   }
 
+  // Delegates are transient so that Gson only (de)serializes the actual properties of the slot
+  @delegate:Transient
   val cpmAsNumber: Double? by lazy { cpm.toDoubleOrNull() }
+
+  @delegate:Transient
   val isNative: Boolean by lazy { nativeAssets != null }
 
   fun isValid(): Boolean {
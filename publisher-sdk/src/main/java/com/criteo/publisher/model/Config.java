@@ -40,6 +40,15 @@ public class Config {
    */
   private static final String CONFIG_STORAGE_KEY = "CriteoCachedConfig";
 
+  /**
+   * Keys in local storage describing the last fetch of the remote config: when it happened, for which request, and the
+   * validator given by the server.
+   */
+  private static final String CONFIG_FETCH_TIME_STORAGE_KEY = "CriteoCachedConfigFetchTime";
+  private static final String CONFIG_REQUEST_KEY_STORAGE_KEY = "CriteoCachedConfigRequestKey";
+  private static final String CONFIG_ENTITY_TAG_STORAGE_KEY = "CriteoCachedConfigEntityTag";
+  private static final char REQUEST_KEY_SEPARATOR = '|';
+
   public static class DefaultConfig {
 
     public static final boolean KILL_SWITCH = false;
@@ -52,6 +61,22 @@ public class Config {
     public static final int LIVE_BIDDING_TIME_BUDGET_IN_MILLIS = 8_000;
     public static final boolean PREFETCH_ON_INIT_ENABLED = true;
     public static final RemoteLogLevel REMOTE_LOG_LEVEL = RemoteLogLevel.WARNING;
+    public static final int BID_CACHE_DEPTH = 1;
+    public static final int MAX_BID_CACHE_DEPTH = 5;
+    public static final boolean PREDICTIVE_REFILL_ENABLED = false;
+    public static final int BID_REQUEST_COALESCING_WINDOW_IN_MILLIS = 0;
+    public static final int MAX_BID_REQUEST_COALESCING_WINDOW_IN_MILLIS = 200;
+    public static final int LIVE_BIDDING_MIN_TIME_BUDGET_IN_MILLIS = LIVE_BIDDING_TIME_BUDGET_IN_MILLIS;
+    public static final boolean CDB_REQUEST_COMPRESSION_ENABLED = false;
+    public static final boolean CSM_REQUEST_COMPRESSION_ENABLED = false;
+    public static final boolean REMOTE_LOGS_REQUEST_COMPRESSION_ENABLED = false;
+    public static final int REQUEST_COMPRESSION_MIN_SIZE_IN_BYTES = 1024;
+    public static final boolean ASYNC_BID_REQUEST_ENABLED = false;
+    public static final int CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+    public static final boolean CONNECTION_PREWARMING_ENABLED = false;
+    public static final int MAX_CREATIVE_SIZE_IN_BYTES = 2 * 1024 * 1024;
+    public static final int REMOTE_CONFIG_MAX_AGE_IN_SECONDS = 0;
+    public static final boolean OK_HTTP_TRANSPORT_ENABLED = false;
 
   }
 
@@ -60,9 +85,14 @@ public class Config {
   // NOTE: This entire object is not at all thread-safe, but except the kill switch, other config
   //  are only accessed at display time. As they are only updated during SDK init, before any bids
   //  are registered. Then we may consider that, by usage, this object is thread-safe.
-  @NonNull
+  //  The persisted config is only read on first use, or when it is preloaded during the SDK init,
+  //  so that creating this object does not touch the disk.
+  @Nullable
   private volatile RemoteConfigResponse cachedRemoteConfig;
 
+  @NonNull
+  private final Object loadLock = new Object();
+
   @Nullable
   private final SharedPreferences sharedPreferences;
 
@@ -84,7 +114,31 @@ public class Config {
   ) {
     this.sharedPreferences = sharedPreferences;
     this.jsonSerializer = jsonSerializer;
-    this.cachedRemoteConfig = readConfigOrEmpty();
+  }
+
+  /**
+   * Read the persisted config now, so that the first access to it does not have to.
+   * <p>
+   * This reads the disk and is expected to be called from a worker thread. Calling it more than
+   * once has no effect.
+   */
+  public void preload() {
+    getRemoteConfig();
+  }
+
+  @NonNull
+  private RemoteConfigResponse getRemoteConfig() {
+    RemoteConfigResponse remoteConfig = cachedRemoteConfig;
+    if (remoteConfig != null) {
+      return remoteConfig;
+    }
+
+    synchronized (loadLock) {
+      if (cachedRemoteConfig == null) {
+        cachedRemoteConfig = readConfigOrEmpty();
+      }
+      return cachedRemoteConfig;
+    }
   }
 
   @NonNull
@@ -156,13 +210,181 @@ public class Config {
         getOrElse(
             overrideRemoteConfig.getRemoteLogLevel(),
             baseRemoteConfig.getRemoteLogLevel()
+        ),
+        getOrElse(
+            overrideRemoteConfig.getBidCacheDepth(),
+            baseRemoteConfig.getBidCacheDepth()
+        ),
+        getOrElse(
+            overrideRemoteConfig.getPredictiveRefillEnabled(),
+            baseRemoteConfig.getPredictiveRefillEnabled()
+        ),
+        getOrElse(
+            overrideRemoteConfig.getBidRequestCoalescingWindowInMillis(),
+            baseRemoteConfig.getBidRequestCoalescingWindowInMillis()
+        ),
+        getOrElse(
+            overrideRemoteConfig.getLiveBiddingMinTimeBudgetInMillis(),
+            baseRemoteConfig.getLiveBiddingMinTimeBudgetInMillis()
+        ),
+        getOrElse(
+            overrideRemoteConfig.getCdbRequestCompressionEnabled(),
+            baseRemoteConfig.getCdbRequestCompressionEnabled()
+        ),
+        getOrElse(
+            overrideRemoteConfig.getCsmRequestCompressionEnabled(),
+            baseRemoteConfig.getCsmRequestCompressionEnabled()
+        ),
+        getOrElse(
+            overrideRemoteConfig.getRemoteLogsRequestCompressionEnabled(),
+            baseRemoteConfig.getRemoteLogsRequestCompressionEnabled()
+        ),
+        getOrElse(
+            overrideRemoteConfig.getRequestCompressionMinSizeInBytes(),
+            baseRemoteConfig.getRequestCompressionMinSizeInBytes()
+        ),
+        getOrElse(
+            overrideRemoteConfig.getAsyncBidRequestEnabled(),
+            baseRemoteConfig.getAsyncBidRequestEnabled()
+        ),
+        getOrElse(
+            overrideRemoteConfig.getCircuitBreakerFailureThreshold(),
+            baseRemoteConfig.getCircuitBreakerFailureThreshold()
+        ),
+        getOrElse(
+            overrideRemoteConfig.getConnectionPrewarmingEnabled(),
+            baseRemoteConfig.getConnectionPrewarmingEnabled()
+        ),
+        getOrElse(
+            overrideRemoteConfig.getMaxCreativeSizeInBytes(),
+            baseRemoteConfig.getMaxCreativeSizeInBytes()
+        ),
+        getOrElse(
+            overrideRemoteConfig.getRemoteConfigMaxAgeInSeconds(),
+            baseRemoteConfig.getRemoteConfigMaxAgeInSeconds()
+        ),
+        getOrElse(
+            overrideRemoteConfig.getOkHttpTransportEnabled(),
+            baseRemoteConfig.getOkHttpTransportEnabled()
         )
     );
   }
 
   public void refreshConfig(@NonNull RemoteConfigResponse response) {
-    cachedRemoteConfig = mergeRemoteConfig(cachedRemoteConfig, response);
-    persistRemoteConfig(cachedRemoteConfig);
+    RemoteConfigResponse remoteConfig = getRemoteConfig();
+    RemoteConfigResponse mergedRemoteConfig = mergeRemoteConfig(remoteConfig, response);
+    if (mergedRemoteConfig.equals(remoteConfig)) {
+      // Persisted config is already up to date
+      return;
+    }
+
+    cachedRemoteConfig = mergedRemoteConfig;
+    persistRemoteConfig(mergedRemoteConfig);
+  }
+
+  /**
+   * Indicate if the remote config was fetched for the given request recently enough to be reused without fetching it
+   * again.
+   */
+  public boolean isRemoteConfigFresh(@NonNull RemoteConfigRequest request, long nowInMillis) {
+    int maxAgeInSeconds = getRemoteConfigMaxAgeInSeconds();
+    if (sharedPreferences == null || maxAgeInSeconds <= 0) {
+      return false;
+    }
+
+    SafeSharedPreferences safeSharedPreferences = new SafeSharedPreferences(sharedPreferences);
+    String requestKey = safeSharedPreferences.getString(CONFIG_REQUEST_KEY_STORAGE_KEY, null);
+    if (!getRequestKey(request).equals(requestKey)) {
+      // Remote config depends on the request, for instance on the SDK version
+      return false;
+    }
+
+    long fetchTimeInMillis = safeSharedPreferences.getLong(CONFIG_FETCH_TIME_STORAGE_KEY, -1);
+    long ageInMillis = nowInMillis - fetchTimeInMillis;
+    return fetchTimeInMillis >= 0 && ageInMillis >= 0 && ageInMillis < maxAgeInSeconds * 1000L;
+  }
+
+  /**
+   * Return the validator given by the server with the remote config in use, or <code>null</code> if there is none.
+   */
+  @Nullable
+  public String getRemoteConfigEntityTag() {
+    if (sharedPreferences == null) {
+      return null;
+    }
+
+    SafeSharedPreferences safeSharedPreferences = new SafeSharedPreferences(sharedPreferences);
+    return safeSharedPreferences.getString(CONFIG_ENTITY_TAG_STORAGE_KEY, null);
+  }
+
+  /**
+   * Remember that the remote config was fetched, or confirmed as not modified, by the server.
+   * <p>
+   * When the request and the validator did not change, as for a remote config that is not modified, only the fetch time
+   * is written.
+   *
+   * @param entityTag validator of the remote config in use, or <code>null</code> if there is none
+   */
+  public void onRemoteConfigFetched(
+      @NonNull RemoteConfigRequest request,
+      @Nullable String entityTag,
+      long nowInMillis
+  ) {
+    if (sharedPreferences == null) {
+      return;
+    }
+
+    SafeSharedPreferences safeSharedPreferences = new SafeSharedPreferences(sharedPreferences);
+    String requestKey = getRequestKey(request);
+    boolean isRequestKeyUnchanged = requestKey.equals(
+        safeSharedPreferences.getString(CONFIG_REQUEST_KEY_STORAGE_KEY, null)
+    );
+    boolean isEntityTagUnchanged = entityTag == null
+        ? !sharedPreferences.contains(CONFIG_ENTITY_TAG_STORAGE_KEY)
+        : entityTag.equals(safeSharedPreferences.getString(CONFIG_ENTITY_TAG_STORAGE_KEY, null));
+
+    Editor editor = sharedPreferences.edit();
+    editor.putLong(CONFIG_FETCH_TIME_STORAGE_KEY, nowInMillis);
+    if (isRequestKeyUnchanged && isEntityTagUnchanged) {
+      editor.apply();
+      return;
+    }
+
+    editor.putString(CONFIG_REQUEST_KEY_STORAGE_KEY, requestKey);
+    if (entityTag == null) {
+      editor.remove(CONFIG_ENTITY_TAG_STORAGE_KEY);
+    } else {
+      editor.putString(CONFIG_ENTITY_TAG_STORAGE_KEY, entityTag);
+    }
+    editor.apply();
+  }
+
+  /**
+   * Remember that the last fetch of the remote config failed. The validator of the remote config in use is forgotten,
+   * so the next fetch is unconditional, in case the failure comes from a validator that the server does not handle.
+   */
+  public void onRemoteConfigFetchFailed() {
+    if (sharedPreferences == null) {
+      return;
+    }
+
+    sharedPreferences.edit()
+        .remove(CONFIG_ENTITY_TAG_STORAGE_KEY)
+        .apply();
+  }
+
+  /**
+   * Key identifying the given request, made of all its fields. Unlike its hash code, two different requests cannot
+   * have the same key.
+   */
+  @NonNull
+  private static String getRequestKey(@NonNull RemoteConfigRequest request) {
+    return request.getCriteoPublisherId()
+        + REQUEST_KEY_SEPARATOR + request.getBundleId()
+        + REQUEST_KEY_SEPARATOR + request.getSdkVersion()
+        + REQUEST_KEY_SEPARATOR + request.getProfileId()
+        + REQUEST_KEY_SEPARATOR + request.getDeviceId()
+        + REQUEST_KEY_SEPARATOR + request.getDeviceOs();
   }
 
   private void persistRemoteConfig(@NonNull RemoteConfigResponse response) {
@@ -191,7 +413,7 @@ public class Config {
 
   public boolean isKillSwitchEnabled() {
     return getOrElse(
-        cachedRemoteConfig.getKillSwitch(),
+        getRemoteConfig().getKillSwitch(),
         DefaultConfig.KILL_SWITCH
     );
   }
@@ -202,7 +424,7 @@ public class Config {
    */
   public boolean isCsmEnabled() {
     return getOrElse(
-        cachedRemoteConfig.getCsmEnabled(),
+        getRemoteConfig().getCsmEnabled(),
         DefaultConfig.CSM_ENABLED
     );
   }
@@ -212,7 +434,7 @@ public class Config {
    */
   public boolean isLiveBiddingEnabled() {
     return getOrElse(
-        cachedRemoteConfig.getLiveBiddingEnabled(),
+        getRemoteConfig().getLiveBiddingEnabled(),
         DefaultConfig.LIVE_BIDDING_ENABLED
     );
   }
@@ -224,7 +446,7 @@ public class Config {
    */
   public int getLiveBiddingTimeBudgetInMillis() {
     return getOrElse(
-        cachedRemoteConfig.getLiveBiddingTimeBudgetInMillis(),
+        getRemoteConfig().getLiveBiddingTimeBudgetInMillis(),
         DefaultConfig.LIVE_BIDDING_TIME_BUDGET_IN_MILLIS
     );
   }
@@ -234,7 +456,7 @@ public class Config {
    */
   public boolean isPrefetchOnInitEnabled() {
     return getOrElse(
-        cachedRemoteConfig.getPrefetchOnInitEnabled(),
+        getRemoteConfig().getPrefetchOnInitEnabled(),
         DefaultConfig.PREFETCH_ON_INIT_ENABLED
     );
   }
@@ -242,7 +464,7 @@ public class Config {
   @NonNull
   public String getDisplayUrlMacro() {
     return getOrElse(
-        cachedRemoteConfig.getAndroidDisplayUrlMacro(),
+        getRemoteConfig().getAndroidDisplayUrlMacro(),
         DefaultConfig.DISPLAY_URL_MACRO
     );
   }
@@ -250,7 +472,7 @@ public class Config {
   @NonNull
   public String getAdTagUrlMode() {
     return getOrElse(
-        cachedRemoteConfig.getAndroidAdTagUrlMode(),
+        getRemoteConfig().getAndroidAdTagUrlMode(),
         DefaultConfig.AD_TAG_URL_MODE
     );
   }
@@ -258,7 +480,7 @@ public class Config {
   @NonNull
   public String getAdTagDataMacro() {
     return getOrElse(
-        cachedRemoteConfig.getAndroidAdTagDataMacro(),
+        getRemoteConfig().getAndroidAdTagDataMacro(),
         DefaultConfig.AD_TAG_DATA_MACRO
     );
   }
@@ -266,7 +488,7 @@ public class Config {
   @NonNull
   public String getAdTagDataMode() {
     return getOrElse(
-        cachedRemoteConfig.getAndroidAdTagDataMode(),
+        getRemoteConfig().getAndroidAdTagDataMode(),
         DefaultConfig.AD_TAG_DATA_MODE
     );
   }
@@ -274,9 +496,168 @@ public class Config {
   @NonNull
   public RemoteLogLevel getRemoteLogLevel() {
     return getOrElse(
-        cachedRemoteConfig.getRemoteLogLevel(),
+        getRemoteConfig().getRemoteLogLevel(),
         DefaultConfig.REMOTE_LOG_LEVEL
     );
   }
 
+  /**
+   * Return the maximum number of bids kept in cache for a single ad unit.
+   * <p>
+   * The value is always between 1 and {@link DefaultConfig#MAX_BID_CACHE_DEPTH}.
+   */
+  public int getBidCacheDepth() {
+    int bidCacheDepth = getOrElse(
+        getRemoteConfig().getBidCacheDepth(),
+        DefaultConfig.BID_CACHE_DEPTH
+    );
+
+    return Math.max(1, Math.min(bidCacheDepth, DefaultConfig.MAX_BID_CACHE_DEPTH));
+  }
+
+  /**
+   * Return <code>true</code> to indicate if the predictive refill of the bid cache is enabled, <code>false</code>
+   * otherwise.
+   */
+  public boolean isPredictiveRefillEnabled() {
+    return getOrElse(
+        getRemoteConfig().getPredictiveRefillEnabled(),
+        DefaultConfig.PREDICTIVE_REFILL_ENABLED
+    );
+  }
+
+  /**
+   * Return the duration in milliseconds during which bid requests for the cache are held to be merged together, or
+   * <code>0</code> if requests should not be coalesced.
+   * <p>
+   * The value is always between 0 and {@link DefaultConfig#MAX_BID_REQUEST_COALESCING_WINDOW_IN_MILLIS}.
+   */
+  public int getBidRequestCoalescingWindowInMillis() {
+    int window = getOrElse(
+        getRemoteConfig().getBidRequestCoalescingWindowInMillis(),
+        DefaultConfig.BID_REQUEST_COALESCING_WINDOW_IN_MILLIS
+    );
+
+    return Math.max(0, Math.min(window, DefaultConfig.MAX_BID_REQUEST_COALESCING_WINDOW_IN_MILLIS));
+  }
+
+  /**
+   * Return the lower bound of the time budget allocated to the SDK to answer bids to the publisher. The effective time
+   * budget is adapted to the observed CDB latency, between this value and {@link #getLiveBiddingTimeBudgetInMillis()}.
+   * <p>
+   * The value is never greater than {@link #getLiveBiddingTimeBudgetInMillis()}, so by default the time budget is not
+   * adapted.
+   */
+  public int getLiveBiddingMinTimeBudgetInMillis() {
+    int minTimeBudget = getOrElse(
+        getRemoteConfig().getLiveBiddingMinTimeBudgetInMillis(),
+        DefaultConfig.LIVE_BIDDING_MIN_TIME_BUDGET_IN_MILLIS
+    );
+
+    return Math.max(0, Math.min(minTimeBudget, getLiveBiddingTimeBudgetInMillis()));
+  }
+
+  /**
+   * Return <code>true</code> to indicate if CDB bid requests should be compressed with gzip, <code>false</code> otherwise.
+   */
+  public boolean isCdbRequestCompressionEnabled() {
+    return getOrElse(
+        getRemoteConfig().getCdbRequestCompressionEnabled(),
+        DefaultConfig.CDB_REQUEST_COMPRESSION_ENABLED
+    );
+  }
+
+  /**
+   * Return <code>true</code> to indicate if CSM batches should be compressed with gzip, <code>false</code> otherwise.
+   */
+  public boolean isCsmRequestCompressionEnabled() {
+    return getOrElse(
+        getRemoteConfig().getCsmRequestCompressionEnabled(),
+        DefaultConfig.CSM_REQUEST_COMPRESSION_ENABLED
+    );
+  }
+
+  /**
+   * Return <code>true</code> to indicate if remote log batches should be compressed with gzip, <code>false</code> otherwise.
+   */
+  public boolean isRemoteLogsRequestCompressionEnabled() {
+    return getOrElse(
+        getRemoteConfig().getRemoteLogsRequestCompressionEnabled(),
+        DefaultConfig.REMOTE_LOGS_REQUEST_COMPRESSION_ENABLED
+    );
+  }
+
+  /**
+   * Return the size (in bytes) under which request payloads are sent uncompressed.
+   */
+  public int getRequestCompressionMinSizeInBytes() {
+    return Math.max(0, getOrElse(
+        getRemoteConfig().getRequestCompressionMinSizeInBytes(),
+        DefaultConfig.REQUEST_COMPRESSION_MIN_SIZE_IN_BYTES
+    ));
+  }
+
+  /**
+   * Return <code>true</code> to indicate if bid requests are sent asynchronously, <code>false</code> otherwise.
+   */
+  public boolean isAsyncBidRequestEnabled() {
+    return getOrElse(
+        getRemoteConfig().getAsyncBidRequestEnabled(),
+        DefaultConfig.ASYNC_BID_REQUEST_ENABLED
+    );
+  }
+
+  /**
+   * Return the number of consecutive failed calls after which the calls to an endpoint are suspended, or 0 or less if
+   * calls are never suspended.
+   */
+  public int getCircuitBreakerFailureThreshold() {
+    return getOrElse(
+        getRemoteConfig().getCircuitBreakerFailureThreshold(),
+        DefaultConfig.CIRCUIT_BREAKER_FAILURE_THRESHOLD
+    );
+  }
+
+  /**
+   * Return <code>true</code> to indicate if connections are opened at initialization, <code>false</code> otherwise.
+   */
+  public boolean isConnectionPrewarmingEnabled() {
+    return getOrElse(
+        getRemoteConfig().getConnectionPrewarmingEnabled(),
+        DefaultConfig.CONNECTION_PREWARMING_ENABLED
+    );
+  }
+
+  /**
+   * Return the maximum size of a downloaded creative, or 0 or less if there is no limit.
+   */
+  public int getMaxCreativeSizeInBytes() {
+    return getOrElse(
+        getRemoteConfig().getMaxCreativeSizeInBytes(),
+        DefaultConfig.MAX_CREATIVE_SIZE_IN_BYTES
+    );
+  }
+
+  /**
+   * Return the time during which a fetched remote config is reused without being fetched again, or 0 or less if it is
+   * fetched at each initialization.
+   */
+  public int getRemoteConfigMaxAgeInSeconds() {
+    return getOrElse(
+        getRemoteConfig().getRemoteConfigMaxAgeInSeconds(),
+        DefaultConfig.REMOTE_CONFIG_MAX_AGE_IN_SECONDS
+    );
+  }
+
+  /**
+   * Return <code>true</code> to indicate if the SDK calls go through OkHttp when it is present at runtime,
+   * <code>false</code> otherwise.
+   */
+  public boolean isOkHttpTransportEnabled() {
+    return getOrElse(
+        getRemoteConfig().getOkHttpTransportEnabled(),
+        DefaultConfig.OK_HTTP_TRANSPORT_ENABLED
+    );
+  }
+
 }
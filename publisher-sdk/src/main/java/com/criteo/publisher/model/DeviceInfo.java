@@ -17,9 +17,14 @@
 package com.criteo.publisher.model;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.text.TextUtils;
 import android.webkit.WebView;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.UiThread;
 import androidx.annotation.VisibleForTesting;
 import com.criteo.publisher.SafeRunnable;
@@ -28,11 +33,20 @@ import com.criteo.publisher.logging.Logger;
 import com.criteo.publisher.logging.LoggerFactory;
 import com.criteo.publisher.util.CompletableFuture;
 import com.criteo.publisher.util.PreconditionsUtil;
-import java.util.concurrent.Future;
+import com.criteo.publisher.util.SafeSharedPreferences;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class DeviceInfo {
 
+  /**
+   * User agent resolved during a previous session, valid as long as the WebView and the OS are not
+   * updated. See {@link #computeUserAgentCacheKey()}.
+   */
+  private static final String CACHED_USER_AGENT_STORAGE_KEY = "CriteoCachedUserAgent";
+  private static final String CACHED_USER_AGENT_KEY_STORAGE_KEY = "CriteoCachedUserAgentKey";
+
+  private static final String WEBVIEW_PACKAGE_NAME = "com.google.android.webview";
+
   @NonNull
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -42,32 +56,62 @@ public class DeviceInfo {
   @NonNull
   private final RunOnUiThreadExecutor runOnUiThreadExecutor;
 
+  @NonNull
+  private final SharedPreferences sharedPreferences;
+
+  @NonNull
+  private final SafeSharedPreferences safeSharedPreferences;
+
   @NonNull
   private final CompletableFuture<String> userAgentFuture = new CompletableFuture<>();
 
   @NonNull
   private final AtomicBoolean isInitialized = new AtomicBoolean(false);
 
-  public DeviceInfo(@NonNull Context context, @NonNull RunOnUiThreadExecutor runOnUiThreadExecutor) {
+  public DeviceInfo(
+      @NonNull Context context,
+      @NonNull RunOnUiThreadExecutor runOnUiThreadExecutor,
+      @NonNull SharedPreferences sharedPreferences
+  ) {
     this.context = context;
     this.runOnUiThreadExecutor = runOnUiThreadExecutor;
+    this.sharedPreferences = sharedPreferences;
+    this.safeSharedPreferences = new SafeSharedPreferences(sharedPreferences);
   }
 
   public void initialize() {
+    if (!isInitialized.compareAndSet(false, true)) {
+      return;
+    }
+
+    // A user agent persisted by a previous session avoids building a WebView
+    String userAgentCacheKey = computeUserAgentCacheKey();
+    String cachedUserAgent = readCachedUserAgent(userAgentCacheKey);
+    if (cachedUserAgent != null) {
+      userAgentFuture.complete(cachedUserAgent);
+      return;
+    }
+
     // This needs to be run on UI thread because a WebView is used to fetch the user-agent
     runOnUiThread(new Runnable() {
       @Override
       public void run() {
-        if (isInitialized.compareAndSet(false, true)) {
-          String userAgent = resolveUserAgent();
-          userAgentFuture.complete(userAgent);
-        }
+        String userAgent = resolveUserAgent();
+        userAgentFuture.complete(userAgent);
       }
     });
   }
 
+  /**
+   * Return the user agent of this device.
+   * <p>
+   * The returned future may not be completed yet, as the user agent may have to be resolved on the
+   * UI thread. Work depending on it should be chained with
+   * {@link CompletableFuture#whenComplete(Runnable)} rather than blocking a thread on
+   * {@link CompletableFuture#get()}.
+   */
   @NonNull
-  public Future<String> getUserAgent() {
+  public CompletableFuture<String> getUserAgent() {
     // Initialize automatically so that it's safe to call this method alone.
     initialize();
 
@@ -102,12 +146,61 @@ public class DeviceInfo {
 
     // If we failed to get a WebView UA, try to fall back to a system UA, instead
     if (TextUtils.isEmpty(userAgent)) {
-      userAgent = getDefaultUserAgent();
+      return getDefaultUserAgent();
     }
 
+    // Only the WebView UA is persisted, so a failure is retried on next session
+    persistUserAgent(computeUserAgentCacheKey(), userAgent);
     return userAgent;
   }
 
+  @Nullable
+  private String readCachedUserAgent(@NonNull String userAgentCacheKey) {
+    String cachedKey = safeSharedPreferences.getString(CACHED_USER_AGENT_KEY_STORAGE_KEY, null);
+    if (!userAgentCacheKey.equals(cachedKey)) {
+      return null;
+    }
+
+    String cachedUserAgent = safeSharedPreferences.getString(CACHED_USER_AGENT_STORAGE_KEY, null);
+    return TextUtils.isEmpty(cachedUserAgent) ? null : cachedUserAgent;
+  }
+
+  private void persistUserAgent(@NonNull String userAgentCacheKey, @NonNull String userAgent) {
+    sharedPreferences.edit()
+        .putString(CACHED_USER_AGENT_KEY_STORAGE_KEY, userAgentCacheKey)
+        .putString(CACHED_USER_AGENT_STORAGE_KEY, userAgent)
+        .apply();
+  }
+
+  /**
+   * The WebView user agent only changes when the WebView or the OS are updated, so their versions
+   * identify a persisted user agent.
+   */
+  @NonNull
+  @VisibleForTesting
+  String computeUserAgentCacheKey() {
+    return Build.VERSION.SDK_INT + "/" + Build.FINGERPRINT + "/" + getWebViewVersion();
+  }
+
+  @Nullable
+  private String getWebViewVersion() {
+    PackageInfo webViewPackage = null;
+
+    try {
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+        webViewPackage = WebView.getCurrentWebViewPackage();
+      } else {
+        webViewPackage = context.getPackageManager().getPackageInfo(WEBVIEW_PACKAGE_NAME, 0);
+      }
+    } catch (PackageManager.NameNotFoundException ignored) {
+      // Before Android L, the WebView is part of the OS, which is covered by the build fingerprint
+    } catch (RuntimeException ignored) {
+      // Same as for the WebView UA: the WebView may be missing or being updated
+    }
+
+    return webViewPackage == null ? null : webViewPackage.versionName;
+  }
+
   @UiThread
   private String getWebViewUserAgent() {
     WebView webView = new WebView(context);
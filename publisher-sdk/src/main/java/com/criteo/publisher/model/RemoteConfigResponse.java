@@ -38,7 +38,21 @@ public abstract class RemoteConfigResponse {
       @Nullable Boolean liveBiddingEnabled,
       @Nullable Integer liveBiddingTimeBudgetInMillis,
       @Nullable Boolean prefetchOnInitEnabled,
-      @Nullable RemoteLogLevel remoteLogLevel
+      @Nullable RemoteLogLevel remoteLogLevel,
+      @Nullable Integer bidCacheDepth,
+      @Nullable Boolean predictiveRefillEnabled,
+      @Nullable Integer bidRequestCoalescingWindowInMillis,
+      @Nullable Integer liveBiddingMinTimeBudgetInMillis,
+      @Nullable Boolean cdbRequestCompressionEnabled,
+      @Nullable Boolean csmRequestCompressionEnabled,
+      @Nullable Boolean remoteLogsRequestCompressionEnabled,
+      @Nullable Integer requestCompressionMinSizeInBytes,
+      @Nullable Boolean asyncBidRequestEnabled,
+      @Nullable Integer circuitBreakerFailureThreshold,
+      @Nullable Boolean connectionPrewarmingEnabled,
+      @Nullable Integer maxCreativeSizeInBytes,
+      @Nullable Integer remoteConfigMaxAgeInSeconds,
+      @Nullable Boolean okHttpTransportEnabled
   ) {
     return new AutoValue_RemoteConfigResponse(
         killSwitch,
@@ -50,13 +64,41 @@ public abstract class RemoteConfigResponse {
         liveBiddingEnabled,
         liveBiddingTimeBudgetInMillis,
         prefetchOnInitEnabled,
-        remoteLogLevel
+        remoteLogLevel,
+        bidCacheDepth,
+        predictiveRefillEnabled,
+        bidRequestCoalescingWindowInMillis,
+        liveBiddingMinTimeBudgetInMillis,
+        cdbRequestCompressionEnabled,
+        csmRequestCompressionEnabled,
+        remoteLogsRequestCompressionEnabled,
+        requestCompressionMinSizeInBytes,
+        asyncBidRequestEnabled,
+        circuitBreakerFailureThreshold,
+        connectionPrewarmingEnabled,
+        maxCreativeSizeInBytes,
+        remoteConfigMaxAgeInSeconds,
+        okHttpTransportEnabled
     );
   }
 
   @NonNull
   public static RemoteConfigResponse createEmpty() {
     return create(
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
         null,
         null,
         null,
@@ -82,7 +124,21 @@ public abstract class RemoteConfigResponse {
         getLiveBiddingEnabled(),
         getLiveBiddingTimeBudgetInMillis(),
         getPrefetchOnInitEnabled(),
-        getRemoteLogLevel()
+        getRemoteLogLevel(),
+        getBidCacheDepth(),
+        getPredictiveRefillEnabled(),
+        getBidRequestCoalescingWindowInMillis(),
+        getLiveBiddingMinTimeBudgetInMillis(),
+        getCdbRequestCompressionEnabled(),
+        getCsmRequestCompressionEnabled(),
+        getRemoteLogsRequestCompressionEnabled(),
+        getRequestCompressionMinSizeInBytes(),
+        getAsyncBidRequestEnabled(),
+        getCircuitBreakerFailureThreshold(),
+        getConnectionPrewarmingEnabled(),
+        getMaxCreativeSizeInBytes(),
+        getRemoteConfigMaxAgeInSeconds(),
+        getOkHttpTransportEnabled()
     );
   }
 
@@ -205,4 +261,137 @@ public abstract class RemoteConfigResponse {
    */
   @Nullable
   public abstract RemoteLogLevel getRemoteLogLevel();
+
+  /**
+   * Number of bids the SDK may keep in cache for a single ad unit. When a bid is consumed, the next best one is
+   * directly available while the cache is topped up again in the background.
+   * <p>
+   * If this value is <code>null</code>, then the previous persisted value is taken. If there is no previous value, this
+   * means that this is a fresh start of a new application, then a default value is taken.
+   */
+  @Nullable
+  public abstract Integer getBidCacheDepth();
+
+  /**
+   * Feature flag for activating/deactivating the predictive refill of the bid cache. If set to <code>true</code>, then
+   * bids are fetched ahead of the expected demand of each ad unit, instead of only after a consumption. If the flag is
+   * not present (i.e. equals to <code>null</code>), then the previous persisted value of this flag is taken. If there is
+   * no previous value, this means that this is a fresh start of a new application, then a default value is taken.
+   */
+  @Nullable
+  public abstract Boolean getPredictiveRefillEnabled();
+
+  /**
+   * Duration during which the bid requests sent for the cache are held, so they can be merged into a single CDB call. A
+   * duration of zero or less deactivates the coalescing: each bid request is then sent directly.
+   * <p>
+   * If this value is <code>null</code>, then the previous persisted value is taken. If there is no previous value, this
+   * means that this is a fresh start of a new application, then a default value is taken.
+   */
+  @Nullable
+  public abstract Integer getBidRequestCoalescingWindowInMillis();
+
+  /**
+   * Lower bound of the time budget allocated to the SDK to answer live bids. The time budget is adapted to the observed
+   * CDB latency between this value and {@link #getLiveBiddingTimeBudgetInMillis()}.
+   * <p>
+   * If this value is <code>null</code>, then the previous persisted value is taken. If there is no previous value, this
+   * means that this is a fresh start of a new application, then a default value is taken.
+   */
+  @Nullable
+  public abstract Integer getLiveBiddingMinTimeBudgetInMillis();
+
+  /**
+   * Feature flag for activating/deactivating the gzip compression of the CDB bid requests. If set to <code>true</code>, then
+   * payloads above {@link #getRequestCompressionMinSizeInBytes()} are compressed. If the flag is not present (i.e. equals
+   * to <code>null</code>), then the previous persisted value of this flag is taken. If there is no previous value, this
+   * means that this is a fresh start of a new application, then a default value is taken.
+   */
+  @Nullable
+  public abstract Boolean getCdbRequestCompressionEnabled();
+
+  /**
+   * Feature flag for activating/deactivating the gzip compression of the CSM batches. If set to <code>true</code>, then
+   * payloads above {@link #getRequestCompressionMinSizeInBytes()} are compressed. If the flag is not present (i.e. equals
+   * to <code>null</code>), then the previous persisted value of this flag is taken. If there is no previous value, this
+   * means that this is a fresh start of a new application, then a default value is taken.
+   */
+  @Nullable
+  public abstract Boolean getCsmRequestCompressionEnabled();
+
+  /**
+   * Feature flag for activating/deactivating the gzip compression of the remote log batches. If set to <code>true</code>, then
+   * payloads above {@link #getRequestCompressionMinSizeInBytes()} are compressed. If the flag is not present (i.e. equals
+   * to <code>null</code>), then the previous persisted value of this flag is taken. If there is no previous value, this
+   * means that this is a fresh start of a new application, then a default value is taken.
+   */
+  @Nullable
+  public abstract Boolean getRemoteLogsRequestCompressionEnabled();
+
+  /**
+   * Size (in bytes) under which request payloads are sent uncompressed, even if their compression is activated. Small
+   * payloads do not shrink enough to be worth the compression.
+   * <p>
+   * If this value is <code>null</code>, then the previous persisted value is taken. If there is no previous value, this
+   * means that this is a fresh start of a new application, then a default value is taken.
+   */
+  @Nullable
+  public abstract Integer getRequestCompressionMinSizeInBytes();
+
+  /**
+   * Feature flag for activating/deactivating the asynchronous sending of bid requests. If set to <code>true</code>, then
+   * SDK threads are released while a bid request is in flight, and the response is handled by the HTTP transport. If the
+   * flag is not present (i.e. equals to <code>null</code>), then the previous persisted value of this flag is taken. If
+   * there is no previous value, this means that this is a fresh start of a new application, then a default value is taken.
+   */
+  @Nullable
+  public abstract Boolean getAsyncBidRequestEnabled();
+
+  /**
+   * Number of consecutive failed calls to a CDB endpoint after which the calls to this endpoint are suspended for a
+   * while. A value of 0 or less disables this suspension.
+   * <p>
+   * If this value is <code>null</code>, then the previous persisted value is taken. If there is no previous value, this
+   * means that this is a fresh start of a new application, then a default value is taken.
+   */
+  @Nullable
+  public abstract Integer getCircuitBreakerFailureThreshold();
+
+  /**
+   * Feature flag for activating/deactivating the opening of connections to the SDK hosts at initialization. If set to
+   * <code>true</code>, then the first bid request reuses an already opened connection. If the flag is not present (i.e.
+   * equals to <code>null</code>), then the previous persisted value of this flag is taken. If there is no previous
+   * value, this means that this is a fresh start of a new application, then a default value is taken.
+   */
+  @Nullable
+  public abstract Boolean getConnectionPrewarmingEnabled();
+
+  /**
+   * Maximum size of a downloaded creative. Bigger creatives are not downloaded entirely, and their display fails. A
+   * value of 0 or less removes this limit.
+   * <p>
+   * If this value is <code>null</code>, then the previous persisted value is taken. If there is no previous value, this
+   * means that this is a fresh start of a new application, then a default value is taken.
+   */
+  @Nullable
+  public abstract Integer getMaxCreativeSizeInBytes();
+
+  /**
+   * Time during which a fetched remote config is considered fresh. While it is fresh, the SDK initialization reuses it
+   * without fetching it again. A value of 0 or less fetches the remote config at each initialization.
+   * <p>
+   * If this value is <code>null</code>, then the previous persisted value is taken. If there is no previous value, this
+   * means that this is a fresh start of a new application, then a default value is taken.
+   */
+  @Nullable
+  public abstract Integer getRemoteConfigMaxAgeInSeconds();
+
+  /**
+   * Feature flag for activating/deactivating the OkHttp transport. If set to <code>true</code> and OkHttp is present at
+   * runtime, then the SDK calls go through OkHttp instead of the platform connection. If the flag is not present (i.e.
+   * equals to <code>null</code>), then the previous persisted value of this flag is taken. If there is no previous
+   * value, this means that this is a fresh start of a new application, then a default value is taken.
+   */
+  @Nullable
+  public abstract Boolean getOkHttpTransportEnabled();
 }
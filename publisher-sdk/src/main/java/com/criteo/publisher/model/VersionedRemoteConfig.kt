@@ -0,0 +1,28 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.model
+
+/**
+ * Remote config as fetched from the server.
+ *
+ * @property entityTag validator of this version of the config, given back to the server on the next fetch so it can
+ * answer that the config is not modified. This is `null` if the server did not give any.
+ */
+data class VersionedRemoteConfig(
+    val config: RemoteConfigResponse,
+    val entityTag: String?
+)
@@ -18,6 +18,8 @@ package com.criteo.publisher.model;
 
 import androidx.annotation.NonNull;
 import com.criteo.publisher.DependencyProvider;
+import com.criteo.publisher.concurrent.PrioritizedRunnable;
+import com.criteo.publisher.concurrent.TaskPriority;
 import com.criteo.publisher.network.PubSdkApi;
 import com.criteo.publisher.tasks.InterstitialListenerNotifier;
 import com.criteo.publisher.tasks.WebViewDataTask;
@@ -92,9 +94,16 @@ public class WebViewData {
         this,
         deviceInfo,
         listenerNotifier,
-        api
+        api,
+        config
     );
 
-    threadPoolExecutor.execute(task);
+    // The download only starts once the user agent is known, so it does not block a thread meanwhile
+    deviceInfo.getUserAgent().whenComplete(new Runnable() {
+      @Override
+      public void run() {
+        threadPoolExecutor.execute(new PrioritizedRunnable(TaskPriority.DISPLAY, task));
+      }
+    });
   }
 }
@@ -0,0 +1,163 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network;
+
+import androidx.annotation.NonNull;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.model.CdbRequest;
+import com.criteo.publisher.model.CdbRequestFactory;
+import com.criteo.publisher.model.CdbResponse;
+import com.criteo.publisher.model.CdbResponseSlot;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * CDB call sending its request either on the running thread, or asynchronously so the running
+ * thread is released while the request is in flight.
+ * <p>
+ * In both cases, the given callback is run once when the call ends, after the response or the error
+ * was dispatched, or if the request could not be sent.
+ */
+abstract class AbstractCdbCall extends SafeRunnable {
+
+  @NonNull
+  private final PubSdkApi pubSdkApi;
+
+  @NonNull
+  private final CdbRequestFactory cdbRequestFactory;
+
+  @NonNull
+  private final Clock clock;
+
+  private final boolean isAsync;
+
+  @NonNull
+  private final Runnable onCallEnded;
+
+  @NonNull
+  private final AtomicBoolean isEnded = new AtomicBoolean(false);
+
+  AbstractCdbCall(
+      @NonNull PubSdkApi pubSdkApi,
+      @NonNull CdbRequestFactory cdbRequestFactory,
+      @NonNull Clock clock,
+      boolean isAsync,
+      @NonNull Runnable onCallEnded
+  ) {
+    this.pubSdkApi = pubSdkApi;
+    this.cdbRequestFactory = cdbRequestFactory;
+    this.clock = clock;
+    this.isAsync = isAsync;
+    this.onCallEnded = onCallEnded;
+  }
+
+  @Override
+  public final void runSafely() throws ExecutionException, InterruptedException {
+    boolean isSentAsync = false;
+    try {
+      CdbRequest cdbRequest = createRequest(cdbRequestFactory);
+      // This does not block: the task is only executed once the user agent is known
+      String userAgent = cdbRequestFactory.getUserAgent().get();
+
+      onRequest(cdbRequest);
+
+      if (isAsync) {
+        sendAsync(cdbRequest, userAgent);
+        isSentAsync = true;
+      } else {
+        send(cdbRequest, userAgent);
+      }
+    } finally {
+      if (!isSentAsync) {
+        endCall();
+      }
+    }
+  }
+
+  @NonNull
+  abstract CdbRequest createRequest(@NonNull CdbRequestFactory cdbRequestFactory);
+
+  abstract void onRequest(@NonNull CdbRequest cdbRequest);
+
+  abstract void onResponse(@NonNull CdbRequest cdbRequest, @NonNull CdbResponse cdbResponse);
+
+  abstract void onError(@NonNull CdbRequest cdbRequest, @NonNull Exception exception);
+
+  private void send(@NonNull CdbRequest cdbRequest, @NonNull String userAgent) {
+    try {
+      CdbResponse cdbResponse = pubSdkApi.loadCdb(cdbRequest, userAgent);
+      setTimeOfDownload(cdbResponse);
+      // Ad units are released before the response is handled, so they can be requested again from it
+      endCall();
+      onResponse(cdbRequest, cdbResponse);
+    } catch (Exception e) {
+      onError(cdbRequest, e);
+    }
+  }
+
+  private void sendAsync(@NonNull CdbRequest cdbRequest, @NonNull String userAgent) {
+    pubSdkApi.loadCdbAsync(cdbRequest, userAgent, new PubSdkApi.CdbCallback() {
+      @Override
+      public void onSuccess(@NonNull CdbResponse cdbResponse) {
+        // The callback may run on a thread of the transport, so errors are handled like in the SDK
+        // threads
+        new SafeRunnable() {
+          @Override
+          public void runSafely() {
+            try {
+              setTimeOfDownload(cdbResponse);
+              endCall();
+              onResponse(cdbRequest, cdbResponse);
+            } catch (Exception e) {
+              onError(cdbRequest, e);
+            } finally {
+              endCall();
+            }
+          }
+        }.run();
+      }
+
+      @Override
+      public void onFailure(@NonNull Exception exception) {
+        new SafeRunnable() {
+          @Override
+          public void runSafely() {
+            try {
+              onError(cdbRequest, exception);
+            } finally {
+              endCall();
+            }
+          }
+        }.run();
+      }
+    });
+  }
+
+  private void endCall() {
+    if (isEnded.compareAndSet(false, true)) {
+      onCallEnded.run();
+    }
+  }
+
+  private void setTimeOfDownload(@NonNull CdbResponse cdbResponse) {
+    long instant = clock.getCurrentTimeInMillis();
+    for (CdbResponseSlot slot : cdbResponse.getSlots()) {
+      slot.setTimeOfDownload(instant);
+    }
+  }
+}
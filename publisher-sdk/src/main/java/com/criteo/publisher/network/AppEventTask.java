@@ -79,6 +79,7 @@ public class AppEventTask extends SafeRunnable {
     String gaid = advertisingInfo.getAdvertisingId();
     String appId = mContext.getPackageName();
 
+    // This does not block: the task is only executed once the user agent is known
     String userAgent = deviceInfo.getUserAgent().get();
     JSONObject response = api.postAppEvent(
         SENDER_ID,
@@ -18,19 +18,25 @@ package com.criteo.publisher.network;
 
 import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.criteo.publisher.CdbCallListener;
 import com.criteo.publisher.Clock;
 import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.concurrent.PrioritizedRunnable;
+import com.criteo.publisher.concurrent.TaskPriority;
 import com.criteo.publisher.context.ContextData;
+import com.criteo.publisher.model.AdUnitMapper;
 import com.criteo.publisher.model.CacheAdUnit;
 import com.criteo.publisher.model.CdbRequestFactory;
 import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.RemoteConfigRequest;
 import com.criteo.publisher.model.RemoteConfigRequestFactory;
-import com.criteo.publisher.model.RemoteConfigResponse;
+import com.criteo.publisher.model.VersionedRemoteConfig;
+import com.criteo.publisher.network.CoalescedCdbCall.PendingBidRequest;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -38,6 +44,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class BidRequestSender {
 
@@ -56,23 +64,45 @@ public class BidRequestSender {
   @NonNull
   private final Executor executor;
 
+  @NonNull
+  private final ScheduledExecutorService scheduledExecutorService;
+
+  @NonNull
+  private final Config config;
+
   @NonNull
   @GuardedBy("pendingTasksLock")
   private final Map<CacheAdUnit, Future<?>> pendingTasks;
   private final Object pendingTasksLock = new Object();
 
+  /**
+   * Bid requests held during the current coalescing window, or <code>null</code> if there is no
+   * opened window.
+   */
+  @Nullable
+  @GuardedBy("pendingTasksLock")
+  private List<PendingBidRequest> coalescingRequests;
+
+  @Nullable
+  @GuardedBy("pendingTasksLock")
+  private Future<?> coalescingFlushTask;
+
   public BidRequestSender(
       @NonNull CdbRequestFactory cdbRequestFactory,
       @NonNull RemoteConfigRequestFactory remoteConfigRequestFactory,
       @NonNull Clock clock,
       @NonNull PubSdkApi api,
-      @NonNull Executor executor
+      @NonNull Executor executor,
+      @NonNull ScheduledExecutorService scheduledExecutorService,
+      @NonNull Config config
   ) {
     this.cdbRequestFactory = cdbRequestFactory;
     this.remoteConfigRequestFactory = remoteConfigRequestFactory;
     this.clock = clock;
     this.api = api;
     this.executor = executor;
+    this.scheduledExecutorService = scheduledExecutorService;
+    this.config = config;
     this.pendingTasks = new ConcurrentHashMap<>();
   }
 
@@ -85,12 +115,14 @@ public class BidRequestSender {
    * Asynchronously send a remote config request and update the given config.
    * <p>
    * If no error occurs during the request, the given configuration is updated. Else, it is left
-   * unchanged.
+   * unchanged. No request is sent if the configuration was fetched recently enough, and the server
+   * may answer that it is not modified since its last fetch.
    *
    * @param configToUpdate configuration to update after request
    */
   public void sendRemoteConfigRequest(@NonNull Config configToUpdate) {
-    executor.execute(new RemoteConfigCall(configToUpdate));
+    RemoteConfigCall call = new RemoteConfigCall(configToUpdate);
+    executor.execute(new PrioritizedRunnable(TaskPriority.BID, call));
   }
 
   /**
@@ -102,22 +134,38 @@ public class BidRequestSender {
    * (successful or not). While an ad unit is pending, it cannot be requested again. So if in given
    * ones, some are pending, they will be ignored from the request. If all given ad units are
    * pending, then no call is done and listener is not notified.
+   * <p>
+   * If a {@linkplain Config#getBidRequestCoalescingWindowInMillis() coalescing window} is set, the
+   * request is held until the end of the window, and sent together with the other requests held
+   * meanwhile. Ad units held in a window are also considered as pending. The listener is notified
+   * only about the ad units it requested.
    *
    * @param adUnits ad units to request
    * @param listener listener to notify
+   * @return <code>true</code> if at least one of the ad units is requested, <code>false</code> if
+   * they are all already pending
    */
-  public void sendBidRequest(
+  public boolean sendBidRequest(
       @NonNull List<CacheAdUnit> adUnits,
       @NonNull ContextData contextData,
       @NonNull CdbCallListener listener
   ) {
     List<CacheAdUnit> requestedAdUnits = new ArrayList<>(adUnits);
+    int coalescingWindow = config.getBidRequestCoalescingWindowInMillis();
     FutureTask<Void> task;
 
     synchronized (pendingTasksLock) {
       requestedAdUnits.removeAll(pendingTasks.keySet());
       if (requestedAdUnits.isEmpty()) {
-        return;
+        return false;
+      }
+
+      if (coalescingWindow > 0) {
+        holdInCoalescingWindow(
+            new PendingBidRequest(requestedAdUnits, contextData, listener),
+            coalescingWindow
+        );
+        return true;
       }
 
       task = createCdbCallTask(requestedAdUnits, contextData, listener);
@@ -127,11 +175,36 @@ public class BidRequestSender {
       }
     }
 
+    executeCdbCallTask(task, requestedAdUnits);
+    return true;
+  }
+
+  /**
+   * Execute the given task once the user agent is known, so it never blocks a thread while the user
+   * agent is resolved on the UI thread.
+   */
+  private void executeCdbCallTask(
+      @NonNull FutureTask<Void> task,
+      @NonNull List<CacheAdUnit> requestedAdUnits
+  ) {
+    cdbRequestFactory.getUserAgent().whenComplete(new Runnable() {
+      @Override
+      public void run() {
+        executeCdbCallTaskNow(task, requestedAdUnits);
+      }
+    });
+  }
+
+  private void executeCdbCallTaskNow(
+      @NonNull FutureTask<Void> task,
+      @NonNull List<CacheAdUnit> requestedAdUnits
+  ) {
+    boolean isExecuted = false;
     try {
-      executor.execute(task);
-      task = null;
+      executor.execute(new PrioritizedRunnable(TaskPriority.BID, task));
+      isExecuted = true;
     } finally {
-      if (task != null) {
+      if (!isExecuted) {
         // If an exception was thrown when scheduling the task, then we remove the ad unit from the
         // pending tasks.
         removePendingTasksWithAdUnits(requestedAdUnits);
@@ -139,26 +212,132 @@ public class BidRequestSender {
     }
   }
 
+  @GuardedBy("pendingTasksLock")
+  private void holdInCoalescingWindow(@NonNull PendingBidRequest request, int coalescingWindow) {
+    if (coalescingRequests == null || coalescingFlushTask == null) {
+      List<PendingBidRequest> requests = new ArrayList<>();
+      coalescingFlushTask = scheduledExecutorService.schedule(new SafeRunnable() {
+        @Override
+        public void runSafely() {
+          flushCoalescingWindow(requests);
+        }
+      }, coalescingWindow, TimeUnit.MILLISECONDS);
+      coalescingRequests = requests;
+    }
+
+    coalescingRequests.add(request);
+    for (CacheAdUnit adUnit : request.adUnits) {
+      pendingTasks.put(adUnit, coalescingFlushTask);
+    }
+  }
+
+  private void flushCoalescingWindow(@NonNull List<PendingBidRequest> requests) {
+    Map<FutureTask<Void>, List<CacheAdUnit>> tasks = new LinkedHashMap<>();
+
+    synchronized (pendingTasksLock) {
+      if (coalescingRequests != requests) {
+        // Window was cancelled meanwhile
+        return;
+      }
+      coalescingRequests = null;
+      coalescingFlushTask = null;
+
+      for (List<PendingBidRequest> chunk : splitIntoChunks(requests)) {
+        List<CacheAdUnit> requestedAdUnits = new ArrayList<>();
+        for (PendingBidRequest request : chunk) {
+          requestedAdUnits.addAll(request.adUnits);
+        }
+
+        FutureTask<Void> task = new FutureTask<>(new CoalescedCdbCall(
+            api,
+            cdbRequestFactory,
+            clock,
+            chunk,
+            chunk.get(0).contextData,
+            config.isAsyncBidRequestEnabled(),
+            removePendingTasksOnCallEnded(requestedAdUnits)
+        ), null);
+
+        for (CacheAdUnit requestedAdUnit : requestedAdUnits) {
+          pendingTasks.put(requestedAdUnit, task);
+        }
+        tasks.put(task, requestedAdUnits);
+      }
+    }
+
+    for (Map.Entry<FutureTask<Void>, List<CacheAdUnit>> entry : tasks.entrySet()) {
+      executeCdbCallTask(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Group the given requests by context, so they can be sent in the same CDB call, without exceeding
+   * {@link AdUnitMapper#CHUNK_SIZE} ad units per call. A single request is never split.
+   */
+  @NonNull
+  @VisibleForTesting
+  static List<List<PendingBidRequest>> splitIntoChunks(@NonNull List<PendingBidRequest> requests) {
+    Map<ContextData, List<PendingBidRequest>> requestsByContext = new LinkedHashMap<>();
+    for (PendingBidRequest request : requests) {
+      List<PendingBidRequest> sameContextRequests = requestsByContext.get(request.contextData);
+      if (sameContextRequests == null) {
+        sameContextRequests = new ArrayList<>();
+        requestsByContext.put(request.contextData, sameContextRequests);
+      }
+      sameContextRequests.add(request);
+    }
+
+    List<List<PendingBidRequest>> chunks = new ArrayList<>();
+    for (List<PendingBidRequest> sameContextRequests : requestsByContext.values()) {
+      List<PendingBidRequest> chunk = new ArrayList<>();
+      int chunkSize = 0;
+
+      for (PendingBidRequest request : sameContextRequests) {
+        int requestSize = request.adUnits.size();
+        if (!chunk.isEmpty() && chunkSize + requestSize > AdUnitMapper.CHUNK_SIZE) {
+          chunks.add(chunk);
+          chunk = new ArrayList<>();
+          chunkSize = 0;
+        }
+        chunk.add(request);
+        chunkSize += requestSize;
+      }
+
+      chunks.add(chunk);
+    }
+    return chunks;
+  }
+
   @NonNull
   private FutureTask<Void> createCdbCallTask(
       @NonNull List<CacheAdUnit> requestedAdUnits,
       @NonNull ContextData contextData,
       @NonNull CdbCallListener listener
   ) {
-    CdbCall task = new CdbCall(api, cdbRequestFactory, clock, requestedAdUnits, contextData, listener);
+    return new FutureTask<>(new CdbCall(
+        api,
+        cdbRequestFactory,
+        clock,
+        requestedAdUnits,
+        contextData,
+        listener,
+        config.isAsyncBidRequestEnabled(),
+        removePendingTasksOnCallEnded(requestedAdUnits)
+    ), null);
+  }
 
-    Runnable withRemovedPendingTasksAfterExecution = new Runnable() {
+  /**
+   * Ad units stay pending until the end of their call. When the call is sent asynchronously, this is
+   * after the end of its task.
+   */
+  @NonNull
+  private Runnable removePendingTasksOnCallEnded(@NonNull List<CacheAdUnit> requestedAdUnits) {
+    return new Runnable() {
       @Override
       public void run() {
-        try {
-          task.run();
-        } finally {
-          removePendingTasksWithAdUnits(requestedAdUnits);
-        }
+        removePendingTasksWithAdUnits(requestedAdUnits);
       }
     };
-
-    return new FutureTask<>(withRemovedPendingTasksAfterExecution, null);
   }
 
   private void removePendingTasksWithAdUnits(List<CacheAdUnit> adUnits) {
@@ -176,6 +355,8 @@ public class BidRequestSender {
         task.cancel(true);
       }
       pendingTasks.clear();
+      coalescingRequests = null;
+      coalescingFlushTask = null;
     }
   }
 
@@ -191,8 +372,23 @@ public class BidRequestSender {
     @Override
     public void runSafely() throws IOException {
       RemoteConfigRequest request = remoteConfigRequestFactory.createRequest();
-      RemoteConfigResponse response = api.loadConfig(request);
-      configToUpdate.refreshConfig(response);
+      if (configToUpdate.isRemoteConfigFresh(request, clock.getCurrentTimeInMillis())) {
+        return;
+      }
+
+      String entityTag = configToUpdate.getRemoteConfigEntityTag();
+      VersionedRemoteConfig versionedConfig;
+      try {
+        versionedConfig = api.loadConfig(request, entityTag);
+      } catch (IOException | RuntimeException e) {
+        configToUpdate.onRemoteConfigFetchFailed();
+        throw e;
+      }
+      if (versionedConfig != null) {
+        configToUpdate.refreshConfig(versionedConfig.getConfig());
+        entityTag = versionedConfig.getEntityTag();
+      }
+      configToUpdate.onRemoteConfigFetched(request, entityTag, clock.getCurrentTimeInMillis());
     }
   }
 }
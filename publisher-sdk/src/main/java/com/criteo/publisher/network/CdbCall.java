@@ -19,26 +19,14 @@ package com.criteo.publisher.network;
 import androidx.annotation.NonNull;
 import com.criteo.publisher.CdbCallListener;
 import com.criteo.publisher.Clock;
-import com.criteo.publisher.SafeRunnable;
 import com.criteo.publisher.context.ContextData;
 import com.criteo.publisher.model.CacheAdUnit;
 import com.criteo.publisher.model.CdbRequest;
 import com.criteo.publisher.model.CdbRequestFactory;
 import com.criteo.publisher.model.CdbResponse;
-import com.criteo.publisher.model.CdbResponseSlot;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
 
-class CdbCall extends SafeRunnable {
-
-  @NonNull
-  private final PubSdkApi pubSdkApi;
-
-  @NonNull
-  private final CdbRequestFactory cdbRequestFactory;
-
-  @NonNull
-  private final Clock clock;
+class CdbCall extends AbstractCdbCall {
 
   @NonNull
   private final List<CacheAdUnit> requestedAdUnits;
@@ -55,36 +43,34 @@ class CdbCall extends SafeRunnable {
       @NonNull Clock clock,
       @NonNull List<CacheAdUnit> requestedAdUnits,
       @NonNull ContextData contextData,
-      @NonNull CdbCallListener listener
+      @NonNull CdbCallListener listener,
+      boolean isAsync,
+      @NonNull Runnable onCallEnded
   ) {
-    this.pubSdkApi = pubSdkApi;
-    this.cdbRequestFactory = cdbRequestFactory;
-    this.clock = clock;
+    super(pubSdkApi, cdbRequestFactory, clock, isAsync, onCallEnded);
     this.requestedAdUnits = requestedAdUnits;
     this.contextData = contextData;
     this.listener = listener;
   }
 
+  @NonNull
   @Override
-  public void runSafely() throws ExecutionException, InterruptedException {
-    CdbRequest cdbRequest = cdbRequestFactory.createRequest(requestedAdUnits, contextData);
-    String userAgent = cdbRequestFactory.getUserAgent().get();
+  CdbRequest createRequest(@NonNull CdbRequestFactory cdbRequestFactory) {
+    return cdbRequestFactory.createRequest(requestedAdUnits, contextData);
+  }
 
+  @Override
+  void onRequest(@NonNull CdbRequest cdbRequest) {
     listener.onCdbRequest(cdbRequest);
+  }
 
-    try {
-      CdbResponse cdbResponse = pubSdkApi.loadCdb(cdbRequest, userAgent);
-      setTimeOfDownload(cdbResponse);
-      listener.onCdbResponse(cdbRequest, cdbResponse);
-    } catch (Exception e) {
-      listener.onCdbError(cdbRequest, e);
-    }
+  @Override
+  void onResponse(@NonNull CdbRequest cdbRequest, @NonNull CdbResponse cdbResponse) {
+    listener.onCdbResponse(cdbRequest, cdbResponse);
   }
 
-  private void setTimeOfDownload(@NonNull CdbResponse cdbResponse) {
-    long instant = clock.getCurrentTimeInMillis();
-    for (CdbResponseSlot slot : cdbResponse.getSlots()) {
-      slot.setTimeOfDownload(instant);
-    }
+  @Override
+  void onError(@NonNull CdbRequest cdbRequest, @NonNull Exception exception) {
+    listener.onCdbError(cdbRequest, exception);
   }
 }
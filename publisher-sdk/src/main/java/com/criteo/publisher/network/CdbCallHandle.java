@@ -0,0 +1,175 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Handle on an in-flight CDB call, to abandon it when its result is not awaited anymore.
+ * <p>
+ * Cancelling the call disconnects its HTTP connection, so the thread running it is released
+ * without waiting for the network timeout. The timers attached to the call are cancelled as soon as
+ * the call ends, so they do not stay in the scheduler queue.
+ */
+public class CdbCallHandle {
+
+  /**
+   * Handle of the call running on the current thread, so {@link PubSdkApi} can attach its
+   * connection to it.
+   */
+  private static final ThreadLocal<CdbCallHandle> CURRENT = new ThreadLocal<>();
+
+  private final Object lock = new Object();
+
+  @GuardedBy("lock")
+  private boolean isEnded = false;
+
+  @GuardedBy("lock")
+  private boolean isCancelled = false;
+
+  @Nullable
+  @GuardedBy("lock")
+  private HttpConnection connection;
+
+  @Nullable
+  @GuardedBy("lock")
+  private Future<?> callTask;
+
+  @NonNull
+  @GuardedBy("lock")
+  private final List<Future<?>> timers = new ArrayList<>();
+
+  @Nullable
+  static CdbCallHandle current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Run the given call on the current thread, bound to this handle.
+   * <p>
+   * The call may still be in flight when this returns, so it should notify
+   * {@link #onCallEnded()} itself.
+   */
+  void run(@NonNull Runnable call) {
+    CURRENT.set(this);
+    try {
+      call.run();
+    } finally {
+      CURRENT.remove();
+    }
+  }
+
+  void setCallTask(@NonNull Future<?> callTask) {
+    synchronized (lock) {
+      this.callTask = callTask;
+    }
+  }
+
+  /**
+   * Attach a timer to this call. It is cancelled when the call ends or is cancelled.
+   */
+  void addTimer(@NonNull Future<?> timer) {
+    synchronized (lock) {
+      if (isEnded || isCancelled) {
+        timer.cancel(false);
+      } else {
+        timers.add(timer);
+      }
+    }
+  }
+
+  /**
+   * Attach the connection of the call, so it can be disconnected on cancellation.
+   *
+   * @throws InterruptedIOException if the call was already cancelled
+   */
+  void onConnectionOpened(@NonNull HttpConnection connection) throws InterruptedIOException {
+    synchronized (lock) {
+      if (isCancelled) {
+        throw new InterruptedIOException("CDB call was cancelled");
+      }
+      this.connection = connection;
+    }
+  }
+
+  /**
+   * Abandon the call: its connection is disconnected and its timers are cancelled. This does nothing
+   * if the call already ended.
+   */
+  public void cancel() {
+    HttpConnection connectionToClose;
+    Future<?> taskToCancel;
+
+    synchronized (lock) {
+      if (isEnded || isCancelled) {
+        return;
+      }
+      isCancelled = true;
+      connectionToClose = connection;
+      taskToCancel = callTask;
+      connection = null;
+      callTask = null;
+      cancelTimers();
+    }
+
+    if (taskToCancel != null) {
+      // Prevent the call from starting if it is still queued
+      taskToCancel.cancel(true);
+    }
+
+    if (connectionToClose != null) {
+      connectionToClose.disconnect();
+    }
+  }
+
+  public boolean isCancelled() {
+    synchronized (lock) {
+      return isCancelled;
+    }
+  }
+
+  @VisibleForTesting
+  int getTimerCount() {
+    synchronized (lock) {
+      return timers.size();
+    }
+  }
+
+  void onCallEnded() {
+    synchronized (lock) {
+      isEnded = true;
+      connection = null;
+      callTask = null;
+      cancelTimers();
+    }
+  }
+
+  @GuardedBy("lock")
+  private void cancelTimers() {
+    for (Future<?> timer : timers) {
+      timer.cancel(false);
+    }
+    timers.clear();
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import androidx.annotation.VisibleForTesting
+import com.criteo.publisher.Clock
+import com.criteo.publisher.annotation.OpenForTesting
+import com.criteo.publisher.bid.BidLifecycleListener
+import com.criteo.publisher.context.ContextProvider
+import com.criteo.publisher.model.CacheAdUnit
+import com.criteo.publisher.model.CdbRequest
+import com.criteo.publisher.model.CdbResponse
+import com.criteo.publisher.model.CdbResponseSlot
+import com.criteo.publisher.util.BuildConfigWrapper
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Estimate the latency of CDB calls from the observed ones.
+ *
+ * Latencies are kept in a histogram per connection type (as given by
+ * [ContextProvider.fetchDeviceConnectionType]), because a same device may switch between a fast and a slow network.
+ * Older observations are progressively forgotten, so the estimation follows the network conditions.
+ */
+@OpenForTesting
+class CdbLatencyEstimator internal constructor(
+    private val clock: Clock,
+    private val contextProvider: ContextProvider,
+    private val buildConfigWrapper: BuildConfigWrapper
+) : BidLifecycleListener {
+
+  private val startedCalls = ConcurrentHashMap<String, StartedCall>()
+
+  private val histograms = ConcurrentHashMap<Int, DecayingHistogram>()
+
+  /**
+   * Return the estimated latency of a CDB call on the current connection type, for the given quantile (for instance
+   * `0.95` for the p95), or `null` if not enough calls were observed on this connection type.
+   */
+  fun estimateLatencyInMillis(quantile: Double): Long? {
+    return histograms[fetchConnectionType()]?.getQuantile(quantile)
+  }
+
+  override fun onSdkInitialized() {
+    // not used
+  }
+
+  override fun onCdbCallStarted(request: CdbRequest) {
+    val now = clock.currentTimeInMillis
+
+    // Calls that never end, such as cancelled ones, should not make this grow indefinitely
+    if (startedCalls.size >= MAX_STARTED_CALLS) {
+      evictTimedOutCalls(now)
+    }
+
+    if (startedCalls.size < MAX_STARTED_CALLS) {
+      startedCalls.putIfAbsent(request.id, StartedCall(now, fetchConnectionType()))
+    }
+  }
+
+  override fun onCdbCallFinished(request: CdbRequest, response: CdbResponse) {
+    onCdbCallEnded(request)
+  }
+
+  /**
+   * A call failing because of the network is also recorded: it generally indicates a bad network, and a time out gives
+   * a lower bound of the latency. Other failures, such as an error status or an open circuit breaker, are fast and say
+   * nothing about the network, so they are ignored.
+   */
+  override fun onCdbCallFailed(request: CdbRequest, exception: Exception) {
+    if (isNetworkFailure(exception)) {
+      onCdbCallEnded(request)
+    } else {
+      startedCalls.remove(request.id)
+    }
+  }
+
+  override fun onBidConsumed(adUnit: CacheAdUnit, consumedBid: CdbResponseSlot) {
+    // not used
+  }
+
+  override fun onBidDiscarded(adUnit: CacheAdUnit, discardedBid: CdbResponseSlot) {
+    // not used
+  }
+
+  override fun onBidCached(cachedBid: CdbResponseSlot) {
+    // not used
+  }
+
+  private fun onCdbCallEnded(request: CdbRequest) {
+    // Coalesced requests share the same ID, only the first end is recorded
+    val startedCall = startedCalls.remove(request.id) ?: return
+    val latency = clock.currentTimeInMillis - startedCall.startTimeInMillis
+
+    histograms.getOrPut(startedCall.connectionType) { DecayingHistogram() }.record(latency)
+  }
+
+  private fun evictTimedOutCalls(now: Long) {
+    val timeoutInMillis = buildConfigWrapper.networkTimeoutInMillis
+    startedCalls.values.removeAll { now - it.startTimeInMillis > timeoutInMillis }
+  }
+
+  private fun isNetworkFailure(exception: Exception): Boolean {
+    return exception is IOException &&
+        exception !is HttpResponseException &&
+        exception !is CircuitBreakerOpenException
+  }
+
+  private fun fetchConnectionType(): Int = contextProvider.fetchDeviceConnectionType() ?: UNKNOWN_CONNECTION_TYPE
+
+  private class StartedCall(val startTimeInMillis: Long, val connectionType: Int)
+
+  /**
+   * Histogram over predefined latency buckets, where each new observation makes the previous ones weigh a bit less.
+   *
+   * Quantiles are given as the upper bound of the bucket containing them, so they are slightly overestimated.
+   */
+  private class DecayingHistogram {
+
+    private val weights = DoubleArray(BUCKET_UPPER_BOUNDS_IN_MILLIS.size + 1)
+    private var totalWeight = 0.0
+    private var count = 0
+
+    @Synchronized
+    fun record(latencyInMillis: Long) {
+      for (i in weights.indices) {
+        weights[i] *= DECAY_FACTOR
+      }
+
+      var bucket = BUCKET_UPPER_BOUNDS_IN_MILLIS.indexOfFirst { latencyInMillis <= it }
+      if (bucket < 0) {
+        bucket = BUCKET_UPPER_BOUNDS_IN_MILLIS.size
+      }
+
+      weights[bucket] += 1.0
+      totalWeight = totalWeight * DECAY_FACTOR + 1.0
+      count++
+    }
+
+    @Synchronized
+    fun getQuantile(quantile: Double): Long? {
+      if (count < MIN_OBSERVATIONS) {
+        return null
+      }
+
+      val target = quantile * totalWeight
+      var cumulativeWeight = 0.0
+      for (i in BUCKET_UPPER_BOUNDS_IN_MILLIS.indices) {
+        cumulativeWeight += weights[i]
+        if (cumulativeWeight >= target) {
+          return BUCKET_UPPER_BOUNDS_IN_MILLIS[i]
+        }
+      }
+
+      return OVERFLOW_LATENCY_IN_MILLIS
+    }
+  }
+
+  @VisibleForTesting
+  internal companion object {
+    const val UNKNOWN_CONNECTION_TYPE = -1
+
+    /**
+     * Weight kept by previous observations on each new one. With 0.95, the last 20 observations weigh for ~64% of the
+     * estimation.
+     */
+    const val DECAY_FACTOR = 0.95
+
+    const val MIN_OBSERVATIONS = 5
+
+    const val MAX_STARTED_CALLS = 64
+
+    val BUCKET_UPPER_BOUNDS_IN_MILLIS = longArrayOf(
+        50, 100, 150, 200, 300, 400, 600, 800, 1_000, 1_500, 2_000, 3_000, 4_000, 6_000, 8_000, 12_000, 16_000
+    )
+
+    /**
+     * Latency estimated for the calls slower than the last bucket
+     */
+    const val OVERFLOW_LATENCY_IN_MILLIS = 32_000L
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import androidx.annotation.VisibleForTesting
+import com.criteo.publisher.Clock
+import com.criteo.publisher.annotation.OpenForTesting
+import com.criteo.publisher.logging.LoggerFactory
+import com.criteo.publisher.model.Config
+import java.util.Random
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Suspend the calls to an endpoint while it is failing, so a degraded endpoint does not keep threads, battery and
+ * network busy with calls that are going to time out anyway.
+ *
+ * Each endpoint path has its own circuit:
+ * - [State.CLOSED]: calls are permitted. The circuit opens after [Config.getCircuitBreakerFailureThreshold]
+ * consecutive failures.
+ * - [State.OPEN]: calls are rejected until a retry delay elapses.
+ * - [State.HALF_OPEN]: the retry delay elapsed, a single trial call is permitted. If it succeeds, the circuit closes.
+ * Else, it opens again for a longer delay.
+ *
+ * The retry delay grows exponentially with the consecutive failed trials, and is randomized so many devices failing at
+ * the same time do not retry all together.
+ */
+@OpenForTesting
+class CircuitBreaker internal constructor(
+    private val clock: Clock,
+    private val config: Config,
+    private val random: Random
+) {
+
+  private val logger = LoggerFactory.getLogger(javaClass)
+
+  private val circuits = ConcurrentHashMap<String, Circuit>()
+
+  enum class State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  fun getState(path: String): State = circuits[path]?.getState() ?: State.CLOSED
+
+  /**
+   * Indicate if a call to the given path would currently be permitted, without reserving the trial call of a half-open
+   * circuit.
+   */
+  fun isCallPermitted(path: String): Boolean {
+    return !isEnabled() || (circuits[path]?.isCallPermitted() ?: true)
+  }
+
+  /**
+   * Indicate if a call to the given path is permitted. If so, the outcome of the call should then be reported with
+   * [onSuccess], [onFailure] or [onIgnored].
+   */
+  fun tryAcquirePermission(path: String): Boolean {
+    return !isEnabled() || getOrCreateCircuit(path).tryAcquirePermission()
+  }
+
+  /**
+   * Report that the endpoint answered. The answer may be an error status, as long as the endpoint itself is healthy.
+   */
+  fun onSuccess(path: String) {
+    circuits[path]?.onSuccess()
+  }
+
+  /**
+   * Report that the endpoint failed to answer, because of a network error, a timeout or a server error.
+   */
+  fun onFailure(path: String) {
+    if (isEnabled()) {
+      getOrCreateCircuit(path).onFailure(config.circuitBreakerFailureThreshold)
+    }
+  }
+
+  /**
+   * Report that the call ended without telling anything about the endpoint, for instance because it was cancelled.
+   */
+  fun onIgnored(path: String) {
+    circuits[path]?.onIgnored()
+  }
+
+  private fun isEnabled() = config.circuitBreakerFailureThreshold > 0
+
+  private fun getOrCreateCircuit(path: String): Circuit {
+    return circuits.getOrPut(path) { Circuit(path) }
+  }
+
+  @VisibleForTesting
+  internal fun computeRetryDelayInMillis(failedTrialCount: Int): Long {
+    val exponent = minOf(failedTrialCount, MAX_BACKOFF_EXPONENT)
+    val backoff = minOf(INITIAL_RETRY_DELAY_IN_MILLIS shl exponent, MAX_RETRY_DELAY_IN_MILLIS)
+
+    // Half of the delay is fixed, the other half is random
+    val half = backoff / 2
+    return half + (random.nextDouble() * half).toLong()
+  }
+
+  private inner class Circuit(private val path: String) {
+
+    private var consecutiveFailureCount = 0
+    private var isOpen = false
+    private var failedTrialCount = 0
+    private var retryTimeInMillis = 0L
+    private var isTrialInFlight = false
+
+    @Synchronized
+    fun getState(): State = when {
+      !isOpen -> State.CLOSED
+      isTrialInFlight || clock.currentTimeInMillis >= retryTimeInMillis -> State.HALF_OPEN
+      else -> State.OPEN
+    }
+
+    @Synchronized
+    fun isCallPermitted(): Boolean = when (getState()) {
+      State.CLOSED -> true
+      State.HALF_OPEN -> !isTrialInFlight
+      State.OPEN -> false
+    }
+
+    @Synchronized
+    fun tryAcquirePermission(): Boolean {
+      if (!isCallPermitted()) {
+        return false
+      }
+      if (isOpen) {
+        isTrialInFlight = true
+      }
+      return true
+    }
+
+    @Synchronized
+    fun onSuccess() {
+      consecutiveFailureCount = 0
+      if (isOpen) {
+        isOpen = false
+        isTrialInFlight = false
+        failedTrialCount = 0
+        logger.log(NetworkLogMessage.onCircuitBreakerClosed(path))
+      }
+    }
+
+    @Synchronized
+    fun onFailure(failureThreshold: Int) {
+      if (isOpen) {
+        // Calls started before the circuit opened may still fail: only the trial is taken into account
+        if (isTrialInFlight) {
+          isTrialInFlight = false
+          failedTrialCount++
+          open()
+        }
+      } else if (++consecutiveFailureCount >= failureThreshold) {
+        isOpen = true
+        failedTrialCount = 0
+        open()
+      }
+    }
+
+    @Synchronized
+    fun onIgnored() {
+      // Let another call be the trial
+      isTrialInFlight = false
+    }
+
+    private fun open() {
+      val retryDelay = computeRetryDelayInMillis(failedTrialCount)
+      retryTimeInMillis = clock.currentTimeInMillis + retryDelay
+      logger.log(NetworkLogMessage.onCircuitBreakerOpened(path, retryDelay))
+    }
+  }
+
+  @VisibleForTesting
+  internal companion object {
+    const val INITIAL_RETRY_DELAY_IN_MILLIS = 10_000L
+
+    const val MAX_RETRY_DELAY_IN_MILLIS = 10 * 60_000L
+
+    /**
+     * Bound of the exponent, to not overflow. Past it, the delay is anyway [MAX_RETRY_DELAY_IN_MILLIS].
+     */
+    private const val MAX_BACKOFF_EXPONENT = 16
+  }
+}
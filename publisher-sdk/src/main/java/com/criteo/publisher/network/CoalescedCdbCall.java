@@ -0,0 +1,184 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.criteo.publisher.CdbCallListener;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.context.ContextData;
+import com.criteo.publisher.model.CacheAdUnit;
+import com.criteo.publisher.model.CdbRequest;
+import com.criteo.publisher.model.CdbRequestFactory;
+import com.criteo.publisher.model.CdbRequestSlot;
+import com.criteo.publisher.model.CdbResponse;
+import com.criteo.publisher.model.CdbResponseSlot;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Single CDB call for several bid requests that share the same context.
+ * <p>
+ * Each listener only sees the part of the request it asked for, and the part of the response
+ * matching it, as if its request was sent on its own. Response slots are dispatched by impression
+ * ID. Slots matching no requested impression are given to the first listener so none is lost.
+ */
+class CoalescedCdbCall extends AbstractCdbCall {
+
+  @NonNull
+  private final List<PendingBidRequest> pendingRequests;
+
+  @NonNull
+  private final ContextData contextData;
+
+  @NonNull
+  private final List<CdbRequest> subRequests;
+
+  CoalescedCdbCall(
+      @NonNull PubSdkApi pubSdkApi,
+      @NonNull CdbRequestFactory cdbRequestFactory,
+      @NonNull Clock clock,
+      @NonNull List<PendingBidRequest> pendingRequests,
+      @NonNull ContextData contextData,
+      boolean isAsync,
+      @NonNull Runnable onCallEnded
+  ) {
+    super(pubSdkApi, cdbRequestFactory, clock, isAsync, onCallEnded);
+    this.pendingRequests = pendingRequests;
+    this.contextData = contextData;
+    this.subRequests = new ArrayList<>(pendingRequests.size());
+  }
+
+  @NonNull
+  @Override
+  CdbRequest createRequest(@NonNull CdbRequestFactory cdbRequestFactory) {
+    List<CacheAdUnit> requestedAdUnits = new ArrayList<>();
+    for (PendingBidRequest pendingRequest : pendingRequests) {
+      requestedAdUnits.addAll(pendingRequest.adUnits);
+    }
+
+    return cdbRequestFactory.createRequest(requestedAdUnits, contextData);
+  }
+
+  @Override
+  void onRequest(@NonNull CdbRequest cdbRequest) {
+    // Request slots are created in the same order as the ad units, so each listener gets its range
+    int offset = 0;
+    for (PendingBidRequest pendingRequest : pendingRequests) {
+      int end = offset + pendingRequest.adUnits.size();
+      CdbRequest subRequest = subRequest(cdbRequest, cdbRequest.getSlots().subList(offset, end));
+      subRequests.add(subRequest);
+      pendingRequest.listener.onCdbRequest(subRequest);
+      offset = end;
+    }
+  }
+
+  @Override
+  void onError(@NonNull CdbRequest cdbRequest, @NonNull Exception exception) {
+    for (int i = 0; i < pendingRequests.size(); i++) {
+      pendingRequests.get(i).listener.onCdbError(subRequests.get(i), exception);
+    }
+  }
+
+  @Override
+  void onResponse(@NonNull CdbRequest cdbRequest, @NonNull CdbResponse cdbResponse) {
+    Set<String> requestedImpressionIds = new HashSet<>();
+    for (CdbRequestSlot requestSlot : cdbRequest.getSlots()) {
+      requestedImpressionIds.add(requestSlot.getImpressionId());
+    }
+
+    for (int i = 0; i < pendingRequests.size(); i++) {
+      CdbRequest subRequest = subRequests.get(i);
+      CdbResponse subResponse = subResponse(
+          cdbResponse,
+          subRequest,
+          i == 0 ? requestedImpressionIds : null
+      );
+      pendingRequests.get(i).listener.onCdbResponse(subRequest, subResponse);
+    }
+  }
+
+  @NonNull
+  private static CdbRequest subRequest(
+      @NonNull CdbRequest cdbRequest,
+      @NonNull List<CdbRequestSlot> slots
+  ) {
+    return CdbRequest.create(
+        cdbRequest.getId(),
+        cdbRequest.getPublisher(),
+        cdbRequest.getUser(),
+        cdbRequest.getSdkVersion(),
+        cdbRequest.getProfileId(),
+        cdbRequest.getGdprData(),
+        new ArrayList<>(slots)
+    );
+  }
+
+  /**
+   * @param allImpressionIds if not null, slots whose impression ID is not in this set are also kept
+   */
+  @NonNull
+  private static CdbResponse subResponse(
+      @NonNull CdbResponse cdbResponse,
+      @NonNull CdbRequest subRequest,
+      @Nullable Set<String> allImpressionIds
+  ) {
+    Set<String> impressionIds = new HashSet<>();
+    for (CdbRequestSlot requestSlot : subRequest.getSlots()) {
+      impressionIds.add(requestSlot.getImpressionId());
+    }
+
+    List<CdbResponseSlot> slots = new ArrayList<>();
+    for (CdbResponseSlot slot : cdbResponse.getSlots()) {
+      String impressionId = slot.getImpressionId();
+      if (impressionIds.contains(impressionId)
+          || (allImpressionIds != null && !allImpressionIds.contains(impressionId))) {
+        slots.add(slot);
+      }
+    }
+
+    return new CdbResponse(
+        slots,
+        cdbResponse.getTimeToNextCall(),
+        cdbResponse.getConsentGiven()
+    );
+  }
+
+  static class PendingBidRequest {
+
+    @NonNull
+    final List<CacheAdUnit> adUnits;
+
+    @NonNull
+    final ContextData contextData;
+
+    @NonNull
+    final CdbCallListener listener;
+
+    PendingBidRequest(
+        @NonNull List<CacheAdUnit> adUnits,
+        @NonNull ContextData contextData,
+        @NonNull CdbCallListener listener
+    ) {
+      this.adUnits = adUnits;
+      this.contextData = contextData;
+      this.listener = listener;
+    }
+  }
+}
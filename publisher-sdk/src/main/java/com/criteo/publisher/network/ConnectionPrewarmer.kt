@@ -0,0 +1,77 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import com.criteo.publisher.SafeRunnable
+import com.criteo.publisher.annotation.OpenForTesting
+import com.criteo.publisher.concurrent.PrioritizedRunnable
+import com.criteo.publisher.concurrent.TaskPriority
+import com.criteo.publisher.logging.LoggerFactory
+import com.criteo.publisher.model.Config
+import com.criteo.publisher.util.BuildConfigWrapper
+import java.io.IOException
+import java.net.URL
+import java.util.concurrent.Executor
+
+/**
+ * Open connections to the CDB and event hosts while the SDK initializes, so the first bid request does not pay the DNS
+ * resolution, the TCP connection and the TLS handshake on top of its own latency.
+ *
+ * Connections are kept alive by the [HttpTransport]. The time spent to open each of them is recorded in the
+ * [NetworkMetrics], on the [prewarming path][NetworkMetrics.getPrewarmingPath] of its host.
+ */
+@OpenForTesting
+class ConnectionPrewarmer internal constructor(
+    private val buildConfigWrapper: BuildConfigWrapper,
+    private val httpTransport: HttpTransport,
+    private val config: Config,
+    private val networkMetrics: NetworkMetrics,
+    private val executor: Executor
+) {
+
+  private val logger = LoggerFactory.getLogger(javaClass)
+
+  fun prewarmAsync() {
+    if (!config.isConnectionPrewarmingEnabled || config.isKillSwitchEnabled) {
+      return
+    }
+
+    executor.execute(PrioritizedRunnable(TaskPriority.BID, object : SafeRunnable() {
+      override fun runSafely() {
+        listOf(buildConfigWrapper.cdbUrl, buildConfigWrapper.eventUrl)
+            .map { URL(it) }
+            .distinctBy { it.host }
+            .forEach { prewarm(it) }
+      }
+    }))
+  }
+
+  private fun prewarm(url: URL) {
+    val duration = try {
+      httpTransport.preconnect(url, buildConfigWrapper.networkTimeoutInMillis)
+    } catch (e: IOException) {
+      // Other hosts may still be reachable
+      logger.log(NetworkLogMessage.onConnectionPrewarmingFailed(url.host, e))
+      return
+    }
+
+    if (duration >= 0) {
+      networkMetrics.onConnectionPrewarmed(url.host, duration)
+    }
+    logger.log(NetworkLogMessage.onConnectionPrewarmed(url.host, duration))
+  }
+}
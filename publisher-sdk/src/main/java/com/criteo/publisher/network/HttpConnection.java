@@ -0,0 +1,98 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.criteo.publisher.network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Single HTTP call opened by a {@link HttpTransport}.
+ * <p>
+ * This mimics the subset of {@link java.net.HttpURLConnection} used by {@link PubSdkApi}.
+ */
+public interface HttpConnection {
+
+  void setRequestProperty(@NonNull String key, @NonNull String value);
+
+  /**
+   * Send the given bytes as the body of the request, with a fixed length. The bytes are not
+   * retained after this call.
+   */
+  void writeBody(@NonNull byte[] bytes, int offset, int length) throws IOException;
+
+  /**
+   * Send the given bytes as the body of the request, like {@link #writeBody(byte[], int, int)}, but
+   * without blocking the calling thread until the response is received.
+   * <p>
+   * The callback is notified once the response headers are received, or if the call failed. It may
+   * be notified on a thread of the transport, or directly on the calling thread. The given bytes may
+   * be retained until then, so they should not be modified meanwhile.
+   */
+  void writeBodyAsync(
+      @NonNull byte[] bytes,
+      int offset,
+      int length,
+      @NonNull ResponseCallback callback
+  );
+
+  /**
+   * Return the HTTP status of the response, sending the request first if it was not already sent.
+   */
+  int getResponseCode() throws IOException;
+
+  @Nullable
+  String getContentEncoding();
+
+  /**
+   * Return the value of the given response header, or <code>null</code> if it is absent.
+   */
+  @Nullable
+  String getHeaderField(@NonNull String name);
+
+  /**
+   * Return the length of the response body, or <code>-1</code> if it is unknown.
+   */
+  long getContentLength();
+
+  @NonNull
+  InputStream getInputStream() throws IOException;
+
+  /**
+   * Return the time spent to open the connection of this call, <code>0</code> if an already opened
+   * connection was reused, or <code>-1</code> if it is unknown.
+   * <p>
+   * This is only known once the request is sent.
+   */
+  long getConnectDurationInMillis();
+
+  /**
+   * Abort the call, releasing any thread blocked on it. This may be called from any thread.
+   */
+  void disconnect();
+
+  interface ResponseCallback {
+
+    /**
+     * Called once the response headers are received. The response can then be read from the given
+     * connection.
+     */
+    void onResponse(@NonNull HttpConnection connection);
+
+    void onFailure(@NonNull IOException exception);
+  }
+}
@@ -20,7 +20,14 @@ import java.io.IOException;
 
 public class HttpResponseException extends IOException {
 
+  private final int status;
+
   public HttpResponseException(int status) {
     super("Received HTTP error status: " + status);
+    this.status = status;
+  }
+
+  public int getStatus() {
+    return status;
   }
 }
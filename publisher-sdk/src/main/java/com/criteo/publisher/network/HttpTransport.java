@@ -0,0 +1,61 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.criteo.publisher.network;
+
+import androidx.annotation.NonNull;
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Transport executing the HTTP calls of {@link PubSdkApi}.
+ * <p>
+ * Implementations are expected to reuse connections across calls to the same host, so consecutive
+ * calls do not pay a new TCP and TLS handshake.
+ */
+public interface HttpTransport {
+
+  /**
+   * Prepare a new call. Nothing is sent until a body is written or the response is requested.
+   *
+   * @param url URL to call
+   * @param method HTTP method, such as <code>GET</code> or <code>POST</code>
+   * @param timeoutInMillis connection and read timeout of the call
+   */
+  @NonNull
+  HttpConnection open(@NonNull URL url, @NonNull String method, int timeoutInMillis)
+      throws IOException;
+
+  /**
+   * Open a connection to the host of the given URL, and keep it alive so the next calls to this
+   * host reuse it. This sends a <code>HEAD</code> request, whose response is ignored.
+   *
+   * @param url URL of the host to connect to
+   * @param timeoutInMillis connection and read timeout of the call
+   * @return time spent to open the connection, as in {@link HttpConnection#getConnectDurationInMillis()}
+   * @throws IOException if the connection could not be opened
+   */
+  long preconnect(@NonNull URL url, int timeoutInMillis) throws IOException;
+
+  /**
+   * Number of calls that needed to open a new connection.
+   */
+  int getNewConnectionCount();
+
+  /**
+   * Number of calls that reused an already opened connection.
+   */
+  int getReusedConnectionCount();
+}
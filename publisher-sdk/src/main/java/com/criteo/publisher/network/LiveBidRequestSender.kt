@@ -20,11 +20,14 @@ import androidx.annotation.VisibleForTesting
 import com.criteo.publisher.Clock
 import com.criteo.publisher.LiveCdbCallListener
 import com.criteo.publisher.annotation.OpenForTesting
+import com.criteo.publisher.concurrent.PrioritizedRunnable
+import com.criteo.publisher.concurrent.TaskPriority
 import com.criteo.publisher.context.ContextData
 import com.criteo.publisher.model.CacheAdUnit
 import com.criteo.publisher.model.CdbRequestFactory
 import com.criteo.publisher.model.Config
 import java.util.concurrent.Executor
+import java.util.concurrent.FutureTask
 import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.TimeUnit
 
@@ -35,32 +38,83 @@ class LiveBidRequestSender(
     private val clock: Clock,
     private val executor: Executor,
     private val scheduledExecutorService: ScheduledExecutorService,
-    private val config: Config
+    private val config: Config,
+    private val latencyEstimator: CdbLatencyEstimator
 ) {
 
+  /**
+   * Send a live bid request, and notify the listener when the time budget is exceeded.
+   *
+   * Once the budget is exceeded, the call is still given the same duration to finish, so a late bid can be cached. After
+   * that, the call is cancelled so it does not hold a thread or a connection until the network timeout.
+   */
   fun sendLiveBidRequest(
       cacheAdUnit: CacheAdUnit,
       contextData: ContextData,
       liveCdbCallListener: LiveCdbCallListener
-  ) {
-    scheduleTimeBudgetExceeded(liveCdbCallListener)
-
-    executor.execute(
-        CdbCall(
-            pubSdkApi,
-            cdbRequestFactory,
-            clock,
-            listOf(cacheAdUnit),
-            contextData,
-            liveCdbCallListener
-        )
+  ): CdbCallHandle {
+    val callHandle = CdbCallHandle()
+    val cdbCall = CdbCall(
+        pubSdkApi,
+        cdbRequestFactory,
+        clock,
+        listOf(cacheAdUnit),
+        contextData,
+        liveCdbCallListener,
+        config.isAsyncBidRequestEnabled,
+        Runnable { callHandle.onCallEnded() }
     )
+    val callTask = FutureTask(Runnable { callHandle.run(cdbCall) }, Unit)
+    callHandle.setCallTask(callTask)
+
+    scheduleTimeBudgetExceeded(liveCdbCallListener, callHandle)
+
+    // The call only starts once the user agent is known, so it does not block a thread meanwhile
+    cdbRequestFactory.userAgent.whenComplete {
+      executor.execute(PrioritizedRunnable(TaskPriority.BID, callTask))
+    }
+    return callHandle
   }
 
+  /**
+   * Indicate if, given the observed CDB latency, a live bid is expected to arrive after the time budget. In this case,
+   * there is no point to wait for it if a bid is already available in cache.
+   */
+  fun isLiveBidExpectedToExceedTimeBudget(): Boolean {
+    val medianLatency = latencyEstimator.estimateLatencyInMillis(0.5) ?: return false
+    return medianLatency > computeTimeBudgetInMillis()
+  }
+
+  /**
+   * Return the time budget to wait for a live bid before falling back on the cache.
+   *
+   * The budget covers the p95 of the observed CDB latency, with a margin, within the bounds given by the remote config.
+   * If the latency is not known yet, then the highest budget is taken.
+   */
   @VisibleForTesting
-  internal fun scheduleTimeBudgetExceeded(liveCdbCallListener: LiveCdbCallListener) {
-    scheduledExecutorService.schedule({
+  internal fun computeTimeBudgetInMillis(): Long {
+    val maxTimeBudget = config.liveBiddingTimeBudgetInMillis.toLong()
+    val minTimeBudget = config.liveBiddingMinTimeBudgetInMillis.toLong().coerceAtMost(maxTimeBudget)
+    val p95Latency = latencyEstimator.estimateLatencyInMillis(0.95) ?: return maxTimeBudget
+
+    return (p95Latency * TIME_BUDGET_MARGIN).toLong().coerceIn(minTimeBudget, maxTimeBudget)
+  }
+
+  @VisibleForTesting
+  internal fun scheduleTimeBudgetExceeded(liveCdbCallListener: LiveCdbCallListener, callHandle: CdbCallHandle) {
+    val timeBudget = computeTimeBudgetInMillis()
+    callHandle.addTimer(scheduledExecutorService.schedule({
       liveCdbCallListener.onTimeBudgetExceeded()
-    }, config.liveBiddingTimeBudgetInMillis.toLong(), TimeUnit.MILLISECONDS)
+      callHandle.addTimer(scheduledExecutorService.schedule({
+        callHandle.cancel()
+      }, timeBudget, TimeUnit.MILLISECONDS))
+    }, timeBudget, TimeUnit.MILLISECONDS))
+  }
+
+  private companion object {
+    /**
+     * Margin applied on the p95 latency, so a usual call is not cut by a too tight budget
+     */
+    const val TIME_BUDGET_MARGIN = 1.5
   }
 }
@@ -0,0 +1,83 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network;
+
+import androidx.annotation.NonNull;
+import com.criteo.publisher.network.NetworkMetrics.CallRecorder;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream counting the bytes read through it, and notifying the {@link CallRecorder} of the
+ * call once the stream is read until its end or closed.
+ */
+class MeteredInputStream extends FilterInputStream {
+
+  @NonNull
+  private final CallRecorder callRecorder;
+
+  private long readBytes = 0;
+
+  MeteredInputStream(@NonNull InputStream in, @NonNull CallRecorder callRecorder) {
+    super(in);
+    this.callRecorder = callRecorder;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int read = super.read();
+    if (read == -1) {
+      callRecorder.onResponseRead(readBytes);
+    } else {
+      readBytes++;
+    }
+    return read;
+  }
+
+  @Override
+  public int read(@NonNull byte[] b, int off, int len) throws IOException {
+    int read = super.read(b, off, len);
+    if (read == -1) {
+      callRecorder.onResponseRead(readBytes);
+    } else {
+      readBytes += read;
+    }
+    return read;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = super.skip(n);
+    readBytes += skipped;
+    return skipped;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      callRecorder.onResponseRead(readBytes);
+    }
+  }
+}
@@ -16,17 +16,46 @@
 
 package com.criteo.publisher.network
 
+import android.util.Log
 import com.criteo.publisher.logging.LogMessage
+import java.io.IOException
 
 internal object NetworkLogMessage {
 
+  /**
+   * Level of the CDB call logs. Their payload is rendered only if this level is loggable.
+   */
+  const val CDB_CALL_LOG_LEVEL = Log.INFO
+
   @JvmStatic
-  fun onCdbCallStarted(requestPayload: String) = LogMessage(message =
+  fun onCdbCallStarted(requestPayload: String) = LogMessage(level = CDB_CALL_LOG_LEVEL, message =
     "CDB Request initiated: $requestPayload"
   )
 
   @JvmStatic
-  fun onCdbCallFinished(responsePayload: String) = LogMessage(message =
+  fun onCdbCallFinished(responsePayload: String) = LogMessage(level = CDB_CALL_LOG_LEVEL, message =
     "CDB Response received: $responsePayload"
   )
+
+  @JvmStatic
+  fun onCircuitBreakerOpened(path: String, retryDelayInMillis: Long) = LogMessage(level = Log.WARN, message =
+    "Calls to $path are suspended for ${retryDelayInMillis}ms after consecutive failures"
+  )
+
+  @JvmStatic
+  fun onCircuitBreakerClosed(path: String) = LogMessage(message =
+    "Calls to $path are resumed"
+  )
+
+  @JvmStatic
+  fun onConnectionPrewarmed(host: String, durationInMillis: Long) = LogMessage(level = Log.DEBUG, message =
+    "Connection to $host opened in ${durationInMillis}ms"
+  )
+
+  @JvmStatic
+  fun onConnectionPrewarmingFailed(host: String, exception: IOException) = LogMessage(
+      Log.DEBUG,
+      "Connection to $host could not be opened",
+      exception
+  )
 }
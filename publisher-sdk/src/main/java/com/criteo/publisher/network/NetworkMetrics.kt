@@ -0,0 +1,231 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import androidx.annotation.VisibleForTesting
+import com.criteo.publisher.Clock
+import com.criteo.publisher.annotation.OpenForTesting
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Registry of the timings and sizes of the calls done by [PubSdkApi], aggregated per endpoint path.
+ *
+ * Each [Measure] is kept in a histogram over predefined buckets. Recording a value only increments counters, so this
+ * can stay enabled in production.
+ */
+@OpenForTesting
+class NetworkMetrics internal constructor(private val clock: Clock) {
+
+  private val histogramsByPath = ConcurrentHashMap<String, Array<Histogram>>()
+
+  enum class Measure(internal val bucketUpperBounds: LongArray) {
+    /**
+     * Time spent to open the connection of the call, including DNS resolution and TLS handshake. This is zero when a
+     * pooled connection is reused.
+     */
+    CONNECT_DURATION_IN_MILLIS(DURATION_BUCKET_UPPER_BOUNDS),
+
+    /**
+     * Time between the start of the request and the reception of the response headers.
+     */
+    TIME_TO_FIRST_BYTE_IN_MILLIS(DURATION_BUCKET_UPPER_BOUNDS),
+
+    /**
+     * Time between the reception of the response headers and the end of the read of the response body.
+     */
+    DOWNLOAD_DURATION_IN_MILLIS(DURATION_BUCKET_UPPER_BOUNDS),
+
+    /**
+     * Size of the request body, as sent on the network (after compression, if any).
+     */
+    REQUEST_SIZE_IN_BYTES(SIZE_BUCKET_UPPER_BOUNDS),
+
+    /**
+     * Size of the response body, as read from the network (before decompression, if any).
+     */
+    RESPONSE_SIZE_IN_BYTES(SIZE_BUCKET_UPPER_BOUNDS)
+  }
+
+  /**
+   * Start recording a new call to the given endpoint path. The returned recorder should be notified of each step of
+   * the call.
+   */
+  fun newCall(path: String): CallRecorder = CallRecorder(path)
+
+  /**
+   * Record the time spent to open a connection to the given host before any call, while prewarming it. This is
+   * recorded on the path returned by [getPrewarmingPath].
+   */
+  fun onConnectionPrewarmed(host: String, connectDurationInMillis: Long) {
+    record(getPrewarmingPath(host), Measure.CONNECT_DURATION_IN_MILLIS, connectDurationInMillis)
+  }
+
+  /**
+   * Return the path on which the prewarmed connections to the given host are recorded.
+   */
+  fun getPrewarmingPath(host: String): String = PREWARMING_PATH_PREFIX + host
+
+  /**
+   * Return the paths having at least one recorded call.
+   */
+  fun getPaths(): Set<String> = histogramsByPath.keys.toSet()
+
+  /**
+   * Return a snapshot of the given measure on the given path, or `null` if nothing was recorded on this path.
+   */
+  fun getSnapshot(path: String, measure: Measure): HistogramSnapshot? {
+    return histogramsByPath[path]?.get(measure.ordinal)?.snapshot()
+  }
+
+  @VisibleForTesting
+  internal fun record(path: String, measure: Measure, value: Long) {
+    val histograms = histogramsByPath.getOrPut(path) {
+      val measures = Measure.values()
+      Array(measures.size) { Histogram(measures[it].bucketUpperBounds) }
+    }
+    histograms[measure.ordinal].record(value)
+  }
+
+  /**
+   * Steps of a single call. Each step is recorded at most once, and only if the previous ones were recorded.
+   */
+  inner class CallRecorder internal constructor(private val path: String) {
+
+    private var requestStartTimeInMillis = NOT_RECORDED
+    private var responseTimeInMillis = NOT_RECORDED
+    private var isResponseRead = false
+
+    /**
+     * Notify that the request is about to be sent with a body of the given size.
+     */
+    @Synchronized
+    fun onRequestStarted(requestSizeInBytes: Long) {
+      if (requestStartTimeInMillis != NOT_RECORDED) {
+        return
+      }
+      requestStartTimeInMillis = clock.currentTimeInMillis
+      record(path, Measure.REQUEST_SIZE_IN_BYTES, requestSizeInBytes)
+    }
+
+    /**
+     * Notify that the response headers were received.
+     *
+     * @param connectDurationInMillis time spent to open the connection, or a negative value if it is unknown
+     */
+    @Synchronized
+    fun onResponseReceived(connectDurationInMillis: Long) {
+      if (requestStartTimeInMillis == NOT_RECORDED || responseTimeInMillis != NOT_RECORDED) {
+        return
+      }
+      responseTimeInMillis = clock.currentTimeInMillis
+      record(path, Measure.TIME_TO_FIRST_BYTE_IN_MILLIS, responseTimeInMillis - requestStartTimeInMillis)
+      if (connectDurationInMillis >= 0) {
+        record(path, Measure.CONNECT_DURATION_IN_MILLIS, connectDurationInMillis)
+      }
+    }
+
+    /**
+     * Notify that the response body was read until its end, or closed.
+     */
+    @Synchronized
+    fun onResponseRead(responseSizeInBytes: Long) {
+      if (responseTimeInMillis == NOT_RECORDED || isResponseRead) {
+        return
+      }
+      isResponseRead = true
+      record(path, Measure.DOWNLOAD_DURATION_IN_MILLIS, clock.currentTimeInMillis - responseTimeInMillis)
+      record(path, Measure.RESPONSE_SIZE_IN_BYTES, responseSizeInBytes)
+    }
+  }
+
+  /**
+   * Copy of a histogram at a given time.
+   *
+   * @property bucketUpperBounds inclusive upper bound of each bucket. An extra bucket holds the values above the last
+   * bound.
+   * @property bucketCounts number of values in each bucket
+   */
+  class HistogramSnapshot internal constructor(
+      val bucketUpperBounds: LongArray,
+      val bucketCounts: LongArray,
+      val count: Long,
+      val sum: Long,
+      val max: Long
+  ) {
+
+    /**
+     * Return the given quantile (for instance `0.95` for the p95), or `null` if no value was recorded.
+     *
+     * Quantiles are given as the upper bound of the bucket containing them, so they are slightly overestimated. Values
+     * above the last bucket are estimated with the maximum value.
+     */
+    fun getQuantile(quantile: Double): Long? {
+      if (count == 0L) {
+        return null
+      }
+
+      val target = quantile * count
+      var cumulativeCount = 0L
+      for (i in bucketUpperBounds.indices) {
+        cumulativeCount += bucketCounts[i]
+        if (cumulativeCount >= target) {
+          return minOf(bucketUpperBounds[i], max)
+        }
+      }
+
+      return max
+    }
+  }
+
+  private class Histogram(private val bucketUpperBounds: LongArray) {
+
+    private val bucketCounts = LongArray(bucketUpperBounds.size + 1)
+    private var count = 0L
+    private var sum = 0L
+    private var max = 0L
+
+    @Synchronized
+    fun record(value: Long) {
+      var bucket = bucketUpperBounds.indexOfFirst { value <= it }
+      if (bucket < 0) {
+        bucket = bucketUpperBounds.size
+      }
+
+      bucketCounts[bucket]++
+      count++
+      sum += value
+      max = maxOf(max, value)
+    }
+
+    @Synchronized
+    fun snapshot() = HistogramSnapshot(bucketUpperBounds.copyOf(), bucketCounts.copyOf(), count, sum, max)
+  }
+
+  @VisibleForTesting
+  internal companion object {
+    private const val NOT_RECORDED = -1L
+    private const val PREWARMING_PATH_PREFIX = "prewarm/"
+
+    val DURATION_BUCKET_UPPER_BOUNDS = longArrayOf(
+        5, 10, 25, 50, 75, 100, 150, 200, 300, 400, 600, 800, 1_000, 1_500, 2_000, 3_000, 5_000, 8_000, 12_000, 16_000
+    )
+
+    val SIZE_BUCKET_UPPER_BOUNDS = longArrayOf(
+        0, 128, 256, 512, 1_024, 2_048, 4_096, 8_192, 16_384, 32_768, 65_536, 131_072, 262_144, 524_288, 1_048_576
+    )
+  }
+}
@@ -0,0 +1,435 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.criteo.publisher.network;
+
+import android.os.Build;
+import android.os.Build.VERSION_CODES;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Transport based on OkHttp, keeping connections alive in a pool shared by all the calls.
+ * <p>
+ * OkHttp is not a direct dependency of the SDK: it is only used when it is present at runtime
+ * (see {@link #isSupported()}). Only APIs common to OkHttp 3 and 4 are used.
+ * <p>
+ * Asynchronous calls are queued in the OkHttp dispatcher, so they do not hold any SDK thread while
+ * they are in flight.
+ */
+public class OkHttpTransport implements HttpTransport {
+
+  private static final int MAX_IDLE_CONNECTIONS = 5;
+  private static final long KEEP_ALIVE_DURATION_IN_MINUTES = 5;
+
+  /**
+   * All the calls of the SDK go to a few hosts, so the per-host limit of the dispatcher is raised to
+   * its global limit. Calls above this limit wait in the dispatcher queue, without holding a thread.
+   */
+  @VisibleForTesting
+  static final int MAX_CONCURRENT_REQUESTS = 64;
+
+  @NonNull
+  private final AtomicInteger newConnectionCount = new AtomicInteger();
+
+  @NonNull
+  private final AtomicInteger reusedConnectionCount = new AtomicInteger();
+
+  /**
+   * Base client, from which a client is derived for each requested timeout. Derived clients share
+   * its connection pool and dispatcher.
+   */
+  @NonNull
+  private final OkHttpClient client;
+
+  /**
+   * Clients by timeout. The SDK only uses a few different timeouts, so this stays small.
+   */
+  @NonNull
+  private final ConcurrentMap<Integer, OkHttpClient> clientsByTimeout = new ConcurrentHashMap<>();
+
+  public OkHttpTransport() {
+    this(new OkHttpClient.Builder());
+  }
+
+  /**
+   * @param clientBuilder base configuration of the client, such as the trusted certificates
+   */
+  @VisibleForTesting
+  OkHttpTransport(@NonNull OkHttpClient.Builder clientBuilder) {
+    Dispatcher dispatcher = new Dispatcher();
+    dispatcher.setMaxRequests(MAX_CONCURRENT_REQUESTS);
+    dispatcher.setMaxRequestsPerHost(MAX_CONCURRENT_REQUESTS);
+
+    client = clientBuilder
+        .dispatcher(dispatcher)
+        .connectionPool(new ConnectionPool(
+            MAX_IDLE_CONNECTIONS,
+            KEEP_ALIVE_DURATION_IN_MINUTES,
+            TimeUnit.MINUTES
+        ))
+        .eventListenerFactory(new EventListener.Factory() {
+          @NonNull
+          @Override
+          public EventListener create(@NonNull Call call) {
+            Object tag = call.request().tag();
+            return new ConnectionReuseListener(
+                tag instanceof OkHttpConnection ? (OkHttpConnection) tag : null
+            );
+          }
+        })
+        .build();
+  }
+
+  /**
+   * Indicate if OkHttp is available at runtime. Recent versions of OkHttp need Android 5.0 or
+   * later.
+   */
+  public static boolean isSupported() {
+    if (Build.VERSION.SDK_INT < VERSION_CODES.LOLLIPOP) {
+      return false;
+    }
+
+    try {
+      Class.forName("okhttp3.OkHttpClient");
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  @NonNull
+  @Override
+  public HttpConnection open(@NonNull URL url, @NonNull String method, int timeoutInMillis) {
+    return new OkHttpConnection(getClient(timeoutInMillis), url, method);
+  }
+
+  @Override
+  public long preconnect(@NonNull URL url, int timeoutInMillis) throws IOException {
+    OkHttpConnection connection = new OkHttpConnection(getClient(timeoutInMillis), url, "HEAD");
+    // Closing the response gives its connection back to the pool
+    try (Response ignored = connection.execute(null)) {
+      return connection.getConnectDurationInMillis();
+    }
+  }
+
+  @Override
+  public int getNewConnectionCount() {
+    return newConnectionCount.get();
+  }
+
+  @Override
+  public int getReusedConnectionCount() {
+    return reusedConnectionCount.get();
+  }
+
+  @NonNull
+  @VisibleForTesting
+  OkHttpClient getClient(int timeoutInMillis) {
+    OkHttpClient timeoutClient = clientsByTimeout.get(timeoutInMillis);
+    if (timeoutClient != null) {
+      return timeoutClient;
+    }
+
+    OkHttpClient newClient = client.newBuilder()
+        .connectTimeout(timeoutInMillis, TimeUnit.MILLISECONDS)
+        .readTimeout(timeoutInMillis, TimeUnit.MILLISECONDS)
+        .writeTimeout(timeoutInMillis, TimeUnit.MILLISECONDS)
+        .build();
+    OkHttpClient previousClient = clientsByTimeout.putIfAbsent(timeoutInMillis, newClient);
+    return previousClient == null ? newClient : previousClient;
+  }
+
+  /**
+   * Count, for each call, if its connection was newly opened or taken from the pool, and report the
+   * time spent to open it to the {@link OkHttpConnection} of the call, if any.
+   */
+  private class ConnectionReuseListener extends EventListener {
+
+    @Nullable
+    private final OkHttpConnection httpConnection;
+
+    private boolean isConnecting = false;
+
+    private long connectStartTime;
+
+    private ConnectionReuseListener(@Nullable OkHttpConnection httpConnection) {
+      this.httpConnection = httpConnection;
+    }
+
+    @Override
+    public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+      onConnectStart();
+    }
+
+    @Override
+    public void connectStart(
+        @NonNull Call call,
+        @NonNull InetSocketAddress inetSocketAddress,
+        @NonNull Proxy proxy
+    ) {
+      onConnectStart();
+    }
+
+    @Override
+    public void connectionAcquired(@NonNull Call call, @NonNull Connection connection) {
+      long connectDurationInMillis = 0;
+      if (isConnecting) {
+        newConnectionCount.incrementAndGet();
+        connectDurationInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStartTime);
+      } else {
+        reusedConnectionCount.incrementAndGet();
+      }
+      isConnecting = false;
+
+      if (httpConnection != null) {
+        httpConnection.connectDurationInMillis = connectDurationInMillis;
+      }
+    }
+
+    private void onConnectStart() {
+      // The DNS resolution and the attempts on each route are all part of the connection
+      if (!isConnecting) {
+        isConnecting = true;
+        connectStartTime = System.nanoTime();
+      }
+    }
+  }
+
+  private static class OkHttpConnection implements HttpConnection {
+
+    @NonNull
+    private final OkHttpClient client;
+
+    @NonNull
+    private final Request.Builder requestBuilder;
+
+    @NonNull
+    private final String method;
+
+    @NonNull
+    private final Object lock = new Object();
+
+    @Nullable
+    @GuardedBy("lock")
+    private Call call;
+
+    @Nullable
+    @GuardedBy("lock")
+    private Response response;
+
+    @GuardedBy("lock")
+    private boolean isCancelled = false;
+
+    /**
+     * Set by the {@link ConnectionReuseListener} of the call, before the response is received.
+     */
+    private volatile long connectDurationInMillis = -1;
+
+    private OkHttpConnection(@NonNull OkHttpClient client, @NonNull URL url, @NonNull String method) {
+      this.client = client;
+      // The tag lets the event listener of the call find this connection
+      this.requestBuilder = new Request.Builder().url(url).tag(this);
+      this.method = method;
+    }
+
+    @Override
+    public void setRequestProperty(@NonNull String key, @NonNull String value) {
+      requestBuilder.header(key, value);
+    }
+
+    /**
+     * The call is executed directly, while the given bytes are still valid.
+     */
+    @Override
+    public void writeBody(@NonNull byte[] bytes, int offset, int length) throws IOException {
+      // Without media type on the body, the Content-Type header is kept as given
+      execute(RequestBody.create((MediaType) null, bytes, offset, length));
+    }
+
+    @Override
+    public void writeBodyAsync(
+        @NonNull byte[] bytes,
+        int offset,
+        int length,
+        @NonNull ResponseCallback callback
+    ) {
+      Call newCall;
+      try {
+        newCall = newCall(RequestBody.create((MediaType) null, bytes, offset, length));
+      } catch (IOException e) {
+        callback.onFailure(e);
+        return;
+      }
+
+      newCall.enqueue(new Callback() {
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+          callback.onFailure(e);
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call, @NonNull Response newResponse) {
+          if (onResponseReceived(newResponse)) {
+            callback.onResponse(OkHttpConnection.this);
+          } else {
+            callback.onFailure(new IOException("Canceled"));
+          }
+        }
+      });
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+      return getResponse().code();
+    }
+
+    @Nullable
+    @Override
+    public String getContentEncoding() {
+      Response currentResponse = peekResponse();
+      return currentResponse == null ? null : currentResponse.header("Content-Encoding");
+    }
+
+    @Nullable
+    @Override
+    public String getHeaderField(@NonNull String name) {
+      Response currentResponse = peekResponse();
+      return currentResponse == null ? null : currentResponse.header(name);
+    }
+
+    @Override
+    public long getContentLength() {
+      Response currentResponse = peekResponse();
+      ResponseBody body = currentResponse == null ? null : currentResponse.body();
+      return body == null ? -1 : body.contentLength();
+    }
+
+    @NonNull
+    @Override
+    public InputStream getInputStream() throws IOException {
+      ResponseBody body = getResponse().body();
+      if (body == null) {
+        throw new IOException("Response has no body");
+      }
+      return body.byteStream();
+    }
+
+    @Override
+    public long getConnectDurationInMillis() {
+      return connectDurationInMillis;
+    }
+
+    @Override
+    public void disconnect() {
+      Call callToCancel;
+      Response responseToClose;
+
+      synchronized (lock) {
+        isCancelled = true;
+        callToCancel = call;
+        responseToClose = response;
+      }
+
+      if (callToCancel != null) {
+        callToCancel.cancel();
+      }
+
+      if (responseToClose != null) {
+        // Give back the connection, even if the response body was not consumed
+        responseToClose.close();
+      }
+    }
+
+    @NonNull
+    private Response getResponse() throws IOException {
+      Response currentResponse = peekResponse();
+      if (currentResponse != null) {
+        return currentResponse;
+      }
+      return execute(null);
+    }
+
+    @Nullable
+    private Response peekResponse() {
+      synchronized (lock) {
+        return response;
+      }
+    }
+
+    @NonNull
+    private Response execute(@Nullable RequestBody body) throws IOException {
+      Response newResponse = newCall(body).execute();
+      if (onResponseReceived(newResponse)) {
+        return newResponse;
+      }
+      throw new IOException("Canceled");
+    }
+
+    @NonNull
+    private Call newCall(@Nullable RequestBody body) throws IOException {
+      synchronized (lock) {
+        if (isCancelled) {
+          throw new IOException("Canceled");
+        }
+        if (call != null) {
+          throw new IllegalStateException("Request already sent");
+        }
+        Call newCall = client.newCall(requestBuilder.method(method, body).build());
+        call = newCall;
+        return newCall;
+      }
+    }
+
+    /**
+     * Keep the given response, unless the connection was disconnected meanwhile. In this case, the
+     * response is closed and <code>false</code> is returned.
+     */
+    private boolean onResponseReceived(@NonNull Response newResponse) {
+      synchronized (lock) {
+        if (!isCancelled) {
+          response = newResponse;
+          return true;
+        }
+      }
+
+      newResponse.close();
+      return false;
+    }
+  }
+}
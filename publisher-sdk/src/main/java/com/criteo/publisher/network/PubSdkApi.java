@@ -18,29 +18,35 @@ package com.criteo.publisher.network;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import com.criteo.publisher.context.ContextProvider;
 import com.criteo.publisher.csm.MetricRequest;
 import com.criteo.publisher.logging.Logger;
 import com.criteo.publisher.logging.LoggerFactory;
 import com.criteo.publisher.logging.RemoteLogRecords;
 import com.criteo.publisher.model.CdbRequest;
 import com.criteo.publisher.model.CdbResponse;
+import com.criteo.publisher.model.CdbResponseSlot;
+import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.RemoteConfigRequest;
 import com.criteo.publisher.model.RemoteConfigResponse;
+import com.criteo.publisher.model.VersionedRemoteConfig;
+import com.criteo.publisher.network.NetworkMetrics.CallRecorder;
 import com.criteo.publisher.util.BuildConfigWrapper;
 import com.criteo.publisher.util.JsonSerializer;
 import com.criteo.publisher.util.StreamUtil;
 import com.criteo.publisher.util.TextUtils;
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -51,6 +57,13 @@ public class PubSdkApi {
   private static final String EVENT_TYPE = "eventType";
   private static final String LIMITED_AD_TRACKING = "limitedAdTracking";
   private static final String GDPR_CONSENT = "gdpr_consent";
+  private static final String GZIP_ENCODING = "gzip";
+
+  public static final String CONFIG_PATH = "/config/app";
+  public static final String CDB_PATH = "/inapp/v2";
+  public static final String CSM_PATH = "/csm";
+  public static final String LOGS_PATH = "/inapp/logs";
+  public static final String APP_EVENT_PATH = "/appevent/v1";
 
   @NonNull
   private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -61,40 +74,248 @@ public class PubSdkApi {
   @NonNull
   private final JsonSerializer jsonSerializer;
 
+  @NonNull
+  private final Config config;
+
+  @NonNull
+  private final HttpTransport httpTransport;
+
+  @NonNull
+  private final CircuitBreaker circuitBreaker;
+
+  @NonNull
+  private final NetworkMetrics networkMetrics;
+
+  @NonNull
+  private final ContextProvider contextProvider;
+
   public PubSdkApi(
       @NonNull BuildConfigWrapper buildConfigWrapper,
-      @NonNull JsonSerializer jsonSerializer
+      @NonNull JsonSerializer jsonSerializer,
+      @NonNull Config config,
+      @NonNull HttpTransport httpTransport,
+      @NonNull CircuitBreaker circuitBreaker,
+      @NonNull NetworkMetrics networkMetrics,
+      @NonNull ContextProvider contextProvider
   ) {
     this.buildConfigWrapper = buildConfigWrapper;
     this.jsonSerializer = jsonSerializer;
+    this.config = config;
+    this.httpTransport = httpTransport;
+    this.circuitBreaker = circuitBreaker;
+    this.networkMetrics = networkMetrics;
+    this.contextProvider = contextProvider;
   }
 
-  @NonNull
-  public RemoteConfigResponse loadConfig(@NonNull RemoteConfigRequest request) throws IOException {
-    URL url = new URL(buildConfigWrapper.getCdbUrl() + "/config/app");
-    HttpURLConnection urlConnection = prepareConnection(url, null, "POST");
-    writePayload(urlConnection, request);
+  /**
+   * Fetch the remote config, unless it is not modified since the version identified by the given
+   * entity tag.
+   *
+   * @param entityTag validator of the config currently in use, or <code>null</code> if there is none
+   * @return the fetched config, or <code>null</code> if the server answered that the config is not
+   * modified
+   */
+  @Nullable
+  public VersionedRemoteConfig loadConfig(
+      @NonNull RemoteConfigRequest request,
+      @Nullable String entityTag
+  ) throws IOException {
+    acquireCallPermission(CONFIG_PATH);
+    try {
+      URL url = new URL(buildConfigWrapper.getCdbUrl() + CONFIG_PATH);
+      CallRecorder callRecorder = networkMetrics.newCall(CONFIG_PATH);
+      HttpConnection urlConnection = prepareConnection(url, null, "POST");
+      if (entityTag != null) {
+        urlConnection.setRequestProperty("If-None-Match", entityTag);
+      }
+      // The remote config is what enables the compression, so it is never compressed itself
+      writePayload(urlConnection, request, false, callRecorder);
+
+      if (entityTag != null && isNotModified(urlConnection.getResponseCode())) {
+        callRecorder.onResponseReceived(urlConnection.getConnectDurationInMillis());
+        // There is no body, closing the stream releases the connection so it can be reused
+        new MeteredInputStream(urlConnection.getInputStream(), callRecorder).close();
+        circuitBreaker.onSuccess(CONFIG_PATH);
+        return null;
+      }
 
-    try (InputStream inputStream = readResponseStreamIfSuccess(urlConnection)) {
-      return jsonSerializer.read(RemoteConfigResponse.class, inputStream);
+      RemoteConfigResponse response;
+      try (InputStream inputStream = readResponseStreamIfSuccess(urlConnection, callRecorder)) {
+        response = jsonSerializer.read(RemoteConfigResponse.class, inputStream);
+      }
+      circuitBreaker.onSuccess(CONFIG_PATH);
+      return new VersionedRemoteConfig(response, urlConnection.getHeaderField("ETag"));
+    } catch (IOException | RuntimeException e) {
+      onCallFailed(CONFIG_PATH, e, false);
+      throw e;
     }
   }
 
+  /**
+   * Indicate if the given status answers a conditional fetch of the remote config with an unchanged
+   * config. The config is fetched with a <code>POST</code>, and per RFC 7232, a matching
+   * <code>If-None-Match</code> on such a method gets a <code>412 Precondition Failed</code> instead of
+   * a <code>304 Not Modified</code>.
+   */
+  private static boolean isNotModified(int status) {
+    return status == HttpURLConnection.HTTP_NOT_MODIFIED
+        || status == HttpURLConnection.HTTP_PRECON_FAILED;
+  }
+
   @NonNull
   public CdbResponse loadCdb(@NonNull CdbRequest request, @NonNull String userAgent) throws Exception {
-    URL url = new URL(buildConfigWrapper.getCdbUrl() + "/inapp/v2");
-    HttpURLConnection urlConnection = prepareConnection(url, userAgent, "POST");
-    urlConnection.setDoOutput(true);
-    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-      jsonSerializer.write(request, baos);
-      logger.log(NetworkLogMessage.onCdbCallStarted(baos.toString("UTF-8")));
-      urlConnection.getOutputStream().write(baos.toByteArray());
+    acquireCallPermission(CDB_PATH);
+    try {
+      CallRecorder callRecorder = networkMetrics.newCall(CDB_PATH);
+      HttpConnection urlConnection = openCdbConnection(userAgent);
+
+      RequestPayloadBuffer payload = serializeCdbRequest(request);
+      try {
+        writePayload(urlConnection, payload, config.isCdbRequestCompressionEnabled(), callRecorder);
+      } finally {
+        payload.release();
+      }
+
+      CdbResponse cdbResponse = readCdbResponse(urlConnection, callRecorder);
+      circuitBreaker.onSuccess(CDB_PATH);
+      return cdbResponse;
+    } catch (Exception e) {
+      onCallFailed(CDB_PATH, e, isCurrentCdbCallCancelled());
+      throw e;
+    }
+  }
+
+  /**
+   * Same as {@link #loadCdb(CdbRequest, String)}, but the calling thread is not blocked while the
+   * request is in flight.
+   * <p>
+   * The callback is notified with the response or the error, either on a thread of the
+   * {@link HttpTransport} or directly on the calling thread.
+   */
+  public void loadCdbAsync(
+      @NonNull CdbRequest request,
+      @NonNull String userAgent,
+      @NonNull CdbCallback callback
+  ) {
+    if (!circuitBreaker.tryAcquirePermission(CDB_PATH)) {
+      callback.onFailure(new CircuitBreakerOpenException(CDB_PATH));
+      return;
+    }
+
+    // The callback may run on another thread, where the handle of this call is not available
+    CdbCallHandle callHandle = CdbCallHandle.current();
+    CallRecorder callRecorder = networkMetrics.newCall(CDB_PATH);
+
+    HttpConnection urlConnection;
+    byte[] body;
+    try {
+      urlConnection = openCdbConnection(userAgent);
+
+      RequestPayloadBuffer payload = serializeCdbRequest(request);
+      try {
+        compressIfNeeded(urlConnection, payload, config.isCdbRequestCompressionEnabled());
+        // The buffer is reused by the next request of this thread, so the transport gets a copy
+        body = payload.toByteArray();
+      } finally {
+        payload.release();
+      }
+    } catch (Exception e) {
+      onCallFailed(CDB_PATH, e, isCancelled(callHandle));
+      callback.onFailure(e);
+      return;
+    }
+
+    callRecorder.onRequestStarted(body.length);
+    urlConnection.writeBodyAsync(body, 0, body.length, new HttpConnection.ResponseCallback() {
+      @Override
+      public void onResponse(@NonNull HttpConnection connection) {
+        CdbResponse cdbResponse;
+        try {
+          cdbResponse = readCdbResponse(connection, callRecorder);
+        } catch (Exception e) {
+          onCallFailed(CDB_PATH, e, isCancelled(callHandle));
+          callback.onFailure(e);
+          return;
+        }
+        circuitBreaker.onSuccess(CDB_PATH);
+        callback.onSuccess(cdbResponse);
+      }
+
+      @Override
+      public void onFailure(@NonNull IOException exception) {
+        onCallFailed(CDB_PATH, exception, isCancelled(callHandle));
+        callback.onFailure(exception);
+      }
+    });
+  }
+
+  @NonNull
+  private HttpConnection openCdbConnection(@NonNull String userAgent) throws IOException {
+    URL url = new URL(buildConfigWrapper.getCdbUrl() + CDB_PATH);
+    HttpConnection urlConnection = prepareConnection(url, userAgent, "POST");
+
+    CdbCallHandle callHandle = CdbCallHandle.current();
+    if (callHandle != null) {
+      callHandle.onConnectionOpened(urlConnection);
+    }
+    return urlConnection;
+  }
+
+  /**
+   * Serialize the given request into a {@linkplain RequestPayloadBuffer#acquire() acquired buffer},
+   * that should be released once sent.
+   */
+  @NonNull
+  private RequestPayloadBuffer serializeCdbRequest(@NonNull CdbRequest request) throws IOException {
+    RequestPayloadBuffer payload = RequestPayloadBuffer.acquire();
+    boolean isSerialized = false;
+    try {
+      jsonSerializer.write(request, payload);
+      if (logger.isLoggable(NetworkLogMessage.CDB_CALL_LOG_LEVEL)) {
+        logger.log(NetworkLogMessage.onCdbCallStarted(payload.toUtf8String()));
+      }
+      isSerialized = true;
+      return payload;
+    } finally {
+      if (!isSerialized) {
+        payload.release();
+      }
     }
+  }
 
-    try (InputStream inputStream = readResponseStreamIfSuccess(urlConnection)) {
-      String response = StreamUtil.readStream(inputStream);
-      logger.log(NetworkLogMessage.onCdbCallFinished(response));
-      return CdbResponse.fromJson(readJson(response));
+  @NonNull
+  private CdbResponse readCdbResponse(
+      @NonNull HttpConnection urlConnection,
+      @NonNull CallRecorder callRecorder
+  ) throws IOException {
+    // The response is only copied if it is logged
+    boolean isLogged = logger.isLoggable(NetworkLogMessage.CDB_CALL_LOG_LEVEL);
+    try (RecordingInputStream inputStream = new RecordingInputStream(
+        readResponseStreamIfSuccess(urlConnection, callRecorder),
+        isLogged
+    )) {
+      CdbResponse cdbResponse = readCdbResponse(inputStream);
+      if (isLogged) {
+        logger.log(NetworkLogMessage.onCdbCallFinished(inputStream.getRecordedString()));
+      }
+      return cdbResponse;
+    }
+  }
+
+  /**
+   * Parse the response directly from the network stream, without an intermediate string or JSON
+   * tree.
+   */
+  @NonNull
+  private CdbResponse readCdbResponse(@NonNull RecordingInputStream inputStream) throws IOException {
+    try {
+      return jsonSerializer.read(CdbResponse.class, inputStream);
+    } catch (EOFException e) {
+      if (inputStream.isBlank()) {
+        // No content is returned when there is no bid
+        return new CdbResponse(Collections.<CdbResponseSlot>emptyList(), 0, null);
+      }
+      throw e;
     }
   }
 
@@ -123,9 +344,10 @@ public class PubSdkApi {
         parameters.put(GDPR_CONSENT, gdprConsentData);
     }
 
-    String query = "/appevent/v1/" + senderId + "?" + getParamsString(parameters);
+    String query = APP_EVENT_PATH + "/" + senderId + "?" + getParamsString(parameters);
     URL url = new URL(buildConfigWrapper.getEventUrl() + query);
-    try (InputStream inputStream = executeRawGet(url, userAgent)) {
+    CallRecorder callRecorder = networkMetrics.newCall(APP_EVENT_PATH);
+    try (InputStream inputStream = executeGet(url, userAgent, callRecorder)) {
       return readJson(inputStream);
     }
   }
@@ -136,46 +358,136 @@ public class PubSdkApi {
   }
 
   public void postCsm(@NonNull MetricRequest request) throws IOException {
-    postToCdb("/csm", request);
+    postToCdb(CSM_PATH, request, config.isCsmRequestCompressionEnabled());
   }
 
   public void postLogs(@NonNull List<RemoteLogRecords> request) throws IOException {
-    postToCdb("/inapp/logs", request);
+    postToCdb(LOGS_PATH, request, config.isRemoteLogsRequestCompressionEnabled());
+  }
+
+  private void postToCdb(
+      @NonNull String apiPath,
+      @NonNull Object request,
+      boolean isCompressionEnabled
+  ) throws IOException {
+    acquireCallPermission(apiPath);
+    try {
+      URL url = new URL(buildConfigWrapper.getCdbUrl() + apiPath);
+      CallRecorder callRecorder = networkMetrics.newCall(apiPath);
+      HttpConnection urlConnection = prepareConnection(url, null, "POST");
+      writePayload(urlConnection, request, isCompressionEnabled, callRecorder);
+      readResponseStreamIfSuccess(urlConnection, callRecorder).close();
+      circuitBreaker.onSuccess(apiPath);
+    } catch (IOException | RuntimeException e) {
+      onCallFailed(apiPath, e, false);
+      throw e;
+    }
+  }
+
+  /**
+   * @throws CircuitBreakerOpenException if calls to the given path are currently suspended
+   */
+  private void acquireCallPermission(@NonNull String apiPath) throws CircuitBreakerOpenException {
+    if (!circuitBreaker.tryAcquirePermission(apiPath)) {
+      throw new CircuitBreakerOpenException(apiPath);
+    }
   }
 
-  private void postToCdb(@NonNull String apiPath, @NonNull Object request) throws IOException {
-    URL url = new URL(buildConfigWrapper.getCdbUrl() + apiPath);
-    HttpURLConnection urlConnection = prepareConnection(url, null, "POST");
-    writePayload(urlConnection, request);
-    readResponseStreamIfSuccess(urlConnection).close();
+  /**
+   * Report the outcome of a failed call to the {@link CircuitBreaker}. Error statuses other than
+   * server errors mean that the endpoint is reachable, so they do not count as failures. Failures
+   * while the device is offline do not tell anything about the endpoint either.
+   */
+  private void onCallFailed(
+      @NonNull String apiPath,
+      @NonNull Exception exception,
+      boolean isCancelled
+  ) {
+    if (isCancelled || contextProvider.isOffline()) {
+      circuitBreaker.onIgnored(apiPath);
+    } else if (exception instanceof HttpResponseException
+        && ((HttpResponseException) exception).getStatus() < HttpURLConnection.HTTP_INTERNAL_ERROR) {
+      circuitBreaker.onSuccess(apiPath);
+    } else {
+      circuitBreaker.onFailure(apiPath);
+    }
   }
 
+  private static boolean isCurrentCdbCallCancelled() {
+    return isCancelled(CdbCallHandle.current());
+  }
+
+  private static boolean isCancelled(@Nullable CdbCallHandle callHandle) {
+    return callHandle != null && callHandle.isCancelled();
+  }
+
+  /**
+   * Execute a GET on any URL, such as a creative or a pixel. Those calls are not recorded in the
+   * {@link NetworkMetrics}, as they do not target an endpoint of the SDK.
+   */
   @NonNull
   public InputStream executeRawGet(URL url, @Nullable String userAgent) throws IOException {
-    HttpURLConnection urlConnection = prepareConnection(url, userAgent, "GET");
-    return readResponseStreamIfSuccess(urlConnection);
+    return executeGet(url, userAgent, null);
+  }
+
+  @NonNull
+  private InputStream executeGet(
+      @NonNull URL url,
+      @Nullable String userAgent,
+      @Nullable CallRecorder callRecorder
+  ) throws IOException {
+    HttpConnection urlConnection = prepareConnection(url, userAgent, "GET");
+    if (callRecorder != null) {
+      callRecorder.onRequestStarted(0);
+    }
+    return readResponseStreamIfSuccess(urlConnection, callRecorder);
   }
 
   @NonNull
-  private HttpURLConnection prepareConnection(@NonNull URL url,
+  private HttpConnection prepareConnection(@NonNull URL url,
       @Nullable String userAgent, String method) throws IOException {
-    HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-    urlConnection.setRequestMethod(method);
-    urlConnection.setReadTimeout(buildConfigWrapper.getNetworkTimeoutInMillis());
-    urlConnection.setConnectTimeout(buildConfigWrapper.getNetworkTimeoutInMillis());
+    HttpConnection urlConnection = httpTransport.open(
+        url,
+        method,
+        buildConfigWrapper.getNetworkTimeoutInMillis()
+    );
     urlConnection.setRequestProperty("Content-Type", "text/plain");
+    urlConnection.setRequestProperty("Accept-Encoding", GZIP_ENCODING);
     if (!TextUtils.isEmpty(userAgent)) {
       urlConnection.setRequestProperty("User-Agent", userAgent);
     }
     return urlConnection;
   }
 
+  /**
+   * @param callRecorder recorder of the call, notified of the response and, through the returned
+   * stream, of its read
+   */
   @NonNull
-  private static InputStream readResponseStreamIfSuccess(@NonNull HttpURLConnection urlConnection) throws IOException {
+  private static InputStream readResponseStreamIfSuccess(
+      @NonNull HttpConnection urlConnection,
+      @Nullable CallRecorder callRecorder
+  ) throws IOException {
     int status = urlConnection.getResponseCode();
+    if (callRecorder != null) {
+      callRecorder.onResponseReceived(urlConnection.getConnectDurationInMillis());
+    }
+
     if (status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_NO_CONTENT) {
-      return urlConnection.getInputStream();
+      InputStream inputStream = urlConnection.getInputStream();
+      if (callRecorder != null) {
+        // Counted before decoding, to account the bytes actually received
+        inputStream = new MeteredInputStream(inputStream, callRecorder);
+      }
+      if (isGzipEncoded(urlConnection) && status != HttpURLConnection.HTTP_NO_CONTENT
+          && urlConnection.getContentLength() != 0) {
+        // As Accept-Encoding is set explicitly, the connection does not decode the response itself
+        return new GZIPInputStream(inputStream);
+      }
+      return inputStream;
     } else {
+      // Release the connection, as the response is not read
+      urlConnection.disconnect();
       throw new HttpResponseException(status);
     }
   }
@@ -193,12 +505,45 @@ public class PubSdkApi {
     return new JSONObject(json);
   }
 
+  private static boolean isGzipEncoded(@NonNull HttpConnection urlConnection) {
+    return GZIP_ENCODING.equalsIgnoreCase(urlConnection.getContentEncoding());
+  }
+
+  private void writePayload(
+      @NonNull HttpConnection urlConnection,
+      @NonNull Object request,
+      boolean isCompressionEnabled,
+      @NonNull CallRecorder callRecorder) throws IOException {
+    RequestPayloadBuffer payload = RequestPayloadBuffer.acquire();
+    try {
+      jsonSerializer.write(request, payload);
+      writePayload(urlConnection, payload, isCompressionEnabled, callRecorder);
+    } finally {
+      payload.release();
+    }
+  }
+
+  /**
+   * Send the given payload, compressed with gzip if the compression is enabled and if the payload is
+   * big enough to benefit from it.
+   */
   private void writePayload(
-      @NonNull HttpURLConnection urlConnection,
-      @NonNull Object request) throws IOException {
-    urlConnection.setDoOutput(true);
-    try (OutputStream outputStream = urlConnection.getOutputStream()) {
-      jsonSerializer.write(request, outputStream);
+      @NonNull HttpConnection urlConnection,
+      @NonNull RequestPayloadBuffer payload,
+      boolean isCompressionEnabled,
+      @NonNull CallRecorder callRecorder) throws IOException {
+    compressIfNeeded(urlConnection, payload, isCompressionEnabled);
+    callRecorder.onRequestStarted(payload.size());
+    payload.writeTo(urlConnection);
+  }
+
+  private void compressIfNeeded(
+      @NonNull HttpConnection urlConnection,
+      @NonNull RequestPayloadBuffer payload,
+      boolean isCompressionEnabled) throws IOException {
+    if (isCompressionEnabled && payload.size() >= config.getRequestCompressionMinSizeInBytes()) {
+      payload.compress();
+      urlConnection.setRequestProperty("Content-Encoding", GZIP_ENCODING);
     }
   }
 
@@ -221,4 +566,11 @@ public class PubSdkApi {
         : queryString.toString();
   }
 
+  public interface CdbCallback {
+
+    void onSuccess(@NonNull CdbResponse response);
+
+    void onFailure(@NonNull Exception exception);
+  }
+
 }
@@ -0,0 +1,106 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Input stream keeping a copy of the bytes read through it, so a payload parsed on the fly can
+ * still be logged afterward.
+ * <p>
+ * The copy is only kept if recording is enabled, so the payload is not copied when it is not
+ * logged. In both cases, the stream tells if only whitespaces were read.
+ */
+class RecordingInputStream extends FilterInputStream {
+
+  @Nullable
+  private final ByteArrayOutputStream recordedBytes;
+
+  private boolean isBlank = true;
+
+  RecordingInputStream(@NonNull InputStream in, boolean isRecording) {
+    super(in);
+    this.recordedBytes = isRecording ? new ByteArrayOutputStream() : null;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int read = super.read();
+    if (read != -1) {
+      if (isBlank && !Character.isWhitespace(read)) {
+        isBlank = false;
+      }
+      if (recordedBytes != null) {
+        recordedBytes.write(read);
+      }
+    }
+    return read;
+  }
+
+  @Override
+  public int read(@NonNull byte[] b, int off, int len) throws IOException {
+    int read = super.read(b, off, len);
+    if (read > 0) {
+      for (int i = off; isBlank && i < off + read; i++) {
+        if (!Character.isWhitespace(b[i])) {
+          isBlank = false;
+        }
+      }
+      if (recordedBytes != null) {
+        recordedBytes.write(b, off, read);
+      }
+    }
+    return read;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    // Skipped bytes would be missing from the record, so they are read instead
+    byte[] buffer = new byte[(int) Math.min(n, 512)];
+    int read = read(buffer, 0, buffer.length);
+    return Math.max(read, 0);
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  /**
+   * Indicate if only whitespaces were read so far.
+   */
+  boolean isBlank() {
+    return isBlank;
+  }
+
+  /**
+   * Return the bytes read so far, or an empty string if recording is not enabled.
+   */
+  @NonNull
+  String getRecordedString() throws UnsupportedEncodingException {
+    if (recordedBytes == null) {
+      return "";
+    }
+    return recordedBytes.toString("UTF-8");
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Buffer holding a serialized request payload, so it can be sent with a known length and written
+ * only once into the connection.
+ * <p>
+ * Buffers are reused per thread, as requests are serialized and sent by the same worker thread.
+ * Buffers that grew too much are not retained, so a single big payload does not hold memory
+ * forever.
+ */
+class RequestPayloadBuffer extends ByteArrayOutputStream {
+
+  private static final int INITIAL_CAPACITY = 4 * 1024;
+
+  @VisibleForTesting
+  static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+  private static final ThreadLocal<RequestPayloadBuffer> BUFFERS = new ThreadLocal<>();
+
+  private boolean isAcquired = false;
+
+  private RequestPayloadBuffer() {
+    super(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Return an empty buffer for the current thread. It should be {@linkplain #release() released}
+   * once the payload is sent.
+   */
+  @NonNull
+  static RequestPayloadBuffer acquire() {
+    RequestPayloadBuffer buffer = BUFFERS.get();
+    if (buffer == null || buffer.isAcquired) {
+      // A nested acquisition does not steal the buffer of the outer one
+      buffer = new RequestPayloadBuffer();
+      if (BUFFERS.get() == null) {
+        BUFFERS.set(buffer);
+      }
+    }
+
+    buffer.reset();
+    buffer.isAcquired = true;
+    return buffer;
+  }
+
+  void release() {
+    isAcquired = false;
+    if (buf.length > MAX_RETAINED_CAPACITY && BUFFERS.get() == this) {
+      BUFFERS.remove();
+    }
+  }
+
+  /**
+   * Compress the buffered payload with gzip. The compressed payload replaces the original one.
+   */
+  void compress() throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(32, count / 4));
+    try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed)) {
+      gzipOutputStream.write(buf, 0, count);
+    }
+
+    reset();
+    compressed.writeTo(this);
+  }
+
+  /**
+   * Send the buffered payload as the body of the given connection, with a fixed length so the
+   * connection does not buffer it again.
+   */
+  void writeTo(@NonNull HttpConnection connection) throws IOException {
+    connection.writeBody(buf, 0, count);
+  }
+
+  @NonNull
+  String toUtf8String() throws UnsupportedEncodingException {
+    return toString("UTF-8");
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.criteo.publisher.dependency.LazyDependency;
+import com.criteo.publisher.model.Config;
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Transport delegating each call to the {@link OkHttpTransport} when it is activated by the remote
+ * config and OkHttp is present at runtime, or to the default transport otherwise.
+ * <p>
+ * The remote config is read at each call, so a change of the flag applies to the next calls. The
+ * OkHttp transport is only created the first time it is used.
+ */
+public class SwitchingHttpTransport implements HttpTransport {
+
+  @NonNull
+  private final Config config;
+
+  @NonNull
+  private final HttpTransport defaultTransport;
+
+  /**
+   * Provide the OkHttp transport, or <code>null</code> if OkHttp is not usable at runtime.
+   */
+  @NonNull
+  private final LazyDependency<HttpTransport> okHttpTransport;
+
+  private volatile boolean isOkHttpTransportUsed = false;
+
+  public SwitchingHttpTransport(
+      @NonNull Config config,
+      @NonNull HttpTransport defaultTransport,
+      @NonNull LazyDependency<HttpTransport> okHttpTransport
+  ) {
+    this.config = config;
+    this.defaultTransport = defaultTransport;
+    this.okHttpTransport = okHttpTransport;
+  }
+
+  @NonNull
+  @Override
+  public HttpConnection open(@NonNull URL url, @NonNull String method, int timeoutInMillis)
+      throws IOException {
+    return getTransport().open(url, method, timeoutInMillis);
+  }
+
+  @Override
+  public long preconnect(@NonNull URL url, int timeoutInMillis) throws IOException {
+    return getTransport().preconnect(url, timeoutInMillis);
+  }
+
+  @Override
+  public int getNewConnectionCount() {
+    HttpTransport usedOkHttpTransport = getUsedOkHttpTransport();
+    int count = defaultTransport.getNewConnectionCount();
+    return usedOkHttpTransport == null ? count : count + usedOkHttpTransport.getNewConnectionCount();
+  }
+
+  @Override
+  public int getReusedConnectionCount() {
+    HttpTransport usedOkHttpTransport = getUsedOkHttpTransport();
+    int count = defaultTransport.getReusedConnectionCount();
+    return usedOkHttpTransport == null ? count : count + usedOkHttpTransport.getReusedConnectionCount();
+  }
+
+  @NonNull
+  private HttpTransport getTransport() {
+    if (!config.isOkHttpTransportEnabled()) {
+      return defaultTransport;
+    }
+
+    HttpTransport transport = okHttpTransport.get();
+    if (transport == null) {
+      return defaultTransport;
+    }
+
+    isOkHttpTransportUsed = true;
+    return transport;
+  }
+
+  @Nullable
+  private HttpTransport getUsedOkHttpTransport() {
+    return isOkHttpTransportUsed ? okHttpTransport.get() : null;
+  }
+}
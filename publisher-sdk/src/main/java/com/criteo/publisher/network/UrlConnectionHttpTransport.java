@@ -0,0 +1,173 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.criteo.publisher.network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport based on the platform {@link HttpURLConnection}.
+ * <p>
+ * The platform keeps alive and pools connections by itself, but this is not observable, so the
+ * connection counters of this transport always stay at zero. This transport is used when a pooled
+ * transport is not available. It has no asynchronous I/O, so asynchronous calls block the calling
+ * thread.
+ */
+public class UrlConnectionHttpTransport implements HttpTransport {
+
+  @NonNull
+  @Override
+  public HttpConnection open(@NonNull URL url, @NonNull String method, int timeoutInMillis)
+      throws IOException {
+    HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+    urlConnection.setRequestMethod(method);
+    urlConnection.setReadTimeout(timeoutInMillis);
+    urlConnection.setConnectTimeout(timeoutInMillis);
+    return new UrlConnection(urlConnection);
+  }
+
+  /**
+   * The platform keeps the connection alive as long as the response is read until its end and
+   * closed, without disconnecting.
+   */
+  @Override
+  public long preconnect(@NonNull URL url, int timeoutInMillis) throws IOException {
+    HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+    urlConnection.setRequestMethod("HEAD");
+    urlConnection.setReadTimeout(timeoutInMillis);
+    urlConnection.setConnectTimeout(timeoutInMillis);
+
+    long connectStartTime = System.nanoTime();
+    urlConnection.connect();
+    long connectDurationInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStartTime);
+
+    int status = urlConnection.getResponseCode();
+    InputStream inputStream = status < HttpURLConnection.HTTP_BAD_REQUEST
+        ? urlConnection.getInputStream()
+        : urlConnection.getErrorStream();
+    if (inputStream != null) {
+      inputStream.close();
+    }
+    return connectDurationInMillis;
+  }
+
+  @Override
+  public int getNewConnectionCount() {
+    return 0;
+  }
+
+  @Override
+  public int getReusedConnectionCount() {
+    return 0;
+  }
+
+  private static class UrlConnection implements HttpConnection {
+
+    @NonNull
+    private final HttpURLConnection urlConnection;
+
+    private long connectDurationInMillis = -1;
+
+    private UrlConnection(@NonNull HttpURLConnection urlConnection) {
+      this.urlConnection = urlConnection;
+    }
+
+    @Override
+    public void setRequestProperty(@NonNull String key, @NonNull String value) {
+      urlConnection.setRequestProperty(key, value);
+    }
+
+    @Override
+    public void writeBody(@NonNull byte[] bytes, int offset, int length) throws IOException {
+      urlConnection.setDoOutput(true);
+      urlConnection.setFixedLengthStreamingMode(length);
+
+      // The platform reuses kept alive connections by itself, so connecting is then immediate
+      long connectStartTime = System.nanoTime();
+      urlConnection.connect();
+      connectDurationInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStartTime);
+
+      try (OutputStream outputStream = urlConnection.getOutputStream()) {
+        outputStream.write(bytes, offset, length);
+      }
+    }
+
+    /**
+     * The platform connection has no asynchronous API, so the call is done on the calling thread.
+     */
+    @Override
+    public void writeBodyAsync(
+        @NonNull byte[] bytes,
+        int offset,
+        int length,
+        @NonNull ResponseCallback callback
+    ) {
+      try {
+        writeBody(bytes, offset, length);
+        urlConnection.getResponseCode();
+      } catch (IOException e) {
+        callback.onFailure(e);
+        return;
+      }
+      callback.onResponse(this);
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+      return urlConnection.getResponseCode();
+    }
+
+    @Nullable
+    @Override
+    public String getContentEncoding() {
+      return urlConnection.getContentEncoding();
+    }
+
+    @Nullable
+    @Override
+    public String getHeaderField(@NonNull String name) {
+      return urlConnection.getHeaderField(name);
+    }
+
+    @Override
+    public long getContentLength() {
+      return urlConnection.getContentLength();
+    }
+
+    @NonNull
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return urlConnection.getInputStream();
+    }
+
+    @Override
+    public long getConnectDurationInMillis() {
+      return connectDurationInMillis;
+    }
+
+    @Override
+    public void disconnect() {
+      // Blocking reads on the connection are not interruptible, only a disconnection unblocks them
+      urlConnection.disconnect();
+    }
+  }
+}
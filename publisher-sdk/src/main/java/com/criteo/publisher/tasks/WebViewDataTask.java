@@ -22,6 +22,7 @@ import static com.criteo.publisher.CriteoListenerCode.VALID;
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.DeviceInfo;
 import com.criteo.publisher.model.WebViewData;
 import com.criteo.publisher.network.PubSdkApi;
@@ -29,6 +30,7 @@ import com.criteo.publisher.util.StreamUtil;
 import com.criteo.publisher.util.TextUtils;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.Charset;
 
 public class WebViewDataTask extends SafeRunnable {
 
@@ -47,18 +49,23 @@ public class WebViewDataTask extends SafeRunnable {
   @NonNull
   private final PubSdkApi api;
 
+  @NonNull
+  private final Config config;
+
   public WebViewDataTask(
       @NonNull String displayUrl,
       @NonNull WebViewData webviewData,
       @NonNull DeviceInfo deviceInfo,
       @NonNull InterstitialListenerNotifier listenerNotifier,
-      @NonNull PubSdkApi api
+      @NonNull PubSdkApi api,
+      @NonNull Config config
   ) {
     this.displayUrl = displayUrl;
     this.webviewData = webviewData;
     this.deviceInfo = deviceInfo;
     this.listenerNotifier = listenerNotifier;
     this.api = api;
+    this.config = config;
   }
 
   @Override
@@ -80,10 +87,15 @@ public class WebViewDataTask extends SafeRunnable {
   @VisibleForTesting
   String downloadCreative() throws Exception {
     URL url = new URL(displayUrl);
+    // This does not block: the task is only executed once the user agent is known
     String userAgent = deviceInfo.getUserAgent().get();
 
     try (InputStream stream = api.executeRawGet(url, userAgent)) {
-      return StreamUtil.readStream(stream);
+      return StreamUtil.readStream(
+          stream,
+          Charset.forName("UTF-8"),
+          config.getMaxCreativeSizeInBytes()
+      );
     }
   }
 
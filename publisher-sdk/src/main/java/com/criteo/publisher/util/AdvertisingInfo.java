@@ -17,21 +17,43 @@
 package com.criteo.publisher.util;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.Editor;
 import android.os.Looper;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
+import com.criteo.publisher.Clock;
 import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.concurrent.PrioritizedRunnable;
+import com.criteo.publisher.concurrent.TaskPriority;
 import com.criteo.publisher.logging.Logger;
 import com.criteo.publisher.logging.LoggerFactory;
 import com.google.android.gms.ads.identifier.AdvertisingIdClient;
 import com.google.android.gms.ads.identifier.AdvertisingIdClient.Info;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Provide the advertising ID of the device and its limit ad tracking setting.
+ * <p>
+ * Getting them from Play Services is an IPC that cannot be done on the main thread. So the last
+ * known result is persisted and served immediately, even on a cold start. A result older than
+ * {@link BuildConfigWrapper#getAdvertisingIdRefreshPeriodInMillis()} is still served, while a new
+ * one is fetched in background to replace it.
+ * <p>
+ * The user may have reset the ID or limited the ad tracking while the application was not
+ * running. So a result persisted by a previous process is always refreshed once, and is served
+ * until the new one replaces it.
+ */
 public class AdvertisingInfo {
 
+  private static final String ADVERTISING_ID_STORAGE_KEY = "CriteoCachedAdvertisingId";
+  private static final String LIMIT_AD_TRACKING_STORAGE_KEY = "CriteoCachedLimitAdTracking";
+  private static final String FETCH_TIME_STORAGE_KEY = "CriteoCachedAdvertisingIdFetchTime";
+
   @NonNull
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -45,25 +67,60 @@ public class AdvertisingInfo {
   private final Executor executor;
 
   @NonNull
-  private final AtomicReference<AdvertisingIdResult> resultRef = new AtomicReference<>();
+  private final SharedPreferences sharedPreferences;
+
+  @NonNull
+  private final Clock clock;
+
+  @NonNull
+  private final BuildConfigWrapper buildConfigWrapper;
+
+  @NonNull
+  private final AtomicReference<FetchedAdvertisingIdResult> resultRef = new AtomicReference<>();
+
+  @NonNull
+  private final AtomicBoolean isRefreshing = new AtomicBoolean(false);
+
+  @NonNull
+  private final AtomicBoolean isRefreshScheduled = new AtomicBoolean(false);
 
   public AdvertisingInfo(
       @NonNull Context context,
       @NonNull Executor executor,
-      @NonNull SafeAdvertisingIdClient advertisingIdClient
+      @NonNull SafeAdvertisingIdClient advertisingIdClient,
+      @NonNull SharedPreferences sharedPreferences,
+      @NonNull Clock clock,
+      @NonNull BuildConfigWrapper buildConfigWrapper
   ) {
     this.context = context;
     this.executor = executor;
     this.advertisingIdClient = advertisingIdClient;
+    this.sharedPreferences = sharedPreferences;
+    this.clock = clock;
+    this.buildConfigWrapper = buildConfigWrapper;
+  }
+
+  /**
+   * Load the known result and fetch a new one in background, once per process.
+   * <p>
+   * Later calls do nothing: the result is then refreshed only when it gets expired.
+   */
+  public void refreshOncePerProcess() {
+    if (!isRefreshScheduled.compareAndSet(false, true)) {
+      return;
+    }
+
+    getKnownResult();
+    refreshAsync();
   }
 
   public void prefetchAsync() {
-    executor.execute(new SafeRunnable() {
+    executor.execute(new PrioritizedRunnable(TaskPriority.BID, new SafeRunnable() {
       @Override
       public void runSafely() {
         getAdvertisingId();
       }
-    });
+    }));
   }
 
   @Nullable
@@ -76,26 +133,71 @@ public class AdvertisingInfo {
   }
 
   private AdvertisingIdResult getAdvertisingIdResult() {
-    AdvertisingIdResult advertisingIdResult = resultRef.get();
-    if (advertisingIdResult == null) {
-      // Multiple concurrent tasks are accepted. Only one commit is accepted then.
+    FetchedAdvertisingIdResult fetchedResult = getKnownResult();
+
+    if (fetchedResult == null) {
       if (isMainThread()) {
-        executor.execute(new SafeRunnable() {
-          @Override
-          public void runSafely() {
-            fetchResultOnWorkerThread();
-          }
-        });
+        refreshAsync();
       } else {
         fetchResultOnWorkerThread();
       }
+      fetchedResult = resultRef.get();
+    } else if (fetchedResult.isFromPreviousProcess() || fetchedResult.isExpired(
+        clock.getCurrentTimeInMillis(),
+        buildConfigWrapper.getAdvertisingIdRefreshPeriodInMillis()
+    )) {
+      // The known result is still served meanwhile, so callers never wait for the IPC
+      refreshAsync();
     }
 
-    advertisingIdResult = resultRef.get();
-    if (advertisingIdResult == null) {
+    if (fetchedResult == null) {
       return AdvertisingIdResult.defaultAdvertisingIdResult();
     } else {
-      return advertisingIdResult;
+      return fetchedResult.getResult();
+    }
+  }
+
+  /**
+   * Return the last fetched result, from memory or else from the persisted one, or
+   * <code>null</code> if none is known.
+   */
+  @Nullable
+  private FetchedAdvertisingIdResult getKnownResult() {
+    FetchedAdvertisingIdResult fetchedResult = resultRef.get();
+    if (fetchedResult != null) {
+      return fetchedResult;
+    }
+
+    FetchedAdvertisingIdResult persistedResult = readPersistedResult();
+    if (persistedResult != null) {
+      resultRef.compareAndSet(null, persistedResult);
+    }
+    return resultRef.get();
+  }
+
+  private void refreshAsync() {
+    if (!isRefreshing.compareAndSet(false, true)) {
+      // A refresh is already ongoing
+      return;
+    }
+
+    boolean isSubmitted = false;
+    try {
+      executor.execute(new PrioritizedRunnable(TaskPriority.BID, new SafeRunnable() {
+        @Override
+        public void runSafely() {
+          try {
+            fetchResultOnWorkerThread();
+          } finally {
+            isRefreshing.set(false);
+          }
+        }
+      }));
+      isSubmitted = true;
+    } finally {
+      if (!isSubmitted) {
+        isRefreshing.set(false);
+      }
     }
   }
 
@@ -110,6 +212,7 @@ public class AdvertisingInfo {
   @WorkerThread
   private void fetchResultOnWorkerThread() {
     AdvertisingIdResult advertisingIdResult;
+    long fetchTimeInMillis = clock.getCurrentTimeInMillis();
 
     try {
       advertisingIdResult = advertisingIdClient.getAdvertisingIdResult(context);
@@ -120,16 +223,63 @@ public class AdvertisingInfo {
         advertisingIdResult = AdvertisingIdResult.unlimitedAdvertisingIdResult(advertisingIdResult.getId());
       }
     } catch (MissingPlayServicesAdsIdentifierException e) {
-      // This cannot be fixed during the runtime. Let's cache the failure.
-      advertisingIdResult = AdvertisingIdResult.defaultAdvertisingIdResult();
+      // This cannot be fixed during the runtime. Let's cache the failure, but not persist it as it
+      // may be fixed by an update of the application.
+      resultRef.set(FetchedAdvertisingIdResult.neverExpiring(
+          AdvertisingIdResult.defaultAdvertisingIdResult()
+      ));
       logger.debug("Error getting advertising id", e);
+      return;
     } catch (Exception e) {
       // Keep trying to get result on next try
       PreconditionsUtil.throwOrLog(new AdvertisingInfoException(e));
       return;
     }
 
-    resultRef.compareAndSet(null, advertisingIdResult);
+    // The new result replaces the known one, so a reset ID or a change of the limit ad tracking
+    // setting is taken into account.
+    resultRef.set(new FetchedAdvertisingIdResult(advertisingIdResult, fetchTimeInMillis));
+    persistResult(advertisingIdResult, fetchTimeInMillis);
+  }
+
+  @Nullable
+  private FetchedAdvertisingIdResult readPersistedResult() {
+    SafeSharedPreferences safeSharedPreferences = new SafeSharedPreferences(sharedPreferences);
+
+    long fetchTimeInMillis = safeSharedPreferences.getLong(FETCH_TIME_STORAGE_KEY, -1);
+    if (fetchTimeInMillis < 0) {
+      return null;
+    }
+
+    if (safeSharedPreferences.getBoolean(LIMIT_AD_TRACKING_STORAGE_KEY, false)) {
+      return FetchedAdvertisingIdResult.fromPreviousProcess(
+          AdvertisingIdResult.limitedAdvertisingIdResult(),
+          fetchTimeInMillis
+      );
+    }
+
+    String advertisingId = safeSharedPreferences.getString(ADVERTISING_ID_STORAGE_KEY, null);
+    if (advertisingId == null) {
+      return null;
+    }
+
+    return FetchedAdvertisingIdResult.fromPreviousProcess(
+        AdvertisingIdResult.unlimitedAdvertisingIdResult(advertisingId),
+        fetchTimeInMillis
+    );
+  }
+
+  private void persistResult(@NonNull AdvertisingIdResult advertisingIdResult, long fetchTimeInMillis) {
+    Editor editor = sharedPreferences.edit();
+    if (advertisingIdResult.isLimitAdTrackingEnabled()) {
+      // The real ID should not be kept when the user limits the ad tracking
+      editor.remove(ADVERTISING_ID_STORAGE_KEY);
+    } else {
+      editor.putString(ADVERTISING_ID_STORAGE_KEY, advertisingIdResult.getId());
+    }
+    editor.putBoolean(LIMIT_AD_TRACKING_STORAGE_KEY, advertisingIdResult.isLimitAdTrackingEnabled());
+    editor.putLong(FETCH_TIME_STORAGE_KEY, fetchTimeInMillis);
+    editor.apply();
   }
 
   public static class SafeAdvertisingIdClient {
@@ -189,6 +339,62 @@ public class AdvertisingInfo {
     }
   }
 
+  private static class FetchedAdvertisingIdResult {
+
+    private static final long NEVER_EXPIRING = -1;
+
+    @NonNull
+    private final AdvertisingIdResult result;
+
+    private final long fetchTimeInMillis;
+
+    private final boolean isFromPreviousProcess;
+
+    FetchedAdvertisingIdResult(@NonNull AdvertisingIdResult result, long fetchTimeInMillis) {
+      this(result, fetchTimeInMillis, false);
+    }
+
+    private FetchedAdvertisingIdResult(
+        @NonNull AdvertisingIdResult result,
+        long fetchTimeInMillis,
+        boolean isFromPreviousProcess
+    ) {
+      this.result = result;
+      this.fetchTimeInMillis = fetchTimeInMillis;
+      this.isFromPreviousProcess = isFromPreviousProcess;
+    }
+
+    static FetchedAdvertisingIdResult neverExpiring(@NonNull AdvertisingIdResult result) {
+      return new FetchedAdvertisingIdResult(result, NEVER_EXPIRING);
+    }
+
+    static FetchedAdvertisingIdResult fromPreviousProcess(
+        @NonNull AdvertisingIdResult result,
+        long fetchTimeInMillis
+    ) {
+      return new FetchedAdvertisingIdResult(result, fetchTimeInMillis, true);
+    }
+
+    @NonNull
+    AdvertisingIdResult getResult() {
+      return result;
+    }
+
+    boolean isFromPreviousProcess() {
+      return isFromPreviousProcess;
+    }
+
+    boolean isExpired(long nowInMillis, long refreshPeriodInMillis) {
+      if (fetchTimeInMillis == NEVER_EXPIRING) {
+        return false;
+      }
+
+      // A fetch time in the future means that the device clock changed: the age is unknown
+      long ageInMillis = nowInMillis - fetchTimeInMillis;
+      return ageInMillis < 0 || ageInMillis >= refreshPeriodInMillis;
+    }
+  }
+
   static class MissingPlayServicesAdsIdentifierException extends Exception {
     MissingPlayServicesAdsIdentifierException(Throwable cause) {
       super("play-services-ads-identifier does not seems to be in the classpath", cause);
@@ -22,17 +22,25 @@ import android.os.Bundle;
 import androidx.annotation.NonNull;
 import com.criteo.publisher.AppEvents.AppEvents;
 import com.criteo.publisher.BidManager;
+import com.criteo.publisher.dependency.LazyDependency;
 
 public class AppLifecycleUtil implements Application.ActivityLifecycleCallbacks {
 
-  private final AppEvents appEvents;
-  private final BidManager bidManager;
+  /**
+   * Dependencies are only resolved on the first lifecycle event, so registering this callback at
+   * init does not build them on the main thread.
+   */
+  private final LazyDependency<AppEvents> appEvents;
+  private final LazyDependency<BidManager> bidManager;
   private int started;
   private int resumed;
   private boolean transitionPossible;
   private boolean created;
 
-  public AppLifecycleUtil(AppEvents appEvents, BidManager bidmanager) {
+  public AppLifecycleUtil(
+      LazyDependency<AppEvents> appEvents,
+      LazyDependency<BidManager> bidmanager
+  ) {
     this.appEvents = appEvents;
     this.bidManager = bidmanager;
     started = 0;
@@ -45,7 +53,7 @@ public class AppLifecycleUtil implements Application.ActivityLifecycleCallbacks
   public void onActivityCreated(@NonNull Activity activity, Bundle bundle) {
     if (!created) {
       created = true;
-      appEvents.sendLaunchEvent();
+      appEvents.get().sendLaunchEvent();
     }
   }
 
@@ -57,7 +65,7 @@ public class AppLifecycleUtil implements Application.ActivityLifecycleCallbacks
   @Override
   public void onActivityResumed(@NonNull Activity activity) {
     if (resumed == 0 && !transitionPossible) {
-      appEvents.sendActiveEvent();
+      appEvents.get().sendActiveEvent();
     }
     transitionPossible = false;
     resumed += 1;
@@ -74,10 +82,10 @@ public class AppLifecycleUtil implements Application.ActivityLifecycleCallbacks
     if (started == 1) {
       // All transitions pause and stop activities
       if (transitionPossible && resumed == 0) {
-        appEvents.sendInactiveEvent();
+        appEvents.get().sendInactiveEvent();
       }
-      appEvents.onApplicationStopped();
-      bidManager.onApplicationStopped();
+      appEvents.get().onApplicationStopped();
+      bidManager.get().onApplicationStopped();
     }
     transitionPossible = false;
     started -= 1;
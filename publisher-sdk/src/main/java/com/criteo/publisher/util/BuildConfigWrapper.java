@@ -79,6 +79,13 @@ public class BuildConfigWrapper {
     return BuildConfig.estimatedSizeOfCsmMetric;
   }
 
+  /**
+   * Maximum duration in milliseconds a metric waits in the sending queue before being sent.
+   */
+  public int getCsmMaxFlushLatencyInMillis() {
+    return BuildConfig.csmMaxFlushLatencyInMillis;
+  }
+
   /**
    * The relative path in application folder of the sending queue file for CSM
    */
@@ -150,6 +157,20 @@ public class BuildConfigWrapper {
     return BuildConfig.estimatedSizeOfRemoteLog;
   }
 
+  /**
+   * Maximum duration in milliseconds a log waits in the sending queue before being sent.
+   */
+  public int getRemoteLogMaxFlushLatencyInMillis() {
+    return BuildConfig.remoteLogMaxFlushLatencyInMillis;
+  }
+
+  /**
+   * Maximum age in milliseconds of the advertising ID before it is refreshed in background.
+   */
+  public int getAdvertisingIdRefreshPeriodInMillis() {
+    return BuildConfig.advertisingIdRefreshPeriodInMillis;
+  }
+
   /**
    * The relative path in application folder of the sending queue file for remote logs
    */
@@ -16,7 +16,11 @@
 
 package com.criteo.publisher.util;
 
+import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -41,6 +45,15 @@ public class CompletableFuture<T> implements Future<T> {
   private final CountDownLatch isDone = new CountDownLatch(1);
   private final FutureTask<T> task;
 
+  private final Object lock = new Object();
+
+  /**
+   * Actions to run once this future is completed, or <code>null</code> if it is already completed.
+   */
+  @Nullable
+  @GuardedBy("lock")
+  private List<Runnable> continuations = new ArrayList<>();
+
   public CompletableFuture() {
     task = new FutureTask<>(new CompletableCallable());
   }
@@ -54,11 +67,59 @@ public class CompletableFuture<T> implements Future<T> {
   public void complete(T value) {
     valueRef.compareAndSet(null, new Result<>(value));
     isDone.countDown();
+    runContinuations();
   }
 
   public void completeExceptionally(Exception exception) {
     valueRef.compareAndSet(null, new Result<>(exception));
     isDone.countDown();
+    runContinuations();
+  }
+
+  /**
+   * Run the given action once this future is completed.
+   * <p>
+   * If this future is already completed, the action is run immediately on the calling thread. Else
+   * it is run on the thread completing this future. So the action should be short, such as
+   * submitting the dependent work to an executor, instead of blocking a thread on {@link #get()}.
+   */
+  public void whenComplete(@NonNull Runnable action) {
+    synchronized (lock) {
+      if (continuations != null) {
+        continuations.add(action);
+        return;
+      }
+    }
+
+    action.run();
+  }
+
+  private void runContinuations() {
+    List<Runnable> actions;
+    synchronized (lock) {
+      actions = continuations;
+      continuations = null;
+    }
+
+    if (actions == null) {
+      return;
+    }
+
+    // A failing action should not prevent the next ones from running
+    RuntimeException firstException = null;
+    for (Runnable action : actions) {
+      try {
+        action.run();
+      } catch (RuntimeException e) {
+        if (firstException == null) {
+          firstException = e;
+        }
+      }
+    }
+
+    if (firstException != null) {
+      throw firstException;
+    }
   }
 
   @Override
@@ -73,7 +134,7 @@ public class CompletableFuture<T> implements Future<T> {
 
   @Override
   public boolean isDone() {
-    return task.isDone();
+    return isDone.getCount() == 0 || task.isDone();
   }
 
   @Override
@@ -16,12 +16,16 @@
 
 package com.criteo.publisher.util;
 
+import android.content.ComponentCallbacks;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.util.DisplayMetrics;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import com.criteo.publisher.logging.Logger;
 import com.criteo.publisher.logging.LoggerFactory;
 import com.criteo.publisher.model.AdSize;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DeviceUtil {
 
@@ -30,8 +34,37 @@ public class DeviceUtil {
   @NonNull
   private final Context context;
 
+  @NonNull
+  private final AtomicInteger screenConfigurationVersion = new AtomicInteger();
+
+  @Nullable
+  private volatile VersionedScreenGeometry screenGeometry;
+
   public DeviceUtil(@NonNull Context context) {
     this.context = context;
+
+    context.registerComponentCallbacks(new ComponentCallbacks() {
+      @Override
+      public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        screenConfigurationVersion.incrementAndGet();
+      }
+
+      @Override
+      public void onLowMemory() {
+        // not used
+      }
+    });
+  }
+
+  /**
+   * Version of the device configuration, incremented each time it changes (for instance when the
+   * device is rotated).
+   * <p>
+   * Values derived from the screen, such as {@link #getCurrentScreenSize()}, may be kept as long as
+   * this version is the same.
+   */
+  public int getScreenConfigurationVersion() {
+    return screenConfigurationVersion.get();
   }
 
   /**
@@ -51,6 +84,27 @@ public class DeviceUtil {
     return smallestWidthInPixel >= thresholdInPixel;
   }
 
+  /**
+   * Snapshot of the screen geometry, refreshed only when the device configuration changes.
+   * <p>
+   * This should be preferred over {@link #getCurrentScreenSize()} on hot paths, as it does not query
+   * the display metrics on each call.
+   */
+  @NonNull
+  public ScreenGeometry getScreenGeometry() {
+    // The version is read before the screen, so a concurrent change only makes the snapshot outdated
+    int version = getScreenConfigurationVersion();
+
+    VersionedScreenGeometry current = screenGeometry;
+    if (current != null && current.version == version) {
+      return current.geometry;
+    }
+
+    ScreenGeometry geometry = new ScreenGeometry(getCurrentScreenSize());
+    screenGeometry = new VersionedScreenGeometry(geometry, version);
+    return geometry;
+  }
+
   public AdSize getCurrentScreenSize() {
     DisplayMetrics metrics = getDisplayMetrics();
     int widthInDp = Math.round(metrics.widthPixels / metrics.density);
@@ -65,4 +119,17 @@ public class DeviceUtil {
   public boolean isVersionSupported() {
     return android.os.Build.VERSION.SDK_INT >= 19;
   }
+
+  private static class VersionedScreenGeometry {
+
+    @NonNull
+    final ScreenGeometry geometry;
+
+    final int version;
+
+    VersionedScreenGeometry(@NonNull ScreenGeometry geometry, int version) {
+      this.geometry = geometry;
+      this.version = version;
+    }
+  }
 }
@@ -0,0 +1,62 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.util
+
+import android.content.res.Configuration
+import com.criteo.publisher.model.AdSize
+
+/**
+ * Snapshot of the screen geometry, given by [DeviceUtil.getScreenGeometry].
+ *
+ * All values are derived from the same screen size (in DP), so they are consistent with each other.
+ */
+data class ScreenGeometry(val size: AdSize) {
+
+  /**
+   * Screen size once the device is rotated
+   */
+  val transposedSize: AdSize = AdSize(size.height, size.width)
+
+  /**
+   * Indicate if the device is a tablet, i.e. if its smallest width is above or equal to 600dp.
+   *
+   * See [DeviceUtil.isTablet]
+   */
+  val isTablet: Boolean = minOf(size.width, size.height) >= TABLET_SMALLEST_WIDTH_IN_DP
+
+  /**
+   * Overall orientation of the screen: either [Configuration.ORIENTATION_PORTRAIT] or
+   * [Configuration.ORIENTATION_LANDSCAPE].
+   */
+  val orientation: Int = if (size.width < size.height) {
+    Configuration.ORIENTATION_PORTRAIT
+  } else {
+    Configuration.ORIENTATION_LANDSCAPE
+  }
+
+  /**
+   * Indicate if the given dimensions (in DP) match the screen, in any orientation.
+   */
+  fun isFullScreen(width: Int, height: Int): Boolean {
+    return (width == size.width && height == size.height) ||
+        (width == transposedSize.width && height == transposedSize.height)
+  }
+
+  private companion object {
+    const val TABLET_SMALLEST_WIDTH_IN_DP = 600
+  }
+}
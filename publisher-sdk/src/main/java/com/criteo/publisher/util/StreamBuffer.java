@@ -0,0 +1,146 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Buffer holding the whole content of a stream, such as a creative or a response body, read as raw
+ * bytes.
+ * <p>
+ * Buffers are reused per thread, so reading many responses does not allocate a new buffer, nor grow
+ * it, each time. Buffers that grew too much are not retained, so a single big content does not hold
+ * memory forever.
+ */
+public final class StreamBuffer {
+
+  /**
+   * Size limit letting streams of any size be read.
+   */
+  public static final int NO_SIZE_LIMIT = 0;
+
+  private static final int INITIAL_CAPACITY = 8 * 1024;
+
+  /**
+   * Big enough to retain the buffer of CDB responses and of most creatives. Each pool thread may
+   * retain a buffer, so bigger creatives are read into a new buffer that is dropped once released.
+   */
+  @VisibleForTesting
+  static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+  /**
+   * Some VMs reserve header words in arrays, so bigger arrays may not be allocated.
+   */
+  private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  private static final ThreadLocal<StreamBuffer> BUFFERS = new ThreadLocal<>();
+
+  @NonNull
+  private byte[] buf = new byte[INITIAL_CAPACITY];
+
+  private int count = 0;
+
+  private boolean isAcquired = false;
+
+  private StreamBuffer() {
+  }
+
+  /**
+   * Return an empty buffer for the current thread. It should be {@linkplain #release() released}
+   * once its content is consumed.
+   */
+  @NonNull
+  public static StreamBuffer acquire() {
+    StreamBuffer buffer = BUFFERS.get();
+    if (buffer == null || buffer.isAcquired) {
+      // A nested acquisition does not steal the buffer of the outer one
+      buffer = new StreamBuffer();
+      if (BUFFERS.get() == null) {
+        BUFFERS.set(buffer);
+      }
+    }
+
+    buffer.count = 0;
+    buffer.isAcquired = true;
+    return buffer;
+  }
+
+  public void release() {
+    isAcquired = false;
+    if (buf.length > MAX_RETAINED_CAPACITY && BUFFERS.get() == this) {
+      BUFFERS.remove();
+    }
+  }
+
+  /**
+   * Read the given stream until its end, replacing the current content of this buffer. The stream is
+   * not closed.
+   *
+   * @param maxSizeInBytes maximum number of bytes to read, or {@link #NO_SIZE_LIMIT}
+   * @throws StreamTooLargeException if the stream has more bytes than the limit. It is then only
+   * read until the limit is exceeded.
+   */
+  public void readFrom(@NonNull InputStream in, int maxSizeInBytes) throws IOException {
+    int limit = maxSizeInBytes > NO_SIZE_LIMIT ? maxSizeInBytes : MAX_ARRAY_SIZE - 1;
+
+    // One byte more than the limit is read, to tell apart a stream exactly at the limit
+    int maxCapacity = limit + 1;
+
+    count = 0;
+    int read;
+    do {
+      if (count == buf.length) {
+        buf = Arrays.copyOf(buf, (int) Math.min(buf.length * 2L, maxCapacity));
+      }
+
+      read = in.read(buf, count, Math.min(buf.length, maxCapacity) - count);
+      if (read > 0) {
+        count += read;
+        if (count > limit) {
+          throw new StreamTooLargeException(limit);
+        }
+      }
+    } while (read != -1);
+  }
+
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Decode the content of this buffer with the given charset.
+   */
+  @NonNull
+  public String toString(@NonNull Charset charset) {
+    return new String(buf, 0, count, charset);
+  }
+
+  /**
+   * Return a read-only view on the content of this buffer, without copying it. The view is only
+   * valid until this buffer is released.
+   */
+  @NonNull
+  public ByteBuffer asByteBuffer() {
+    return ByteBuffer.wrap(buf, 0, count).slice().asReadOnlyBuffer();
+  }
+}
@@ -17,27 +17,47 @@
 package com.criteo.publisher.util;
 
 import androidx.annotation.NonNull;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 
 public final class StreamUtil {
 
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
   private StreamUtil() {
 
   }
 
+  /**
+   * Read the given stream as UTF-8 until its end, and close it.
+   */
+  @NonNull
+  public static String readStream(@NonNull InputStream in) throws IOException {
+    return readStream(in, UTF_8, StreamBuffer.NO_SIZE_LIMIT);
+  }
+
+  /**
+   * Read the given stream until its end, and close it. The bytes are decoded as they are, line
+   * breaks included.
+   *
+   * @param charset charset of the content of the stream
+   * @param maxSizeInBytes maximum number of bytes to read, or {@link StreamBuffer#NO_SIZE_LIMIT}
+   * @throws StreamTooLargeException if the stream has more bytes than the limit
+   */
   @NonNull
-  public static String readStream(InputStream in) throws IOException {
-    StringBuilder response = new StringBuilder();
-    try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
-      String line;
-      while ((line = reader.readLine()) != null) {
-        response.append(line);
-      }
+  public static String readStream(
+      @NonNull InputStream in,
+      @NonNull Charset charset,
+      int maxSizeInBytes
+  ) throws IOException {
+    StreamBuffer buffer = StreamBuffer.acquire();
+    try (InputStream ignored = in) {
+      buffer.readFrom(in, maxSizeInBytes);
+      return buffer.toString(charset);
+    } finally {
+      buffer.release();
     }
-    return response.toString();
   }
 
 }
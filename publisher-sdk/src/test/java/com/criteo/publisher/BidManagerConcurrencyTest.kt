@@ -0,0 +1,308 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher
+
+import com.criteo.publisher.bid.BidLifecycleListener
+import com.criteo.publisher.cache.BidCacheSnapshotStore
+import com.criteo.publisher.cache.BidExpiryWheel
+import com.criteo.publisher.cache.SdkCache
+import com.criteo.publisher.context.ContextData
+import com.criteo.publisher.csm.MetricSendingQueueConsumer
+import com.criteo.publisher.logging.RemoteLogSendingQueueConsumer
+import com.criteo.publisher.model.AdSize
+import com.criteo.publisher.model.AdUnit
+import com.criteo.publisher.model.AdUnitMapper
+import com.criteo.publisher.model.CacheAdUnit
+import com.criteo.publisher.model.CdbResponseSlot
+import com.criteo.publisher.model.Config
+import com.criteo.publisher.network.BidRequestSender
+import com.criteo.publisher.network.CircuitBreaker
+import com.criteo.publisher.network.LiveBidRequestSender
+import com.criteo.publisher.privacy.ConsentData
+import com.criteo.publisher.util.AdUnitType.CRITEO_BANNER
+import com.criteo.publisher.util.DeviceUtil
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+class BidManagerConcurrencyTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var deviceUtil: DeviceUtil
+
+  @Mock
+  private lateinit var config: Config
+
+  @Mock
+  private lateinit var clock: Clock
+
+  @Mock
+  private lateinit var adUnitMapper: AdUnitMapper
+
+  @Mock
+  private lateinit var bidRequestSender: BidRequestSender
+
+  @Mock
+  private lateinit var liveBidRequestSender: LiveBidRequestSender
+
+  @Mock
+  private lateinit var bidLifecycleListener: BidLifecycleListener
+
+  @Mock
+  private lateinit var metricSendingQueueConsumer: MetricSendingQueueConsumer
+
+  @Mock
+  private lateinit var remoteLogSendingQueueConsumer: RemoteLogSendingQueueConsumer
+
+  @Mock
+  private lateinit var consentData: ConsentData
+
+  @Mock
+  private lateinit var contextData: ContextData
+
+  @Mock
+  private lateinit var bidExpiryWheel: BidExpiryWheel
+
+  @Mock
+  private lateinit var bidCacheSnapshotStore: BidCacheSnapshotStore
+
+  @Mock
+  private lateinit var bidRefillScheduler: BidRefillScheduler
+
+  @Mock
+  private lateinit var circuitBreaker: CircuitBreaker
+
+  private lateinit var cache: SdkCache
+
+  private lateinit var bidManager: BidManager
+
+  private lateinit var executor: ExecutorService
+
+  @Before
+  fun setUp() {
+    whenever(deviceUtil.currentScreenSize).doReturn(AdSize(1080, 1920))
+    whenever(clock.currentTimeInMillis).doReturn(NOW)
+    whenever(circuitBreaker.isCallPermitted(any())).doReturn(true)
+
+    cache = SdkCache(deviceUtil)
+    bidManager = BidManager(
+        cache,
+        config,
+        clock,
+        adUnitMapper,
+        bidRequestSender,
+        liveBidRequestSender,
+        bidLifecycleListener,
+        metricSendingQueueConsumer,
+        remoteLogSendingQueueConsumer,
+        consentData,
+        bidExpiryWheel,
+        bidCacheSnapshotStore,
+        bidRefillScheduler,
+        circuitBreaker
+    )
+
+    executor = Executors.newFixedThreadPool(NB_WORKERS)
+  }
+
+  @After
+  fun tearDown() {
+    executor.shutdownNow()
+  }
+
+  @Test
+  fun getBidForAdUnitAndPrefetch_GivenManyThreadsOnManyAdUnits_EachBidIsConsumedOnlyOnce() {
+    val adUnits = (0 until NB_AD_UNITS).map { givenAdUnitMappingTo(cacheAdUnit(it)) }
+    val cachedSlots = (0 until NB_AD_UNITS).map { validSlot(it) }
+    bidManager.setCacheAdUnits(cachedSlots)
+
+    val consumedSlots = Collections.newSetFromMap(ConcurrentHashMap<CdbResponseSlot, Boolean>())
+    val nbConsumptions = AtomicInteger()
+
+    runConcurrently {
+      adUnits.forEach { adUnit ->
+        val slot = bidManager.getBidForAdUnitAndPrefetch(adUnit, contextData)
+        if (slot != null) {
+          consumedSlots.add(slot)
+          nbConsumptions.incrementAndGet()
+        }
+      }
+    }
+
+    assertThat(consumedSlots).containsExactlyInAnyOrderElementsOf(cachedSlots)
+    assertThat(nbConsumptions.get()).isEqualTo(NB_AD_UNITS)
+    cachedSlots.forEachIndexed { i, slot ->
+      verify(bidLifecycleListener).onBidConsumed(cacheAdUnit(i), slot)
+    }
+  }
+
+  @Test
+  fun getBidForAdUnitAndPrefetch_GivenDepthAndManyThreads_EachBidIsConsumedOnlyOnce() {
+    whenever(config.bidCacheDepth).doReturn(3)
+    val adUnit = givenAdUnitMappingTo(cacheAdUnit(0))
+    val cachedSlots = listOf("1.0", "3.0", "2.0").map { validSlot(0, cpm = it) }
+    bidManager.setCacheAdUnits(cachedSlots)
+
+    val consumedSlots = Collections.synchronizedList(mutableListOf<CdbResponseSlot>())
+
+    runConcurrently {
+      bidManager.getBidForAdUnitAndPrefetch(adUnit, contextData)?.let {
+        consumedSlots.add(it)
+      }
+    }
+
+    assertThat(consumedSlots).containsExactlyInAnyOrderElementsOf(cachedSlots)
+    assertThat(cache.peekAdUnit(cacheAdUnit(0))).isNull()
+    cachedSlots.forEach {
+      verify(bidLifecycleListener).onBidConsumed(cacheAdUnit(0), it)
+    }
+  }
+
+  @Test
+  fun setCacheAdUnits_GivenSilentBidAndConcurrentValidBids_SilentBidIsNeverOverridden() {
+    val silentSlots = (0 until NB_AD_UNITS).map { silentSlot(it) }
+    bidManager.setCacheAdUnits(silentSlots)
+
+    runConcurrently {
+      bidManager.setCacheAdUnits((0 until NB_AD_UNITS).map { validSlot(it) })
+    }
+
+    silentSlots.forEachIndexed { i, silentSlot ->
+      assertThat(cache.peekAdUnit(cacheAdUnit(i))).isSameAs(silentSlot)
+    }
+    verify(bidLifecycleListener, times(NB_AD_UNITS)).onBidCached(any())
+  }
+
+  @Test
+  fun getBidForAdUnitAndPrefetch_GivenSilentBidAndConcurrentConsumers_SilentBidIsNeverConsumed() {
+    val adUnits = (0 until NB_AD_UNITS).map { givenAdUnitMappingTo(cacheAdUnit(it)) }
+    val silentSlots = (0 until NB_AD_UNITS).map { silentSlot(it) }
+    bidManager.setCacheAdUnits(silentSlots)
+
+    val consumedSlots = Collections.newSetFromMap(ConcurrentHashMap<CdbResponseSlot, Boolean>())
+
+    runConcurrently {
+      adUnits.forEach { adUnit ->
+        bidManager.getBidForAdUnitAndPrefetch(adUnit, contextData)?.let {
+          consumedSlots.add(it)
+        }
+      }
+    }
+
+    assertThat(consumedSlots).isEmpty()
+    silentSlots.forEachIndexed { i, silentSlot ->
+      assertThat(cache.peekAdUnit(cacheAdUnit(i))).isSameAs(silentSlot)
+    }
+    verify(bidLifecycleListener, never()).onBidConsumed(any(), any())
+    verify(bidRequestSender, never()).sendBidRequest(any(), any(), any())
+  }
+
+  @Test
+  fun setCacheAdUnits_GivenConcurrentImmediateBids_OverrideTheirTtl() {
+    val immediateSlots = Collections.synchronizedList(mutableListOf<CdbResponseSlot>())
+
+    runConcurrently {
+      val slots = (0 until NB_AD_UNITS).map { validSlot(it, ttlInSeconds = 0) }
+      immediateSlots.addAll(slots)
+      bidManager.setCacheAdUnits(slots)
+    }
+
+    assertThat(immediateSlots).allSatisfy {
+      assertThat(it.ttlInSeconds).isEqualTo(15 * 60)
+    }
+    (0 until NB_AD_UNITS).forEach {
+      assertThat(cache.peekAdUnit(cacheAdUnit(it))).isIn(immediateSlots)
+    }
+  }
+
+  private fun runConcurrently(work: () -> Unit) {
+    val allAreReadyToWork = CyclicBarrier(NB_WORKERS)
+    val allAreDone = CountDownLatch(NB_WORKERS)
+    val errors = Collections.synchronizedList(mutableListOf<Throwable>())
+
+    repeat(NB_WORKERS) {
+      executor.execute {
+        try {
+          allAreReadyToWork.await()
+          work()
+        } catch (t: Throwable) {
+          errors.add(t)
+        } finally {
+          allAreDone.countDown()
+        }
+      }
+    }
+
+    allAreDone.await()
+    assertThat(errors).isEmpty()
+  }
+
+  private fun givenAdUnitMappingTo(cacheAdUnit: CacheAdUnit): AdUnit {
+    val adUnit = mock<AdUnit>()
+    whenever(adUnitMapper.map(adUnit)).doReturn(cacheAdUnit)
+    return adUnit
+  }
+
+  private fun cacheAdUnit(index: Int) = CacheAdUnit(AdSize(320, 50), "adUnit$index", CRITEO_BANNER)
+
+  private fun validSlot(index: Int, ttlInSeconds: Int = 60, cpm: String = "1.0") = CdbResponseSlot(
+      placementId = "adUnit$index",
+      cpm = cpm,
+      width = 320,
+      height = 50,
+      displayUrl = "https://www.criteo.com/",
+      ttlInSeconds = ttlInSeconds,
+      timeOfDownload = NOW
+  )
+
+  private fun silentSlot(index: Int) = CdbResponseSlot(
+      placementId = "adUnit$index",
+      cpm = "0.0",
+      width = 320,
+      height = 50,
+      ttlInSeconds = 60,
+      timeOfDownload = NOW
+  )
+
+  private companion object {
+    const val NOW = 1_000_000L
+    const val NB_WORKERS = 16
+    const val NB_AD_UNITS = 200
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher
+
+import com.criteo.publisher.BidRefillScheduler.RefillHandler
+import com.criteo.publisher.cache.SdkCache
+import com.criteo.publisher.context.ContextData
+import com.criteo.publisher.model.AdSize
+import com.criteo.publisher.model.CacheAdUnit
+import com.criteo.publisher.model.CdbResponseSlot
+import com.criteo.publisher.model.Config
+import com.criteo.publisher.util.AdUnitType.CRITEO_BANNER
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.anyOrNull
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+import java.util.concurrent.ScheduledExecutorService
+
+class BidRefillSchedulerTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var cache: SdkCache
+
+  @Mock
+  private lateinit var config: Config
+
+  @Mock
+  private lateinit var clock: Clock
+
+  @Mock
+  private lateinit var scheduledExecutorService: ScheduledExecutorService
+
+  @Mock
+  private lateinit var refillHandler: RefillHandler
+
+  private var now = START_TIME
+
+  private var contextData = ContextData()
+
+  private lateinit var scheduler: BidRefillScheduler
+
+  @Before
+  fun setUp() {
+    whenever(clock.currentTimeInMillis).doAnswer { now }
+    whenever(config.isPredictiveRefillEnabled).doReturn(true)
+    whenever(config.bidCacheDepth).doReturn(3)
+    whenever(cache.getBids(any())).doReturn(listOf())
+    whenever(refillHandler.refill(any(), any(), any())).doReturn(true)
+
+    scheduler = BidRefillScheduler(cache, config, clock, scheduledExecutorService)
+    scheduler.start(refillHandler)
+  }
+
+  @Test
+  fun evaluate_GivenFrequentlyRequestedAdUnitWithEmptyCache_RefillUpToExpectedDemand() {
+    val adUnit = cacheAdUnit("adUnit")
+    givenRequestedEvery(adUnit, 10_000)
+
+    scheduler.evaluate()
+
+    // 30s of look ahead with one request every 10s: 3 bids are expected
+    verify(refillHandler).refill(adUnit, contextData, 3)
+  }
+
+  @Test
+  fun evaluate_GivenRequestsWithDifferentContexts_RefillWithTheLastOne() {
+    val adUnit = cacheAdUnit("adUnit")
+    contextData = ContextData().set(ContextData.CONTENT_URL, "https://first.com")
+    givenRequestedEvery(adUnit, 10_000, times = 9)
+    now += 10_000
+    val lastContextData = ContextData().set(ContextData.CONTENT_URL, "https://last.com")
+    scheduler.onBidRequested(adUnit, lastContextData, true)
+
+    scheduler.evaluate()
+
+    verify(refillHandler).refill(adUnit, lastContextData, 3)
+  }
+
+  @Test
+  fun evaluate_GivenExpectedDemandAboveDepth_RefillOnlyUpToDepth() {
+    whenever(config.bidCacheDepth).doReturn(2)
+    val adUnit = cacheAdUnit("adUnit")
+    givenRequestedEvery(adUnit, 1_000)
+
+    scheduler.evaluate()
+
+    verify(refillHandler).refill(adUnit, contextData, 2)
+  }
+
+  @Test
+  fun evaluate_GivenEnoughLongLivedCachedBids_DoNotRefill() {
+    val adUnit = cacheAdUnit("adUnit")
+    givenRequestedEvery(adUnit, 10_000)
+    whenever(cache.getBids(adUnit)).doReturn((1..3).map { givenSlot(ttlInSeconds = 900) })
+
+    scheduler.evaluate()
+
+    verify(refillHandler, never()).refill(any(), any(), any())
+  }
+
+  @Test
+  fun evaluate_GivenCachedBidsExpiringSoon_RefillThemAhead() {
+    val adUnit = cacheAdUnit("adUnit")
+    givenRequestedEvery(adUnit, 10_000)
+    whenever(cache.getBids(adUnit)).doReturn(listOf(
+        givenSlot(ttlInSeconds = 900),
+        givenSlot(ttlInSeconds = 900),
+        givenSlot(ttlInSeconds = 10)
+    ))
+
+    scheduler.evaluate()
+
+    verify(refillHandler).refill(adUnit, contextData, 1)
+  }
+
+  @Test
+  fun evaluate_GivenRarelyRequestedAdUnit_DoNotRefill() {
+    val adUnit = cacheAdUnit("adUnit")
+    givenRequestedEvery(adUnit, 5 * 60_000)
+
+    scheduler.evaluate()
+
+    verify(refillHandler, never()).refill(any(), any(), any())
+  }
+
+  @Test
+  fun evaluate_GivenAdUnitNotRequestedAnymore_DoNotRefill() {
+    val adUnit = cacheAdUnit("adUnit")
+    givenRequestedEvery(adUnit, 1_000)
+
+    now += 10 * 60_000
+    scheduler.evaluate()
+
+    verify(refillHandler, never()).refill(any(), any(), any())
+  }
+
+  @Test
+  fun evaluate_GivenManyAdUnits_RespectGlobalBudget() {
+    val nbAdUnits = BidRefillScheduler.MAX_REFILL_REQUESTS_PER_MINUTE + 5
+    (0 until nbAdUnits).forEach {
+      givenRequestedEvery(cacheAdUnit("adUnit$it"), 1_000, times = 3)
+    }
+
+    scheduler.evaluate()
+    scheduler.evaluate()
+
+    val budget = BidRefillScheduler.MAX_REFILL_REQUESTS_PER_MINUTE
+    verify(refillHandler, times(budget)).refill(any(), any(), any())
+    assertThat(scheduler.refillRequestCount).isEqualTo(budget.toLong())
+  }
+
+  @Test
+  fun evaluate_GivenRefusedRefill_DoNotConsumeBudget() {
+    val adUnit = cacheAdUnit("adUnit")
+    givenRequestedEvery(adUnit, 1_000)
+    whenever(refillHandler.refill(any(), any(), any())).doReturn(false)
+
+    scheduler.evaluate()
+
+    assertThat(scheduler.refillRequestCount).isZero()
+  }
+
+  @Test
+  fun evaluate_GivenDisabledFeature_DoNotRefill() {
+    val adUnit = cacheAdUnit("adUnit")
+    givenRequestedEvery(adUnit, 1_000)
+    whenever(config.isPredictiveRefillEnabled).doReturn(false)
+
+    scheduler.evaluate()
+
+    verify(refillHandler, never()).refill(any(), any(), any())
+  }
+
+  @Test
+  fun onBidRequested_GivenDisabledFeature_DoNotScheduleEvaluation() {
+    whenever(config.isPredictiveRefillEnabled).doReturn(false)
+
+    scheduler.onBidRequested(cacheAdUnit("adUnit"), contextData, true)
+
+    verify(scheduledExecutorService, never()).schedule(any<Runnable>(), any(), anyOrNull())
+  }
+
+  @Test
+  fun onBidRequested_GivenHitsAndMisses_ComputeHitRate() {
+    scheduler.onBidRequested(cacheAdUnit("adUnit"), contextData, true)
+    scheduler.onBidRequested(cacheAdUnit("adUnit"), contextData, true)
+    scheduler.onBidRequested(cacheAdUnit("adUnit"), contextData, true)
+    scheduler.onBidRequested(cacheAdUnit("adUnit"), contextData, false)
+
+    assertThat(scheduler.hitCount).isEqualTo(3L)
+    assertThat(scheduler.missCount).isEqualTo(1L)
+    assertThat(scheduler.hitRate).isEqualTo(0.75)
+  }
+
+  @Test
+  fun onBidConsumed_GivenExpiredBids_CountOnlyNotSilentOnesAsWasted() {
+    val adUnit = cacheAdUnit("adUnit")
+
+    val expiredSlot = givenSlot(ttlInSeconds = 60, timeOfDownload = now - 60_000)
+    val expiredSilentSlot = givenSlot(ttlInSeconds = 60, timeOfDownload = now - 60_000, cpm = "0.0")
+    val validSlot = givenSlot(ttlInSeconds = 60)
+
+    scheduler.onBidConsumed(adUnit, expiredSlot)
+    scheduler.onBidConsumed(adUnit, expiredSilentSlot)
+    scheduler.onBidConsumed(adUnit, validSlot)
+
+    assertThat(scheduler.wastedBidCount).isEqualTo(1L)
+  }
+
+  private fun givenRequestedEvery(adUnit: CacheAdUnit, periodInMillis: Long, times: Int = 10) {
+    repeat(times) {
+      scheduler.onBidRequested(adUnit, contextData, true)
+      now += periodInMillis
+    }
+    now -= periodInMillis
+  }
+
+  private fun cacheAdUnit(placementId: String) = CacheAdUnit(AdSize(320, 50), placementId, CRITEO_BANNER)
+
+  private fun givenSlot(
+      ttlInSeconds: Int,
+      timeOfDownload: Long = now,
+      cpm: String = "1.0"
+  ) = CdbResponseSlot(
+      placementId = "adUnit",
+      cpm = cpm,
+      width = 320,
+      height = 50,
+      displayUrl = "https://www.criteo.com/",
+      ttlInSeconds = ttlInSeconds,
+      timeOfDownload = timeOfDownload
+  )
+
+  private companion object {
+    const val START_TIME = 1_000_000_000L
+  }
+}
@@ -16,9 +16,12 @@
 
 package com.criteo.publisher;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
@@ -38,11 +41,16 @@ import com.criteo.publisher.headerbidding.HeaderBidding;
 import com.criteo.publisher.model.AdUnit;
 import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.DeviceInfo;
+import com.criteo.publisher.network.ConnectionPrewarmer;
 import com.criteo.publisher.privacy.UserPrivacyUtil;
 import com.criteo.publisher.util.AdvertisingInfo;
 import com.criteo.publisher.util.AppLifecycleUtil;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -51,9 +59,19 @@ import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
+import org.mockito.stubbing.Answer;
 
 public class CriteoInternalUnitTest {
 
+  /**
+   * Time the SDK init may take from the main thread: less than a frame.
+   * <p>
+   * This is checked against the fake clock of the {@link StartupTrace}, with all dependencies
+   * mocked. So it only verifies that no slow stage runs on the main thread. It does not measure the
+   * real cost of building the dependency graph on a device.
+   */
+  private static final long MAIN_THREAD_BUDGET_IN_MILLIS = 16;
+
   @Rule
   public MockitoRule mockitoRule = MockitoJUnit.rule();
 
@@ -75,11 +93,23 @@ public class CriteoInternalUnitTest {
   @Mock
   private Config config;
 
+  private final AtomicLong currentTimeInMillis = new AtomicLong();
+
+  private final Queue<Runnable> workerTasks = new ConcurrentLinkedQueue<>();
+
+  private StartupTrace startupTrace;
+
   @Before
   public void setUp() throws Exception {
     when(dependencyProvider.provideRunOnUiThreadExecutor())
         .thenReturn(new DirectMockRunOnUiThreadExecutor());
 
+    // Init stages are run directly, unless a test wants to run them itself
+    when(dependencyProvider.provideThreadPoolExecutor()).thenReturn(Runnable::run);
+
+    startupTrace = new StartupTrace(currentTimeInMillis::get);
+    when(dependencyProvider.provideStartupTrace()).thenReturn(startupTrace);
+
     when(dependencyProvider.provideConfig()).thenReturn(config);
 
     adUnits = new ArrayList<>();
@@ -109,6 +139,18 @@ public class CriteoInternalUnitTest {
     verify(bidManager).prefetch(adUnits);
   }
 
+  @Test
+  public void whenCreatingNewCriteo_GivenBidManager_ShouldRestoreCachedBidsBeforePrefetch()
+      throws Exception {
+    BidManager bidManager = givenMockedBidManager();
+
+    createCriteo();
+
+    InOrder inOrder = inOrder(bidManager);
+    inOrder.verify(bidManager).restoreCachedBids();
+    inOrder.verify(bidManager).prefetch(any());
+  }
+
   @Test
   public void whenCreatingNewCriteo_GivenTrueUsOptOut_ShouldStoreTrueValue() throws Exception {
     givenMockedUserPrivacyUtil();
@@ -200,13 +242,23 @@ public class CriteoInternalUnitTest {
   }
 
   @Test
-  public void whenCreatingNewCriteo_GivenAdvertisingInfo_PrefetchIt() throws Exception {
+  public void whenCreatingNewCriteo_GivenAdvertisingInfo_RefreshIt() throws Exception {
     AdvertisingInfo advertisingInfo = mock(AdvertisingInfo.class);
     doReturn(advertisingInfo).when(dependencyProvider).provideAdvertisingInfo();
 
     createCriteo();
 
-    verify(advertisingInfo).prefetchAsync();
+    verify(advertisingInfo).refreshOncePerProcess();
+  }
+
+  @Test
+  public void whenCreatingNewCriteo_GivenConnectionPrewarmer_PrewarmConnections() throws Exception {
+    ConnectionPrewarmer connectionPrewarmer = mock(ConnectionPrewarmer.class);
+    doReturn(connectionPrewarmer).when(dependencyProvider).provideConnectionPrewarmer();
+
+    createCriteo();
+
+    verify(connectionPrewarmer).prewarmAsync();
   }
 
   @Test
@@ -226,6 +278,121 @@ public class CriteoInternalUnitTest {
     verify(topActivityFinder).registerActivityLifecycleFor(application);
   }
 
+  @Test
+  public void whenCreatingNewCriteo_DoNotBuildDependenciesOnCallingThread() throws Exception {
+    givenWorkerTasksRunByTest();
+
+    createCriteo();
+
+    verify(dependencyProvider, never()).provideSession();
+    verify(dependencyProvider, never()).provideBidManager();
+    verify(dependencyProvider, never()).provideConfig();
+
+    runWorkerTasksInAnotherThread();
+
+    verify(dependencyProvider).provideSession();
+    verify(dependencyProvider, atLeastOnce()).provideBidManager();
+    verify(dependencyProvider, atLeastOnce()).provideConfig();
+  }
+
+  @Test
+  public void whenCreatingNewCriteo_GivenSlowInitStages_StayWithinMainThreadBudget() throws Exception {
+    givenWorkerTasksRunByTest();
+    DeviceInfo deviceInfo = mock(DeviceInfo.class);
+    doReturn(deviceInfo).when(dependencyProvider).provideDeviceInfo();
+    AdvertisingInfo advertisingInfo = mock(AdvertisingInfo.class);
+    doReturn(advertisingInfo).when(dependencyProvider).provideAdvertisingInfo();
+    BidLifecycleListener listener = givenMockedBidLifecycleListener();
+    BidManager bidManager = givenMockedBidManager();
+    givenMockedUserPrivacyUtil();
+    usPrivacyOptout = true;
+
+    doAnswer(takeMillis(100)).when(deviceInfo).initialize();
+    doAnswer(takeMillis(100)).when(advertisingInfo).refreshOncePerProcess();
+    doAnswer(takeMillis(100)).when(listener).onSdkInitialized();
+    doAnswer(takeMillis(100)).when(config).preload();
+    doAnswer(takeMillis(100)).when(userPrivacyUtil).storeUsPrivacyOptout(true);
+    doAnswer(takeMillis(100)).when(bidManager).restoreCachedBids();
+    doAnswer(takeMillis(100)).when(bidManager).prefetch(any());
+
+    createCriteo();
+
+    verify(application).registerActivityLifecycleCallbacks(any(AppLifecycleUtil.class));
+    verify(config, never()).preload();
+    verify(bidManager, never()).prefetch(any());
+
+    runWorkerTasksInAnotherThread();
+
+    verify(bidManager).prefetch(any());
+    assertThat(startupTrace.getDurationOnThreadInMillis(Thread.currentThread()))
+        .isLessThanOrEqualTo(MAIN_THREAD_BUDGET_IN_MILLIS);
+    assertThat(startupTrace.getStages())
+        .extracting(StartupTrace.Stage::getName)
+        .containsExactlyInAnyOrder("dependencies", "lifecycle", "user-agent", "advertising-id",
+            "csm-recovery", "config", "privacy", "cached-bids", "prefetch");
+  }
+
+  @Test
+  public void whenCreatingNewCriteo_GivenCsmNotRecoveredYet_PrefetchOnlyOnceRecovered() throws Exception {
+    givenWorkerTasksRunByTest();
+    BidLifecycleListener listener = givenMockedBidLifecycleListener();
+    BidManager bidManager = givenMockedBidManager();
+
+    createCriteo();
+
+    // The dependencies stage starts the next ones, then run the config stage before the CSM one
+    workerTasks.poll().run();
+    List<Runnable> tasks = new ArrayList<>(workerTasks);
+    workerTasks.clear();
+    Collections.reverse(tasks);
+    tasks.forEach(Runnable::run);
+
+    InOrder inOrder = inOrder(listener, bidManager);
+    inOrder.verify(bidManager).restoreCachedBids();
+    inOrder.verify(listener).onSdkInitialized();
+    inOrder.verify(bidManager).prefetch(any());
+  }
+
+  @Test
+  public void setUsPrivacyOptOut_GivenInitPrivacyNotStoredYet_StoreItAfterTheInitOne() throws Exception {
+    givenWorkerTasksRunByTest();
+    givenMockedUserPrivacyUtil();
+    usPrivacyOptout = true;
+
+    CriteoInternal criteoInternal = createCriteo();
+    criteoInternal.setUsPrivacyOptOut(false);
+
+    verify(userPrivacyUtil, never()).storeUsPrivacyOptout(anyBoolean());
+
+    runWorkerTasksInAnotherThread();
+
+    InOrder inOrder = inOrder(userPrivacyUtil);
+    inOrder.verify(userPrivacyUtil).storeUsPrivacyOptout(true);
+    inOrder.verify(userPrivacyUtil).storeUsPrivacyOptout(false);
+  }
+
+  @Test
+  public void getBidForAdUnit_GivenInitPrivacyNotStoredYet_GetBidOnlyOnceStored() throws Exception {
+    givenWorkerTasksRunByTest();
+    givenMockedUserPrivacyUtil();
+    BidManager bidManager = givenMockedBidManager();
+    usPrivacyOptout = true;
+    AdUnit adUnit = mock(AdUnit.class);
+    ContextData contextData = mock(ContextData.class);
+    BidListener bidListener = mock(BidListener.class);
+
+    CriteoInternal criteoInternal = createCriteo();
+    criteoInternal.getBidForAdUnit(adUnit, contextData, bidListener);
+
+    verify(bidManager, never()).getBidForAdUnit(any(), any(), any());
+
+    runWorkerTasksInAnotherThread();
+
+    InOrder inOrder = inOrder(userPrivacyUtil, bidManager);
+    inOrder.verify(userPrivacyUtil).storeUsPrivacyOptout(true);
+    inOrder.verify(bidManager).getBidForAdUnit(adUnit, contextData, bidListener);
+  }
+
   @Test
   public void loadBid_GivenNoContext_UseEmptyContext() throws Exception {
     AdUnit adUnit = mock(AdUnit.class);
@@ -244,6 +411,13 @@ public class CriteoInternalUnitTest {
     BidResponseListener listener = mock(BidResponseListener.class);
     ContextData contextData = mock(ContextData.class);
 
+    DirectMockRunOnUiThreadExecutor runOnUiThreadExecutor = new DirectMockRunOnUiThreadExecutor();
+    when(dependencyProvider.provideRunOnUiThreadExecutor()).thenReturn(runOnUiThreadExecutor);
+    doAnswer(invocation -> {
+      runOnUiThreadExecutor.expectIsRunningInExecutor();
+      return null;
+    }).when(listener).onResponse(null);
+
     ConsumableBidLoader consumableBidLoader = givenMockedConsumableBidLoader();
     doAnswer(invocation -> {
       throw new RuntimeException();
@@ -253,6 +427,7 @@ public class CriteoInternalUnitTest {
     criteo.loadBid(adUnit, contextData, listener);
 
     verify(listener).onResponse(null);
+    runOnUiThreadExecutor.verifyExpectations();
   }
 
   @Test
@@ -335,6 +510,28 @@ public class CriteoInternalUnitTest {
     verify(bidManager).getBidForAdUnit(adUnit, contextData, bidListener);
   }
 
+  private void givenWorkerTasksRunByTest() {
+    when(dependencyProvider.provideThreadPoolExecutor()).thenReturn(workerTasks::add);
+  }
+
+  private void runWorkerTasksInAnotherThread() throws InterruptedException {
+    Thread worker = new Thread(() -> {
+      Runnable task;
+      while ((task = workerTasks.poll()) != null) {
+        task.run();
+      }
+    });
+    worker.start();
+    worker.join();
+  }
+
+  private Answer<Void> takeMillis(long durationInMillis) {
+    return invocation -> {
+      currentTimeInMillis.addAndGet(durationInMillis);
+      return null;
+    };
+  }
+
   private void givenMockedUserPrivacyUtil() {
     when(dependencyProvider.provideUserPrivacyUtil()).thenReturn(userPrivacyUtil);
   }
@@ -168,6 +168,11 @@ public class DependencyProviderTest {
     provideBean_WhenProvidedTwice_ReturnsTheSame(DependencyProvider::provideThreadPoolExecutor);
   }
 
+  @Test
+  public void providePriorityExecutor_WhenProvidedTwice_ReturnsTheSame() throws Exception {
+    provideBean_WhenProvidedTwice_ReturnsTheSame(DependencyProvider::providePriorityExecutor);
+  }
+
   @Test
   public void provideBuildConfigWrapper_WhenProvidedTwice_ReturnsTheSame() throws Exception {
     provideBean_WhenProvidedTwice_ReturnsTheSame(DependencyProvider::provideBuildConfigWrapper);
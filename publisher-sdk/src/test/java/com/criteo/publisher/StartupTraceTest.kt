@@ -0,0 +1,92 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatCode
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.whenever
+
+class StartupTraceTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var clock: Clock
+
+  private var now = 1_000L
+
+  private lateinit var startupTrace: StartupTrace
+
+  @Before
+  fun setUp() {
+    whenever(clock.currentTimeInMillis).doAnswer { now }
+
+    startupTrace = StartupTrace(clock)
+  }
+
+  @Test
+  fun begin_GivenEndedSpan_RecordStageOnCallingThread() {
+    now += 10
+    val span = startupTrace.begin("stage")
+    now += 42
+    span.end()
+
+    assertThat(startupTrace.getStages()).containsExactly(
+        StartupTrace.Stage("stage", Thread.currentThread(), 10, 42)
+    )
+  }
+
+  @Test
+  fun begin_GivenNotEndedSpan_DoNotRecordIt() {
+    startupTrace.begin("stage")
+
+    assertThat(startupTrace.getStages()).isEmpty()
+  }
+
+  @Test
+  fun traced_GivenFailingTask_RecordItAndRethrow() {
+    val task = startupTrace.traced("stage", Runnable {
+      now += 5
+      throw IllegalStateException()
+    })
+
+    assertThatCode { task.run() }.isInstanceOf(IllegalStateException::class.java)
+    assertThat(startupTrace.getStages()).extracting<String> { it.name }.containsExactly("stage")
+  }
+
+  @Test
+  fun getDurationOnThreadInMillis_GivenStagesOnSeveralThreads_SumOnlyTheOnesOfTheThread() {
+    startupTrace.traced("main", Runnable { now += 3 }).run()
+
+    val worker = Thread(startupTrace.traced("worker", Runnable { now += 100 }))
+    worker.start()
+    worker.join()
+
+    startupTrace.traced("main2", Runnable { now += 4 }).run()
+
+    assertThat(startupTrace.getDurationOnThreadInMillis(Thread.currentThread())).isEqualTo(7)
+    assertThat(startupTrace.getDurationOnThreadInMillis(worker)).isEqualTo(100)
+  }
+}
@@ -103,4 +103,15 @@ class CompositeBidLifecycleListenerTest {
     verify(listener1).onBidConsumed(adUnit, slot)
     verify(listener2).onBidConsumed(adUnit, slot)
   }
+
+  @Test
+  fun onBidDiscarded_GivenDelegates_DelegateToThem() {
+    val adUnit = CacheAdUnit(AdSize(1, 2), "myAdUnit", CRITEO_BANNER)
+    val slot = mock<CdbResponseSlot>()
+
+    listener.onBidDiscarded(adUnit, slot)
+
+    verify(listener1).onBidDiscarded(adUnit, slot)
+    verify(listener2).onBidDiscarded(adUnit, slot)
+  }
 }
@@ -0,0 +1,222 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.cache
+
+import android.content.Context
+import com.criteo.publisher.Clock
+import com.criteo.publisher.mock.MockedDependenciesRule
+import com.criteo.publisher.model.CdbResponseSlot
+import com.criteo.publisher.privacy.UserPrivacyUtil
+import com.criteo.publisher.util.JsonSerializer
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+import java.util.concurrent.Executor
+import javax.inject.Inject
+
+class BidCacheSnapshotStoreTest {
+
+  @Rule
+  @JvmField
+  val mockedDependenciesRule = MockedDependenciesRule()
+
+  @Rule
+  @JvmField
+  val tempFolder = TemporaryFolder()
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var context: Context
+
+  @Mock
+  private lateinit var clock: Clock
+
+  @Mock
+  private lateinit var userPrivacyUtil: UserPrivacyUtil
+
+  @Inject
+  private lateinit var jsonSerializer: JsonSerializer
+
+  private lateinit var store: BidCacheSnapshotStore
+
+  @Before
+  fun setUp() {
+    whenever(context.filesDir).doReturn(tempFolder.root)
+    whenever(clock.currentTimeInMillis).doReturn(NOW)
+    whenever(userPrivacyUtil.iabUsPrivacyString).doReturn("")
+    whenever(userPrivacyUtil.usPrivacyOptout).doReturn("")
+    whenever(userPrivacyUtil.mopubConsent).doReturn("")
+    whenever(userPrivacyUtil.isCCPAConsentGivenOrNotApplicable).doReturn(true)
+    whenever(userPrivacyUtil.isMopubConsentGivenOrNotApplicable).doReturn(true)
+
+    store = BidCacheSnapshotStore(
+        context,
+        jsonSerializer,
+        clock,
+        userPrivacyUtil,
+        Executor { it.run() }
+    )
+  }
+
+  @Test
+  fun restore_GivenNoSnapshot_ReturnEmpty() {
+    assertThat(store.restore()).isEmpty()
+  }
+
+  @Test
+  fun restore_GivenSavedBids_ReturnThemOnlyOnce() {
+    val slot1 = givenSlot("adUnit1", ttlInSeconds = 60)
+    val slot2 = givenSlot("adUnit2", ttlInSeconds = 900)
+    store.save(listOf(slot1, slot2))
+
+    val restored1 = store.restore()
+    val restored2 = store.restore()
+
+    assertThat(restored1).containsExactly(slot1, slot2)
+    assertThat(restored1[0].cpmAsNumber).isEqualTo(1.0)
+    assertThat(restored2).isEmpty()
+  }
+
+  @Test
+  fun restore_GivenBidsExpiredSinceSave_DropThem() {
+    val slot1 = givenSlot("adUnit1", ttlInSeconds = 60)
+    val slot2 = givenSlot("adUnit2", ttlInSeconds = 900)
+    store.save(listOf(slot1, slot2))
+
+    whenever(clock.currentTimeInMillis).doReturn(NOW + 60_000)
+
+    assertThat(store.restore()).containsExactly(slot2)
+  }
+
+  @Test
+  fun save_GivenOnlyExpiredBids_DeletePreviousSnapshot() {
+    store.save(listOf(givenSlot("adUnit1", ttlInSeconds = 60)))
+
+    store.save(listOf(givenSlot("adUnit2", ttlInSeconds = 60, timeOfDownload = NOW - 60_000)))
+
+    assertThat(store.snapshotFile).doesNotExist()
+    assertThat(store.restore()).isEmpty()
+  }
+
+  @Test
+  fun restore_GivenCorruptedSnapshot_ReturnEmptyAndDeleteIt() {
+    store.snapshotFile.writeText("{\"bids\": [")
+
+    assertThat(store.restore()).isEmpty()
+    assertThat(store.snapshotFile).doesNotExist()
+  }
+
+  @Test
+  fun restore_GivenPrivacyChangedSinceSave_ReturnEmptyAndDeleteIt() {
+    store.save(listOf(givenSlot("adUnit1", ttlInSeconds = 60)))
+
+    whenever(userPrivacyUtil.gdprConsentData).doReturn("newConsent")
+
+    assertThat(store.restore()).isEmpty()
+    assertThat(store.snapshotFile).doesNotExist()
+  }
+
+  @Test
+  fun restore_GivenUserOptedOut_ReturnEmpty() {
+    store.save(listOf(givenSlot("adUnit1", ttlInSeconds = 60)))
+
+    whenever(userPrivacyUtil.isCCPAConsentGivenOrNotApplicable).doReturn(false)
+
+    assertThat(store.restore()).isEmpty()
+  }
+
+  @Test
+  fun invalidate_GivenSnapshot_ItIsNotRestored() {
+    store.save(listOf(givenSlot("adUnit1", ttlInSeconds = 60)))
+
+    store.invalidateAsync()
+
+    assertThat(store.snapshotFile).doesNotExist()
+    assertThat(store.restore()).isEmpty()
+  }
+
+  @Test
+  fun saveAsync_GivenInvalidationRequestedBeforeExecution_DoNotSave() {
+    val queuedTasks = mutableListOf<Runnable>()
+    store = BidCacheSnapshotStore(
+        context,
+        jsonSerializer,
+        clock,
+        userPrivacyUtil,
+        Executor { queuedTasks.add(it) }
+    )
+
+    store.saveAsync(listOf(givenSlot("adUnit1", ttlInSeconds = 60)))
+    store.invalidateAsync()
+    queuedTasks.reversed().forEach { it.run() }
+
+    assertThat(store.snapshotFile).doesNotExist()
+  }
+
+  @Test
+  fun restoreAsync_GivenNoSnapshot_DoNotCallListener() {
+    val listener = mock<BidCacheSnapshotStore.RestoreListener>()
+
+    store.restoreAsync(listener)
+
+    verify(listener, never()).onRestored(any())
+  }
+
+  @Test
+  fun restoreAsync_GivenSnapshot_CallListenerWithBids() {
+    val slot = givenSlot("adUnit1", ttlInSeconds = 60)
+    val listener = mock<BidCacheSnapshotStore.RestoreListener>()
+    store.saveAsync(listOf(slot))
+
+    store.restoreAsync(listener)
+
+    verify(listener).onRestored(listOf(slot))
+  }
+
+  private fun givenSlot(
+      placementId: String,
+      ttlInSeconds: Int,
+      timeOfDownload: Long = NOW
+  ) = CdbResponseSlot(
+      impressionId = "impId-$placementId",
+      placementId = placementId,
+      cpm = "1.0",
+      currency = "EUR",
+      width = 320,
+      height = 50,
+      displayUrl = "https://www.criteo.com/",
+      ttlInSeconds = ttlInSeconds,
+      timeOfDownload = timeOfDownload
+  )
+
+  private companion object {
+    const val NOW = 1_000_000_000L
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.cache
+
+import com.criteo.publisher.Clock
+import com.criteo.publisher.bid.BidLifecycleListener
+import com.criteo.publisher.model.AdSize
+import com.criteo.publisher.model.CacheAdUnit
+import com.criteo.publisher.model.CdbResponseSlot
+import com.criteo.publisher.util.AdUnitType.CRITEO_BANNER
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.clearInvocations
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+class BidExpiryWheelTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var cache: SdkCache
+
+  @Mock
+  private lateinit var clock: Clock
+
+  @Mock
+  private lateinit var scheduledExecutorService: ScheduledExecutorService
+
+  @Mock
+  private lateinit var bidLifecycleListener: BidLifecycleListener
+
+  private var now = START_TIME
+
+  private lateinit var wheel: BidExpiryWheel
+
+  @Before
+  fun setUp() {
+    whenever(clock.currentTimeInMillis).doAnswer { now }
+    whenever(cache.detectCacheAdUnit(any())).doAnswer {
+      CacheAdUnit(AdSize(320, 50), it.getArgument<CdbResponseSlot>(0).placementId!!, CRITEO_BANNER)
+    }
+    whenever(cache.remove(any(), any())).doReturn(true)
+
+    wheel = BidExpiryWheel(cache, clock, scheduledExecutorService, bidLifecycleListener)
+  }
+
+  @Test
+  fun tick_GivenNotExpiredBid_DoNotEvictIt() {
+    val slot = givenSlot("adUnit", ttlInSeconds = 60)
+    wheel.schedule(slot)
+
+    now += 59_999
+    wheel.tick()
+
+    verify(cache, never()).remove(any(), any())
+    verify(bidLifecycleListener, never()).onBidConsumed(any(), any())
+    assertThat(wheel.pendingCount).isEqualTo(1)
+  }
+
+  @Test
+  fun tick_GivenExpiredBid_EvictItAndNotifyItAsConsumed() {
+    val slot = givenSlot("adUnit", ttlInSeconds = 60)
+    wheel.schedule(slot)
+
+    now += 60_000
+    wheel.tick()
+
+    verify(cache).remove(cacheAdUnit("adUnit"), slot)
+    verify(bidLifecycleListener).onBidConsumed(cacheAdUnit("adUnit"), slot)
+    assertThat(wheel.pendingCount).isZero()
+  }
+
+  @Test
+  fun tick_GivenBidExpiringAfterManyRounds_EvictItOnlyAtItsRound() {
+    val ttlInSeconds = 3 * BidExpiryWheel.WHEEL_SIZE + 5
+    val slot = givenSlot("adUnit", ttlInSeconds = ttlInSeconds)
+    wheel.schedule(slot)
+
+    // Tick at each second, as the scheduled task would do
+    repeat(ttlInSeconds - 1) {
+      now += BidExpiryWheel.TICK_DURATION_IN_MILLIS
+      wheel.tick()
+    }
+
+    verify(cache, never()).remove(any(), any())
+
+    now += BidExpiryWheel.TICK_DURATION_IN_MILLIS
+    wheel.tick()
+
+    verify(bidLifecycleListener).onBidConsumed(cacheAdUnit("adUnit"), slot)
+  }
+
+  @Test
+  fun tick_GivenLateTick_EvictAllBidsExpiredMeanwhile() {
+    val slot1 = givenSlot("adUnit1", ttlInSeconds = 10)
+    val slot2 = givenSlot("adUnit2", ttlInSeconds = 20)
+    val slot3 = givenSlot("adUnit3", ttlInSeconds = 1000)
+    wheel.schedule(slot1)
+    wheel.schedule(slot2)
+    wheel.schedule(slot3)
+
+    now += 500_000
+    wheel.tick()
+
+    verify(bidLifecycleListener).onBidConsumed(cacheAdUnit("adUnit1"), slot1)
+    verify(bidLifecycleListener).onBidConsumed(cacheAdUnit("adUnit2"), slot2)
+    verify(bidLifecycleListener, never()).onBidConsumed(cacheAdUnit("adUnit3"), slot3)
+    assertThat(wheel.pendingCount).isEqualTo(1)
+  }
+
+  @Test
+  fun tick_GivenAlreadyExpiredBid_EvictItAtNextTick() {
+    val slot = givenSlot("adUnit", ttlInSeconds = 1, timeOfDownload = START_TIME - 10_000)
+    wheel.schedule(slot)
+
+    now += BidExpiryWheel.TICK_DURATION_IN_MILLIS
+    wheel.tick()
+
+    verify(bidLifecycleListener).onBidConsumed(cacheAdUnit("adUnit"), slot)
+  }
+
+  @Test
+  fun tick_GivenBidAlreadyRemovedFromCache_DoNotNotifyIt() {
+    val slot = givenSlot("adUnit", ttlInSeconds = 60)
+    whenever(cache.remove(cacheAdUnit("adUnit"), slot)).doReturn(false)
+    wheel.schedule(slot)
+
+    now += 60_000
+    wheel.tick()
+
+    verify(bidLifecycleListener, never()).onBidConsumed(any(), any())
+    assertThat(wheel.pendingCount).isZero()
+  }
+
+  @Test
+  fun schedule_GivenSlotWithoutAdUnit_IgnoreIt() {
+    val slot = givenSlot("adUnit", ttlInSeconds = 60)
+    whenever(cache.detectCacheAdUnit(slot)).doReturn(null)
+
+    wheel.schedule(slot)
+
+    assertThat(wheel.pendingCount).isZero()
+    verify(scheduledExecutorService, never()).schedule(any<Runnable>(), any(), any())
+  }
+
+  @Test
+  fun schedule_GivenManyBids_ScheduleOnlyOneTickTaskAtFirstExpiry() {
+    wheel.schedule(givenSlot("adUnit1", ttlInSeconds = 60))
+    wheel.schedule(givenSlot("adUnit2", ttlInSeconds = 60))
+    wheel.schedule(givenSlot("adUnit3", ttlInSeconds = 60))
+
+    verify(scheduledExecutorService, times(1)).schedule(
+        any<Runnable>(),
+        eq(60_000L),
+        eq(TimeUnit.MILLISECONDS)
+    )
+  }
+
+  @Test
+  fun schedule_GivenBidExpiringBeforeScheduledTick_RescheduleTickTaskEarlier() {
+    val tickTask: ScheduledFuture<*> = mock()
+    doReturn(tickTask).whenever(scheduledExecutorService).schedule(any<Runnable>(), any(), any())
+
+    wheel.schedule(givenSlot("adUnit1", ttlInSeconds = 60))
+    wheel.schedule(givenSlot("adUnit2", ttlInSeconds = 10))
+
+    verify(tickTask).cancel(false)
+    verify(scheduledExecutorService).schedule(any<Runnable>(), eq(10_000L), eq(TimeUnit.MILLISECONDS))
+  }
+
+  @Test
+  fun schedule_GivenBidExpiringAfterManyRounds_ScheduleTickTaskAtItsBucketInCurrentRound() {
+    wheel.schedule(givenSlot("adUnit", ttlInSeconds = 3 * BidExpiryWheel.WHEEL_SIZE + 5))
+
+    verify(scheduledExecutorService).schedule(any<Runnable>(), eq(5_000L), eq(TimeUnit.MILLISECONDS))
+  }
+
+  @Test
+  fun tick_GivenRemainingBids_ScheduleTickTaskAtNextNonEmptyBucket() {
+    wheel.schedule(givenSlot("adUnit1", ttlInSeconds = 10))
+    wheel.schedule(givenSlot("adUnit2", ttlInSeconds = 30))
+    clearInvocations(scheduledExecutorService)
+
+    now += 10_000
+    wheel.tick()
+
+    verify(scheduledExecutorService).schedule(any<Runnable>(), eq(20_000L), eq(TimeUnit.MILLISECONDS))
+  }
+
+  @Test
+  fun tick_GivenNoRemainingBid_DoNotScheduleTickTask() {
+    wheel.schedule(givenSlot("adUnit", ttlInSeconds = 10))
+    clearInvocations(scheduledExecutorService)
+
+    now += 10_000
+    wheel.tick()
+
+    verify(scheduledExecutorService, never()).schedule(any<Runnable>(), any(), any())
+  }
+
+  @Test
+  fun cancel_GivenScheduledBid_ItIsNotEvictedAndTickTaskIsCancelled() {
+    val tickTask: ScheduledFuture<*> = mock()
+    doReturn(tickTask).whenever(scheduledExecutorService).schedule(any<Runnable>(), any(), any())
+    val slot = givenSlot("adUnit", ttlInSeconds = 60)
+    wheel.schedule(slot)
+
+    wheel.cancel(slot)
+
+    assertThat(wheel.pendingCount).isZero()
+    verify(tickTask).cancel(false)
+
+    now += 60_000
+    wheel.tick()
+
+    verify(cache, never()).remove(any(), any())
+    verify(bidLifecycleListener, never()).onBidConsumed(any(), any())
+  }
+
+  @Test
+  fun cancel_GivenOtherEqualSlot_KeepScheduledOne() {
+    val slot = givenSlot("adUnit", ttlInSeconds = 60)
+    wheel.schedule(slot)
+
+    wheel.cancel(givenSlot("adUnit", ttlInSeconds = 60))
+
+    assertThat(wheel.pendingCount).isEqualTo(1)
+  }
+
+  private fun cacheAdUnit(placementId: String) = CacheAdUnit(AdSize(320, 50), placementId, CRITEO_BANNER)
+
+  private fun givenSlot(
+      placementId: String,
+      ttlInSeconds: Int,
+      timeOfDownload: Long = START_TIME
+  ) = CdbResponseSlot(
+      placementId = placementId,
+      cpm = "1.0",
+      width = 320,
+      height = 50,
+      displayUrl = "https://www.criteo.com/",
+      ttlInSeconds = ttlInSeconds,
+      timeOfDownload = timeOfDownload
+  )
+
+  private companion object {
+    const val START_TIME = 1_000_000_000L
+  }
+}
@@ -23,9 +23,14 @@ import static com.criteo.publisher.util.AdUnitType.CRITEO_REWARDED;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
@@ -53,6 +58,9 @@ public class SdkCacheTest {
   @Mock(answer = Answers.RETURNS_DEEP_STUBS)
   private Context context;
 
+  @Mock
+  private SdkCache.DiscardListener discardListener;
+
   private JSONArray slots;
   private DeviceUtil deviceUtil;
   private SdkCache cache;
@@ -306,6 +314,27 @@ public class SdkCacheTest {
     assertThat(adUnit).isSameAs(slot);
   }
 
+  @Test
+  public void add_GivenManySlots_QueryScreenOnlyOnce() {
+    doReturn(new AdSize(320, 480)).when(deviceUtil).getCurrentScreenSize();
+
+    for (int i = 0; i < 20; i++) {
+      CdbResponseSlot slot = mock(CdbResponseSlot.class);
+      when(slot.getWidth()).thenReturn(i % 2 == 0 ? 320 : 300);
+      when(slot.getHeight()).thenReturn(i % 2 == 0 ? 480 : 250);
+      when(slot.getPlacementId()).thenReturn("adUnit" + i);
+
+      cache.add(slot);
+    }
+
+    assertThat(cache.getItemCount()).isEqualTo(20);
+    assertThat(cache.peekAdUnit(new CacheAdUnit(new AdSize(320, 480), "adUnit0", CRITEO_INTERSTITIAL)))
+        .isNotNull();
+    assertThat(cache.peekAdUnit(new CacheAdUnit(new AdSize(300, 250), "adUnit1", CRITEO_BANNER)))
+        .isNotNull();
+    verify(deviceUtil, times(1)).getCurrentScreenSize();
+  }
+
   @Test
   public void add_GivenValidRewardedSlot_AddItInCache() {
     AdSize size = new AdSize(1, 2);
@@ -350,6 +379,226 @@ public class SdkCacheTest {
     assertThat(slot).isNull();
   }
 
+  @Test
+  public void addWithPredicate_GivenNoCachedSlot_AddItInCache() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot slot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    boolean isAdded = cache.add(slot, cachedSlot -> true, 1, discardListener);
+
+    assertThat(isAdded).isTrue();
+    assertThat(cache.peekAdUnit(key)).isSameAs(slot);
+  }
+
+  @Test
+  public void addWithPredicate_GivenProtectedCachedSlot_DoNotOverrideIt() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot protectedSlot = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot newSlot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.add(protectedSlot);
+
+    boolean isAdded = cache.add(
+        newSlot,
+        cachedSlot -> cachedSlot == protectedSlot,
+        1,
+        discardListener
+    );
+
+    assertThat(isAdded).isFalse();
+    assertThat(cache.peekAdUnit(key)).isSameAs(protectedSlot);
+  }
+
+  @Test
+  public void addWithPredicate_GivenNotProtectedCachedSlot_OverrideIt() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot oldSlot = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot newSlot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.add(oldSlot);
+
+    boolean isAdded = cache.add(newSlot, cachedSlot -> false, 1, discardListener);
+
+    assertThat(isAdded).isTrue();
+    assertThat(cache.peekAdUnit(key)).isSameAs(newSlot);
+  }
+
+  @Test
+  public void consume_GivenConsumableSlot_ReturnItOnlyOnce() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot slot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.add(slot);
+
+    CdbResponseSlot slot1 = consume(key);
+    CdbResponseSlot slot2 = consume(key);
+
+    assertThat(slot1).isSameAs(slot);
+    assertThat(slot2).isNull();
+    assertThat(cache.getItemCount()).isZero();
+  }
+
+  @Test
+  public void consume_GivenNotConsumableSlot_KeepItInCache() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot slot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.add(slot);
+
+    CdbResponseSlot consumed = cache.consume(
+        key,
+        cachedSlot -> false,
+        cachedSlot -> false,
+        discardListener
+    );
+
+    assertThat(consumed).isNull();
+    assertThat(cache.peekAdUnit(key)).isSameAs(slot);
+  }
+
+  @Test
+  public void addWithPredicate_GivenDepthOfOne_ReportOverriddenSlot() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot oldSlot = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot newSlot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.add(oldSlot);
+
+    cache.add(newSlot, cachedSlot -> false, 1, discardListener);
+
+    verify(discardListener).onDiscarded(key, oldSlot);
+    assertThat(cache.getBidCount(key)).isEqualTo(1);
+  }
+
+  @Test
+  public void addWithPredicate_GivenDepth_KeepBidsOrderedByCpmThenExpiry() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot lowCpmSlot = givenNativeSlot(size, "myAdUnit", 1.0, 0, 60);
+    CdbResponseSlot highCpmLateSlot = givenNativeSlot(size, "myAdUnit", 2.0, 1000, 60);
+    CdbResponseSlot highCpmSoonSlot = givenNativeSlot(size, "myAdUnit", 2.0, 0, 60);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    cache.add(lowCpmSlot, cachedSlot -> false, 3, discardListener);
+    cache.add(highCpmLateSlot, cachedSlot -> false, 3, discardListener);
+    cache.add(highCpmSoonSlot, cachedSlot -> false, 3, discardListener);
+
+    assertThat(cache.getBidCount(key)).isEqualTo(3);
+    assertThat(consume(key)).isSameAs(highCpmSoonSlot);
+    assertThat(consume(key)).isSameAs(highCpmLateSlot);
+    assertThat(consume(key)).isSameAs(lowCpmSlot);
+    assertThat(consume(key)).isNull();
+    verify(discardListener, never()).onDiscarded(any(), any());
+  }
+
+  @Test
+  public void addWithPredicate_GivenDepthExceededByBetterBid_EvictWorstPreviousBid() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot bestSlot = givenNativeSlot(size, "myAdUnit", 3.0, 0, 60);
+    CdbResponseSlot worstSlot = givenNativeSlot(size, "myAdUnit", 1.0, 0, 60);
+    CdbResponseSlot newSlot = givenNativeSlot(size, "myAdUnit", 2.0, 0, 60);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.add(bestSlot, cachedSlot -> false, 2, discardListener);
+    cache.add(worstSlot, cachedSlot -> false, 2, discardListener);
+
+    boolean isAdded = cache.add(newSlot, cachedSlot -> false, 2, discardListener);
+
+    assertThat(isAdded).isTrue();
+    assertThat(cache.getBidCount(key)).isEqualTo(2);
+    verify(discardListener).onDiscarded(key, worstSlot);
+    verifyNoMoreInteractions(discardListener);
+    assertThat(consume(key)).isSameAs(bestSlot);
+    assertThat(consume(key)).isSameAs(newSlot);
+  }
+
+  @Test
+  public void addWithPredicate_GivenDepthExceededByWorseBid_DiscardNewBid() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot bestSlot = givenNativeSlot(size, "myAdUnit", 3.0, 0, 60);
+    CdbResponseSlot worstSlot = givenNativeSlot(size, "myAdUnit", 1.0, 0, 60);
+    CdbResponseSlot newSlot = givenNativeSlot(size, "myAdUnit", 0.5, 0, 60);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.add(bestSlot, cachedSlot -> false, 2, discardListener);
+    cache.add(worstSlot, cachedSlot -> false, 2, discardListener);
+
+    boolean isAdded = cache.add(newSlot, cachedSlot -> false, 2, discardListener);
+
+    assertThat(isAdded).isFalse();
+    assertThat(cache.getBidCount(key)).isEqualTo(2);
+    verify(discardListener).onDiscarded(key, newSlot);
+    verifyNoMoreInteractions(discardListener);
+    assertThat(consume(key)).isSameAs(bestSlot);
+    assertThat(consume(key)).isSameAs(worstSlot);
+  }
+
+  @Test
+  public void addWithPredicate_GivenNewProtectedSlot_ReplaceAllCachedBids() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot slot1 = givenNativeSlot(size, "myAdUnit", 3.0, 0, 60);
+    CdbResponseSlot slot2 = givenNativeSlot(size, "myAdUnit", 1.0, 0, 60);
+    CdbResponseSlot protectedSlot = givenNativeSlot(size, "myAdUnit", 0.0, 0, 60);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.add(slot1, cachedSlot -> false, 3, discardListener);
+    cache.add(slot2, cachedSlot -> false, 3, discardListener);
+
+    cache.add(protectedSlot, cachedSlot -> cachedSlot == protectedSlot, 3, discardListener);
+
+    assertThat(cache.getBidCount(key)).isEqualTo(1);
+    assertThat(cache.peekAdUnit(key)).isSameAs(protectedSlot);
+    verify(discardListener).onDiscarded(key, slot1);
+    verify(discardListener).onDiscarded(key, slot2);
+  }
+
+  @Test
+  public void consume_GivenExpiredSlots_DiscardThemAndReturnBestRemainingOne() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot expiredSlot = givenNativeSlot(size, "myAdUnit", 3.0, 0, 60);
+    CdbResponseSlot validSlot = givenNativeSlot(size, "myAdUnit", 1.0, 0, 60);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.add(expiredSlot, cachedSlot -> false, 2, discardListener);
+    cache.add(validSlot, cachedSlot -> false, 2, discardListener);
+
+    CdbResponseSlot consumed = cache.consume(
+        key,
+        cachedSlot -> true,
+        cachedSlot -> cachedSlot == expiredSlot,
+        discardListener
+    );
+
+    assertThat(consumed).isSameAs(validSlot);
+    verify(discardListener).onDiscarded(key, expiredSlot);
+    assertThat(cache.getItemCount()).isZero();
+  }
+
+  @Test
+  public void put_GivenNullSlot_RemoveCachedSlot() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.put(key, givenNativeSlot(size, "myAdUnit"));
+
+    cache.put(key, null);
+
+    assertThat(cache.peekAdUnit(key)).isNull();
+  }
+
+  private CdbResponseSlot consume(CacheAdUnit key) {
+    return cache.consume(key, cachedSlot -> true, cachedSlot -> false, discardListener);
+  }
+
+  private static CdbResponseSlot givenNativeSlot(
+      AdSize size,
+      String placementId,
+      double cpm,
+      long timeOfDownload,
+      int ttlInSeconds
+  ) {
+    CdbResponseSlot slot = givenNativeSlot(size, placementId);
+    when(slot.getCpmAsNumber()).thenReturn(cpm);
+    when(slot.getTimeOfDownload()).thenReturn(timeOfDownload);
+    when(slot.getTtlInSeconds()).thenReturn(ttlInSeconds);
+    return slot;
+  }
+
   private static CdbResponseSlot givenNativeSlot(AdSize size, String placementId) {
     CdbResponseSlot slot = mock(CdbResponseSlot.class);
     when(slot.isNative()).thenReturn(true);
@@ -0,0 +1,207 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent
+
+import com.criteo.publisher.Clock
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatCode
+import org.junit.After
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.whenever
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.FutureTask
+import java.util.concurrent.TimeUnit
+
+class PriorityExecutorTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var clock: Clock
+
+  /**
+   * Workers are only run when the test asks for it
+   */
+  private val pendingWorkers = ArrayDeque<Runnable>()
+
+  private val manualWorkerExecutor = Executor { pendingWorkers.add(it) }
+
+  private var threadPool: ExecutorService? = null
+
+  @After
+  fun tearDown() {
+    threadPool?.shutdownNow()
+  }
+
+  @Test
+  fun execute_GivenBusyWorker_RunMostUrgentTasksFirstInSubmissionOrder() {
+    val executor = PriorityExecutor(manualWorkerExecutor, 1, clock)
+    val executionOrder = mutableListOf<String>()
+
+    executor.execute(PrioritizedRunnable(TaskPriority.TELEMETRY, Runnable { executionOrder += "telemetry" }))
+    executor.execute(Runnable { executionOrder += "display" })
+    executor.execute(PrioritizedRunnable(TaskPriority.BID, Runnable { executionOrder += "bid1" }))
+    executor.execute(PrioritizedRunnable(TaskPriority.BID, Runnable { executionOrder += "bid2" }))
+    runPendingWorkers()
+
+    assertThat(executionOrder).containsExactly("bid1", "bid2", "display", "telemetry")
+  }
+
+  @Test
+  fun execute_GivenFullTelemetryQueue_DropTask() {
+    val executor = PriorityExecutor(manualWorkerExecutor, 1, clock)
+    var executedCount = 0
+
+    repeat(TaskPriority.TELEMETRY.queueCapacity + 1) {
+      executor.execute(PrioritizedRunnable(TaskPriority.TELEMETRY, Runnable { executedCount++ }))
+    }
+
+    val statistics = executor.getStatistics(TaskPriority.TELEMETRY)
+    assertThat(statistics.queueDepth).isEqualTo(TaskPriority.TELEMETRY.queueCapacity)
+    assertThat(statistics.droppedCount).isEqualTo(1L)
+
+    runPendingWorkers()
+    assertThat(executedCount).isEqualTo(TaskPriority.TELEMETRY.queueCapacity)
+  }
+
+  @Test
+  fun execute_GivenFullTelemetryQueue_NotifyDroppedTask() {
+    val executor = PriorityExecutor(manualWorkerExecutor, 1, clock)
+    var droppedCount = 0
+
+    repeat(TaskPriority.TELEMETRY.queueCapacity + 2) {
+      executor.execute(PrioritizedRunnable(TaskPriority.TELEMETRY, Runnable {}, Runnable { droppedCount++ }))
+    }
+
+    assertThat(droppedCount).isEqualTo(2)
+
+    runPendingWorkers()
+    assertThat(droppedCount).isEqualTo(2)
+  }
+
+  @Test
+  fun execute_GivenBurstOfBidAndDisplayTasks_QueueAndRunThemAll() {
+    val executor = PriorityExecutor(manualWorkerExecutor, 1, clock)
+    var executedCount = 0
+
+    repeat(1_000) {
+      executor.execute(PrioritizedRunnable(TaskPriority.BID, Runnable { executedCount++ }))
+      executor.execute(PrioritizedRunnable(TaskPriority.DISPLAY, Runnable { executedCount++ }))
+    }
+
+    assertThat(executor.getStatistics(TaskPriority.BID).queueDepth).isEqualTo(1_000)
+    assertThat(executor.getStatistics(TaskPriority.DISPLAY).queueDepth).isEqualTo(1_000)
+    runPendingWorkers()
+    assertThat(executedCount).isEqualTo(2_000)
+    assertThat(executor.getStatistics(TaskPriority.BID).droppedCount).isZero()
+    assertThat(executor.getStatistics(TaskPriority.DISPLAY).droppedCount).isZero()
+  }
+
+  @Test
+  fun execute_GivenManyTelemetryTasks_RunThemWithLimitedConcurrency() {
+    val executor = PriorityExecutor(Executors.newCachedThreadPool().also { threadPool = it }, 10, clock)
+    val releaseTasks = CountDownLatch(1)
+    val bidIsDone = CountDownLatch(1)
+
+    repeat(4) {
+      executor.execute(PrioritizedRunnable(TaskPriority.TELEMETRY, Runnable { releaseTasks.await() }))
+    }
+    executor.execute(PrioritizedRunnable(TaskPriority.BID, Runnable { bidIsDone.countDown() }))
+
+    // Bid is not delayed by the telemetry tasks occupying workers
+    assertThat(bidIsDone.await(1, TimeUnit.SECONDS)).isTrue()
+    awaitUntil { executor.getStatistics(TaskPriority.TELEMETRY).runningCount == 2 }
+    assertThat(executor.getStatistics(TaskPriority.TELEMETRY).queueDepth).isEqualTo(2)
+
+    releaseTasks.countDown()
+    awaitUntil { executor.getStatistics(TaskPriority.TELEMETRY).startedCount == 4L }
+  }
+
+  @Test
+  fun getStatistics_GivenWaitingTasks_ReturnWaitTimes() {
+    val executor = PriorityExecutor(manualWorkerExecutor, 1, clock)
+
+    whenever(clock.currentTimeInMillis).doReturn(100L)
+    executor.execute(PrioritizedRunnable(TaskPriority.BID, Runnable {}))
+    whenever(clock.currentTimeInMillis).doReturn(130L)
+    executor.execute(PrioritizedRunnable(TaskPriority.BID, Runnable {}))
+    whenever(clock.currentTimeInMillis).doReturn(142L)
+    runPendingWorkers()
+
+    val statistics = executor.getStatistics(TaskPriority.BID)
+    assertThat(statistics.startedCount).isEqualTo(2L)
+    assertThat(statistics.totalWaitTimeInMillis).isEqualTo(42L + 12L)
+    assertThat(statistics.maxWaitTimeInMillis).isEqualTo(42L)
+    assertThat(statistics.queueDepth).isZero()
+    assertThat(statistics.runningCount).isZero()
+  }
+
+  @Test
+  fun execute_GivenFailingTask_NextTasksAreStillRun() {
+    val executor = PriorityExecutor(manualWorkerExecutor, 1, clock)
+    var isNextTaskRun = false
+
+    executor.execute(Runnable { throw IllegalStateException() })
+    executor.execute(Runnable { isNextTaskRun = true })
+
+    assertThatCode { pendingWorkers.removeFirst().run() }.isInstanceOf(IllegalStateException::class.java)
+    runPendingWorkers()
+
+    assertThat(isNextTaskRun).isTrue()
+  }
+
+  @Test
+  fun execute_GivenTaskCancelledWithInterruption_NextTaskIsNotInterrupted() {
+    val executor = PriorityExecutor(manualWorkerExecutor, 1, clock)
+    var isNextTaskInterrupted: Boolean? = null
+
+    lateinit var cancelledTask: FutureTask<Unit>
+    cancelledTask = FutureTask { cancelledTask.cancel(true); Unit }
+    executor.execute(PrioritizedRunnable(TaskPriority.BID, cancelledTask))
+    executor.execute(PrioritizedRunnable(TaskPriority.BID, Runnable {
+      isNextTaskInterrupted = Thread.currentThread().isInterrupted
+    }))
+    runPendingWorkers()
+
+    assertThat(cancelledTask.isCancelled).isTrue()
+    assertThat(isNextTaskInterrupted).isFalse()
+    assertThat(Thread.interrupted()).isFalse()
+  }
+
+  private fun runPendingWorkers() {
+    while (pendingWorkers.isNotEmpty()) {
+      pendingWorkers.removeFirst().run()
+    }
+  }
+
+  private fun awaitUntil(condition: () -> Boolean) {
+    val deadline = System.currentTimeMillis() + 1_000
+    while (!condition()) {
+      assertThat(System.currentTimeMillis()).isLessThan(deadline)
+      Thread.sleep(10)
+    }
+  }
+}
@@ -388,6 +388,52 @@ class CsmBidLifecycleListenerTest {
     verifyZeroInteractions(repository)
   }
 
+  @Test
+  fun onBidDiscarded_GivenDeactivatedFeature_DoNothing() {
+    givenDeactivatedFeature()
+    val adUnit = CacheAdUnit(AdSize(1, 2), "myAdUnit", CRITEO_BANNER)
+
+    listener.onBidDiscarded(adUnit, mock())
+
+    verifyFeatureIsDeactivated()
+  }
+
+  @Test
+  fun onBidDiscarded_GivenNotExpiredBid_SetReadyToSendWithoutElapsedTime() {
+    val adUnit = CacheAdUnit(AdSize(1, 2), "myAdUnit", CRITEO_BANNER)
+
+    val slot = mock<CdbResponseSlot>() {
+      on { impressionId } doReturn "id"
+      on { isExpired(clock) } doReturn false
+    }
+
+    clock.stub {
+      on { currentTimeInMillis } doReturn 42
+    }
+
+    listener.onBidDiscarded(adUnit, slot)
+
+    assertRepositoryIsUpdatedById("id") {
+      verify(it).setReadyToSend(true)
+      verifyNoMoreInteractions(it)
+    }
+
+    verify(sendingQueueProducer).pushInQueue(repository, "id")
+  }
+
+  @Test
+  fun onBidDiscarded_GivenBidWithoutImpressionId_DoNothing() {
+    val adUnit = CacheAdUnit(AdSize(1, 2), "myAdUnit", CRITEO_BANNER)
+
+    val slot = mock<CdbResponseSlot>() {
+      on { impressionId } doReturn null
+    }
+
+    listener.onBidDiscarded(adUnit, slot)
+
+    verifyZeroInteractions(repository)
+  }
+
   @Test
   fun onBidsCached_GivenDeactivatedFeature_DoNothing() {
     givenDeactivatedFeature()
@@ -29,11 +29,14 @@ import org.junit.Test
 import org.mockito.Mock
 import org.mockito.junit.MockitoJUnit
 import org.mockito.kotlin.any
+import org.mockito.kotlin.argumentCaptor
 import org.mockito.kotlin.clearInvocations
 import org.mockito.kotlin.doAnswer
 import org.mockito.kotlin.doNothing
 import org.mockito.kotlin.doReturn
 import org.mockito.kotlin.doThrow
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.mock
 import org.mockito.kotlin.never
 import org.mockito.kotlin.stub
 import org.mockito.kotlin.verify
@@ -41,6 +44,9 @@ import org.mockito.kotlin.verifyNoMoreInteractions
 import org.mockito.kotlin.verifyZeroInteractions
 import org.mockito.kotlin.whenever
 import java.io.IOException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
 
 class MetricSendingQueueConsumerTest {
 
@@ -64,6 +70,9 @@ class MetricSendingQueueConsumerTest {
   @SpyBean
   private lateinit var config: Config
 
+  @Mock
+  private lateinit var scheduledExecutorService: ScheduledExecutorService
+
   private val executor = DirectMockExecutor()
 
   private lateinit var consumer: MetricSendingQueueConsumer
@@ -74,13 +83,69 @@ class MetricSendingQueueConsumerTest {
       on { preconditionThrowsOnException() } doReturn false
     }
 
+    // A full batch is waiting, so it is sent without delay
+    queue.stub {
+      on { totalSize } doReturn Int.MAX_VALUE
+    }
+
     consumer = MetricSendingQueueConsumer(
         queue,
         api,
         buildConfigWrapper,
         config,
-        executor
+        executor,
+        scheduledExecutorService
+    )
+  }
+
+  @Test
+  fun sendMetricBatch_GivenLessThanAFullBatch_ScheduleSendingAfterMaxLatency() {
+    queue.stub {
+      on { totalSize } doReturn 1
+      on { poll(any()) } doReturn listOf(Metric.builder("id1").build())
+    }
+
+    doReturn(mock<ScheduledFuture<*>>()).whenever(scheduledExecutorService).schedule(any<Runnable>(), any(), any())
+
+    consumer.sendMetricBatch()
+    consumer.sendMetricBatch()
+
+    verifyZeroInteractions(api)
+    val maxLatencyInMillis = buildConfigWrapper.csmMaxFlushLatencyInMillis.toLong()
+    val flushCaptor = argumentCaptor<Runnable>()
+    verify(scheduledExecutorService).schedule(
+        flushCaptor.capture(),
+        eq(maxLatencyInMillis),
+        eq(TimeUnit.MILLISECONDS)
     )
+
+    flushCaptor.firstValue.run()
+    verify(api).postCsm(any())
+  }
+
+  @Test
+  fun flushMetricBatch_GivenLessThanAFullBatch_SendItNow() {
+    queue.stub {
+      on { totalSize } doReturn 1
+      on { poll(any()) } doReturn listOf(Metric.builder("id1").build())
+    }
+
+    consumer.flushMetricBatch()
+
+    verify(api).postCsm(any())
+    verifyZeroInteractions(scheduledExecutorService)
+  }
+
+  @Test
+  fun flushMetricBatch_GivenDeactivatedFeature_DoNothing() {
+    config.stub {
+      on { isCsmEnabled } doReturn false
+    }
+
+    consumer.flushMetricBatch()
+
+    verifyZeroInteractions(queue)
+    verifyZeroInteractions(api)
   }
 
   @Test
@@ -0,0 +1,224 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm
+
+import com.criteo.publisher.concurrent.PrioritizedRunnable
+import com.criteo.publisher.concurrent.TaskPriority
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatCode
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+class SendingQueueFlushSchedulerTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var scheduledExecutorService: ScheduledExecutorService
+
+  @Mock
+  private lateinit var scheduledFuture: ScheduledFuture<*>
+
+  private val sendingQueue = InMemorySendingQueue()
+
+  /**
+   * Sending tasks are only run when the test asks for it, so they stay in flight meanwhile
+   */
+  private val pendingTasks = ArrayDeque<Runnable>()
+
+  private val scheduledFlushes = mutableListOf<Runnable>()
+
+  private var sentBatchCount = 0
+
+  private var executor = Executor { pendingTasks.add(it) }
+
+  @Before
+  fun setUp() {
+    doAnswer {
+      scheduledFlushes += it.getArgument<Runnable>(0)
+      scheduledFuture
+    }.whenever(scheduledExecutorService).schedule(any<Runnable>(), any(), any())
+  }
+
+  @Test
+  fun requestSend_GivenBurstOfTriggers_SendAHandfulOfBatches() {
+    val scheduler = createScheduler()
+
+    repeat(100) {
+      sendingQueue.offer(it)
+      scheduler.requestSend()
+
+      if (it % 10 == 9) {
+        runPendingTasks()
+      }
+    }
+    runPendingTasks()
+    scheduledFlushes.removeLast().run()
+    runPendingTasks()
+
+    assertThat(sendingQueue.totalSize).isZero()
+    assertThat(sentBatchCount).isBetween(100 / BATCH_SIZE, 100 / BATCH_SIZE + 2)
+  }
+
+  @Test
+  fun requestSend_GivenLessThanThreshold_ScheduleASingleFlushAfterMaxLatency() {
+    val scheduler = createScheduler()
+    sendingQueue.offer(1)
+
+    scheduler.requestSend()
+    scheduler.requestSend()
+
+    verify(scheduledExecutorService).schedule(any<Runnable>(), eq(MAX_LATENCY_IN_MILLIS), eq(TimeUnit.MILLISECONDS))
+    assertThat(pendingTasks).isEmpty()
+
+    scheduledFlushes.single().run()
+    runPendingTasks()
+
+    assertThat(sentBatchCount).isEqualTo(1)
+  }
+
+  @Test
+  fun flush_GivenScheduledFlush_CancelItAndSendNow() {
+    val scheduler = createScheduler()
+    sendingQueue.offer(1)
+    scheduler.requestSend()
+
+    scheduler.flush()
+    runPendingTasks()
+
+    verify(scheduledFuture).cancel(false)
+    assertThat(sentBatchCount).isEqualTo(1)
+  }
+
+  @Test
+  fun flush_GivenBatchInFlight_SendNextOneOnlyOnceDone() {
+    val scheduler = createScheduler()
+    sendingQueue.offer(1)
+
+    scheduler.flush()
+    scheduler.flush()
+    scheduler.flush()
+
+    assertThat(pendingTasks).hasSize(1)
+
+    pendingTasks.removeFirst().run()
+
+    assertThat(sentBatchCount).isEqualTo(1)
+    assertThat(pendingTasks).hasSize(1)
+
+    runPendingTasks()
+    assertThat(sentBatchCount).isEqualTo(2)
+  }
+
+  @Test
+  fun flush_GivenDroppedTask_NextFlushIsSubmitted() {
+    executor = Executor { PrioritizedRunnable.notifyDropped(it) }
+    val scheduler = createScheduler()
+
+    scheduler.flush()
+
+    executor = Executor { pendingTasks.add(it) }
+    scheduler.flush()
+
+    assertThat(pendingTasks).hasSize(1)
+    assertThat(PrioritizedRunnable.getPriorityOf(pendingTasks.first())).isEqualTo(TaskPriority.TELEMETRY)
+  }
+
+  @Test
+  fun flush_GivenRejectedTask_ThrowAndNextFlushIsSubmitted() {
+    executor = Executor { throw RejectedExecutionException() }
+    val scheduler = createScheduler()
+
+    assertThatCode { scheduler.flush() }.isInstanceOf(RejectedExecutionException::class.java)
+
+    executor = Executor { pendingTasks.add(it) }
+    scheduler.flush()
+
+    assertThat(pendingTasks).hasSize(1)
+  }
+
+  @Test
+  fun flush_GivenFailingSend_NextFlushIsSubmitted() {
+    val scheduler = SendingQueueFlushScheduler(
+        sendingQueue,
+        Runnable { throw IllegalStateException() },
+        BATCH_SIZE * ELEMENT_SIZE,
+        MAX_LATENCY_IN_MILLIS,
+        { pendingTasks.add(it) },
+        scheduledExecutorService
+    )
+
+    scheduler.flush()
+    assertThatCode { pendingTasks.removeFirst().run() }.isInstanceOf(IllegalStateException::class.java)
+
+    scheduler.flush()
+    assertThat(pendingTasks).hasSize(1)
+    verify(scheduledExecutorService, never()).schedule(any<Runnable>(), any(), any())
+  }
+
+  private fun createScheduler() = SendingQueueFlushScheduler(
+      sendingQueue,
+      Runnable {
+        sentBatchCount++
+        sendingQueue.poll(BATCH_SIZE)
+      },
+      BATCH_SIZE * ELEMENT_SIZE,
+      MAX_LATENCY_IN_MILLIS,
+      { executor.execute(it) },
+      scheduledExecutorService
+  )
+
+  private fun runPendingTasks() {
+    while (pendingTasks.isNotEmpty()) {
+      pendingTasks.removeFirst().run()
+    }
+  }
+
+  private class InMemorySendingQueue : ConcurrentSendingQueue<Int> {
+    private val elements = ArrayDeque<Int>()
+
+    override fun offer(element: Int) = elements.add(element)
+
+    override fun poll(max: Int): List<Int> = List(minOf(max, elements.size)) { elements.removeFirst() }
+
+    override val totalSize: Int
+      get() = elements.size * ELEMENT_SIZE
+  }
+
+  private companion object {
+    const val BATCH_SIZE = 24
+    const val ELEMENT_SIZE = 170
+    const val MAX_LATENCY_IN_MILLIS = 30_000L
+  }
+}
@@ -39,6 +39,7 @@ import org.mockito.AdditionalAnswers.delegatesTo
 import org.mockito.Mock
 import org.mockito.junit.MockitoJUnit
 import org.mockito.kotlin.any
+import org.mockito.kotlin.clearInvocations
 import org.mockito.kotlin.doAnswer
 import org.mockito.kotlin.doNothing
 import org.mockito.kotlin.doReturn
@@ -143,6 +144,24 @@ class TapeSendingQueueTest(private val tapeImplementation: TapeImplementation) {
     assertThat(size).isGreaterThanOrEqualTo(estimatedSizePerMetric * 200)
   }
 
+  @Test
+  fun getTotalSize_AfterOfferAndPoll_ReturnUpdatedSizeWithoutLocking() {
+    val initialSize = queue.totalSize
+
+    queue.offer(mockMetric())
+    val sizeAfterOffer = queue.totalSize
+    queue.poll(1)
+    val sizeAfterPoll = queue.totalSize
+
+    assertThat(sizeAfterOffer).isGreaterThan(initialSize)
+    assertThat(sizeAfterPoll).isEqualTo(initialSize)
+
+    // The size is kept up to date by the changes of the queue, so reading it does not touch the queue
+    clearInvocations(tapeQueue)
+    assertThat(queue.totalSize).isEqualTo(initialSize)
+    verifyZeroInteractions(tapeQueue)
+  }
+
   @Test
   fun offer_GivenAcceptedMetric_ReturnTrue() {
     givenMockedTapeQueue()
@@ -19,6 +19,7 @@ package com.criteo.publisher.logging
 import android.util.Log
 import com.criteo.publisher.CriteoNotInitializedException
 import com.criteo.publisher.dependency.LazyDependency
+import org.assertj.core.api.Assertions.assertThat
 import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
@@ -27,6 +28,7 @@ import org.mockito.junit.MockitoJUnit
 import org.mockito.junit.MockitoRule
 import org.mockito.kotlin.any
 import org.mockito.kotlin.argThat
+import org.mockito.kotlin.doReturn
 import org.mockito.kotlin.doThrow
 import org.mockito.kotlin.inOrder
 import org.mockito.kotlin.mock
@@ -79,6 +81,34 @@ class LoggerTest {
     verify(handler2).log("myTag", LogMessage(Log.DEBUG, null, exception))
   }
 
+  @Test
+  fun isLoggable_GivenNoHandlerAcceptingLevel_ReturnFalse() {
+    whenever(handler1.isLoggable(Log.INFO)).doReturn(false)
+    whenever(handler2.isLoggable(Log.INFO)).doReturn(false)
+
+    assertThat(logger.isLoggable(Log.INFO)).isFalse()
+  }
+
+  @Test
+  fun isLoggable_GivenOneHandlerAcceptingLevel_ReturnTrue() {
+    whenever(handler1.isLoggable(Log.INFO)).doReturn(false)
+    whenever(handler2.isLoggable(Log.INFO)).doReturn(true)
+
+    assertThat(logger.isLoggable(Log.INFO)).isTrue()
+  }
+
+  @Test
+  fun isLoggable_GivenOneHandlerProviderThrowing_IgnoreErrorAndAskOtherHandler() {
+    whenever(handler2.isLoggable(Log.INFO)).doReturn(true)
+
+    logger = Logger("myTag", listOf(
+        LazyDependency<LogHandler> { throw CriteoNotInitializedException("") },
+        LazyDependency { handler2 }
+    ))
+
+    assertThat(logger.isLoggable(Log.INFO)).isTrue()
+  }
+
   @Test
   fun log_GivenOneHandlerThrowing_IgnoreErrorAndKeepLoggingWithOtherHandler() {
     whenever(handler1.log(any(), any())).doThrow(Exception::class)
@@ -29,14 +29,20 @@ import org.junit.Test
 import org.mockito.Mock
 import org.mockito.junit.MockitoJUnit
 import org.mockito.kotlin.any
+import org.mockito.kotlin.argumentCaptor
 import org.mockito.kotlin.doAnswer
 import org.mockito.kotlin.doReturn
 import org.mockito.kotlin.doThrow
+import org.mockito.kotlin.eq
 import org.mockito.kotlin.mock
 import org.mockito.kotlin.never
 import org.mockito.kotlin.verify
+import org.mockito.kotlin.verifyZeroInteractions
 import org.mockito.kotlin.whenever
 import java.io.IOException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
 
 class RemoteLogSendingQueueConsumerTest {
 
@@ -60,6 +66,9 @@ class RemoteLogSendingQueueConsumerTest {
   @SpyBean
   private lateinit var buildConfigWrapper: BuildConfigWrapper
 
+  @Mock
+  private lateinit var scheduledExecutorService: ScheduledExecutorService
+
   private val executor = DirectMockExecutor()
 
   private lateinit var consumer: RemoteLogSendingQueueConsumer
@@ -68,15 +77,55 @@ class RemoteLogSendingQueueConsumerTest {
   fun setUp() {
     doReturn(false).whenever(buildConfigWrapper).preconditionThrowsOnException()
 
+    // Enough logs are waiting, so they are sent without delay
+    whenever(queue.totalSize).doReturn(Int.MAX_VALUE)
+
     consumer = RemoteLogSendingQueueConsumer(
         queue,
         api,
         buildConfigWrapper,
         advertisingInfo,
-        executor
+        executor,
+        scheduledExecutorService
     )
   }
 
+  @Test
+  fun sendRemoteLogBatch_GivenFewLogs_ScheduleSendingAfterMaxLatency() {
+    val logs = mock<RemoteLogRecords>()
+    whenever(queue.totalSize).doReturn(1)
+    whenever(queue.poll(any())).doReturn(listOf(logs))
+
+    doReturn(mock<ScheduledFuture<*>>()).whenever(scheduledExecutorService).schedule(any<Runnable>(), any(), any())
+
+    consumer.sendRemoteLogBatch()
+    consumer.sendRemoteLogBatch()
+
+    verify(api, never()).postLogs(any())
+    val maxLatencyInMillis = buildConfigWrapper.remoteLogMaxFlushLatencyInMillis.toLong()
+    val flushCaptor = argumentCaptor<Runnable>()
+    verify(scheduledExecutorService).schedule(
+        flushCaptor.capture(),
+        eq(maxLatencyInMillis),
+        eq(TimeUnit.MILLISECONDS)
+    )
+
+    flushCaptor.firstValue.run()
+    verify(api).postLogs(listOf(logs))
+  }
+
+  @Test
+  fun flushRemoteLogBatch_GivenFewLogs_SendThemNow() {
+    val logs = mock<RemoteLogRecords>()
+    whenever(queue.totalSize).doReturn(1)
+    whenever(queue.poll(any())).doReturn(listOf(logs))
+
+    consumer.flushRemoteLogBatch()
+
+    verify(api).postLogs(listOf(logs))
+    verifyZeroInteractions(scheduledExecutorService)
+  }
+
   @Test
   fun sendRemoteLogBatch_GivenSomeLogsAndIOException_RollbackLogs() {
     val logs1 = mock<RemoteLogRecords>()
@@ -0,0 +1,117 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.model
+
+import com.criteo.publisher.integration.Integration
+import com.criteo.publisher.integration.IntegrationRegistry
+import com.criteo.publisher.util.Benchmark
+import com.criteo.publisher.util.DeviceUtil
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.mockito.kotlin.mock
+import java.lang.management.ManagementFactory
+import java.util.Collections.singletonList
+
+/**
+ * Compare the time and allocations of the mapping done on each bid request, with and without memoization.
+ *
+ * The device and the integration are faked without mocks, so the measure is not polluted by the mocking framework.
+ */
+@Category(Benchmark::class)
+class AdUnitMapperBenchmarkTest {
+
+  private lateinit var mapper: AdUnitMapper
+
+  private val adUnits = listOf(
+      BannerAdUnit("banner", AdSize(320, 50)),
+      InterstitialAdUnit("interstitial"),
+      NativeAdUnit("native"),
+      RewardedAdUnit("rewarded")
+  )
+
+  @Before
+  fun setUp() {
+    val deviceUtil = object : DeviceUtil(mock()) {
+      override fun getCurrentScreenSize() = AdSize(360, 640)
+    }
+
+    val integrationRegistry = object : IntegrationRegistry(mock(), mock()) {
+      override fun readIntegration() = Integration.MOPUB_APP_BIDDING
+    }
+
+    mapper = AdUnitMapper(deviceUtil, integrationRegistry)
+  }
+
+  @Test
+  fun map_GivenSameAdUnits_MemoizationReduceTimeAndAllocations() {
+    val threadMxBean = ManagementFactory.getThreadMXBean()
+    assumeTrue(threadMxBean is com.sun.management.ThreadMXBean)
+    threadMxBean as com.sun.management.ThreadMXBean
+
+    // Previous implementation: map a singleton list into chunks on each call
+    val withoutMemoization = measure(threadMxBean) { adUnit ->
+      mapper.mapToChunks(singletonList(adUnit))[0][0]
+    }
+    val withMemoization = measure(threadMxBean) { adUnit ->
+      mapper.map(adUnit)
+    }
+
+    assertThat(withMemoization.allocatedBytesPerCall)
+        .describedAs("With memoization: $withMemoization, without memoization: $withoutMemoization")
+        .isLessThan(withoutMemoization.allocatedBytesPerCall)
+  }
+
+  private fun measure(
+      threadMxBean: com.sun.management.ThreadMXBean,
+      mapping: (AdUnit) -> CacheAdUnit?
+  ): BenchmarkResult {
+    var sink = 0
+
+    repeat(WARMUP_ITERATIONS) {
+      sink += mapping(adUnits[it % adUnits.size]).hashCode()
+    }
+
+    val threadId = Thread.currentThread().id
+    val startAllocatedBytes = threadMxBean.getThreadAllocatedBytes(threadId)
+    val startTime = System.nanoTime()
+
+    repeat(MEASURED_ITERATIONS) {
+      sink += mapping(adUnits[it % adUnits.size]).hashCode()
+    }
+
+    val elapsedNanos = System.nanoTime() - startTime
+    val allocatedBytes = threadMxBean.getThreadAllocatedBytes(threadId) - startAllocatedBytes
+
+    // Use the result, so the JIT does not skip the mapping
+    assertThat(sink).isNotNull()
+
+    return BenchmarkResult(
+        elapsedNanos / MEASURED_ITERATIONS,
+        allocatedBytes / MEASURED_ITERATIONS
+    )
+  }
+
+  private data class BenchmarkResult(val nanosPerCall: Long, val allocatedBytesPerCall: Long)
+
+  private companion object {
+    const val WARMUP_ITERATIONS = 20_000
+    const val MEASURED_ITERATIONS = 200_000
+  }
+}
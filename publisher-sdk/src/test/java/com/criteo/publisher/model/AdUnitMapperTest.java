@@ -28,11 +28,14 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.criteo.publisher.integration.Integration;
 import com.criteo.publisher.integration.IntegrationRegistry;
 import com.criteo.publisher.util.DeviceUtil;
+import com.criteo.publisher.util.ScreenGeometry;
 import java.util.List;
 import org.junit.Before;
 import org.junit.Rule;
@@ -90,7 +93,7 @@ public class AdUnitMapperTest {
 
   @Test
   public void convertValidAdUnits_GivenInterstitialWithEmptyPlacementId_SkipIt() throws Exception {
-    when(deviceUtil.getCurrentScreenSize()).thenReturn(new AdSize(1, 2));
+    givenScreenSize(new AdSize(1, 2));
 
     AdUnit adUnit = new InterstitialAdUnit("");
 
@@ -110,7 +113,7 @@ public class AdUnitMapperTest {
 
   @Test
   public void convertValidAdUnits_GivenRewardedWithEmptyPlacementId_SkipIt() throws Exception {
-    when(deviceUtil.getCurrentScreenSize()).thenReturn(new AdSize(1, 2));
+    givenScreenSize(new AdSize(1, 2));
 
     AdUnit adUnit = new RewardedAdUnit("");
 
@@ -147,7 +150,7 @@ public class AdUnitMapperTest {
   public void convertValidAdUnits_GivenValidInterstitialAndDeviceInPortrait_MapItWithPortraitSize()
       throws Exception {
     AdSize portraitSize = new AdSize(10, 30);
-    when(deviceUtil.getCurrentScreenSize()).thenReturn(portraitSize);
+    givenScreenSize(portraitSize);
 
     AdUnit adUnit = new InterstitialAdUnit("adUnit");
 
@@ -161,7 +164,7 @@ public class AdUnitMapperTest {
   public void convertValidAdUnits_GivenValidInterstitialAndDeviceInLandscape_MapItWithLandscapeSize()
       throws Exception {
     AdSize landscapeSize = new AdSize(30, 10);
-    when(deviceUtil.getCurrentScreenSize()).thenReturn(landscapeSize);
+    givenScreenSize(landscapeSize);
 
     AdUnit adUnit = new InterstitialAdUnit("adUnit");
 
@@ -176,7 +179,7 @@ public class AdUnitMapperTest {
     when(integrationRegistry.readIntegration()).thenReturn(Integration.IN_HOUSE);
 
     AdSize portraitSize = new AdSize(10, 30);
-    when(deviceUtil.getCurrentScreenSize()).thenReturn(portraitSize);
+    givenScreenSize(portraitSize);
 
     AdUnit adUnit = new RewardedAdUnit("adUnit");
 
@@ -191,7 +194,7 @@ public class AdUnitMapperTest {
     when(integrationRegistry.readIntegration()).thenReturn(Integration.MOPUB_APP_BIDDING);
 
     AdSize portraitSize = new AdSize(10, 30);
-    when(deviceUtil.getCurrentScreenSize()).thenReturn(portraitSize);
+    givenScreenSize(portraitSize);
 
     AdUnit adUnit = new RewardedAdUnit("adUnit");
 
@@ -207,7 +210,7 @@ public class AdUnitMapperTest {
     when(integrationRegistry.readIntegration()).thenReturn(Integration.MOPUB_APP_BIDDING);
 
     AdSize landscapeSize = new AdSize(30, 10);
-    when(deviceUtil.getCurrentScreenSize()).thenReturn(landscapeSize);
+    givenScreenSize(landscapeSize);
 
     AdUnit adUnit = new RewardedAdUnit("adUnit");
 
@@ -285,6 +288,66 @@ public class AdUnitMapperTest {
     assertThat(validAdUnit).isNull();
   }
 
+  @Test
+  public void convertValidAdUnit_GivenSameAdUnitTwice_ReturnSameInstanceWithoutMappingAgain()
+      throws Exception {
+    givenScreenSize(new AdSize(10, 30));
+
+    CacheAdUnit cacheAdUnit1 = mapper.map(new InterstitialAdUnit("adUnit"));
+    CacheAdUnit cacheAdUnit2 = mapper.map(new InterstitialAdUnit("adUnit"));
+
+    assertThat(cacheAdUnit1).isNotNull();
+    assertThat(cacheAdUnit2).isSameAs(cacheAdUnit1);
+    verify(deviceUtil, times(1)).getScreenGeometry();
+    verify(integrationRegistry, times(1)).readIntegration();
+  }
+
+  @Test
+  public void convertValidAdUnit_GivenInvalidAdUnitTwice_ReturnNullWithoutMappingAgain()
+      throws Exception {
+    assertThat(mapper.map(new BannerAdUnit("", new AdSize(1, 1)))).isNull();
+    assertThat(mapper.map(new BannerAdUnit("", new AdSize(1, 1)))).isNull();
+
+    verify(integrationRegistry, times(1)).readIntegration();
+  }
+
+  @Test
+  public void convertValidAdUnit_GivenScreenConfigurationChange_MapItAgain() throws Exception {
+    givenScreenSize(new AdSize(10, 30));
+    mapper.map(new InterstitialAdUnit("adUnit"));
+
+    when(deviceUtil.getScreenConfigurationVersion()).thenReturn(1);
+    givenScreenSize(new AdSize(30, 10));
+    CacheAdUnit cacheAdUnit = mapper.map(new InterstitialAdUnit("adUnit"));
+
+    assertThat(cacheAdUnit).isEqualTo(
+        new CacheAdUnit(new AdSize(30, 10), "adUnit", CRITEO_INTERSTITIAL));
+  }
+
+  @Test
+  public void convertValidAdUnit_GivenIntegrationDeclared_MapItAgain() throws Exception {
+    givenScreenSize(new AdSize(10, 30));
+    when(integrationRegistry.readIntegration()).thenReturn(Integration.IN_HOUSE);
+    assertThat(mapper.map(new RewardedAdUnit("adUnit"))).isNull();
+
+    when(integrationRegistry.getDeclarationVersion()).thenReturn(1);
+    when(integrationRegistry.readIntegration()).thenReturn(Integration.MOPUB_APP_BIDDING);
+    CacheAdUnit cacheAdUnit = mapper.map(new RewardedAdUnit("adUnit"));
+
+    assertThat(cacheAdUnit).isEqualTo(
+        new CacheAdUnit(new AdSize(10, 30), "adUnit", CRITEO_REWARDED));
+  }
+
+  @Test
+  public void convertValidAdUnit_GivenManyAdUnits_KeepMappingThem() throws Exception {
+    for (int i = 0; i < AdUnitMapper.MAX_MAPPED_AD_UNITS * 2; i++) {
+      CacheAdUnit cacheAdUnit = mapper.map(new NativeAdUnit("adUnit" + i));
+
+      assertThat(cacheAdUnit).isEqualTo(
+          new CacheAdUnit(new AdSize(2, 2), "adUnit" + i, CRITEO_CUSTOM_NATIVE));
+    }
+  }
+
   @Test
   public void splitIntoChunks_GivenAnyChunkSizeAndNoElements_ReturnsEmpty() throws Exception {
     List<List<Object>> chunks = splitIntoChunks(emptyList(), 1);
@@ -325,4 +388,8 @@ public class AdUnitMapperTest {
         .containsExactly(asList(1, 2), asList(3, 4));
   }
 
+  private void givenScreenSize(AdSize screenSize) {
+    when(deviceUtil.getScreenGeometry()).thenReturn(new ScreenGeometry(screenSize));
+  }
+
 }
@@ -28,6 +28,7 @@ import com.criteo.publisher.privacy.gdpr.GdprData
 import com.criteo.publisher.util.AdUnitType.CRITEO_BANNER
 import com.criteo.publisher.util.AdvertisingInfo
 import com.criteo.publisher.util.BuildConfigWrapper
+import com.criteo.publisher.util.CompletableFuture
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.Before
 import org.junit.Rule
@@ -38,7 +39,6 @@ import org.mockito.kotlin.doReturn
 import org.mockito.kotlin.mock
 import org.mockito.kotlin.stub
 import org.mockito.kotlin.whenever
-import java.util.concurrent.Future
 import java.util.concurrent.atomic.AtomicInteger
 
 class CdbRequestFactoryTest {
@@ -101,7 +101,7 @@ class CdbRequestFactoryTest {
 
   @Test
   fun userAgent_GivenDeviceInfo_DelegateToIt() {
-    val expected: Future<String> = mock()
+    val expected: CompletableFuture<String> = mock()
     whenever(deviceInfo.userAgent).thenReturn(expected)
 
     val userAgent = factory.userAgent
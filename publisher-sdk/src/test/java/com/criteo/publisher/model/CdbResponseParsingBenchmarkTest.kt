@@ -0,0 +1,126 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.model
+
+import com.criteo.publisher.DependencyProvider
+import com.criteo.publisher.StubConstants.STUB_NATIVE_JSON
+import com.criteo.publisher.util.Benchmark
+import com.criteo.publisher.util.StreamUtil
+import com.google.gson.Gson
+import org.assertj.core.api.Assertions.assertThat
+import org.json.JSONObject
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import java.io.ByteArrayInputStream
+import java.io.InputStreamReader
+import java.lang.management.ManagementFactory
+
+/**
+ * Compare the time and allocations of parsing a multi-slot CDB response, between the previous
+ * string/org.json/Gson round trips and the single-pass streaming adapter.
+ */
+@Category(Benchmark::class)
+class CdbResponseParsingBenchmarkTest {
+
+  private lateinit var gson: Gson
+
+  private lateinit var payload: ByteArray
+
+  @Before
+  fun setUp() {
+    gson = DependencyProvider.getInstance().provideGson()
+
+    val slots = (0 until SLOT_COUNT).joinToString(",") { i ->
+      if (i % 4 == 0) {
+        """{"impId":"imp$i","placementId":"native$i","cpm":"1.${i}0","currency":"EUR","width":2,"height":2,"ttl":3600,"native":$STUB_NATIVE_JSON}"""
+      } else {
+        """{"impId":"imp$i","placementId":"banner$i","cpm":"1.${i}0","currency":"EUR","width":320,"height":50,"ttl":3600,"displayUrl":"https://example.com/display/$i.js"}"""
+      }
+    }
+    payload = """{"slots":[$slots],"timeToNextCall":0}""".toByteArray()
+  }
+
+  @Test
+  fun parse_GivenMultiSlotResponse_StreamingReduceAllocations() {
+    val threadMxBean = ManagementFactory.getThreadMXBean()
+    assumeTrue(threadMxBean is com.sun.management.ThreadMXBean)
+    threadMxBean as com.sun.management.ThreadMXBean
+
+    // Previous implementation: read as string, parse with org.json, then re-parse each slot with Gson
+    val previousParsing = measure(threadMxBean) {
+      val response = StreamUtil.readStream(ByteArrayInputStream(payload))
+      val json = JSONObject(response)
+      val slots = json.getJSONArray("slots")
+      val parsedSlots = (0 until slots.length()).map {
+        val slotJson = slots.getJSONObject(it).toString()
+        InputStreamReader(ByteArrayInputStream(slotJson.toByteArray())).use { reader ->
+          gson.fromJson(reader, CdbResponseSlot::class.java)
+        }
+      }
+      CdbResponse(parsedSlots, json.optInt("timeToNextCall"), null)
+    }
+
+    val streamingParsing = measure(threadMxBean) {
+      InputStreamReader(ByteArrayInputStream(payload)).use { reader ->
+        gson.fromJson(reader, CdbResponse::class.java)
+      }
+    }
+
+    assertThat(streamingParsing.allocatedBytesPerParse)
+        .describedAs("Streaming parsing: $streamingParsing, previous parsing: $previousParsing")
+        .isLessThan(previousParsing.allocatedBytesPerParse)
+  }
+
+  private fun measure(
+      threadMxBean: com.sun.management.ThreadMXBean,
+      parsing: () -> CdbResponse
+  ): BenchmarkResult {
+    var sink = 0
+
+    repeat(WARMUP_ITERATIONS) {
+      sink += parsing().slots.size
+    }
+
+    val threadId = Thread.currentThread().id
+    val startAllocatedBytes = threadMxBean.getThreadAllocatedBytes(threadId)
+    val startTime = System.nanoTime()
+
+    repeat(MEASURED_ITERATIONS) {
+      sink += parsing().slots.size
+    }
+
+    val elapsedNanos = System.nanoTime() - startTime
+    val allocatedBytes = threadMxBean.getThreadAllocatedBytes(threadId) - startAllocatedBytes
+
+    assertThat(sink).isEqualTo((WARMUP_ITERATIONS + MEASURED_ITERATIONS) * SLOT_COUNT)
+
+    return BenchmarkResult(
+        elapsedNanos / MEASURED_ITERATIONS / 1000,
+        allocatedBytes / MEASURED_ITERATIONS
+    )
+  }
+
+  private data class BenchmarkResult(val microsPerParse: Long, val allocatedBytesPerParse: Long)
+
+  private companion object {
+    const val SLOT_COUNT = 16
+    const val WARMUP_ITERATIONS = 200
+    const val MEASURED_ITERATIONS = 1_000
+  }
+}
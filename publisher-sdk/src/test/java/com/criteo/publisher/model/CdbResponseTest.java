@@ -23,6 +23,8 @@ import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import com.criteo.publisher.DependencyProvider;
+import com.google.gson.Gson;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -141,6 +143,21 @@ public class CdbResponseTest {
     assertThat(cdbResponse.getSlotByImpressionId("id")).isEqualTo(slot3);
   }
 
+  @Test
+  public void gson_GivenMultiSlotResponse_IndexSlotsByImpressionId() throws Exception {
+    Gson gson = DependencyProvider.getInstance().provideGson();
+    String json = "{\"slots\":["
+        + "{\"impId\":\"imp0\",\"placementId\":\"banner0\",\"cpm\":\"1.00\"},"
+        + "{\"impId\":\"imp1\",\"placementId\":\"banner1\",\"cpm\":\"2.00\"}"
+        + "],\"timeToNextCall\":0}";
+
+    CdbResponse cdbResponse = gson.fromJson(json, CdbResponse.class);
+
+    assertThat(cdbResponse.getSlots()).hasSize(2);
+    assertThat(cdbResponse.getSlotByImpressionId("imp0")).isSameAs(cdbResponse.getSlots().get(0));
+    assertThat(cdbResponse.getSlotByImpressionId("imp1")).isSameAs(cdbResponse.getSlots().get(1));
+  }
+
   @Test
   public void fromJson_GivenConsentInfoTrue() throws Exception {
     String json = "{\"slots\":[], \"consentGiven\": true}";
@@ -157,4 +174,42 @@ public class CdbResponseTest {
     assertThat(cdbResponse.getConsentGiven()).isFalse();
   }
 
+  @Test
+  public void fromJson_GivenInvalidSlot_SkipItAndKeepOtherSlots() throws Exception {
+    String json = "{\"slots\":["
+        + "{\"impId\":\"imp1\",\"width\":\"not a number\"},"
+        + "null,"
+        + "42,"
+        + "{\"impId\":\"imp2\",\"placementId\":\"adUnit\",\"cpm\":\"1.00\"}"
+        + "],\"timeToNextCall\":\"30\"}";
+    CdbResponse cdbResponse = CdbResponse.fromJson(new JSONObject(json));
+
+    assertThat(cdbResponse.getSlots()).hasSize(1);
+    assertThat(cdbResponse.getSlots().get(0).getImpressionId()).isEqualTo("imp2");
+    assertThat(cdbResponse.getTimeToNextCall()).isEqualTo(30);
+  }
+
+  @Test
+  public void fromJson_GivenInvalidSlotsArrayAndConsent_IgnoreThem() throws Exception {
+    String json = "{\"slots\":{}, \"consentGiven\": 1, \"unknown\": [1, 2]}";
+    CdbResponse cdbResponse = CdbResponse.fromJson(new JSONObject(json));
+
+    assertThat(cdbResponse.getSlots()).isEmpty();
+    assertThat(cdbResponse.getConsentGiven()).isNull();
+  }
+
+  @Test
+  public void getSlotByImpressionId_GivenManySlotsMatchingGivenId_ReturnFirstOne() throws Exception {
+    CdbResponseSlot slot1 = mock(CdbResponseSlot.class);
+    CdbResponseSlot slot2 = mock(CdbResponseSlot.class);
+
+    when(slot1.getImpressionId()).thenReturn("id");
+    when(slot2.getImpressionId()).thenReturn("id");
+
+    CdbResponse cdbResponse = new CdbResponse(asList(slot1, slot2), 0, false);
+
+    assertThat(cdbResponse.getSlotByImpressionId("id")).isSameAs(slot1);
+    assertThat(cdbResponse.getSlotByImpressionId("id")).isSameAs(slot1);
+  }
+
 }
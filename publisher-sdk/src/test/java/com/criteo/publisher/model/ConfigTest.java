@@ -18,15 +18,19 @@ package com.criteo.publisher.model;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.AdditionalAnswers.answerVoid;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_SELF;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
@@ -114,6 +118,19 @@ public class ConfigTest {
     assertConfigContainsDefaultValues();
   }
 
+  @Test
+  public void new_GivenLocalStorage_DoNotReadItUntilPreloaded() throws Exception {
+    givenNewConfig();
+
+    verifyNoInteractions(sharedPreferences);
+
+    config.preload();
+    config.preload();
+    config.isKillSwitchEnabled();
+
+    verify(sharedPreferences, times(1)).getString("CriteoCachedConfig", "{}");
+  }
+
   @Test
   public void refreshConfig_GivenMissingKillSwitch_ItIsUnchanged() throws Exception {
     givenNewConfig();
@@ -214,6 +231,146 @@ public class ConfigTest {
     refreshConfig_assertItIsUnchanged(newConfig, Config::getRemoteLogLevel);
   }
 
+  @Test
+  public void refreshConfig_GivenMissingBidCacheDepth_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.getBidCacheDepth()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::getBidCacheDepth);
+  }
+
+  @Test
+  public void refreshConfig_GivenMissingPredictiveRefillEnabled_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.getPredictiveRefillEnabled()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::isPredictiveRefillEnabled);
+  }
+
+  @Test
+  public void refreshConfig_GivenMissingBidRequestCoalescingWindowInMillis_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.getBidRequestCoalescingWindowInMillis()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::getBidRequestCoalescingWindowInMillis);
+  }
+
+  @Test
+  public void refreshConfig_GivenMissingLiveBiddingMinTimeBudgetInMillis_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.getLiveBiddingMinTimeBudgetInMillis()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::getLiveBiddingMinTimeBudgetInMillis);
+  }
+
+  @Test
+  public void refreshConfig_GivenMissingCdbRequestCompressionEnabled_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.getCdbRequestCompressionEnabled()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::isCdbRequestCompressionEnabled);
+  }
+
+  @Test
+  public void refreshConfig_GivenMissingCsmRequestCompressionEnabled_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.getCsmRequestCompressionEnabled()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::isCsmRequestCompressionEnabled);
+  }
+
+  @Test
+  public void refreshConfig_GivenMissingRemoteLogsRequestCompressionEnabled_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.getRemoteLogsRequestCompressionEnabled()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::isRemoteLogsRequestCompressionEnabled);
+  }
+
+  @Test
+  public void refreshConfig_GivenMissingRequestCompressionMinSizeInBytes_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.getRequestCompressionMinSizeInBytes()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::getRequestCompressionMinSizeInBytes);
+  }
+
+  @Test
+  public void refreshConfig_GivenMissingAsyncBidRequestEnabled_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.getAsyncBidRequestEnabled()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::isAsyncBidRequestEnabled);
+  }
+
+  @Test
+  public void refreshConfig_GivenMissingCircuitBreakerFailureThreshold_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.getCircuitBreakerFailureThreshold()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::getCircuitBreakerFailureThreshold);
+  }
+
+  @Test
+  public void refreshConfig_GivenMissingConnectionPrewarmingEnabled_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.getConnectionPrewarmingEnabled()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::isConnectionPrewarmingEnabled);
+  }
+
+  @Test
+  public void refreshConfig_GivenMissingMaxCreativeSizeInBytes_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.getMaxCreativeSizeInBytes()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::getMaxCreativeSizeInBytes);
+  }
+
+  @Test
+  public void refreshConfig_GivenMissingRemoteConfigMaxAgeInSeconds_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.getRemoteConfigMaxAgeInSeconds()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::getRemoteConfigMaxAgeInSeconds);
+  }
+
+  @Test
+  public void refreshConfig_GivenMissingOkHttpTransportEnabled_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.getOkHttpTransportEnabled()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::isOkHttpTransportEnabled);
+  }
+
   private <T> void refreshConfig_assertItIsUnchanged(
       RemoteConfigResponse newConfig,
       Function<Config, T> projection
@@ -242,7 +399,21 @@ public class ConfigTest {
         false,
         42,
         false,
-        RemoteLogLevel.ERROR
+        RemoteLogLevel.ERROR,
+        2,
+        true,
+        20,
+        1000,
+        true,
+        true,
+        true,
+        2048,
+        true,
+        10,
+        false,
+        4096,
+        7200,
+        true
     );
 
     doAnswer(answerVoid((RemoteConfigResponse ignored, OutputStream outputStream) -> {
@@ -273,6 +444,146 @@ public class ConfigTest {
     verifyNoInteractions(editor);
   }
 
+  @Test
+  public void refreshConfig_GivenUnchangedConfig_DoNotPersistAgain() throws Exception {
+    Editor editor = mock(Editor.class);
+    when(sharedPreferences.edit()).thenReturn(editor);
+
+    givenNewConfig();
+
+    config.refreshConfig(RemoteConfigResponse.createEmpty().withKillSwitch(true));
+    config.refreshConfig(RemoteConfigResponse.createEmpty().withKillSwitch(true));
+    config.refreshConfig(RemoteConfigResponse.createEmpty());
+
+    verify(editor, times(1)).putString(eq("CriteoCachedConfig"), any());
+    assertTrue(config.isKillSwitchEnabled());
+  }
+
+  @Test
+  public void isRemoteConfigFresh_GivenRecentFetchOfSameRequest_ReturnTrue() throws Exception {
+    RemoteConfigRequest request = RemoteConfigRequest.create("cpId", "bundleId", "1.2.3", 42, "deviceId");
+    givenRemoteConfigFetchedAt(request, 1_000_000L);
+
+    givenNewConfig();
+    givenRemoteConfigMaxAgeInSeconds(3_600);
+
+    assertTrue(config.isRemoteConfigFresh(request, 1_000_000L));
+    assertTrue(config.isRemoteConfigFresh(request, 1_000_000L + 3_600_000L - 1));
+    assertFalse(config.isRemoteConfigFresh(request, 1_000_000L + 3_600_000L));
+    assertFalse(config.isRemoteConfigFresh(request, 1_000_000L - 1));
+  }
+
+  @Test
+  public void isRemoteConfigFresh_GivenRecentFetchOfOtherRequest_ReturnFalse() throws Exception {
+    RemoteConfigRequest request = RemoteConfigRequest.create("cpId", "bundleId", "1.2.3", 42, "deviceId");
+    RemoteConfigRequest otherRequest = RemoteConfigRequest.create("cpId", "bundleId", "1.2.4", 42, "deviceId");
+    givenRemoteConfigFetchedAt(request, 1_000_000L);
+
+    givenNewConfig();
+    givenRemoteConfigMaxAgeInSeconds(3_600);
+
+    assertFalse(config.isRemoteConfigFresh(otherRequest, 1_000_000L));
+  }
+
+  @Test
+  public void isRemoteConfigFresh_GivenNoFetch_ReturnFalse() throws Exception {
+    RemoteConfigRequest request = RemoteConfigRequest.create("cpId", "bundleId", "1.2.3", 42, "deviceId");
+
+    givenNewConfig();
+    givenRemoteConfigMaxAgeInSeconds(3_600);
+
+    assertFalse(config.isRemoteConfigFresh(request, 1_000_000L));
+  }
+
+  @Test
+  public void isRemoteConfigFresh_GivenDisabledMaxAge_ReturnFalse() throws Exception {
+    RemoteConfigRequest request = RemoteConfigRequest.create("cpId", "bundleId", "1.2.3", 42, "deviceId");
+    givenRemoteConfigFetchedAt(request, 1_000_000L);
+
+    RemoteConfigResponse response = mock(RemoteConfigResponse.class);
+    when(response.getRemoteConfigMaxAgeInSeconds()).thenReturn(0);
+
+    givenNewConfig();
+    config.refreshConfig(response);
+
+    assertFalse(config.isRemoteConfigFresh(request, 1_000_000L));
+  }
+
+  @Test
+  public void isRemoteConfigFresh_GivenDefaultMaxAge_ReturnFalse() throws Exception {
+    RemoteConfigRequest request = RemoteConfigRequest.create("cpId", "bundleId", "1.2.3", 42, "deviceId");
+    givenRemoteConfigFetchedAt(request, 1_000_000L);
+
+    givenNewConfig();
+
+    assertFalse(config.isRemoteConfigFresh(request, 1_000_000L));
+  }
+
+  @Test
+  public void onRemoteConfigFetched_GivenEntityTag_PersistFetchTimeRequestAndEntityTag() throws Exception {
+    Editor editor = mock(Editor.class);
+    when(sharedPreferences.edit()).thenReturn(editor);
+    RemoteConfigRequest request = RemoteConfigRequest.create("cpId", "bundleId", "1.2.3", 42, "deviceId");
+
+    givenNewConfig();
+    config.onRemoteConfigFetched(request, "\"v1\"", 1_000_000L);
+
+    InOrder inOrder = inOrder(editor);
+    inOrder.verify(editor).putLong("CriteoCachedConfigFetchTime", 1_000_000L);
+    inOrder.verify(editor).putString("CriteoCachedConfigRequestKey", "cpId|bundleId|1.2.3|42|deviceId|android");
+    inOrder.verify(editor).putString("CriteoCachedConfigEntityTag", "\"v1\"");
+    inOrder.verify(editor).apply();
+    inOrder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void onRemoteConfigFetched_GivenSameRequestAndEntityTag_OnlyPersistFetchTime() throws Exception {
+    Editor editor = mock(Editor.class);
+    when(sharedPreferences.edit()).thenReturn(editor);
+    RemoteConfigRequest request = RemoteConfigRequest.create("cpId", "bundleId", "1.2.3", 42, "deviceId");
+    givenRemoteConfigFetchedAt(request, 1_000L);
+    when(sharedPreferences.getString("CriteoCachedConfigEntityTag", null)).thenReturn("\"v1\"");
+
+    givenNewConfig();
+    config.onRemoteConfigFetched(request, "\"v1\"", 1_000_000L);
+
+    InOrder inOrder = inOrder(editor);
+    inOrder.verify(editor).putLong("CriteoCachedConfigFetchTime", 1_000_000L);
+    inOrder.verify(editor).apply();
+    inOrder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void onRemoteConfigFetchFailed_GivenEntityTag_RemoveIt() throws Exception {
+    Editor editor = mock(Editor.class, RETURNS_SELF);
+    when(sharedPreferences.edit()).thenReturn(editor);
+
+    givenNewConfig();
+    config.onRemoteConfigFetchFailed();
+
+    InOrder inOrder = inOrder(editor);
+    inOrder.verify(editor).remove("CriteoCachedConfigEntityTag");
+    inOrder.verify(editor).apply();
+    inOrder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void getRemoteConfigEntityTag_GivenPersistedEntityTag_ReturnIt() throws Exception {
+    when(sharedPreferences.getString("CriteoCachedConfigEntityTag", null)).thenReturn("\"v1\"");
+
+    givenNewConfig();
+
+    assertEquals("\"v1\"", config.getRemoteConfigEntityTag());
+  }
+
+  @Test
+  public void getRemoteConfigEntityTag_GivenNoLocalStorage_ReturnNull() throws Exception {
+    config = new Config();
+
+    assertNull(config.getRemoteConfigEntityTag());
+    assertFalse(config.isRemoteConfigFresh(mock(RemoteConfigRequest.class), 0L));
+  }
+
   @Test
   public void refreshConfig_GivenNewConfig_UpdateEverything() throws Exception {
     givenNewConfig();
@@ -284,6 +595,20 @@ public class ConfigTest {
     boolean csmEnabled = config.isCsmEnabled();
     boolean liveBiddingEnabled = config.isLiveBiddingEnabled();
     int liveBiddingTimeBudgetInMillis = config.getLiveBiddingTimeBudgetInMillis();
+    int bidCacheDepth = config.getBidCacheDepth();
+    boolean predictiveRefillEnabled = config.isPredictiveRefillEnabled();
+    int bidRequestCoalescingWindowInMillis = config.getBidRequestCoalescingWindowInMillis();
+    int liveBiddingMinTimeBudgetInMillis = config.getLiveBiddingMinTimeBudgetInMillis();
+    boolean cdbRequestCompressionEnabled = config.isCdbRequestCompressionEnabled();
+    boolean csmRequestCompressionEnabled = config.isCsmRequestCompressionEnabled();
+    boolean remoteLogsRequestCompressionEnabled = config.isRemoteLogsRequestCompressionEnabled();
+    int requestCompressionMinSizeInBytes = config.getRequestCompressionMinSizeInBytes();
+    boolean asyncBidRequestEnabled = config.isAsyncBidRequestEnabled();
+    int circuitBreakerFailureThreshold = config.getCircuitBreakerFailureThreshold();
+    boolean connectionPrewarmingEnabled = config.isConnectionPrewarmingEnabled();
+    int maxCreativeSizeInBytes = config.getMaxCreativeSizeInBytes();
+    int remoteConfigMaxAgeInSeconds = config.getRemoteConfigMaxAgeInSeconds();
+    boolean okHttpTransportEnabled = config.isOkHttpTransportEnabled();
 
     RemoteConfigResponse newConfig = givenFullNewPayload(config);
 
@@ -298,6 +623,33 @@ public class ConfigTest {
     assertEquals(liveBiddingEnabled, !config.isLiveBiddingEnabled());
     assertEquals(1 + liveBiddingTimeBudgetInMillis, config.getLiveBiddingTimeBudgetInMillis());
 
+    assertEquals(1 + bidCacheDepth, config.getBidCacheDepth());
+    assertEquals(predictiveRefillEnabled, !config.isPredictiveRefillEnabled());
+    assertEquals(1 + bidRequestCoalescingWindowInMillis, config.getBidRequestCoalescingWindowInMillis());
+    assertEquals(liveBiddingMinTimeBudgetInMillis - 1, config.getLiveBiddingMinTimeBudgetInMillis());
+    assertEquals(cdbRequestCompressionEnabled, !config.isCdbRequestCompressionEnabled());
+    assertEquals(csmRequestCompressionEnabled, !config.isCsmRequestCompressionEnabled());
+    assertEquals(remoteLogsRequestCompressionEnabled, !config.isRemoteLogsRequestCompressionEnabled());
+    assertEquals(requestCompressionMinSizeInBytes + 1, config.getRequestCompressionMinSizeInBytes());
+    assertEquals(asyncBidRequestEnabled, !config.isAsyncBidRequestEnabled());
+    assertEquals(circuitBreakerFailureThreshold + 1, config.getCircuitBreakerFailureThreshold());
+    assertEquals(connectionPrewarmingEnabled, !config.isConnectionPrewarmingEnabled());
+    assertEquals(maxCreativeSizeInBytes + 1, config.getMaxCreativeSizeInBytes());
+    assertEquals(remoteConfigMaxAgeInSeconds + 1, config.getRemoteConfigMaxAgeInSeconds());
+    assertEquals(okHttpTransportEnabled, !config.isOkHttpTransportEnabled());
+  }
+
+  private void givenRemoteConfigFetchedAt(RemoteConfigRequest request, long fetchTimeInMillis) {
+    when(sharedPreferences.getString("CriteoCachedConfigRequestKey", null))
+        .thenReturn(request.getCriteoPublisherId() + "|" + request.getBundleId() + "|" + request.getSdkVersion()
+            + "|" + request.getProfileId() + "|" + request.getDeviceId() + "|" + request.getDeviceOs());
+    when(sharedPreferences.getLong("CriteoCachedConfigFetchTime", -1)).thenReturn(fetchTimeInMillis);
+  }
+
+  private void givenRemoteConfigMaxAgeInSeconds(int maxAgeInSeconds) {
+    RemoteConfigResponse response = mock(RemoteConfigResponse.class);
+    when(response.getRemoteConfigMaxAgeInSeconds()).thenReturn(maxAgeInSeconds);
+    config.refreshConfig(response);
   }
 
   private void givenNewConfig() {
@@ -315,6 +667,20 @@ public class ConfigTest {
     when(response.getLiveBiddingEnabled()).thenReturn(!config.isLiveBiddingEnabled());
     when(response.getLiveBiddingTimeBudgetInMillis()).thenReturn(1 + config.getLiveBiddingTimeBudgetInMillis());
     when(response.getPrefetchOnInitEnabled()).thenReturn(!config.isPrefetchOnInitEnabled());
+    when(response.getBidCacheDepth()).thenReturn(1 + config.getBidCacheDepth());
+    when(response.getPredictiveRefillEnabled()).thenReturn(!config.isPredictiveRefillEnabled());
+    when(response.getBidRequestCoalescingWindowInMillis()).thenReturn(1 + config.getBidRequestCoalescingWindowInMillis());
+    when(response.getLiveBiddingMinTimeBudgetInMillis()).thenReturn(config.getLiveBiddingMinTimeBudgetInMillis() - 1);
+    when(response.getCdbRequestCompressionEnabled()).thenReturn(!config.isCdbRequestCompressionEnabled());
+    when(response.getCsmRequestCompressionEnabled()).thenReturn(!config.isCsmRequestCompressionEnabled());
+    when(response.getRemoteLogsRequestCompressionEnabled()).thenReturn(!config.isRemoteLogsRequestCompressionEnabled());
+    when(response.getRequestCompressionMinSizeInBytes()).thenReturn(config.getRequestCompressionMinSizeInBytes() + 1);
+    when(response.getAsyncBidRequestEnabled()).thenReturn(!config.isAsyncBidRequestEnabled());
+    when(response.getCircuitBreakerFailureThreshold()).thenReturn(config.getCircuitBreakerFailureThreshold() + 1);
+    when(response.getConnectionPrewarmingEnabled()).thenReturn(!config.isConnectionPrewarmingEnabled());
+    when(response.getMaxCreativeSizeInBytes()).thenReturn(config.getMaxCreativeSizeInBytes() + 1);
+    when(response.getRemoteConfigMaxAgeInSeconds()).thenReturn(config.getRemoteConfigMaxAgeInSeconds() + 1);
+    when(response.getOkHttpTransportEnabled()).thenReturn(!config.isOkHttpTransportEnabled());
 
     // Get any value that is not the one set in the given config
     RemoteLogLevel otherLogLevel = Arrays.stream(RemoteLogLevel.values())
@@ -338,6 +704,20 @@ public class ConfigTest {
     assertTrue(config.isCsmEnabled());
     assertFalse(config.isLiveBiddingEnabled());
     assertEquals(8000, config.getLiveBiddingTimeBudgetInMillis());
+    assertEquals(1, config.getBidCacheDepth());
+    assertFalse(config.isPredictiveRefillEnabled());
+    assertEquals(0, config.getBidRequestCoalescingWindowInMillis());
+    assertEquals(8000, config.getLiveBiddingMinTimeBudgetInMillis());
+    assertFalse(config.isCdbRequestCompressionEnabled());
+    assertFalse(config.isCsmRequestCompressionEnabled());
+    assertFalse(config.isRemoteLogsRequestCompressionEnabled());
+    assertEquals(1024, config.getRequestCompressionMinSizeInBytes());
+    assertFalse(config.isAsyncBidRequestEnabled());
+    assertEquals(5, config.getCircuitBreakerFailureThreshold());
+    assertFalse(config.isConnectionPrewarmingEnabled());
+    assertEquals(2 * 1024 * 1024, config.getMaxCreativeSizeInBytes());
+    assertEquals(0, config.getRemoteConfigMaxAgeInSeconds());
+    assertFalse(config.isOkHttpTransportEnabled());
   }
 
 }
\ No newline at end of file
@@ -52,6 +52,20 @@ class RemoteConfigResponseTest {
     assertThat(response.liveBiddingEnabled).isNull()
     assertThat(response.liveBiddingTimeBudgetInMillis).isNull()
     assertThat(response.prefetchOnInitEnabled).isNull()
+    assertThat(response.bidCacheDepth).isNull()
+    assertThat(response.predictiveRefillEnabled).isNull()
+    assertThat(response.bidRequestCoalescingWindowInMillis).isNull()
+    assertThat(response.liveBiddingMinTimeBudgetInMillis).isNull()
+    assertThat(response.cdbRequestCompressionEnabled).isNull()
+    assertThat(response.csmRequestCompressionEnabled).isNull()
+    assertThat(response.remoteLogsRequestCompressionEnabled).isNull()
+    assertThat(response.requestCompressionMinSizeInBytes).isNull()
+    assertThat(response.asyncBidRequestEnabled).isNull()
+    assertThat(response.circuitBreakerFailureThreshold).isNull()
+    assertThat(response.connectionPrewarmingEnabled).isNull()
+    assertThat(response.maxCreativeSizeInBytes).isNull()
+    assertThat(response.remoteConfigMaxAgeInSeconds).isNull()
+    assertThat(response.okHttpTransportEnabled).isNull()
   }
 
   @Test
@@ -72,6 +86,20 @@ class RemoteConfigResponseTest {
     assertThat(response.liveBiddingTimeBudgetInMillis).isNull()
     assertThat(response.prefetchOnInitEnabled).isNull()
     assertThat(response.remoteLogLevel).isNull()
+    assertThat(response.bidCacheDepth).isNull()
+    assertThat(response.predictiveRefillEnabled).isNull()
+    assertThat(response.bidRequestCoalescingWindowInMillis).isNull()
+    assertThat(response.liveBiddingMinTimeBudgetInMillis).isNull()
+    assertThat(response.cdbRequestCompressionEnabled).isNull()
+    assertThat(response.csmRequestCompressionEnabled).isNull()
+    assertThat(response.remoteLogsRequestCompressionEnabled).isNull()
+    assertThat(response.requestCompressionMinSizeInBytes).isNull()
+    assertThat(response.asyncBidRequestEnabled).isNull()
+    assertThat(response.circuitBreakerFailureThreshold).isNull()
+    assertThat(response.connectionPrewarmingEnabled).isNull()
+    assertThat(response.maxCreativeSizeInBytes).isNull()
+    assertThat(response.remoteConfigMaxAgeInSeconds).isNull()
+    assertThat(response.okHttpTransportEnabled).isNull()
   }
 
   @Test
@@ -86,7 +114,21 @@ class RemoteConfigResponseTest {
       "liveBiddingEnabled": true,
       "liveBiddingTimeBudgetInMillis": 42,
       "prefetchOnInitEnabled": true,
-      "remoteLogLevel": "Warning"
+      "remoteLogLevel": "Warning",
+      "bidCacheDepth": 3,
+      "predictiveRefillEnabled": true,
+      "bidRequestCoalescingWindowInMillis": 50,
+      "liveBiddingMinTimeBudgetInMillis": 500,
+      "cdbRequestCompressionEnabled": true,
+      "csmRequestCompressionEnabled": true,
+      "remoteLogsRequestCompressionEnabled": true,
+      "requestCompressionMinSizeInBytes": 512,
+      "asyncBidRequestEnabled": true,
+      "circuitBreakerFailureThreshold": 3,
+      "connectionPrewarmingEnabled": false,
+      "maxCreativeSizeInBytes": 1024,
+      "remoteConfigMaxAgeInSeconds": 600,
+      "okHttpTransportEnabled": true
     }""".trimIndent()
 
     val response = readFromString(json)
@@ -101,6 +143,20 @@ class RemoteConfigResponseTest {
     assertThat(response.liveBiddingTimeBudgetInMillis).isEqualTo(42)
     assertThat(response.prefetchOnInitEnabled).isTrue()
     assertThat(response.remoteLogLevel).isEqualTo(RemoteLogLevel.WARNING)
+    assertThat(response.bidCacheDepth).isEqualTo(3)
+    assertThat(response.predictiveRefillEnabled).isTrue()
+    assertThat(response.bidRequestCoalescingWindowInMillis).isEqualTo(50)
+    assertThat(response.liveBiddingMinTimeBudgetInMillis).isEqualTo(500)
+    assertThat(response.cdbRequestCompressionEnabled).isTrue()
+    assertThat(response.csmRequestCompressionEnabled).isTrue()
+    assertThat(response.remoteLogsRequestCompressionEnabled).isTrue()
+    assertThat(response.requestCompressionMinSizeInBytes).isEqualTo(512)
+    assertThat(response.asyncBidRequestEnabled).isTrue()
+    assertThat(response.circuitBreakerFailureThreshold).isEqualTo(3)
+    assertThat(response.connectionPrewarmingEnabled).isFalse()
+    assertThat(response.maxCreativeSizeInBytes).isEqualTo(1024)
+    assertThat(response.remoteConfigMaxAgeInSeconds).isEqualTo(600)
+    assertThat(response.okHttpTransportEnabled).isTrue()
   }
 
   @Test
@@ -0,0 +1,208 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import com.criteo.publisher.CdbCallListener
+import com.criteo.publisher.Clock
+import com.criteo.publisher.context.ContextData
+import com.criteo.publisher.context.ContextProvider
+import com.criteo.publisher.model.AdSize
+import com.criteo.publisher.model.CacheAdUnit
+import com.criteo.publisher.model.CdbRequest
+import com.criteo.publisher.model.CdbRequestFactory
+import com.criteo.publisher.model.CdbRequestSlot
+import com.criteo.publisher.model.CdbResponse
+import com.criteo.publisher.model.Config
+import com.criteo.publisher.model.RemoteConfigRequestFactory
+import com.criteo.publisher.util.AdUnitType.CRITEO_BANNER
+import com.criteo.publisher.util.Benchmark
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.criteo.publisher.util.CompletableFuture.completedFuture
+import com.criteo.publisher.util.JsonSerializer
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.whenever
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.Random
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compare the number of CDB calls and the latency seen by each caller, with and without coalescing,
+ * when several ad units are requested in the same frame.
+ */
+@Category(Benchmark::class)
+class BidRequestSenderBenchmarkTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Rule
+  @JvmField
+  val mockWebServer = MockWebServer()
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  @Mock
+  private lateinit var jsonSerializer: JsonSerializer
+
+  @Mock
+  private lateinit var cdbRequestFactory: CdbRequestFactory
+
+  @Mock
+  private lateinit var config: Config
+
+  private lateinit var executor: ExecutorService
+
+  private lateinit var scheduledExecutorService: ScheduledExecutorService
+
+  private lateinit var sender: BidRequestSender
+
+  private var adUnitId = 0
+
+  @Before
+  fun setUp() {
+    whenever(buildConfigWrapper.cdbUrl).doReturn("http://localhost:${mockWebServer.port}")
+    whenever(buildConfigWrapper.networkTimeoutInMillis).doReturn(5_000)
+    doAnswer {
+      it.getArgument<OutputStream>(1).write("{}".toByteArray())
+    }.whenever(jsonSerializer).write(any(), any())
+    whenever(jsonSerializer.read(eq(CdbResponse::class.java), any())).doAnswer {
+      it.getArgument<InputStream>(1).readBytes()
+      CdbResponse(listOf(), 0, null)
+    }
+    whenever(cdbRequestFactory.userAgent).doReturn(completedFuture(""))
+    whenever(cdbRequestFactory.createRequest(any(), any())).doAnswer {
+      val adUnits: List<CacheAdUnit> = it.getArgument(0)
+      CdbRequest.create(
+          "requestId",
+          mock(),
+          mock(),
+          "1.2.3",
+          42,
+          null,
+          adUnits.map { adUnit ->
+            CdbRequestSlot.create(adUnit.placementId, adUnit.placementId, adUnit.adUnitType, adUnit.size)
+          }
+      )
+    }
+    mockWebServer.dispatcher = object : Dispatcher() {
+      override fun dispatch(request: RecordedRequest) = MockResponse()
+          .setBody("{\"slots\":[]}")
+          .setHeadersDelay(SERVER_LATENCY_IN_MILLIS, TimeUnit.MILLISECONDS)
+    }
+
+    executor = Executors.newFixedThreadPool(4)
+    scheduledExecutorService = Executors.newSingleThreadScheduledExecutor()
+
+    sender = BidRequestSender(
+        cdbRequestFactory,
+        mock<RemoteConfigRequestFactory>(),
+        mock<Clock>(),
+        PubSdkApi(
+            buildConfigWrapper,
+            jsonSerializer,
+            config,
+            UrlConnectionHttpTransport(),
+            CircuitBreaker(mock(), config, Random()),
+            NetworkMetrics(mock()),
+            mock<ContextProvider>()
+        ),
+        executor,
+        scheduledExecutorService,
+        config
+    )
+  }
+
+  @After
+  fun tearDown() {
+    executor.shutdownNow()
+    scheduledExecutorService.shutdownNow()
+  }
+
+  @Test
+  fun sendBidRequest_GivenBurstsOfRequests_CoalescingReduceNumberOfCalls() {
+    val withoutCoalescing = runBursts(coalescingWindowInMillis = 0)
+    val withCoalescing = runBursts(coalescingWindowInMillis = 10)
+
+    assertThat(withoutCoalescing.requestCount).isEqualTo(BURST_COUNT * REQUESTS_PER_BURST)
+    assertThat(withCoalescing.requestCount)
+        .describedAs("With coalescing: $withCoalescing, without coalescing: $withoutCoalescing")
+        .isEqualTo(BURST_COUNT)
+  }
+
+  private fun runBursts(coalescingWindowInMillis: Int): BenchmarkResult {
+    whenever(config.bidRequestCoalescingWindowInMillis).doReturn(coalescingWindowInMillis)
+
+    val initialRequestCount = mockWebServer.requestCount
+    val latenciesInMillis = mutableListOf<Long>()
+
+    repeat(BURST_COUNT) {
+      val burstIsDone = CountDownLatch(REQUESTS_PER_BURST)
+      repeat(REQUESTS_PER_BURST) {
+        val start = System.nanoTime()
+        val listener = mock<CdbCallListener>()
+        doAnswer {
+          synchronized(latenciesInMillis) {
+            latenciesInMillis += TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+          }
+          burstIsDone.countDown()
+        }.whenever(listener).onCdbResponse(any(), any())
+
+        sender.sendBidRequest(listOf(createAdUnit()), ContextData(), listener)
+      }
+
+      assertThat(burstIsDone.await(10, TimeUnit.SECONDS)).isTrue()
+    }
+
+    return BenchmarkResult(
+        mockWebServer.requestCount - initialRequestCount,
+        latenciesInMillis.sorted()[(latenciesInMillis.size * 95) / 100 - 1]
+    )
+  }
+
+  private fun createAdUnit() = CacheAdUnit(AdSize(320, 50), "adUnit${adUnitId++}", CRITEO_BANNER)
+
+  private data class BenchmarkResult(val requestCount: Int, val p95LatencyInMillis: Long)
+
+  private companion object {
+    const val BURST_COUNT = 20
+    const val REQUESTS_PER_BURST = 5
+    const val SERVER_LATENCY_IN_MILLIS = 20L
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import com.criteo.publisher.CdbCallListener
+import com.criteo.publisher.Clock
+import com.criteo.publisher.context.ContextData
+import com.criteo.publisher.context.ContextProvider
+import com.criteo.publisher.model.AdSize
+import com.criteo.publisher.model.CacheAdUnit
+import com.criteo.publisher.model.CdbRequest
+import com.criteo.publisher.model.CdbRequestFactory
+import com.criteo.publisher.model.CdbRequestSlot
+import com.criteo.publisher.model.CdbResponse
+import com.criteo.publisher.model.Config
+import com.criteo.publisher.model.RemoteConfigRequestFactory
+import com.criteo.publisher.util.AdUnitType.CRITEO_BANNER
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.criteo.publisher.util.CompletableFuture.completedFuture
+import com.criteo.publisher.util.JsonSerializer
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.whenever
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.Random
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Send many bid requests at once with a small fixed pool of SDK threads, and check that asynchronous requests are in
+ * flight together instead of waiting for a free thread.
+ */
+class BidRequestSenderLoadTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Rule
+  @JvmField
+  val mockWebServer = MockWebServer()
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  @Mock
+  private lateinit var jsonSerializer: JsonSerializer
+
+  @Mock
+  private lateinit var cdbRequestFactory: CdbRequestFactory
+
+  @Mock
+  private lateinit var config: Config
+
+  private lateinit var executor: ThreadPoolExecutor
+
+  private lateinit var scheduledExecutorService: ScheduledExecutorService
+
+  private lateinit var sender: BidRequestSender
+
+  private val inFlightRequestCount = AtomicInteger()
+
+  private val maxInFlightRequestCount = AtomicInteger()
+
+  private var adUnitId = 0
+
+  @Before
+  fun setUp() {
+    whenever(buildConfigWrapper.cdbUrl).doReturn("http://localhost:${mockWebServer.port}")
+    whenever(buildConfigWrapper.networkTimeoutInMillis).doReturn(10_000)
+    doAnswer {
+      it.getArgument<OutputStream>(1).write("{}".toByteArray())
+    }.whenever(jsonSerializer).write(any(), any())
+    whenever(jsonSerializer.read(eq(CdbResponse::class.java), any())).doAnswer {
+      it.getArgument<InputStream>(1).readBytes()
+      CdbResponse(listOf(), 0, null)
+    }
+    whenever(cdbRequestFactory.userAgent).doReturn(completedFuture(""))
+    whenever(cdbRequestFactory.createRequest(any(), any())).doAnswer {
+      val adUnits: List<CacheAdUnit> = it.getArgument(0)
+      CdbRequest.create(
+          "requestId",
+          mock(),
+          mock(),
+          "1.2.3",
+          42,
+          null,
+          adUnits.map { adUnit ->
+            CdbRequestSlot.create(adUnit.placementId, adUnit.placementId, adUnit.adUnitType, adUnit.size)
+          }
+      )
+    }
+
+    // The server only answers once enough requests are in flight at the same time
+    val enoughRequestsInFlight = CountDownLatch(MIN_CONCURRENT_REQUESTS)
+    mockWebServer.dispatcher = object : Dispatcher() {
+      override fun dispatch(request: RecordedRequest): MockResponse {
+        val inFlight = inFlightRequestCount.incrementAndGet()
+        maxInFlightRequestCount.accumulateAndGet(inFlight) { max, current -> maxOf(max, current) }
+        enoughRequestsInFlight.countDown()
+        try {
+          enoughRequestsInFlight.await(5, TimeUnit.SECONDS)
+          return MockResponse().setBody("{\"slots\":[]}")
+        } finally {
+          inFlightRequestCount.decrementAndGet()
+        }
+      }
+    }
+
+    executor = ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 0, TimeUnit.MILLISECONDS, LinkedBlockingQueue())
+    scheduledExecutorService = Executors.newSingleThreadScheduledExecutor()
+
+    sender = BidRequestSender(
+        cdbRequestFactory,
+        mock<RemoteConfigRequestFactory>(),
+        mock<Clock>(),
+        PubSdkApi(
+            buildConfigWrapper,
+            jsonSerializer,
+            config,
+            OkHttpTransport(),
+            CircuitBreaker(mock(), config, Random()),
+            NetworkMetrics(mock()),
+            mock<ContextProvider>()
+        ),
+        executor,
+        scheduledExecutorService,
+        config
+    )
+  }
+
+  @After
+  fun tearDown() {
+    executor.shutdownNow()
+    scheduledExecutorService.shutdownNow()
+  }
+
+  @Test
+  fun sendBidRequest_GivenAsyncRequests_ManyRequestsAreInFlightWithFewThreads() {
+    whenever(config.isAsyncBidRequestEnabled).doReturn(true)
+    val allRequestsAreDone = CountDownLatch(REQUEST_COUNT)
+
+    repeat(REQUEST_COUNT) {
+      val listener = mock<CdbCallListener>()
+      doAnswer { allRequestsAreDone.countDown() }.whenever(listener).onCdbResponse(any(), any())
+
+      sender.sendBidRequest(listOf(createAdUnit()), ContextData(), listener)
+    }
+
+    assertThat(allRequestsAreDone.await(30, TimeUnit.SECONDS)).isTrue()
+    assertThat(mockWebServer.requestCount).isEqualTo(REQUEST_COUNT)
+    assertThat(maxInFlightRequestCount.get()).isGreaterThanOrEqualTo(MIN_CONCURRENT_REQUESTS)
+    assertThat(executor.largestPoolSize).isEqualTo(THREAD_COUNT)
+  }
+
+  private fun createAdUnit() = CacheAdUnit(AdSize(320, 50), "adUnit${adUnitId++}", CRITEO_BANNER)
+
+  private companion object {
+    const val REQUEST_COUNT = 200
+    const val THREAD_COUNT = 2
+
+    /**
+     * Blocking requests could not be more in flight than [THREAD_COUNT]
+     */
+    const val MIN_CONCURRENT_REQUESTS = 32
+  }
+}
@@ -24,12 +24,17 @@ import com.criteo.publisher.model.AdSize
 import com.criteo.publisher.model.CacheAdUnit
 import com.criteo.publisher.model.CdbRequest
 import com.criteo.publisher.model.CdbRequestFactory
+import com.criteo.publisher.model.CdbRequestSlot
 import com.criteo.publisher.model.CdbResponse
+import com.criteo.publisher.model.CdbResponseSlot
 import com.criteo.publisher.model.Config
 import com.criteo.publisher.model.RemoteConfigRequest
 import com.criteo.publisher.model.RemoteConfigRequestFactory
 import com.criteo.publisher.model.RemoteConfigResponse
+import com.criteo.publisher.model.VersionedRemoteConfig
 import com.criteo.publisher.util.AdUnitType.CRITEO_BANNER
+import com.criteo.publisher.network.CoalescedCdbCall.PendingBidRequest
+import com.criteo.publisher.util.CompletableFuture
 import com.criteo.publisher.util.CompletableFuture.completedFuture
 import org.assertj.core.api.Assertions.assertThat
 import org.assertj.core.api.Assertions.assertThatCode
@@ -44,8 +49,10 @@ import org.mockito.kotlin.argumentCaptor
 import org.mockito.kotlin.doAnswer
 import org.mockito.kotlin.doReturn
 import org.mockito.kotlin.doThrow
+import org.mockito.kotlin.eq
 import org.mockito.kotlin.inOrder
 import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
 import org.mockito.kotlin.spy
 import org.mockito.kotlin.stub
 import org.mockito.kotlin.times
@@ -58,6 +65,8 @@ import java.util.concurrent.CyclicBarrier
 import java.util.concurrent.Executor
 import java.util.concurrent.Executors
 import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
 
@@ -79,6 +88,12 @@ class BidRequestSenderTest {
     @Mock
     private lateinit var api: PubSdkApi
 
+    @Mock
+    private lateinit var scheduledExecutorService: ScheduledExecutorService
+
+    @Mock
+    private lateinit var config: Config
+
     private var executor = Executor(Runnable::run)
 
     private lateinit var sender: BidRequestSender
@@ -98,7 +113,9 @@ class BidRequestSenderTest {
             remoteConfigRequestFactory,
             clock,
             api,
-            executor
+            executor,
+            scheduledExecutorService,
+            config
         )
     }
 
@@ -109,17 +126,67 @@ class BidRequestSenderTest {
         val response: RemoteConfigResponse = mock()
 
         whenever(remoteConfigRequestFactory.createRequest()).doReturn(request)
-        whenever(api.loadConfig(request)).doReturn(response)
+        whenever(configToUpdate.remoteConfigEntityTag).doReturn("oldTag")
+        whenever(clock.currentTimeInMillis).doReturn(42L)
+        whenever(api.loadConfig(request, "oldTag")).doReturn(VersionedRemoteConfig(response, "newTag"))
 
         sender.sendRemoteConfigRequest(configToUpdate)
 
         verify(configToUpdate).refreshConfig(response)
+        verify(configToUpdate).onRemoteConfigFetched(request, "newTag", 42L)
+    }
+
+    @Test
+    fun sendRemoteConfigRequest_GivenNotModifiedResponse_DoNotRefreshConfigButRememberFetch() {
+        val configToUpdate: Config = mock()
+        val request: RemoteConfigRequest = mock()
+
+        whenever(remoteConfigRequestFactory.createRequest()).doReturn(request)
+        whenever(configToUpdate.remoteConfigEntityTag).doReturn("tag")
+        whenever(clock.currentTimeInMillis).doReturn(42L)
+        whenever(api.loadConfig(request, "tag")).doReturn(null)
+
+        sender.sendRemoteConfigRequest(configToUpdate)
+
+        verify(configToUpdate, never()).refreshConfig(any())
+        verify(configToUpdate).onRemoteConfigFetched(request, "tag", 42L)
+    }
+
+    @Test
+    fun sendRemoteConfigRequest_GivenFailedFetch_ForgetEntityTag() {
+        val configToUpdate: Config = mock()
+        val request: RemoteConfigRequest = mock()
+
+        whenever(remoteConfigRequestFactory.createRequest()).doReturn(request)
+        whenever(configToUpdate.remoteConfigEntityTag).doReturn("tag")
+        whenever(api.loadConfig(request, "tag")).doThrow(IOException::class)
+
+        sender.sendRemoteConfigRequest(configToUpdate)
+
+        verify(configToUpdate).onRemoteConfigFetchFailed()
+        verify(configToUpdate, never()).onRemoteConfigFetched(any(), anyOrNull(), any())
+    }
+
+    @Test
+    fun sendRemoteConfigRequest_GivenFreshConfig_DoNotSendRequest() {
+        val configToUpdate: Config = mock()
+        val request: RemoteConfigRequest = mock()
+
+        whenever(remoteConfigRequestFactory.createRequest()).doReturn(request)
+        whenever(clock.currentTimeInMillis).doReturn(42L)
+        whenever(configToUpdate.isRemoteConfigFresh(request, 42L)).doReturn(true)
+
+        sender.sendRemoteConfigRequest(configToUpdate)
+
+        verifyZeroInteractions(api)
+        verify(configToUpdate, never()).refreshConfig(any())
+        verify(configToUpdate, never()).onRemoteConfigFetched(any(), anyOrNull(), any())
     }
 
     @Test
     fun sendRemoteConfigRequest_GivenException_DoNotThrow() {
         val configToUpdate: Config = mock()
-        whenever(api.loadConfig(any())).doThrow(IOException::class)
+        whenever(api.loadConfig(anyOrNull(), anyOrNull())).doThrow(IOException::class)
 
         assertThatCode {
             sender.sendRemoteConfigRequest(configToUpdate)
@@ -134,7 +201,7 @@ class BidRequestSenderTest {
         doAnswer {
             executor.expectIsRunningInExecutor()
             null
-        }.whenever(api).loadConfig(anyOrNull())
+        }.whenever(api).loadConfig(anyOrNull(), anyOrNull())
 
         sender.sendRemoteConfigRequest(mock())
 
@@ -191,6 +258,33 @@ class BidRequestSenderTest {
         inOrder.verifyNoMoreInteractions()
     }
 
+    @Test
+    fun sendBidRequest_GivenUserAgentNotResolvedYet_ExecuteCallOnlyOnceResolved() {
+        val queuedTasks = mutableListOf<Runnable>()
+        givenNewSender(executor = Executor { queuedTasks += it })
+        val adUnits = listOf(createAdUnit())
+        val contextData: ContextData = mock()
+        val listener: CdbCallListener = mock()
+        val request: CdbRequest = mock()
+        val userAgentFuture = CompletableFuture<String>()
+
+        cdbRequestFactory.stub {
+            on { createRequest(adUnits, contextData) } doReturn request
+            on { it.userAgent } doReturn userAgentFuture
+        }
+
+        sender.sendBidRequest(adUnits, contextData, listener)
+
+        assertThat(queuedTasks).isEmpty()
+        assertThat(sender.pendingTaskAdUnits).containsExactlyElementsOf(adUnits)
+
+        userAgentFuture.complete("myUserAgent")
+        queuedTasks.forEach { it.run() }
+
+        verify(api).loadCdb(request, "myUserAgent")
+        assertThat(sender.pendingTaskAdUnits).isEmpty()
+    }
+
     @Test
     fun sendBidRequest_GivenExecutor_IsWorkingInExecutor() {
         val executor = DirectMockExecutor()
@@ -233,10 +327,12 @@ class BidRequestSenderTest {
 
         val adUnit = createAdUnit()
 
-        sender.sendBidRequest(listOf(adUnit), mock(), mock())
-        sender.sendBidRequest(listOf(adUnit), mock(), mock())
+        val isFirstSent = sender.sendBidRequest(listOf(adUnit), mock(), mock())
+        val isSecondSent = sender.sendBidRequest(listOf(adUnit), mock(), mock())
 
         verify(executor, times(1)).execute(any())
+        assertThat(isFirstSent).isTrue()
+        assertThat(isSecondSent).isFalse()
     }
 
     @Test
@@ -333,6 +429,291 @@ class BidRequestSenderTest {
         assertThat(bothCallsAreInterrupted.await(1, TimeUnit.SECONDS)).isTrue()
     }
 
+    @Test
+    fun sendBidRequest_GivenCoalescingWindow_HoldRequestsUntilEndOfWindow() {
+        givenCoalescingWindow(50)
+        val flushTask = captureFlushTask()
+        givenRequestFactoryCreatingSlotsWithPlacementIdAsImpressionId()
+
+        sender.sendBidRequest(listOf(createAdUnit()), ContextData(), mock())
+        sender.sendBidRequest(listOf(createAdUnit()), ContextData(), mock())
+
+        verify(scheduledExecutorService, times(1)).schedule(any<Runnable>(), eq(50L), eq(TimeUnit.MILLISECONDS))
+        verifyZeroInteractions(api)
+
+        flushTask().run()
+
+        verify(api, times(1)).loadCdb(any(), any())
+    }
+
+    @Test
+    fun sendBidRequest_GivenCoalescingWindowAndSameContext_MergeRequestsAndDispatchSlotsToEachListener() {
+        givenCoalescingWindow(50)
+        val flushTask = captureFlushTask()
+        val adUnit1 = createAdUnit()
+        val adUnit2 = createAdUnit()
+        val adUnit3 = createAdUnit()
+        val listener1: CdbCallListener = mock()
+        val listener2: CdbCallListener = mock()
+        givenRequestFactoryCreatingSlotsWithPlacementIdAsImpressionId()
+
+        val slot1 = CdbResponseSlot(impressionId = adUnit1.placementId)
+        val slot2 = CdbResponseSlot(impressionId = adUnit2.placementId)
+        val slot3 = CdbResponseSlot(impressionId = adUnit3.placementId)
+        whenever(api.loadCdb(any(), any())).doReturn(CdbResponse(listOf(slot3, slot2, slot1), 42, true))
+
+        sender.sendBidRequest(listOf(adUnit1), ContextData(), listener1)
+        sender.sendBidRequest(listOf(adUnit2, adUnit3), ContextData(), listener2)
+        flushTask().run()
+
+        verify(cdbRequestFactory).createRequest(listOf(adUnit1, adUnit2, adUnit3), ContextData())
+
+        argumentCaptor<CdbRequest> {
+            verify(listener1).onCdbRequest(capture())
+            assertThat(lastValue.slots.map { it.impressionId }).containsExactly(adUnit1.placementId)
+        }
+        argumentCaptor<CdbRequest> {
+            verify(listener2).onCdbRequest(capture())
+            assertThat(lastValue.slots.map { it.impressionId }).containsExactly(
+                adUnit2.placementId,
+                adUnit3.placementId
+            )
+        }
+
+        argumentCaptor<CdbResponse> {
+            verify(listener1).onCdbResponse(any(), capture())
+            assertThat(lastValue.slots).containsExactly(slot1)
+            assertThat(lastValue.timeToNextCall).isEqualTo(42)
+            assertThat(lastValue.consentGiven).isTrue()
+        }
+        argumentCaptor<CdbResponse> {
+            verify(listener2).onCdbResponse(any(), capture())
+            assertThat(lastValue.slots).containsExactly(slot3, slot2)
+        }
+        assertThat(sender.pendingTaskAdUnits).isEmpty()
+    }
+
+    @Test
+    fun sendBidRequest_GivenCoalescingWindowAndError_NotifyAllListeners() {
+        givenCoalescingWindow(50)
+        val flushTask = captureFlushTask()
+        val listener1: CdbCallListener = mock()
+        val listener2: CdbCallListener = mock()
+        val exception = IOException()
+        givenRequestFactoryCreatingSlotsWithPlacementIdAsImpressionId()
+        whenever(api.loadCdb(any(), any())).doThrow(exception)
+
+        sender.sendBidRequest(listOf(createAdUnit()), ContextData(), listener1)
+        sender.sendBidRequest(listOf(createAdUnit()), ContextData(), listener2)
+        flushTask().run()
+
+        verify(listener1).onCdbError(any(), eq(exception))
+        verify(listener2).onCdbError(any(), eq(exception))
+        assertThat(sender.pendingTaskAdUnits).isEmpty()
+    }
+
+    @Test
+    fun sendBidRequest_GivenCoalescingWindowAndDifferentContexts_SendOneCallPerContext() {
+        givenCoalescingWindow(50)
+        val flushTask = captureFlushTask()
+        val adUnit1 = createAdUnit()
+        val adUnit2 = createAdUnit()
+        val contextData1 = ContextData().set("key", "value1")
+        val contextData2 = ContextData().set("key", "value2")
+        givenRequestFactoryCreatingSlotsWithPlacementIdAsImpressionId()
+
+        sender.sendBidRequest(listOf(adUnit1), contextData1, mock())
+        sender.sendBidRequest(listOf(adUnit2), contextData2, mock())
+        flushTask().run()
+
+        verify(cdbRequestFactory).createRequest(listOf(adUnit1), contextData1)
+        verify(cdbRequestFactory).createRequest(listOf(adUnit2), contextData2)
+    }
+
+    @Test
+    fun sendBidRequest_GivenCoalescingWindowAndPendingAdUnit_ExecuteOnlyNewOnes() {
+        givenCoalescingWindow(50)
+        val flushTask = captureFlushTask()
+        val adUnit = createAdUnit()
+        val otherAdUnit = createAdUnit()
+        givenRequestFactoryCreatingSlotsWithPlacementIdAsImpressionId()
+
+        sender.sendBidRequest(listOf(adUnit), ContextData(), mock())
+        sender.sendBidRequest(listOf(adUnit, otherAdUnit), ContextData(), mock())
+
+        assertThat(sender.pendingTaskAdUnits).containsExactlyInAnyOrder(adUnit, otherAdUnit)
+
+        flushTask().run()
+
+        verify(cdbRequestFactory).createRequest(listOf(adUnit, otherAdUnit), ContextData())
+    }
+
+    @Test
+    fun cancelAllPendingTasks_GivenCoalescingWindow_CancelTheWindow() {
+        givenCoalescingWindow(50)
+        val scheduledFuture: ScheduledFuture<*> = mock()
+        val flushTask = captureFlushTask(scheduledFuture)
+
+        sender.sendBidRequest(listOf(createAdUnit()), ContextData(), mock())
+        sender.cancelAllPendingTasks()
+        flushTask().run()
+
+        verify(scheduledFuture).cancel(true)
+        verify(api, never()).loadCdb(any(), any())
+        assertThat(sender.pendingTaskAdUnits).isEmpty()
+    }
+
+    @Test
+    fun sendBidRequest_GivenAsyncRequestAndSuccessfulResponse_KeepAdUnitPendingUntilResponse() {
+        whenever(config.isAsyncBidRequestEnabled).doReturn(true)
+        val cdbCallback = captureCdbCallback()
+        val adUnit = createAdUnit()
+        val listener: CdbCallListener = mock()
+        val request: CdbRequest = mock()
+        val response = CdbResponse(listOf(CdbResponseSlot()), 0, null)
+        whenever(cdbRequestFactory.createRequest(any(), any())).doReturn(request)
+        whenever(clock.currentTimeInMillis).doReturn(42L)
+
+        sender.sendBidRequest(listOf(adUnit), ContextData(), listener)
+
+        verify(listener).onCdbRequest(request)
+        verify(listener, never()).onCdbResponse(any(), any())
+        assertThat(sender.pendingTaskAdUnits).containsExactly(adUnit)
+
+        cdbCallback().onSuccess(response)
+
+        verify(listener).onCdbResponse(request, response)
+        assertThat(response.slots[0].timeOfDownload).isEqualTo(42L)
+        assertThat(sender.pendingTaskAdUnits).isEmpty()
+        verify(api, never()).loadCdb(any(), any())
+    }
+
+    @Test
+    fun sendBidRequest_GivenAsyncRequestAndError_NotifyListenerAndReleaseAdUnit() {
+        whenever(config.isAsyncBidRequestEnabled).doReturn(true)
+        val cdbCallback = captureCdbCallback()
+        val listener: CdbCallListener = mock()
+        val request: CdbRequest = mock()
+        val exception = IOException()
+        whenever(cdbRequestFactory.createRequest(any(), any())).doReturn(request)
+
+        sender.sendBidRequest(listOf(createAdUnit()), ContextData(), listener)
+        cdbCallback().onFailure(exception)
+
+        verify(listener).onCdbError(request, exception)
+        assertThat(sender.pendingTaskAdUnits).isEmpty()
+    }
+
+    @Test
+    fun sendBidRequest_GivenAsyncRequestAndListenerError_StillReleaseAdUnit() {
+        whenever(config.isAsyncBidRequestEnabled).doReturn(true)
+        val cdbCallback = captureCdbCallback()
+        val listener: CdbCallListener = mock()
+        whenever(cdbRequestFactory.createRequest(any(), any())).doReturn(mock())
+        doThrow(IllegalStateException()).whenever(listener).onCdbError(any(), any())
+
+        sender.sendBidRequest(listOf(createAdUnit()), ContextData(), listener)
+
+        // Depending on the build, the error is either logged or rethrown
+        runCatching { cdbCallback().onFailure(IOException()) }
+
+        assertThat(sender.pendingTaskAdUnits).isEmpty()
+    }
+
+    @Test
+    fun sendBidRequest_GivenAsyncRequestAndCoalescingWindow_DispatchResponseToAllListeners() {
+        whenever(config.isAsyncBidRequestEnabled).doReturn(true)
+        givenCoalescingWindow(50)
+        val flushTask = captureFlushTask()
+        val cdbCallback = captureCdbCallback()
+        val adUnit1 = createAdUnit()
+        val adUnit2 = createAdUnit()
+        val listener1: CdbCallListener = mock()
+        val listener2: CdbCallListener = mock()
+        givenRequestFactoryCreatingSlotsWithPlacementIdAsImpressionId()
+
+        sender.sendBidRequest(listOf(adUnit1), ContextData(), listener1)
+        sender.sendBidRequest(listOf(adUnit2), ContextData(), listener2)
+        flushTask().run()
+
+        assertThat(sender.pendingTaskAdUnits).containsExactlyInAnyOrder(adUnit1, adUnit2)
+
+        val slot1 = CdbResponseSlot(impressionId = adUnit1.placementId)
+        val slot2 = CdbResponseSlot(impressionId = adUnit2.placementId)
+        cdbCallback().onSuccess(CdbResponse(listOf(slot1, slot2), 0, null))
+
+        argumentCaptor<CdbResponse> {
+            verify(listener1).onCdbResponse(any(), capture())
+            assertThat(lastValue.slots).containsExactly(slot1)
+        }
+        argumentCaptor<CdbResponse> {
+            verify(listener2).onCdbResponse(any(), capture())
+            assertThat(lastValue.slots).containsExactly(slot2)
+        }
+        assertThat(sender.pendingTaskAdUnits).isEmpty()
+    }
+
+    @Test
+    fun splitIntoChunks_GivenManyRequests_GroupThemByContextWithinChunkSize() {
+        val contextData1 = ContextData().set("key", "value1")
+        val contextData2 = ContextData().set("key", "value2")
+        val request1 = PendingBidRequest(createAdUnits(5), contextData1, mock())
+        val request2 = PendingBidRequest(createAdUnits(1), contextData2, mock())
+        val request3 = PendingBidRequest(createAdUnits(3), contextData1, mock())
+        val request4 = PendingBidRequest(createAdUnits(3), contextData1, mock())
+        val request5 = PendingBidRequest(createAdUnits(10), contextData1, mock())
+
+        val chunks = BidRequestSender.splitIntoChunks(listOf(request1, request2, request3, request4, request5))
+
+        assertThat(chunks).containsExactly(
+            listOf(request1, request3),
+            listOf(request4),
+            listOf(request5),
+            listOf(request2)
+        )
+    }
+
+    private fun givenCoalescingWindow(windowInMillis: Int) {
+        whenever(config.bidRequestCoalescingWindowInMillis).doReturn(windowInMillis)
+    }
+
+    private fun captureFlushTask(scheduledFuture: ScheduledFuture<*> = mock()): () -> Runnable {
+        var flushTask: Runnable? = null
+        doAnswer {
+            flushTask = it.getArgument(0)
+            scheduledFuture
+        }.whenever(scheduledExecutorService).schedule(any<Runnable>(), any(), any())
+        return { flushTask!! }
+    }
+
+    private fun captureCdbCallback(): () -> PubSdkApi.CdbCallback {
+        var cdbCallback: PubSdkApi.CdbCallback? = null
+        doAnswer {
+            cdbCallback = it.getArgument(2)
+            null
+        }.whenever(api).loadCdbAsync(any(), any(), any())
+        return { cdbCallback!! }
+    }
+
+    private fun givenRequestFactoryCreatingSlotsWithPlacementIdAsImpressionId() {
+        whenever(cdbRequestFactory.createRequest(any(), any())).doAnswer {
+            val adUnits: List<CacheAdUnit> = it.getArgument(0)
+            CdbRequest.create(
+                "requestId",
+                mock(),
+                mock(),
+                "1.2.3",
+                42,
+                null,
+                adUnits.map { adUnit ->
+                    CdbRequestSlot.create(adUnit.placementId, adUnit.placementId, adUnit.adUnitType, adUnit.size)
+                }
+            )
+        }
+    }
+
+    private fun createAdUnits(count: Int) = List(count) { createAdUnit() }
+
     private fun createAdUnit(): CacheAdUnit {
         val id = "id" + adUnitId.incrementAndGet()
         return CacheAdUnit(AdSize(1, 2), id, CRITEO_BANNER)
@@ -0,0 +1,200 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import com.criteo.publisher.Clock
+import com.criteo.publisher.context.ContextProvider
+import com.criteo.publisher.model.CdbRequest
+import com.criteo.publisher.util.BuildConfigWrapper
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.whenever
+import java.io.IOException
+
+class CdbLatencyEstimatorTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var clock: Clock
+
+  @Mock
+  private lateinit var contextProvider: ContextProvider
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  private var now = 1_000_000L
+
+  private var connectionType: Int? = WIFI
+
+  private var requestId = 0
+
+  private lateinit var estimator: CdbLatencyEstimator
+
+  @Before
+  fun setUp() {
+    whenever(clock.currentTimeInMillis).doAnswer { now }
+    whenever(contextProvider.fetchDeviceConnectionType()).doAnswer { connectionType }
+    whenever(buildConfigWrapper.networkTimeoutInMillis).doReturn(NETWORK_TIMEOUT_IN_MILLIS)
+
+    estimator = CdbLatencyEstimator(clock, contextProvider, buildConfigWrapper)
+  }
+
+  @Test
+  fun estimateLatencyInMillis_GivenNotEnoughObservations_ReturnNull() {
+    repeat(CdbLatencyEstimator.MIN_OBSERVATIONS - 1) {
+      givenCallWithLatency(100)
+    }
+
+    assertThat(estimator.estimateLatencyInMillis(0.5)).isNull()
+  }
+
+  @Test
+  fun estimateLatencyInMillis_GivenObservations_ReturnUpperBoundOfQuantileBucket() {
+    repeat(18) { givenCallWithLatency(90) }
+    repeat(2) { givenCallWithLatency(1_900) }
+
+    assertThat(estimator.estimateLatencyInMillis(0.5)).isEqualTo(100L)
+    assertThat(estimator.estimateLatencyInMillis(0.99)).isEqualTo(2_000L)
+  }
+
+  @Test
+  fun estimateLatencyInMillis_GivenVerySlowCalls_ReturnOverflowLatency() {
+    repeat(10) { givenCallWithLatency(60_000) }
+
+    assertThat(estimator.estimateLatencyInMillis(0.5))
+        .isEqualTo(CdbLatencyEstimator.OVERFLOW_LATENCY_IN_MILLIS)
+  }
+
+  @Test
+  fun estimateLatencyInMillis_GivenNetworkGettingFaster_ForgetOlderObservations() {
+    repeat(50) { givenCallWithLatency(5_000) }
+    repeat(50) { givenCallWithLatency(180) }
+
+    assertThat(estimator.estimateLatencyInMillis(0.5)).isEqualTo(200L)
+  }
+
+  @Test
+  fun estimateLatencyInMillis_GivenOtherConnectionType_DoNotMixObservations() {
+    connectionType = WIFI
+    repeat(10) { givenCallWithLatency(90) }
+
+    connectionType = CELLULAR_3G
+    repeat(10) { givenCallWithLatency(2_500) }
+
+    connectionType = null
+    assertThat(estimator.estimateLatencyInMillis(0.5)).isNull()
+
+    connectionType = WIFI
+    assertThat(estimator.estimateLatencyInMillis(0.5)).isEqualTo(100L)
+
+    connectionType = CELLULAR_3G
+    assertThat(estimator.estimateLatencyInMillis(0.5)).isEqualTo(3_000L)
+  }
+
+  @Test
+  fun onCdbCallFailed_GivenStartedCall_RecordItsLatency() {
+    repeat(10) {
+      val request = givenRequest()
+      estimator.onCdbCallStarted(request)
+      now += 450
+      estimator.onCdbCallFailed(request, IOException())
+    }
+
+    assertThat(estimator.estimateLatencyInMillis(0.5)).isEqualTo(600L)
+  }
+
+  @Test
+  fun onCdbCallFailed_GivenFastFailures_IgnoreThem() {
+    listOf(HttpResponseException(400), CircuitBreakerOpenException("/inapp/v2"), RuntimeException())
+        .forEach { exception ->
+          repeat(5) {
+            val request = givenRequest()
+            estimator.onCdbCallStarted(request)
+            now += 10
+            estimator.onCdbCallFailed(request, exception)
+          }
+        }
+
+    assertThat(estimator.estimateLatencyInMillis(0.5)).isNull()
+  }
+
+  @Test
+  fun onCdbCallStarted_GivenTooManyCallsNeverEnded_EvictTimedOutOnes() {
+    repeat(CdbLatencyEstimator.MAX_STARTED_CALLS) {
+      estimator.onCdbCallStarted(givenRequest())
+    }
+
+    now += NETWORK_TIMEOUT_IN_MILLIS + 1L
+    repeat(10) { givenCallWithLatency(90) }
+
+    assertThat(estimator.estimateLatencyInMillis(0.5)).isEqualTo(100L)
+  }
+
+  @Test
+  fun onCdbCallFinished_GivenSameRequestEndedTwice_RecordItOnlyOnce() {
+    repeat(CdbLatencyEstimator.MIN_OBSERVATIONS - 1) {
+      val request = givenRequest()
+      estimator.onCdbCallStarted(request)
+      estimator.onCdbCallStarted(request)
+      now += 100
+      estimator.onCdbCallFinished(request, mock())
+      estimator.onCdbCallFinished(request, mock())
+    }
+
+    assertThat(estimator.estimateLatencyInMillis(0.5)).isNull()
+  }
+
+  @Test
+  fun onCdbCallFinished_GivenNotStartedCall_IgnoreIt() {
+    repeat(10) {
+      estimator.onCdbCallFinished(givenRequest(), mock())
+    }
+
+    assertThat(estimator.estimateLatencyInMillis(0.5)).isNull()
+  }
+
+  private fun givenCallWithLatency(latencyInMillis: Long) {
+    val request = givenRequest()
+    estimator.onCdbCallStarted(request)
+    now += latencyInMillis
+    estimator.onCdbCallFinished(request, mock())
+  }
+
+  private fun givenRequest(): CdbRequest {
+    val id = "request${requestId++}"
+    return mock {
+      on { it.id } doReturn id
+    }
+  }
+
+  private companion object {
+    const val WIFI = 2
+    const val CELLULAR_3G = 5
+    const val NETWORK_TIMEOUT_IN_MILLIS = 10_000
+  }
+}
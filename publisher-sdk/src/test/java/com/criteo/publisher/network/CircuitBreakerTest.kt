@@ -0,0 +1,206 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import com.criteo.publisher.Clock
+import com.criteo.publisher.model.Config
+import com.criteo.publisher.network.CircuitBreaker.Companion.INITIAL_RETRY_DELAY_IN_MILLIS
+import com.criteo.publisher.network.CircuitBreaker.Companion.MAX_RETRY_DELAY_IN_MILLIS
+import com.criteo.publisher.network.CircuitBreaker.State
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.whenever
+import java.util.Random
+
+class CircuitBreakerTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var clock: Clock
+
+  @Mock
+  private lateinit var config: Config
+
+  @Mock
+  private lateinit var random: Random
+
+  private var now = 1_000_000L
+
+  private var jitter = 0.0
+
+  private lateinit var circuitBreaker: CircuitBreaker
+
+  @Before
+  fun setUp() {
+    whenever(clock.currentTimeInMillis).doAnswer { now }
+    whenever(random.nextDouble()).doAnswer { jitter }
+    whenever(config.circuitBreakerFailureThreshold).doReturn(3)
+
+    circuitBreaker = CircuitBreaker(clock, config, random)
+  }
+
+  @Test
+  fun getState_GivenNoCall_ReturnClosed() {
+    assertThat(circuitBreaker.getState(PATH)).isEqualTo(State.CLOSED)
+    assertThat(circuitBreaker.isCallPermitted(PATH)).isTrue()
+    assertThat(circuitBreaker.tryAcquirePermission(PATH)).isTrue()
+  }
+
+  @Test
+  fun onFailure_GivenFailuresInterruptedBySuccess_StayClosed() {
+    givenFailedCalls(2)
+    circuitBreaker.onSuccess(PATH)
+    givenFailedCalls(2)
+
+    assertThat(circuitBreaker.getState(PATH)).isEqualTo(State.CLOSED)
+    assertThat(circuitBreaker.tryAcquirePermission(PATH)).isTrue()
+  }
+
+  @Test
+  fun onFailure_GivenThresholdConsecutiveFailures_OpenAndRejectCalls() {
+    givenFailedCalls(3)
+
+    assertThat(circuitBreaker.getState(PATH)).isEqualTo(State.OPEN)
+    assertThat(circuitBreaker.isCallPermitted(PATH)).isFalse()
+    assertThat(circuitBreaker.tryAcquirePermission(PATH)).isFalse()
+  }
+
+  @Test
+  fun onFailure_GivenOpenCircuitOnOtherPath_DoNotRejectCalls() {
+    givenFailedCalls(3)
+
+    assertThat(circuitBreaker.getState(OTHER_PATH)).isEqualTo(State.CLOSED)
+    assertThat(circuitBreaker.tryAcquirePermission(OTHER_PATH)).isTrue()
+  }
+
+  @Test
+  fun onFailure_GivenDisabledCircuitBreaker_NeverRejectCalls() {
+    whenever(config.circuitBreakerFailureThreshold).doReturn(0)
+
+    givenFailedCalls(10)
+
+    assertThat(circuitBreaker.getState(PATH)).isEqualTo(State.CLOSED)
+    assertThat(circuitBreaker.tryAcquirePermission(PATH)).isTrue()
+  }
+
+  @Test
+  fun tryAcquirePermission_GivenElapsedRetryDelay_PermitASingleTrial() {
+    givenFailedCalls(3)
+    now += INITIAL_RETRY_DELAY_IN_MILLIS / 2
+
+    assertThat(circuitBreaker.getState(PATH)).isEqualTo(State.HALF_OPEN)
+    assertThat(circuitBreaker.isCallPermitted(PATH)).isTrue()
+    assertThat(circuitBreaker.tryAcquirePermission(PATH)).isTrue()
+
+    assertThat(circuitBreaker.getState(PATH)).isEqualTo(State.HALF_OPEN)
+    assertThat(circuitBreaker.isCallPermitted(PATH)).isFalse()
+    assertThat(circuitBreaker.tryAcquirePermission(PATH)).isFalse()
+  }
+
+  @Test
+  fun onSuccess_GivenTrial_CloseCircuit() {
+    givenFailedCalls(3)
+    now += INITIAL_RETRY_DELAY_IN_MILLIS
+    circuitBreaker.tryAcquirePermission(PATH)
+
+    circuitBreaker.onSuccess(PATH)
+
+    assertThat(circuitBreaker.getState(PATH)).isEqualTo(State.CLOSED)
+    assertThat(circuitBreaker.tryAcquirePermission(PATH)).isTrue()
+    assertThat(circuitBreaker.tryAcquirePermission(PATH)).isTrue()
+  }
+
+  @Test
+  fun onFailure_GivenFailedTrial_ReopenForLongerDelay() {
+    givenFailedCalls(3)
+    now += INITIAL_RETRY_DELAY_IN_MILLIS / 2
+    circuitBreaker.tryAcquirePermission(PATH)
+
+    circuitBreaker.onFailure(PATH)
+
+    now += INITIAL_RETRY_DELAY_IN_MILLIS - 1
+    assertThat(circuitBreaker.getState(PATH)).isEqualTo(State.OPEN)
+    assertThat(circuitBreaker.tryAcquirePermission(PATH)).isFalse()
+
+    now += 1
+    assertThat(circuitBreaker.getState(PATH)).isEqualTo(State.HALF_OPEN)
+    assertThat(circuitBreaker.tryAcquirePermission(PATH)).isTrue()
+  }
+
+  @Test
+  fun onFailure_GivenCallStartedBeforeOpeningThatFails_DoNotExtendDelay() {
+    givenFailedCalls(3)
+
+    circuitBreaker.onFailure(PATH)
+
+    now += INITIAL_RETRY_DELAY_IN_MILLIS / 2
+    assertThat(circuitBreaker.getState(PATH)).isEqualTo(State.HALF_OPEN)
+  }
+
+  @Test
+  fun onIgnored_GivenTrial_PermitAnotherTrial() {
+    givenFailedCalls(3)
+    now += INITIAL_RETRY_DELAY_IN_MILLIS
+    circuitBreaker.tryAcquirePermission(PATH)
+
+    circuitBreaker.onIgnored(PATH)
+
+    assertThat(circuitBreaker.getState(PATH)).isEqualTo(State.HALF_OPEN)
+    assertThat(circuitBreaker.tryAcquirePermission(PATH)).isTrue()
+  }
+
+  @Test
+  fun computeRetryDelayInMillis_GivenJitter_ReturnBetweenHalfAndFullBackoff() {
+    jitter = 0.0
+    assertThat(circuitBreaker.computeRetryDelayInMillis(0)).isEqualTo(INITIAL_RETRY_DELAY_IN_MILLIS / 2)
+    assertThat(circuitBreaker.computeRetryDelayInMillis(2)).isEqualTo(INITIAL_RETRY_DELAY_IN_MILLIS * 2)
+
+    jitter = 0.5
+    assertThat(circuitBreaker.computeRetryDelayInMillis(0)).isEqualTo(INITIAL_RETRY_DELAY_IN_MILLIS * 3 / 4)
+    assertThat(circuitBreaker.computeRetryDelayInMillis(1)).isEqualTo(INITIAL_RETRY_DELAY_IN_MILLIS * 3 / 2)
+  }
+
+  @Test
+  fun computeRetryDelayInMillis_GivenManyFailedTrials_ReturnAtMostMaxDelay() {
+    jitter = 0.999
+
+    assertThat(circuitBreaker.computeRetryDelayInMillis(10)).isLessThanOrEqualTo(MAX_RETRY_DELAY_IN_MILLIS)
+    assertThat(circuitBreaker.computeRetryDelayInMillis(1_000)).isLessThanOrEqualTo(MAX_RETRY_DELAY_IN_MILLIS)
+    assertThat(circuitBreaker.computeRetryDelayInMillis(1_000)).isGreaterThan(MAX_RETRY_DELAY_IN_MILLIS / 2)
+  }
+
+  private fun givenFailedCalls(count: Int) {
+    repeat(count) {
+      circuitBreaker.tryAcquirePermission(PATH)
+      circuitBreaker.onFailure(PATH)
+    }
+  }
+
+  private companion object {
+    const val PATH = "/inapp/v2"
+    const val OTHER_PATH = "/csm"
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import com.criteo.publisher.model.Config
+import com.criteo.publisher.util.BuildConfigWrapper
+import okhttp3.OkHttpClient
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.tls.HandshakeCertificates
+import okhttp3.tls.HeldCertificate
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.argThat
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.doThrow
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.verifyZeroInteractions
+import org.mockito.kotlin.whenever
+import java.io.IOException
+import java.net.InetAddress
+import java.net.URL
+import java.util.concurrent.Executor
+
+class ConnectionPrewarmerTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  @Mock
+  private lateinit var config: Config
+
+  @Mock
+  private lateinit var networkMetrics: NetworkMetrics
+
+  private val mockWebServer = MockWebServer()
+
+  private val executor = Executor { it.run() }
+
+  @Before
+  fun setUp() {
+    whenever(buildConfigWrapper.cdbUrl).doReturn("https://cdb.example.com")
+    whenever(buildConfigWrapper.eventUrl).doReturn("https://event.example.com")
+    whenever(buildConfigWrapper.networkTimeoutInMillis).doReturn(5_000)
+    whenever(config.isConnectionPrewarmingEnabled).doReturn(true)
+  }
+
+  @After
+  fun tearDown() {
+    mockWebServer.shutdown()
+  }
+
+  @Test
+  fun prewarmAsync_GivenTlsServer_NextCallReuseConnectionAndRecordDuration() {
+    val localhostCertificate = HeldCertificate.Builder()
+        .addSubjectAlternativeName(InetAddress.getByName("localhost").canonicalHostName)
+        .build()
+    val serverCertificates = HandshakeCertificates.Builder()
+        .heldCertificate(localhostCertificate)
+        .build()
+    val clientCertificates = HandshakeCertificates.Builder()
+        .addTrustedCertificate(localhostCertificate.certificate)
+        .build()
+
+    mockWebServer.useHttps(serverCertificates.sslSocketFactory(), false)
+    mockWebServer.enqueue(MockResponse().setResponseCode(404))
+    mockWebServer.enqueue(MockResponse().setBody("{}"))
+    mockWebServer.start()
+
+    val url = mockWebServer.url("/").toString().removeSuffix("/")
+    whenever(buildConfigWrapper.cdbUrl).doReturn(url)
+    whenever(buildConfigWrapper.eventUrl).doReturn(url)
+    val transport = OkHttpTransport(
+        OkHttpClient.Builder()
+            .sslSocketFactory(clientCertificates.sslSocketFactory(), clientCertificates.trustManager)
+    )
+    val metrics = NetworkMetrics(mock())
+    val prewarmer = ConnectionPrewarmer(buildConfigWrapper, transport, config, metrics, executor)
+
+    prewarmer.prewarmAsync()
+    transport.open(URL("$url/inapp/v2"), "GET", 5_000).inputStream.use { it.readBytes() }
+
+    val prewarmingRequest = mockWebServer.takeRequest()
+    assertThat(prewarmingRequest.method).isEqualTo("HEAD")
+    assertThat(prewarmingRequest.sequenceNumber).isEqualTo(0)
+    assertThat(mockWebServer.takeRequest().sequenceNumber).isEqualTo(1)
+    assertThat(mockWebServer.requestCount).isEqualTo(2)
+    assertThat(transport.newConnectionCount).isEqualTo(1)
+    assertThat(transport.reusedConnectionCount).isEqualTo(1)
+    val connectDuration = metrics.getSnapshot(
+        metrics.getPrewarmingPath(URL(url).host),
+        NetworkMetrics.Measure.CONNECT_DURATION_IN_MILLIS
+    )
+    assertThat(connectDuration!!.count).isEqualTo(1)
+  }
+
+  @Test
+  fun prewarmAsync_GivenDifferentHosts_PrewarmEachOfThem() {
+    val transport = mock<HttpTransport>()
+    val prewarmer = ConnectionPrewarmer(buildConfigWrapper, transport, config, networkMetrics, executor)
+
+    prewarmer.prewarmAsync()
+
+    verify(transport).preconnect(argThat { host == "cdb.example.com" }, eq(5_000))
+    verify(transport).preconnect(argThat { host == "event.example.com" }, eq(5_000))
+  }
+
+  @Test
+  fun prewarmAsync_GivenErrorOnFirstHost_StillPrewarmOtherHost() {
+    val transport = mock<HttpTransport>()
+    doThrow(IOException()).whenever(transport).preconnect(argThat { host == "cdb.example.com" }, any())
+    whenever(transport.preconnect(argThat { host == "event.example.com" }, any())).doReturn(42L)
+    val prewarmer = ConnectionPrewarmer(buildConfigWrapper, transport, config, networkMetrics, executor)
+
+    prewarmer.prewarmAsync()
+
+    verify(transport).preconnect(argThat { host == "event.example.com" }, eq(5_000))
+    verify(networkMetrics).onConnectionPrewarmed("event.example.com", 42L)
+    verify(networkMetrics, never()).onConnectionPrewarmed(eq("cdb.example.com"), any())
+  }
+
+  @Test
+  fun prewarmAsync_GivenUnknownConnectDuration_DoNotRecordIt() {
+    val transport = mock<HttpTransport>()
+    whenever(transport.preconnect(any(), any())).doReturn(-1L)
+    val prewarmer = ConnectionPrewarmer(buildConfigWrapper, transport, config, networkMetrics, executor)
+
+    prewarmer.prewarmAsync()
+
+    verify(networkMetrics, never()).onConnectionPrewarmed(any(), any())
+  }
+
+  @Test
+  fun prewarmAsync_GivenDisabledPrewarming_DoNothing() {
+    whenever(config.isConnectionPrewarmingEnabled).doReturn(false)
+    val transport = mock<HttpTransport>()
+    val prewarmer = ConnectionPrewarmer(buildConfigWrapper, transport, config, networkMetrics, executor)
+
+    prewarmer.prewarmAsync()
+
+    verifyZeroInteractions(transport)
+  }
+
+  @Test
+  fun prewarmAsync_GivenKillSwitchEngaged_DoNothing() {
+    whenever(config.isKillSwitchEnabled).doReturn(true)
+    val transport = mock<HttpTransport>()
+    val prewarmer = ConnectionPrewarmer(buildConfigWrapper, transport, config, networkMetrics, executor)
+
+    prewarmer.prewarmAsync()
+
+    verify(transport, never()).preconnect(any(), any())
+  }
+}
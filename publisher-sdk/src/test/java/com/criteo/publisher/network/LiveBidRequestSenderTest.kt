@@ -19,22 +19,46 @@ package com.criteo.publisher.network
 import com.criteo.publisher.Clock
 import com.criteo.publisher.LiveCdbCallListener
 import com.criteo.publisher.context.ContextData
+import com.criteo.publisher.context.ContextProvider
 import com.criteo.publisher.model.CacheAdUnit
+import com.criteo.publisher.model.AdSize
 import com.criteo.publisher.model.CdbRequest
 import com.criteo.publisher.model.CdbRequestFactory
 import com.criteo.publisher.model.CdbResponse
 import com.criteo.publisher.model.Config
+import com.criteo.publisher.util.AdUnitType.CRITEO_BANNER
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.criteo.publisher.util.CompletableFuture.completedFuture
+import com.criteo.publisher.util.JsonSerializer
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.SocketPolicy
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
 import org.junit.Rule
 import org.junit.Test
 import org.mockito.ArgumentMatchers.any
+import org.mockito.ArgumentMatchers.anyDouble
 import org.mockito.ArgumentMatchers.eq
 import org.mockito.Mock
 import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
 import org.mockito.kotlin.verify
 import org.mockito.kotlin.whenever
+import java.io.OutputStream
+import java.util.Random
+import java.util.concurrent.CountDownLatch
 import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
-import java.util.concurrent.Future
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
 
 class LiveBidRequestSenderTest {
 
@@ -67,15 +91,25 @@ class LiveBidRequestSenderTest {
   private lateinit var cdbResponse: CdbResponse
 
   @Mock
-  private lateinit var userAgentFuture: Future<String>
+  private lateinit var clock: Clock
 
   @Mock
-  private lateinit var clock: Clock
+  private lateinit var latencyEstimator: CdbLatencyEstimator
+
+  @Rule
+  @JvmField
+  val mockWebServer = MockWebServer()
+
+  private val executorsToShutdown = mutableListOf<ExecutorService>()
+
+  @After
+  fun tearDown() {
+    executorsToShutdown.forEach { it.shutdownNow() }
+  }
 
   @Test
   fun timeBudgetTimerKicksOff_ThenTimeBudgetExceededTrigger() {
-    whenever(cdbRequestFactory.userAgent).thenReturn(userAgentFuture)
-    whenever(userAgentFuture.get()).thenReturn("fake_user_agent")
+    whenever(cdbRequestFactory.userAgent).thenReturn(completedFuture("fake_user_agent"))
     whenever(cdbRequestFactory.createRequest(eq(listOf(cacheAdUnit)), eq(contextData))).thenReturn(cdbRequest)
     whenever(pubSdkApi.loadCdb(eq(cdbRequest), any())).thenReturn(cdbResponse)
     whenever(config.liveBiddingTimeBudgetInMillis).thenReturn(1)
@@ -86,7 +120,8 @@ class LiveBidRequestSenderTest {
         clock,
         getDelayedExecutor(config.liveBiddingTimeBudgetInMillis.toLong() + 100),
         getScheduledExecutorService(),
-        config
+        config,
+        latencyEstimator
     )
 
     liveBidRequestSender.sendLiveBidRequest(
@@ -98,6 +133,233 @@ class LiveBidRequestSenderTest {
     verify(liveCdbCallListener).onTimeBudgetExceeded()
   }
 
+  @Test
+  fun sendLiveBidRequest_GivenResponseBeforeTimeBudget_CancelTimeBudgetTimer() {
+    whenever(cdbRequestFactory.userAgent).thenReturn(completedFuture("fake_user_agent"))
+    whenever(cdbRequestFactory.createRequest(any(), any())).thenReturn(cdbRequest)
+    whenever(pubSdkApi.loadCdb(eq(cdbRequest), any())).thenReturn(cdbResponse)
+    whenever(cdbResponse.slots).thenReturn(listOf())
+    givenTimeBudgetBounds(min = 10_000, max = 10_000)
+    val scheduledExecutorService = createScheduledThreadPoolExecutor()
+
+    val callHandle = LiveBidRequestSender(
+        pubSdkApi,
+        cdbRequestFactory,
+        clock,
+        Executor(Runnable::run),
+        scheduledExecutorService,
+        config,
+        latencyEstimator
+    ).sendLiveBidRequest(cacheAdUnit, contextData, liveCdbCallListener)
+
+    verify(liveCdbCallListener).onCdbResponse(cdbRequest, cdbResponse)
+    assertThat(callHandle.isCancelled).isFalse()
+    assertThat(callHandle.timerCount).isZero()
+    assertThat(scheduledExecutorService.queue).isEmpty()
+  }
+
+  @Test
+  fun sendLiveBidRequest_GivenAsyncRequest_EndCallOnlyOnResponse() {
+    whenever(config.isAsyncBidRequestEnabled).thenReturn(true)
+    whenever(cdbRequestFactory.userAgent).thenReturn(completedFuture("fake_user_agent"))
+    whenever(cdbRequestFactory.createRequest(any(), any())).thenReturn(cdbRequest)
+    whenever(cdbResponse.slots).thenReturn(listOf())
+    givenTimeBudgetBounds(min = 10_000, max = 10_000)
+    var cdbCallback: PubSdkApi.CdbCallback? = null
+    doAnswer {
+      cdbCallback = it.getArgument(2)
+      null
+    }.whenever(pubSdkApi).loadCdbAsync(eq(cdbRequest), eq("fake_user_agent"), any())
+    val scheduledExecutorService = createScheduledThreadPoolExecutor()
+
+    val callHandle = LiveBidRequestSender(
+        pubSdkApi,
+        cdbRequestFactory,
+        clock,
+        Executor(Runnable::run),
+        scheduledExecutorService,
+        config,
+        latencyEstimator
+    ).sendLiveBidRequest(cacheAdUnit, contextData, liveCdbCallListener)
+
+    verify(liveCdbCallListener).onCdbRequest(cdbRequest)
+    assertThat(callHandle.timerCount).isEqualTo(1)
+
+    cdbCallback!!.onSuccess(cdbResponse)
+
+    verify(liveCdbCallListener).onCdbResponse(cdbRequest, cdbResponse)
+    assertThat(callHandle.isCancelled).isFalse()
+    assertThat(callHandle.timerCount).isZero()
+    assertThat(scheduledExecutorService.queue).isEmpty()
+  }
+
+  @Test
+  fun sendLiveBidRequest_GivenCallCancelledBeforeStarting_DoNotCallCdb() {
+    val queuedTasks = mutableListOf<Runnable>()
+    givenTimeBudgetBounds(min = 10_000, max = 10_000)
+    whenever(cdbRequestFactory.userAgent).thenReturn(completedFuture(""))
+
+    val callHandle = LiveBidRequestSender(
+        pubSdkApi,
+        cdbRequestFactory,
+        clock,
+        Executor { queuedTasks += it },
+        createScheduledThreadPoolExecutor(),
+        config,
+        latencyEstimator
+    ).sendLiveBidRequest(cacheAdUnit, contextData, liveCdbCallListener)
+
+    callHandle.cancel()
+    queuedTasks.forEach { it.run() }
+
+    assertThat(callHandle.isCancelled).isTrue()
+    assertThat(callHandle.timerCount).isZero()
+    verify(liveCdbCallListener, never()).onCdbRequest(any())
+    verify(pubSdkApi, never()).loadCdb(any(), any())
+  }
+
+  @Test
+  fun sendLiveBidRequest_GivenSustainedTimeouts_ThreadsAndTimersStayFlat() {
+    val buildConfigWrapper = mock<BuildConfigWrapper> {
+      on { cdbUrl } doReturn "http://localhost:${mockWebServer.port}"
+      on { networkTimeoutInMillis } doReturn 60_000
+    }
+    val jsonSerializer = mock<JsonSerializer>()
+    doAnswer {
+      it.getArgument<OutputStream>(1).write("{}".toByteArray())
+    }.whenever(jsonSerializer).write(any(), any())
+    whenever(cdbRequestFactory.userAgent).thenReturn(completedFuture(""))
+    whenever(cdbRequestFactory.createRequest(any(), any())).thenReturn(cdbRequest)
+    givenTimeBudgetBounds(min = 20, max = 20)
+
+    // CDB never answers: without cancellation, each call would hold its thread until the network timeout
+    repeat(WAVE_COUNT * POOL_SIZE) {
+      mockWebServer.enqueue(MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE))
+    }
+
+    val threadPool = ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0, TimeUnit.MILLISECONDS, LinkedBlockingQueue())
+    executorsToShutdown += threadPool
+    val scheduledExecutorService = createScheduledThreadPoolExecutor()
+
+    val sender = LiveBidRequestSender(
+        PubSdkApi(
+            buildConfigWrapper,
+            jsonSerializer,
+            config,
+            UrlConnectionHttpTransport(),
+            CircuitBreaker(mock(), config, Random()),
+            NetworkMetrics(mock()),
+            mock<ContextProvider>()
+        ),
+        cdbRequestFactory,
+        clock,
+        threadPool,
+        scheduledExecutorService,
+        config,
+        latencyEstimator
+    )
+
+    repeat(WAVE_COUNT) {
+      val waveIsDone = CountDownLatch(POOL_SIZE)
+      val listeners = List(POOL_SIZE) {
+        mock<LiveCdbCallListener>().also { listener ->
+          doAnswer { waveIsDone.countDown() }.whenever(listener).onCdbError(any(), any())
+        }
+      }
+
+      val callHandles = listeners.map { listener ->
+        sender.sendLiveBidRequest(CacheAdUnit(AdSize(320, 50), "adUnit", CRITEO_BANNER), contextData, listener)
+      }
+
+      assertThat(waveIsDone.await(5, TimeUnit.SECONDS)).isTrue()
+      listeners.forEach { verify(it, times(1)).onTimeBudgetExceeded() }
+      assertThat(callHandles).allMatch { it.isCancelled && it.timerCount == 0 }
+
+      waitUntil { threadPool.activeCount == 0 && scheduledExecutorService.queue.isEmpty() }
+      assertThat(threadPool.poolSize).isEqualTo(POOL_SIZE)
+    }
+
+    assertThat(threadPool.largestPoolSize).isEqualTo(POOL_SIZE)
+    assertThat(threadPool.completedTaskCount).isEqualTo((WAVE_COUNT * POOL_SIZE).toLong())
+  }
+
+  @Test
+  fun computeTimeBudgetInMillis_GivenUnknownLatency_ReturnMaxTimeBudget() {
+    givenTimeBudgetBounds(min = 500, max = 8_000)
+    whenever(latencyEstimator.estimateLatencyInMillis(anyDouble())).thenReturn(null)
+
+    assertThat(createSender().computeTimeBudgetInMillis()).isEqualTo(8_000L)
+  }
+
+  @Test
+  fun computeTimeBudgetInMillis_GivenKnownLatency_ReturnP95WithMargin() {
+    givenTimeBudgetBounds(min = 500, max = 8_000)
+    whenever(latencyEstimator.estimateLatencyInMillis(0.95)).thenReturn(1_000)
+
+    assertThat(createSender().computeTimeBudgetInMillis()).isEqualTo(1_500L)
+  }
+
+  @Test
+  fun computeTimeBudgetInMillis_GivenVeryLowOrHighLatency_ReturnBudgetWithinBounds() {
+    givenTimeBudgetBounds(min = 500, max = 8_000)
+    val sender = createSender()
+
+    whenever(latencyEstimator.estimateLatencyInMillis(0.95)).thenReturn(50)
+    assertThat(sender.computeTimeBudgetInMillis()).isEqualTo(500L)
+
+    whenever(latencyEstimator.estimateLatencyInMillis(0.95)).thenReturn(32_000)
+    assertThat(sender.computeTimeBudgetInMillis()).isEqualTo(8_000L)
+  }
+
+  @Test
+  fun computeTimeBudgetInMillis_GivenMinGreaterThanMax_ReturnMax() {
+    givenTimeBudgetBounds(min = 9_000, max = 8_000)
+    whenever(latencyEstimator.estimateLatencyInMillis(0.95)).thenReturn(1_000)
+
+    assertThat(createSender().computeTimeBudgetInMillis()).isEqualTo(8_000L)
+  }
+
+  @Test
+  fun isLiveBidExpectedToExceedTimeBudget_GivenUnknownLatency_ReturnFalse() {
+    givenTimeBudgetBounds(min = 500, max = 8_000)
+    whenever(latencyEstimator.estimateLatencyInMillis(anyDouble())).thenReturn(null)
+
+    assertThat(createSender().isLiveBidExpectedToExceedTimeBudget()).isFalse()
+  }
+
+  @Test
+  fun isLiveBidExpectedToExceedTimeBudget_GivenMedianLatencyWithinBudget_ReturnFalse() {
+    givenTimeBudgetBounds(min = 500, max = 8_000)
+    whenever(latencyEstimator.estimateLatencyInMillis(0.5)).thenReturn(3_000)
+    whenever(latencyEstimator.estimateLatencyInMillis(0.95)).thenReturn(12_000)
+
+    assertThat(createSender().isLiveBidExpectedToExceedTimeBudget()).isFalse()
+  }
+
+  @Test
+  fun isLiveBidExpectedToExceedTimeBudget_GivenMedianLatencyAboveBudget_ReturnTrue() {
+    givenTimeBudgetBounds(min = 500, max = 8_000)
+    whenever(latencyEstimator.estimateLatencyInMillis(0.5)).thenReturn(12_000)
+    whenever(latencyEstimator.estimateLatencyInMillis(0.95)).thenReturn(16_000)
+
+    assertThat(createSender().isLiveBidExpectedToExceedTimeBudget()).isTrue()
+  }
+
+  private fun givenTimeBudgetBounds(min: Int, max: Int) {
+    whenever(config.liveBiddingMinTimeBudgetInMillis).thenReturn(min)
+    whenever(config.liveBiddingTimeBudgetInMillis).thenReturn(max)
+  }
+
+  private fun createSender() = LiveBidRequestSender(
+      pubSdkApi,
+      cdbRequestFactory,
+      clock,
+      Executor(Runnable::run),
+      getScheduledExecutorService(),
+      config,
+      latencyEstimator
+  )
+
   private fun getDelayedExecutor(delayInMillis: Long) =
       Executor {
         Thread.sleep(delayInMillis)
@@ -105,4 +367,22 @@ class LiveBidRequestSenderTest {
       }
 
   private fun getScheduledExecutorService() = Executors.newSingleThreadScheduledExecutor()
+
+  private fun createScheduledThreadPoolExecutor() = ScheduledThreadPoolExecutor(1).apply {
+    removeOnCancelPolicy = true
+    executorsToShutdown += this
+  }
+
+  private fun waitUntil(condition: () -> Boolean) {
+    val deadline = System.currentTimeMillis() + 5_000
+    while (!condition()) {
+      assertThat(System.currentTimeMillis()).isLessThan(deadline)
+      Thread.sleep(10)
+    }
+  }
+
+  private companion object {
+    const val POOL_SIZE = 4
+    const val WAVE_COUNT = 10
+  }
 }
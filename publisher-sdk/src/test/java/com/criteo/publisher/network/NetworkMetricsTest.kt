@@ -0,0 +1,182 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import com.criteo.publisher.Clock
+import com.criteo.publisher.network.NetworkMetrics.Companion.DURATION_BUCKET_UPPER_BOUNDS
+import com.criteo.publisher.network.NetworkMetrics.Measure
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.whenever
+import java.lang.management.ManagementFactory
+
+class NetworkMetricsTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var clock: Clock
+
+  private var now = 1_000L
+
+  private lateinit var networkMetrics: NetworkMetrics
+
+  @Before
+  fun setUp() {
+    whenever(clock.currentTimeInMillis).doAnswer { now }
+
+    networkMetrics = NetworkMetrics(clock)
+  }
+
+  @Test
+  fun getSnapshot_GivenNoCall_ReturnNull() {
+    assertThat(networkMetrics.getPaths()).isEmpty()
+    assertThat(networkMetrics.getSnapshot(PATH, Measure.TIME_TO_FIRST_BYTE_IN_MILLIS)).isNull()
+  }
+
+  @Test
+  fun newCall_GivenCompleteCall_RecordEachMeasure() {
+    val call = networkMetrics.newCall(PATH)
+
+    call.onRequestStarted(300)
+    now += 120
+    call.onResponseReceived(40)
+    now += 30
+    call.onResponseRead(2_000)
+
+    assertThat(networkMetrics.getPaths()).containsExactly(PATH)
+    assertThat(networkMetrics.getSnapshot(PATH, Measure.REQUEST_SIZE_IN_BYTES)!!.sum).isEqualTo(300)
+    assertThat(networkMetrics.getSnapshot(PATH, Measure.CONNECT_DURATION_IN_MILLIS)!!.sum).isEqualTo(40)
+    assertThat(networkMetrics.getSnapshot(PATH, Measure.TIME_TO_FIRST_BYTE_IN_MILLIS)!!.sum).isEqualTo(120)
+    assertThat(networkMetrics.getSnapshot(PATH, Measure.DOWNLOAD_DURATION_IN_MILLIS)!!.sum).isEqualTo(30)
+    assertThat(networkMetrics.getSnapshot(PATH, Measure.RESPONSE_SIZE_IN_BYTES)!!.sum).isEqualTo(2_000)
+    assertThat(networkMetrics.getSnapshot(OTHER_PATH, Measure.RESPONSE_SIZE_IN_BYTES)).isNull()
+  }
+
+  @Test
+  fun onConnectionPrewarmed_GivenHost_RecordConnectDurationOnItsPrewarmingPath() {
+    networkMetrics.onConnectionPrewarmed("cdb.example.com", 80)
+
+    val prewarmingPath = networkMetrics.getPrewarmingPath("cdb.example.com")
+    assertThat(networkMetrics.getPaths()).containsExactly(prewarmingPath)
+    assertThat(networkMetrics.getSnapshot(prewarmingPath, Measure.CONNECT_DURATION_IN_MILLIS)!!.sum).isEqualTo(80)
+    assertThat(networkMetrics.getSnapshot(prewarmingPath, Measure.TIME_TO_FIRST_BYTE_IN_MILLIS)!!.count).isEqualTo(0)
+  }
+
+  @Test
+  fun newCall_GivenUnknownConnectDuration_DoNotRecordIt() {
+    val call = networkMetrics.newCall(PATH)
+
+    call.onRequestStarted(300)
+    call.onResponseReceived(-1)
+
+    assertThat(networkMetrics.getSnapshot(PATH, Measure.CONNECT_DURATION_IN_MILLIS)!!.count).isZero()
+    assertThat(networkMetrics.getSnapshot(PATH, Measure.TIME_TO_FIRST_BYTE_IN_MILLIS)!!.count).isEqualTo(1)
+  }
+
+  @Test
+  fun newCall_GivenStepsNotifiedTwice_RecordThemOnce() {
+    val call = networkMetrics.newCall(PATH)
+
+    call.onRequestStarted(300)
+    call.onRequestStarted(300)
+    call.onResponseReceived(0)
+    call.onResponseReceived(0)
+    call.onResponseRead(10)
+    call.onResponseRead(10)
+
+    Measure.values().forEach {
+      assertThat(networkMetrics.getSnapshot(PATH, it)!!.count).describedAs(it.name).isEqualTo(1)
+    }
+  }
+
+  @Test
+  fun newCall_GivenStepsWithoutPreviousOnes_IgnoreThem() {
+    val call = networkMetrics.newCall(PATH)
+
+    call.onResponseReceived(0)
+    call.onResponseRead(10)
+
+    assertThat(networkMetrics.getPaths()).isEmpty()
+  }
+
+  @Test
+  fun getQuantile_GivenRecordedValues_ReturnUpperBoundOfBucket() {
+    networkMetrics.record(PATH, Measure.TIME_TO_FIRST_BYTE_IN_MILLIS, 3)
+    networkMetrics.record(PATH, Measure.TIME_TO_FIRST_BYTE_IN_MILLIS, 90)
+    networkMetrics.record(PATH, Measure.TIME_TO_FIRST_BYTE_IN_MILLIS, 95)
+    networkMetrics.record(PATH, Measure.TIME_TO_FIRST_BYTE_IN_MILLIS, 420)
+
+    val snapshot = networkMetrics.getSnapshot(PATH, Measure.TIME_TO_FIRST_BYTE_IN_MILLIS)!!
+
+    assertThat(snapshot.count).isEqualTo(4)
+    assertThat(snapshot.sum).isEqualTo(608)
+    assertThat(snapshot.max).isEqualTo(420)
+    assertThat(snapshot.getQuantile(0.25)).isEqualTo(5)
+    assertThat(snapshot.getQuantile(0.5)).isEqualTo(100)
+    assertThat(snapshot.getQuantile(1.0)).isEqualTo(420)
+  }
+
+  @Test
+  fun getQuantile_GivenValueAboveLastBucket_ReturnMax() {
+    val overflow = DURATION_BUCKET_UPPER_BOUNDS.last() * 2
+    networkMetrics.record(PATH, Measure.DOWNLOAD_DURATION_IN_MILLIS, overflow)
+
+    val snapshot = networkMetrics.getSnapshot(PATH, Measure.DOWNLOAD_DURATION_IN_MILLIS)!!
+
+    assertThat(snapshot.bucketCounts.last()).isEqualTo(1)
+    assertThat(snapshot.getQuantile(0.5)).isEqualTo(overflow)
+  }
+
+  @Test
+  fun record_GivenKnownPath_DoNotAllocate() {
+    val threadMxBean = ManagementFactory.getThreadMXBean()
+    assumeTrue(threadMxBean is com.sun.management.ThreadMXBean)
+    threadMxBean as com.sun.management.ThreadMXBean
+
+    repeat(WARMUP_ITERATIONS) {
+      networkMetrics.record(PATH, Measure.RESPONSE_SIZE_IN_BYTES, it.toLong())
+    }
+
+    val threadId = Thread.currentThread().id
+    val startAllocatedBytes = threadMxBean.getThreadAllocatedBytes(threadId)
+
+    repeat(MEASURED_ITERATIONS) {
+      networkMetrics.record(PATH, Measure.RESPONSE_SIZE_IN_BYTES, it.toLong())
+    }
+
+    val allocatedBytes = threadMxBean.getThreadAllocatedBytes(threadId) - startAllocatedBytes
+
+    assertThat(allocatedBytes / MEASURED_ITERATIONS).isZero()
+  }
+
+  private companion object {
+    const val PATH = "/inapp/v2"
+    const val OTHER_PATH = "/csm"
+
+    const val WARMUP_ITERATIONS = 20_000
+    const val MEASURED_ITERATIONS = 200_000
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import com.criteo.publisher.DependencyProvider
+import com.criteo.publisher.context.ContextProvider
+import com.criteo.publisher.model.CdbRequest
+import com.criteo.publisher.model.Config
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.criteo.publisher.util.CompletableFuture
+import com.criteo.publisher.util.JsonSerializer
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.SocketPolicy
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatCode
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.spy
+import org.mockito.kotlin.whenever
+import java.io.IOException
+import java.io.OutputStream
+import java.util.Random
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class OkHttpTransportTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Rule
+  @JvmField
+  val mockWebServer = MockWebServer()
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  @Mock
+  private lateinit var config: Config
+
+  @Mock
+  private lateinit var cdbRequest: CdbRequest
+
+  private lateinit var jsonSerializer: JsonSerializer
+
+  private lateinit var transport: OkHttpTransport
+
+  private lateinit var api: PubSdkApi
+
+  @Before
+  fun setUp() {
+    whenever(buildConfigWrapper.cdbUrl).doReturn(mockWebServer.url("/").toString().removeSuffix("/"))
+    whenever(buildConfigWrapper.networkTimeoutInMillis).doReturn(5_000)
+    jsonSerializer = spy(JsonSerializer(DependencyProvider.getInstance().provideGson()))
+    doAnswer {
+      it.getArgument<OutputStream>(1).write("{}".toByteArray())
+    }.whenever(jsonSerializer).write(any(), any())
+
+    transport = OkHttpTransport()
+    api = PubSdkApi(
+        buildConfigWrapper,
+        jsonSerializer,
+        config,
+        transport,
+        CircuitBreaker(mock(), config, Random()),
+        NetworkMetrics(mock()),
+        mock<ContextProvider>()
+    )
+  }
+
+  @Test
+  fun loadCdb_GivenConsecutiveBidRequests_ReuseTheSameConnection() {
+    repeat(3) {
+      mockWebServer.enqueue(MockResponse().setBody("{\"slots\":[]}"))
+    }
+
+    repeat(3) {
+      api.loadCdb(cdbRequest, "")
+    }
+
+    assertThat(mockWebServer.takeRequest().sequenceNumber).isEqualTo(0)
+    assertThat(mockWebServer.takeRequest().sequenceNumber).isEqualTo(1)
+    assertThat(mockWebServer.takeRequest().sequenceNumber).isEqualTo(2)
+    assertThat(transport.newConnectionCount).isEqualTo(1)
+    assertThat(transport.reusedConnectionCount).isEqualTo(2)
+  }
+
+  @Test
+  fun loadCdb_GivenNoContentResponse_StillReuseTheSameConnection() {
+    mockWebServer.enqueue(MockResponse().setResponseCode(204))
+    mockWebServer.enqueue(MockResponse().setBody("{\"slots\":[]}"))
+
+    api.loadCdb(cdbRequest, "")
+    api.loadCdb(cdbRequest, "")
+
+    assertThat(mockWebServer.takeRequest().sequenceNumber).isEqualTo(0)
+    assertThat(mockWebServer.takeRequest().sequenceNumber).isEqualTo(1)
+    assertThat(transport.reusedConnectionCount).isEqualTo(1)
+  }
+
+  @Test
+  fun open_GivenDifferentTimeouts_ShareTheConnectionPool() {
+    repeat(2) {
+      mockWebServer.enqueue(MockResponse().setBody("{}"))
+    }
+    val url = mockWebServer.url("/").toUrl()
+
+    transport.open(url, "GET", 1_000).inputStream.use { it.readBytes() }
+    transport.open(url, "GET", 2_000).inputStream.use { it.readBytes() }
+
+    assertThat(mockWebServer.takeRequest().sequenceNumber).isEqualTo(0)
+    assertThat(mockWebServer.takeRequest().sequenceNumber).isEqualTo(1)
+  }
+
+  @Test
+  fun getClient_GivenAlternatingTimeouts_ReuseOneClientPerTimeout() {
+    val client1 = transport.getClient(1_000)
+    val client2 = transport.getClient(2_000)
+
+    assertThat(transport.getClient(1_000)).isSameAs(client1)
+    assertThat(transport.getClient(2_000)).isSameAs(client2)
+    assertThat(client1.readTimeoutMillis).isEqualTo(1_000)
+    assertThat(client2.readTimeoutMillis).isEqualTo(2_000)
+    assertThat(client1.connectionPool).isSameAs(client2.connectionPool)
+  }
+
+  @Test
+  fun getConnectDurationInMillis_GivenNewThenReusedConnection_ReturnDurationThenZero() {
+    repeat(2) {
+      mockWebServer.enqueue(MockResponse().setBody("{}"))
+    }
+    val url = mockWebServer.url("/").toUrl()
+
+    val firstConnection = transport.open(url, "GET", 1_000)
+    assertThat(firstConnection.connectDurationInMillis).isEqualTo(-1)
+    firstConnection.inputStream.use { it.readBytes() }
+
+    val secondConnection = transport.open(url, "GET", 1_000)
+    secondConnection.inputStream.use { it.readBytes() }
+
+    assertThat(firstConnection.connectDurationInMillis).isGreaterThanOrEqualTo(0)
+    assertThat(secondConnection.connectDurationInMillis).isEqualTo(0)
+  }
+
+  @Test
+  fun disconnect_GivenCallWaitingForResponse_UnblockIt() {
+    mockWebServer.enqueue(MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE))
+    val connection = transport.open(mockWebServer.url("/").toUrl(), "GET", 60_000)
+
+    val executor = Executors.newSingleThreadScheduledExecutor()
+    try {
+      executor.schedule({ connection.disconnect() }, 100, TimeUnit.MILLISECONDS)
+
+      assertThatCode { connection.responseCode }.isInstanceOf(IOException::class.java)
+    } finally {
+      executor.shutdownNow()
+    }
+  }
+
+  @Test
+  fun disconnect_GivenAsyncCallWaitingForResponse_NotifyFailure() {
+    mockWebServer.enqueue(MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE))
+    val connection = transport.open(mockWebServer.url("/").toUrl(), "POST", 60_000)
+    val failure = CompletableFuture<IOException?>()
+
+    connection.writeBodyAsync("{}".toByteArray(), 0, 2, object : HttpConnection.ResponseCallback {
+      override fun onResponse(connection: HttpConnection) {
+        failure.complete(null)
+      }
+
+      override fun onFailure(exception: IOException) {
+        failure.complete(exception)
+      }
+    })
+
+    assertThat(mockWebServer.takeRequest(5, TimeUnit.SECONDS)).isNotNull()
+    connection.disconnect()
+
+    assertThat(failure.get(5, TimeUnit.SECONDS)).isNotNull()
+  }
+
+  @Test
+  fun disconnect_GivenNotSentCall_PreventItFromBeingSent() {
+    val connection = transport.open(mockWebServer.url("/").toUrl(), "GET", 1_000)
+
+    connection.disconnect()
+
+    assertThatCode { connection.responseCode }.isInstanceOf(IOException::class.java)
+    assertThat(mockWebServer.requestCount).isZero()
+  }
+}
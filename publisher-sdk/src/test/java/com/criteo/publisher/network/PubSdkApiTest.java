@@ -26,15 +26,23 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import androidx.annotation.NonNull;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.context.ContextProvider;
 import com.criteo.publisher.csm.MetricRequest;
 import com.criteo.publisher.logging.RemoteLogRecords;
 import com.criteo.publisher.mock.MockedDependenciesRule;
 import com.criteo.publisher.mock.SpyBean;
 import com.criteo.publisher.model.CdbRequest;
 import com.criteo.publisher.model.CdbResponse;
+import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.RemoteConfigRequest;
+import com.criteo.publisher.model.VersionedRemoteConfig;
 import com.criteo.publisher.privacy.gdpr.GdprData;
+import com.criteo.publisher.network.NetworkMetrics.HistogramSnapshot;
+import com.criteo.publisher.network.NetworkMetrics.Measure;
+import com.criteo.publisher.network.PubSdkApi.CdbCallback;
 import com.criteo.publisher.util.BuildConfigWrapper;
+import com.criteo.publisher.util.CompletableFuture;
 import com.criteo.publisher.util.JsonSerializer;
 import java.io.IOException;
 import java.io.InputStream;
@@ -43,20 +51,44 @@ import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+@RunWith(Parameterized.class)
 public class PubSdkApiTest {
 
+  @Parameterized.Parameters(name = "{index}: {0}")
+  public static Collection<Object[]> data() {
+    return Arrays.asList(new Object[][] {
+        { UrlConnectionHttpTransport.class },
+        { OkHttpTransport.class }
+    });
+  }
+
+  @Parameterized.Parameter
+  public Class<? extends HttpTransport> transportClass;
+
   @Rule
   public MockedDependenciesRule mockedDependenciesRule = new MockedDependenciesRule();
 
@@ -77,6 +109,19 @@ public class PubSdkApiTest {
   @SpyBean
   private JsonSerializer serializer;
 
+  @Mock
+  private Config config;
+
+  @Mock
+  private Clock clock;
+
+  @Mock
+  private ContextProvider contextProvider;
+
+  private CircuitBreaker circuitBreaker;
+
+  private NetworkMetrics networkMetrics;
+
   private PubSdkApi api;
 
   @Before
@@ -90,7 +135,17 @@ public class PubSdkApiTest {
     when(gdprData.gdprApplies()).thenReturn(false);
     when(gdprData.version()).thenReturn(1);
 
-    api = new PubSdkApi(buildConfigWrapper, serializer);
+    circuitBreaker = new CircuitBreaker(clock, config, new Random());
+    networkMetrics = new NetworkMetrics(clock);
+    api = new PubSdkApi(
+        buildConfigWrapper,
+        serializer,
+        config,
+        transportClass.newInstance(),
+        circuitBreaker,
+        networkMetrics,
+        contextProvider
+    );
   }
 
   @Test
@@ -111,6 +166,25 @@ public class PubSdkApiTest {
     assertThat(webRequest.getBody().snapshot().utf8()).isEqualTo(json);
   }
 
+  @Test
+  public void postLogs_GivenCompressionEnabledAndBigPayload_SendItCompressed() throws Exception {
+    List<RemoteLogRecords> request = new ArrayList<>();
+    String json = givenBigJson();
+
+    givenSerializerWriting(request, json);
+    when(config.isRemoteLogsRequestCompressionEnabled()).thenReturn(true);
+    when(config.getRequestCompressionMinSizeInBytes()).thenReturn(1024);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    api.postLogs(request);
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(webRequest.getBodySize()).isLessThan(json.getBytes(StandardCharsets.UTF_8).length);
+    assertThat(decompress(webRequest)).isEqualTo(json);
+  }
+
   @Test
   public void postLogs_GivenConnectionError_ThrowIOException() throws Exception {
     List<RemoteLogRecords> request = new ArrayList<>();
@@ -160,6 +234,25 @@ public class PubSdkApiTest {
     assertThat(webRequest.getBody().snapshot().utf8()).isEqualTo(json);
   }
 
+  @Test
+  public void postCsm_GivenCompressionEnabledAndBigPayload_SendItCompressed() throws Exception {
+    MetricRequest request = mock(MetricRequest.class);
+    String json = givenBigJson();
+
+    givenSerializerWriting(request, json);
+    when(config.isCsmRequestCompressionEnabled()).thenReturn(true);
+    when(config.getRequestCompressionMinSizeInBytes()).thenReturn(1024);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    api.postCsm(request);
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(webRequest.getBodySize()).isLessThan(json.getBytes(StandardCharsets.UTF_8).length);
+    assertThat(decompress(webRequest)).isEqualTo(json);
+  }
+
   @Test
   public void postCsm_GivenConnectionError_ThrowIOException() throws Exception {
     MetricRequest request = mock(MetricRequest.class);
@@ -280,6 +373,99 @@ public class PubSdkApiTest {
     assertThat(webRequest.getBody().snapshot().utf8()).isEqualTo(json);
   }
 
+  @Test
+  public void loadCdb_GivenCdbRequest_SendPayloadWithFixedLength() throws Exception {
+    String json = "{\"payload\":\"my awesome payload with unicode: \u00e9\"}";
+    CdbRequest cdbRequest = mock(CdbRequest.class);
+    givenSerializerWriting(cdbRequest, json);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    api.loadCdb(cdbRequest, "");
+    api.loadCdb(cdbRequest, "");
+
+    for (int i = 0; i < 2; i++) {
+      RecordedRequest webRequest = mockWebServer.takeRequest();
+      int expectedLength = json.getBytes(StandardCharsets.UTF_8).length;
+      assertThat(webRequest.getHeader("Content-Length")).isEqualTo(String.valueOf(expectedLength));
+      assertThat(webRequest.getHeader("Transfer-Encoding")).isNull();
+      assertThat(webRequest.getBody().snapshot().utf8()).isEqualTo(json);
+    }
+  }
+
+  @Test
+  public void loadCdb_GivenCompressionEnabledAndBigPayload_SendItCompressed() throws Exception {
+    String json = givenBigJson();
+    CdbRequest cdbRequest = mock(CdbRequest.class);
+    givenSerializerWriting(cdbRequest, json);
+    when(config.isCdbRequestCompressionEnabled()).thenReturn(true);
+    when(config.getRequestCompressionMinSizeInBytes()).thenReturn(1024);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    api.loadCdb(cdbRequest, "");
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(webRequest.getBodySize()).isLessThan(json.getBytes(StandardCharsets.UTF_8).length);
+    assertThat(decompress(webRequest)).isEqualTo(json);
+  }
+
+  @Test
+  public void loadCdb_GivenCompressionEnabledAndSmallPayload_SendItUncompressed() throws Exception {
+    String json = "{\"payload\":\"my small payload\"}";
+    CdbRequest cdbRequest = mock(CdbRequest.class);
+    givenSerializerWriting(cdbRequest, json);
+    when(config.isCdbRequestCompressionEnabled()).thenReturn(true);
+    when(config.getRequestCompressionMinSizeInBytes()).thenReturn(1024);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    api.loadCdb(cdbRequest, "");
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getHeader("Content-Encoding")).isNull();
+    assertThat(webRequest.getBody().snapshot().utf8()).isEqualTo(json);
+  }
+
+  @Test
+  public void loadCdb_GivenCompressionDisabled_SendItUncompressed() throws Exception {
+    String json = givenBigJson();
+    CdbRequest cdbRequest = mock(CdbRequest.class);
+    givenSerializerWriting(cdbRequest, json);
+    when(config.isCdbRequestCompressionEnabled()).thenReturn(false);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    api.loadCdb(cdbRequest, "");
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getHeader("Content-Encoding")).isNull();
+    assertThat(webRequest.getBody().snapshot().utf8()).isEqualTo(json);
+  }
+
+  @Test
+  public void loadCdb_GivenGzipResponse_DecodeIt() throws Exception {
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+    String json = "{\"slots\":[],\"timeToNextCall\":300}";
+
+    Buffer compressedJson = new Buffer();
+    try (BufferedSink sink = Okio.buffer(new GzipSink(compressedJson))) {
+      sink.writeUtf8(json);
+    }
+
+    mockWebServer.enqueue(new MockResponse()
+        .setHeader("Content-Encoding", "gzip")
+        .setBody(compressedJson));
+
+    CdbResponse cdbResponse = api.loadCdb(cdbRequest, "");
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getHeader("Accept-Encoding")).isEqualTo("gzip");
+    assertThat(cdbResponse.getTimeToNextCall()).isEqualTo(300);
+  }
+
   @Test
   public void loadCdb_GivenBids_ReturnResponseWithBids() throws Exception {
     CdbRequest cdbRequest = givenEmptyCdbRequest();
@@ -363,6 +549,27 @@ public class PubSdkApiTest {
     assertThat(cdbResponse.getTimeToNextCall()).isEqualTo(0);
   }
 
+  @Test
+  public void loadCdb_GivenEmptyBodyWithOkStatus_ReturnEmptyResponse() throws Exception {
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+
+    mockWebServer.enqueue(new MockResponse().setBody(" \n"));
+
+    CdbResponse cdbResponse = api.loadCdb(cdbRequest, "");
+
+    assertThat(cdbResponse.getSlots()).isEmpty();
+    assertThat(cdbResponse.getTimeToNextCall()).isEqualTo(0);
+  }
+
+  @Test
+  public void loadCdb_GivenTruncatedBody_ThrowIOException() throws Exception {
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+
+    mockWebServer.enqueue(new MockResponse().setBody("{\"slots\":[{\"impId\":"));
+
+    assertThatCode(() -> api.loadCdb(cdbRequest, "")).isInstanceOf(IOException.class);
+  }
+
   @Test
   public void loadCdb_GivenUserAgent_SetItInHttpHeader() throws Exception {
     CdbRequest cdbRequest = givenEmptyCdbRequest();
@@ -395,6 +602,321 @@ public class PubSdkApiTest {
         .isInstanceOf(IOException.class);
   }
 
+  @Test
+  public void loadCdbAsync_GivenCdbRequest_SendPostRequestWithJsonPayload() throws Exception {
+    String json = "{\"payload\":\"my awesome payload\"}";
+    CdbRequest cdbRequest = mock(CdbRequest.class);
+    givenSerializerWriting(cdbRequest, json);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    loadCdbAsync(cdbRequest, "myUserAgent");
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getPath()).isEqualTo("/inapp/v2");
+    assertThat(webRequest.getMethod()).isEqualTo("POST");
+    assertThat(webRequest.getHeader("User-Agent")).isEqualTo("myUserAgent");
+    assertThat(webRequest.getHeader("Content-Length")).isEqualTo(String.valueOf(json.length()));
+    assertThat(webRequest.getBody().snapshot().utf8()).isEqualTo(json);
+  }
+
+  @Test
+  public void loadCdbAsync_GivenCompressionEnabledAndBigPayload_SendItCompressed() throws Exception {
+    String json = givenBigJson();
+    CdbRequest cdbRequest = mock(CdbRequest.class);
+    givenSerializerWriting(cdbRequest, json);
+    when(config.isCdbRequestCompressionEnabled()).thenReturn(true);
+    when(config.getRequestCompressionMinSizeInBytes()).thenReturn(1024);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    loadCdbAsync(cdbRequest, "");
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(decompress(webRequest)).isEqualTo(json);
+  }
+
+  @Test
+  public void loadCdbAsync_GivenSeveralRequestsFromSameThread_SendEachPayload() throws Exception {
+    CdbRequest cdbRequest1 = mock(CdbRequest.class);
+    CdbRequest cdbRequest2 = mock(CdbRequest.class);
+    givenSerializerWriting(cdbRequest1, "{\"request\":1}");
+    givenSerializerWriting(cdbRequest2, "{\"request\":2}");
+
+    for (int i = 0; i < 2; i++) {
+      mockWebServer.enqueue(new MockResponse()
+          .setResponseCode(204)
+          .setHeadersDelay(100, TimeUnit.MILLISECONDS));
+    }
+
+    CompletableFuture<CdbResponse> response1 = sendCdbAsync(cdbRequest1);
+    CompletableFuture<CdbResponse> response2 = sendCdbAsync(cdbRequest2);
+    response1.get(5, TimeUnit.SECONDS);
+    response2.get(5, TimeUnit.SECONDS);
+
+    List<String> payloads = new ArrayList<>();
+    payloads.add(mockWebServer.takeRequest().getBody().snapshot().utf8());
+    payloads.add(mockWebServer.takeRequest().getBody().snapshot().utf8());
+    assertThat(payloads).containsExactlyInAnyOrder("{\"request\":1}", "{\"request\":2}");
+  }
+
+  @Test
+  public void loadCdbAsync_GivenBids_ReturnResponseWithBids() throws Exception {
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+    String json = "{\"slots\":[{\"placementId\":\"adunit_1\",\"cpm\":\"1.00\"}],"
+        + "\"timeToNextCall\":300}";
+
+    mockWebServer.enqueue(new MockResponse().setBody(json));
+
+    CdbResponse cdbResponse = loadCdbAsync(cdbRequest, "");
+
+    assertThat(cdbResponse.getSlots()).hasSize(1);
+    assertThat(cdbResponse.getSlots().get(0).getPlacementId()).isEqualTo("adunit_1");
+    assertThat(cdbResponse.getTimeToNextCall()).isEqualTo(300);
+  }
+
+  @Test
+  public void loadCdbAsync_GivenNoBid_ReturnEmptyResponse() throws Exception {
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    CdbResponse cdbResponse = loadCdbAsync(cdbRequest, "");
+
+    assertThat(cdbResponse.getSlots()).isEmpty();
+  }
+
+  @Test
+  public void loadCdbAsync_GivenSerializationError_NotifyFailure() throws Exception {
+    CdbRequest cdbRequest = mock(CdbRequest.class);
+    doAnswer(answerVoid((Object ignored, OutputStream stream) -> {
+      throw new IOException();
+    })).when(serializer).write(eq(cdbRequest), any());
+
+    assertThatCode(() -> loadCdbAsync(cdbRequest, "")).isInstanceOf(IOException.class);
+    assertThat(mockWebServer.getRequestCount()).isZero();
+  }
+
+  @Test
+  public void loadCdbAsync_GivenConnectionError_NotifyFailure() throws Exception {
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+
+    givenConnectionError();
+
+    assertThatCode(() -> loadCdbAsync(cdbRequest, "")).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  public void loadCdbAsync_GivenHttpError_NotifyFailure() throws Exception {
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(400));
+
+    assertThatCode(() -> loadCdbAsync(cdbRequest, "")).isInstanceOf(HttpResponseException.class);
+  }
+
+  @Test
+  public void loadCdb_GivenConsecutiveServerErrors_RejectNextCallsWithoutSendingThem()
+      throws Exception {
+    when(config.getCircuitBreakerFailureThreshold()).thenReturn(2);
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+
+    assertThatCode(() -> api.loadCdb(cdbRequest, "")).isInstanceOf(HttpResponseException.class);
+    assertThatCode(() -> api.loadCdb(cdbRequest, "")).isInstanceOf(HttpResponseException.class);
+    assertThatCode(() -> api.loadCdb(cdbRequest, ""))
+        .isInstanceOf(CircuitBreakerOpenException.class);
+    assertThatCode(() -> loadCdbAsync(cdbRequest, ""))
+        .isInstanceOf(CircuitBreakerOpenException.class);
+
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+    assertThat(circuitBreaker.getState(PubSdkApi.CDB_PATH)).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  @Test
+  public void loadCdb_GivenConsecutiveServerErrorsWhileOffline_DoNotRejectNextCalls()
+      throws Exception {
+    when(config.getCircuitBreakerFailureThreshold()).thenReturn(2);
+    when(contextProvider.isOffline()).thenReturn(true);
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    assertThatCode(() -> api.loadCdb(cdbRequest, "")).isInstanceOf(HttpResponseException.class);
+    assertThatCode(() -> api.loadCdb(cdbRequest, "")).isInstanceOf(HttpResponseException.class);
+    api.loadCdb(cdbRequest, "");
+
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(3);
+    assertThat(circuitBreaker.getState(PubSdkApi.CDB_PATH)).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  public void loadCdb_GivenConsecutiveClientErrors_DoNotRejectNextCalls() throws Exception {
+    when(config.getCircuitBreakerFailureThreshold()).thenReturn(2);
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(400));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(400));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    assertThatCode(() -> api.loadCdb(cdbRequest, "")).isInstanceOf(HttpResponseException.class);
+    assertThatCode(() -> api.loadCdb(cdbRequest, "")).isInstanceOf(HttpResponseException.class);
+    api.loadCdb(cdbRequest, "");
+
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(3);
+    assertThat(circuitBreaker.getState(PubSdkApi.CDB_PATH)).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  public void loadCdb_GivenOpenCircuitAndElapsedRetryDelay_SendTrialCallAndCloseOnSuccess()
+      throws Exception {
+    when(config.getCircuitBreakerFailureThreshold()).thenReturn(1);
+    when(clock.getCurrentTimeInMillis()).thenReturn(0L);
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    assertThatCode(() -> api.loadCdb(cdbRequest, "")).isInstanceOf(HttpResponseException.class);
+
+    when(clock.getCurrentTimeInMillis()).thenReturn(CircuitBreaker.MAX_RETRY_DELAY_IN_MILLIS);
+    api.loadCdb(cdbRequest, "");
+    api.loadCdb(cdbRequest, "");
+
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(3);
+    assertThat(circuitBreaker.getState(PubSdkApi.CDB_PATH)).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  public void postCsm_GivenOpenCircuitOnCdb_StillSendIt() throws Exception {
+    when(config.getCircuitBreakerFailureThreshold()).thenReturn(1);
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    assertThatCode(() -> api.loadCdb(cdbRequest, "")).isInstanceOf(HttpResponseException.class);
+    api.postCsm(mock(MetricRequest.class));
+
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+    assertThat(circuitBreaker.getState(PubSdkApi.CSM_PATH)).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  public void postLogs_GivenConsecutiveConnectionErrors_RejectNextCalls() throws Exception {
+    when(config.getCircuitBreakerFailureThreshold()).thenReturn(2);
+    List<RemoteLogRecords> request = new ArrayList<>();
+
+    givenConnectionError();
+
+    assertThatCode(() -> api.postLogs(request))
+        .isInstanceOf(IOException.class)
+        .isNotInstanceOf(CircuitBreakerOpenException.class);
+    assertThatCode(() -> api.postLogs(request))
+        .isInstanceOf(IOException.class)
+        .isNotInstanceOf(CircuitBreakerOpenException.class);
+    assertThatCode(() -> api.postLogs(request)).isInstanceOf(CircuitBreakerOpenException.class);
+  }
+
+  @Test
+  public void loadCdb_GivenResponse_RecordTimingsAndSizes() throws Exception {
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+    when(clock.getCurrentTimeInMillis()).thenReturn(1_000L, 1_042L, 1_050L);
+
+    mockWebServer.enqueue(new MockResponse().setBody("{\"slots\":[]}"));
+
+    api.loadCdb(cdbRequest, "");
+
+    assertThat(networkMetrics.getPaths()).containsExactly(PubSdkApi.CDB_PATH);
+    assertThat(getMetric(PubSdkApi.CDB_PATH, Measure.REQUEST_SIZE_IN_BYTES).getSum()).isEqualTo(2);
+    assertThat(getMetric(PubSdkApi.CDB_PATH, Measure.TIME_TO_FIRST_BYTE_IN_MILLIS).getSum()).isEqualTo(42);
+    assertThat(getMetric(PubSdkApi.CDB_PATH, Measure.CONNECT_DURATION_IN_MILLIS).getCount()).isEqualTo(1);
+    assertThat(getMetric(PubSdkApi.CDB_PATH, Measure.DOWNLOAD_DURATION_IN_MILLIS).getSum()).isEqualTo(8);
+    assertThat(getMetric(PubSdkApi.CDB_PATH, Measure.RESPONSE_SIZE_IN_BYTES).getSum()).isEqualTo(12);
+  }
+
+  @Test
+  public void loadCdbAsync_GivenResponse_RecordTimingsAndSizes() throws Exception {
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+    when(clock.getCurrentTimeInMillis()).thenReturn(1_000L, 1_042L, 1_050L);
+
+    mockWebServer.enqueue(new MockResponse().setBody("{\"slots\":[]}"));
+
+    loadCdbAsync(cdbRequest, "");
+
+    assertThat(getMetric(PubSdkApi.CDB_PATH, Measure.REQUEST_SIZE_IN_BYTES).getSum()).isEqualTo(2);
+    assertThat(getMetric(PubSdkApi.CDB_PATH, Measure.TIME_TO_FIRST_BYTE_IN_MILLIS).getSum()).isEqualTo(42);
+    assertThat(getMetric(PubSdkApi.CDB_PATH, Measure.DOWNLOAD_DURATION_IN_MILLIS).getSum()).isEqualTo(8);
+    assertThat(getMetric(PubSdkApi.CDB_PATH, Measure.RESPONSE_SIZE_IN_BYTES).getSum()).isEqualTo(12);
+  }
+
+  @Test
+  public void loadCdb_GivenCompressionEnabledAndGzipResponse_RecordSizesOnTheNetwork() throws Exception {
+    String json = givenBigJson();
+    CdbRequest cdbRequest = mock(CdbRequest.class);
+    givenSerializerWriting(cdbRequest, json);
+    when(config.isCdbRequestCompressionEnabled()).thenReturn(true);
+    when(config.getRequestCompressionMinSizeInBytes()).thenReturn(1024);
+
+    Buffer compressedResponse = new Buffer();
+    try (BufferedSink sink = Okio.buffer(new GzipSink(compressedResponse))) {
+      sink.writeUtf8("{\"slots\":[]}");
+    }
+    long compressedResponseSize = compressedResponse.size();
+    mockWebServer.enqueue(new MockResponse()
+        .setHeader("Content-Encoding", "gzip")
+        .setBody(compressedResponse));
+
+    api.loadCdb(cdbRequest, "");
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(getMetric(PubSdkApi.CDB_PATH, Measure.REQUEST_SIZE_IN_BYTES).getSum())
+        .isEqualTo(webRequest.getBodySize());
+    assertThat(getMetric(PubSdkApi.CDB_PATH, Measure.RESPONSE_SIZE_IN_BYTES).getSum())
+        .isEqualTo(compressedResponseSize);
+  }
+
+  @Test
+  public void postCsm_GivenHttpError_RecordOnlyTimeToFirstByte() throws Exception {
+    MetricRequest request = mock(MetricRequest.class);
+    givenSerializerWriting(request, "{}");
+    when(clock.getCurrentTimeInMillis()).thenReturn(1_000L, 1_042L);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+
+    assertThatCode(() -> api.postCsm(request)).isInstanceOf(IOException.class);
+
+    assertThat(getMetric(PubSdkApi.CSM_PATH, Measure.TIME_TO_FIRST_BYTE_IN_MILLIS).getSum()).isEqualTo(42);
+    assertThat(getMetric(PubSdkApi.CSM_PATH, Measure.DOWNLOAD_DURATION_IN_MILLIS).getCount()).isZero();
+    assertThat(getMetric(PubSdkApi.CSM_PATH, Measure.RESPONSE_SIZE_IN_BYTES).getCount()).isZero();
+  }
+
+  @Test
+  public void postAppEvent_GivenResponse_RecordItWithoutQueryString() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setBody("{}"));
+
+    api.postAppEvent(42, "myApp", null, "myEvent", 0, "", null);
+
+    assertThat(networkMetrics.getPaths()).containsExactly(PubSdkApi.APP_EVENT_PATH);
+    assertThat(getMetric(PubSdkApi.APP_EVENT_PATH, Measure.REQUEST_SIZE_IN_BYTES).getSum()).isZero();
+    assertThat(getMetric(PubSdkApi.APP_EVENT_PATH, Measure.RESPONSE_SIZE_IN_BYTES).getSum()).isEqualTo(2);
+  }
+
+  @Test
+  public void executeRawGet_GivenResponse_DoNotRecordIt() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setBody("myResponse"));
+
+    api.executeRawGet(serverUrl).close();
+
+    assertThat(networkMetrics.getPaths()).isEmpty();
+  }
+
   @Test
   public void loadConfig_GivenInput_SendGetRequestWithQueryParameters() throws Exception {
     RemoteConfigRequest request = RemoteConfigRequest.create(
@@ -417,14 +939,55 @@ public class PubSdkApiTest {
 
     mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
 
-    api.loadConfig(request);
+    api.loadConfig(request, null);
 
     RecordedRequest webRequest = mockWebServer.takeRequest();
     assertThat(webRequest.getPath()).isEqualTo("/config/app");
     assertThat(webRequest.getMethod()).isEqualTo("POST");
+    assertThat(webRequest.getHeader("If-None-Match")).isNull();
     assertThat(webRequest.getBody().snapshot().utf8()).isEqualToIgnoringWhitespace(expectedJson);
   }
 
+  @Test
+  public void loadConfig_GivenResponseWithEntityTag_ReturnConfigWithIt() throws Exception {
+    mockWebServer.enqueue(new MockResponse()
+        .setHeader("ETag", "\"v2\"")
+        .setBody("{\"killSwitch\": true}"));
+
+    VersionedRemoteConfig versionedConfig = api.loadConfig(createRemoteConfigRequest(), "\"v1\"");
+
+    assertThat(mockWebServer.takeRequest().getHeader("If-None-Match")).isEqualTo("\"v1\"");
+    assertThat(versionedConfig).isNotNull();
+    assertThat(versionedConfig.getEntityTag()).isEqualTo("\"v2\"");
+    assertThat(versionedConfig.getConfig().getKillSwitch()).isTrue();
+  }
+
+  @Test
+  public void loadConfig_GivenNotModifiedResponse_ReturnNullAndRecordIt() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setResponseCode(304));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(304));
+
+    VersionedRemoteConfig versionedConfig = api.loadConfig(createRemoteConfigRequest(), "\"v1\"");
+
+    assertThat(versionedConfig).isNull();
+    assertThat(getMetric(PubSdkApi.CONFIG_PATH, Measure.RESPONSE_SIZE_IN_BYTES).getCount()).isEqualTo(1);
+
+    // Without entity tag, a not modified response is unexpected
+    assertThatCode(() -> api.loadConfig(createRemoteConfigRequest(), null))
+        .isInstanceOf(HttpResponseException.class);
+  }
+
+  @Test
+  public void loadConfig_GivenPreconditionFailedResponse_ReturnNullAsNotModified() throws Exception {
+    when(config.getCircuitBreakerFailureThreshold()).thenReturn(1);
+    mockWebServer.enqueue(new MockResponse().setResponseCode(412));
+
+    VersionedRemoteConfig versionedConfig = api.loadConfig(createRemoteConfigRequest(), "\"v1\"");
+
+    assertThat(versionedConfig).isNull();
+    assertThat(circuitBreaker.getState(PubSdkApi.CONFIG_PATH)).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
   @Test
   public void executeRawGet_GivenConnectionError_ThrowIt() throws Exception {
     givenConnectionError();
@@ -450,6 +1013,48 @@ public class PubSdkApiTest {
     assertThat(response).hasContent("myResponse");
   }
 
+  @NonNull
+  private CdbResponse loadCdbAsync(@NonNull CdbRequest cdbRequest, @NonNull String userAgent)
+      throws Exception {
+    try {
+      return sendCdbAsync(cdbRequest, userAgent).get(5, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      throw (Exception) e.getCause();
+    }
+  }
+
+  @NonNull
+  private CompletableFuture<CdbResponse> sendCdbAsync(@NonNull CdbRequest cdbRequest) {
+    return sendCdbAsync(cdbRequest, "");
+  }
+
+  @NonNull
+  private CompletableFuture<CdbResponse> sendCdbAsync(
+      @NonNull CdbRequest cdbRequest,
+      @NonNull String userAgent
+  ) {
+    CompletableFuture<CdbResponse> future = new CompletableFuture<>();
+    api.loadCdbAsync(cdbRequest, userAgent, new CdbCallback() {
+      @Override
+      public void onSuccess(@NonNull CdbResponse response) {
+        future.complete(response);
+      }
+
+      @Override
+      public void onFailure(@NonNull Exception exception) {
+        future.completeExceptionally(exception);
+      }
+    });
+    return future;
+  }
+
+  @NonNull
+  private HistogramSnapshot getMetric(@NonNull String path, @NonNull Measure measure) {
+    HistogramSnapshot snapshot = networkMetrics.getSnapshot(path, measure);
+    assertThat(snapshot).isNotNull();
+    return snapshot;
+  }
+
   @NonNull
   private CdbRequest givenEmptyCdbRequest() throws Exception {
     CdbRequest cdbRequest = mock(CdbRequest.class);
@@ -457,12 +1062,36 @@ public class PubSdkApiTest {
     return cdbRequest;
   }
 
+  @NonNull
+  private static String givenBigJson() {
+    StringBuilder json = new StringBuilder("{\"payload\":[");
+    for (int i = 0; i < 100; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append("{\"id\":").append(i).append(",\"value\":\"some repeated value\"}");
+    }
+    return json.append("]}").toString();
+  }
+
+  @NonNull
+  private static String decompress(@NonNull RecordedRequest webRequest) throws IOException {
+    try (BufferedSource source = Okio.buffer(new GzipSource(webRequest.getBody()))) {
+      return source.readUtf8();
+    }
+  }
+
   private void givenSerializerWriting(Object expected, String json) throws IOException {
     doAnswer(answerVoid((Object ignored, OutputStream stream) -> {
       stream.write(json.getBytes(StandardCharsets.UTF_8));
     })).when(serializer).write(eq(expected), any());
   }
 
+  @NonNull
+  private static RemoteConfigRequest createRemoteConfigRequest() {
+    return RemoteConfigRequest.create("myCpId", "myAppId", "myVersion", 456, "myDeviceId");
+  }
+
   private void givenConnectionError() throws IOException {
     mockWebServer.shutdown();
   }
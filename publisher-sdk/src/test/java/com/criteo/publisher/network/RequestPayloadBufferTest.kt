@@ -0,0 +1,94 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.util.zip.GZIPInputStream
+
+class RequestPayloadBufferTest {
+
+  @Test
+  fun acquire_GivenReleasedBuffer_ReuseItEmptied() {
+    val buffer = RequestPayloadBuffer.acquire()
+    buffer.write("foo".toByteArray())
+    buffer.release()
+
+    val reusedBuffer = RequestPayloadBuffer.acquire()
+    reusedBuffer.release()
+
+    assertThat(reusedBuffer).isSameAs(buffer)
+    assertThat(reusedBuffer.size()).isZero()
+  }
+
+  @Test
+  fun acquire_GivenNotReleasedBuffer_ReturnAnotherOne() {
+    val buffer = RequestPayloadBuffer.acquire()
+    val nestedBuffer = RequestPayloadBuffer.acquire()
+    buffer.write("foo".toByteArray())
+    nestedBuffer.write("bar".toByteArray())
+
+    assertThat(nestedBuffer).isNotSameAs(buffer)
+    assertThat(buffer.toUtf8String()).isEqualTo("foo")
+    assertThat(nestedBuffer.toUtf8String()).isEqualTo("bar")
+
+    nestedBuffer.release()
+    buffer.release()
+  }
+
+  @Test
+  fun release_GivenBufferGrownTooMuch_DoNotRetainIt() {
+    val buffer = RequestPayloadBuffer.acquire()
+    buffer.write(ByteArray(RequestPayloadBuffer.MAX_RETAINED_CAPACITY + 1))
+    buffer.release()
+
+    val newBuffer = RequestPayloadBuffer.acquire()
+    newBuffer.release()
+
+    assertThat(newBuffer).isNotSameAs(buffer)
+  }
+
+  @Test
+  fun compress_GivenPayload_ReplaceItByGzipOne() {
+    val payload = "foo bar ".repeat(100)
+    val buffer = RequestPayloadBuffer.acquire()
+    buffer.write(payload.toByteArray())
+
+    buffer.compress()
+    val compressed = buffer.toByteArray()
+    buffer.release()
+
+    assertThat(compressed.size).isLessThan(payload.length)
+    assertThat(GZIPInputStream(compressed.inputStream()).reader().readText()).isEqualTo(payload)
+  }
+
+  @Test
+  fun acquire_GivenOtherThread_ReturnAnotherBuffer() {
+    val buffer = RequestPayloadBuffer.acquire()
+    buffer.release()
+
+    var otherBuffer: RequestPayloadBuffer? = null
+    val thread = Thread {
+      otherBuffer = RequestPayloadBuffer.acquire()
+      otherBuffer!!.release()
+    }
+    thread.start()
+    thread.join()
+
+    assertThat(otherBuffer).isNotNull.isNotSameAs(buffer)
+  }
+}
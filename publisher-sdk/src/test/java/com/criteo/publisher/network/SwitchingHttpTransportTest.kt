@@ -0,0 +1,134 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import com.criteo.publisher.dependency.LazyDependency
+import com.criteo.publisher.model.Config
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.verifyZeroInteractions
+import org.mockito.kotlin.whenever
+import java.net.URL
+
+class SwitchingHttpTransportTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var config: Config
+
+  @Mock
+  private lateinit var defaultTransport: HttpTransport
+
+  @Mock
+  private lateinit var okHttpTransport: HttpTransport
+
+  private val url = URL("https://localhost")
+
+  private var isOkHttpTransportCreated = false
+
+  private lateinit var transport: SwitchingHttpTransport
+
+  @Before
+  fun setUp() {
+    transport = createTransport(okHttpTransport)
+  }
+
+  @Test
+  fun open_GivenOkHttpTransportDisabled_UseDefaultTransportWithoutCreatingOkHttpTransport() {
+    val connection = mock<HttpConnection>()
+    whenever(config.isOkHttpTransportEnabled).doReturn(false)
+    whenever(defaultTransport.open(url, "GET", 42)).doReturn(connection)
+
+    val openedConnection = transport.open(url, "GET", 42)
+
+    assertThat(openedConnection).isSameAs(connection)
+    assertThat(isOkHttpTransportCreated).isFalse()
+  }
+
+  @Test
+  fun open_GivenOkHttpTransportEnabled_UseOkHttpTransport() {
+    val connection = mock<HttpConnection>()
+    whenever(config.isOkHttpTransportEnabled).doReturn(true)
+    whenever(okHttpTransport.open(url, "GET", 42)).doReturn(connection)
+
+    val openedConnection = transport.open(url, "GET", 42)
+
+    assertThat(openedConnection).isSameAs(connection)
+    verifyZeroInteractions(defaultTransport)
+  }
+
+  @Test
+  fun open_GivenOkHttpTransportEnabledButNotSupported_UseDefaultTransport() {
+    val connection = mock<HttpConnection>()
+    whenever(config.isOkHttpTransportEnabled).doReturn(true)
+    whenever(defaultTransport.open(url, "GET", 42)).doReturn(connection)
+    transport = createTransport(null)
+
+    val openedConnection = transport.open(url, "GET", 42)
+
+    assertThat(openedConnection).isSameAs(connection)
+  }
+
+  @Test
+  fun preconnect_GivenFlagChangingBetweenCalls_FollowTheFlag() {
+    whenever(config.isOkHttpTransportEnabled).doReturn(false, true)
+
+    transport.preconnect(url, 42)
+    transport.preconnect(url, 42)
+
+    verify(defaultTransport).preconnect(url, 42)
+    verify(okHttpTransport).preconnect(url, 42)
+  }
+
+  @Test
+  fun getNewConnectionCount_GivenOkHttpTransportNotUsed_ReturnDefaultCountWithoutCreatingOkHttpTransport() {
+    whenever(defaultTransport.newConnectionCount).doReturn(2)
+
+    assertThat(transport.newConnectionCount).isEqualTo(2)
+    assertThat(isOkHttpTransportCreated).isFalse()
+  }
+
+  @Test
+  fun getConnectionCounts_GivenBothTransportsUsed_ReturnSumOfCounts() {
+    whenever(config.isOkHttpTransportEnabled).doReturn(true)
+    whenever(defaultTransport.newConnectionCount).doReturn(2)
+    whenever(defaultTransport.reusedConnectionCount).doReturn(3)
+    whenever(okHttpTransport.newConnectionCount).doReturn(1)
+    whenever(okHttpTransport.reusedConnectionCount).doReturn(4)
+    transport.preconnect(url, 42)
+
+    assertThat(transport.newConnectionCount).isEqualTo(3)
+    assertThat(transport.reusedConnectionCount).isEqualTo(7)
+  }
+
+  private fun createTransport(okHttpTransport: HttpTransport?): SwitchingHttpTransport {
+    return SwitchingHttpTransport(config, defaultTransport, LazyDependency {
+      isOkHttpTransportCreated = true
+      okHttpTransport
+    })
+  }
+}
@@ -25,6 +25,7 @@ import androidx.annotation.NonNull;
 import com.criteo.publisher.CriteoListenerCode;
 import com.criteo.publisher.mock.MockedDependenciesRule;
 import com.criteo.publisher.mock.SpyBean;
+import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.DeviceInfo;
 import com.criteo.publisher.model.WebViewData;
 import com.criteo.publisher.network.PubSdkApi;
@@ -62,6 +63,9 @@ public class WebViewDataTaskTest {
   @Mock
   private InterstitialListenerNotifier listenerNotifier;
 
+  @Mock
+  private Config config;
+
   @SpyBean
   private BuildConfigWrapper buildConfigWrapper;
 
@@ -104,6 +108,32 @@ public class WebViewDataTaskTest {
     assertThat(creative).isEqualTo("<script />");
   }
 
+  @Test
+  public void downloadCreative_GivenMultiLineContent_ReturnItWithLineBreaks() throws Exception {
+    String creative = "<script>\n// comment\nvar a = 'é';\r\n</script>\n";
+    mockWebServer.enqueue(new MockResponse().setBody(creative));
+
+    assertThat(task.downloadCreative()).isEqualTo(creative);
+  }
+
+  @Test
+  public void downloadCreative_GivenContentAtMaxSize_ReturnIt() throws Exception {
+    when(config.getMaxCreativeSizeInBytes()).thenReturn(10);
+    mockWebServer.enqueue(new MockResponse().setBody("0123456789"));
+
+    assertThat(task.downloadCreative()).isEqualTo("0123456789");
+  }
+
+  @Test
+  public void run_GivenContentAboveMaxSize_NotifyForFailure() throws Exception {
+    when(config.getMaxCreativeSizeInBytes()).thenReturn(10);
+    mockWebServer.enqueue(new MockResponse().setBody("0123456789a"));
+
+    task.run();
+
+    assertNotifyForFailure();
+  }
+
   @Test
   public void run_GivenServerRespondingNoBody_ReturnEmpty() throws Exception {
     mockWebServer.enqueue(new MockResponse().setResponseCode(200));
@@ -186,7 +216,8 @@ public class WebViewDataTaskTest {
         webViewData,
         deviceInfo,
         listenerNotifier,
-        api
+        api,
+        config
     );
   }
 
@@ -0,0 +1,200 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.criteo.publisher.util
+package com.criteo.publisher.util
+
+import android.content.Context
+import android.content.SharedPreferences
+import com.criteo.publisher.Clock
+import com.criteo.publisher.mock.MockedDependenciesRule
+import com.criteo.publisher.mock.SpyBean
+import com.criteo.publisher.util.AdvertisingInfo.AdvertisingIdResult
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Answers
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.never
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+import java.util.concurrent.Executor
+
+class AdvertisingInfoUnitTest {
+
+  @Rule
+  @JvmField
+  val mockedDependenciesRule = MockedDependenciesRule()
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var context: Context
+
+  @Mock
+  private lateinit var advertisingIdClient: AdvertisingInfo.SafeAdvertisingIdClient
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  private lateinit var sharedPreferences: SharedPreferences
+
+  @Mock
+  private lateinit var clock: Clock
+
+  @SpyBean
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  private var now = 1_000_000L
+
+  private val pendingTasks = ArrayDeque<Runnable>()
+
+  private lateinit var advertisingInfo: AdvertisingInfo
+
+  @Before
+  fun setUp() {
+    whenever(clock.currentTimeInMillis).doAnswer { now }
+    doReturn(REFRESH_PERIOD_IN_MILLIS).whenever(buildConfigWrapper).advertisingIdRefreshPeriodInMillis
+    whenever(sharedPreferences.getLong(FETCH_TIME_KEY, -1)).doReturn(-1)
+
+    advertisingInfo = AdvertisingInfo(
+        context,
+        Executor { pendingTasks.add(it) },
+        advertisingIdClient,
+        sharedPreferences,
+        clock,
+        buildConfigWrapper
+    )
+  }
+
+  @Test
+  fun getAdvertisingId_GivenNoKnownResult_FetchAndPersistIt() {
+    whenever(advertisingIdClient.getAdvertisingIdResult(any())).doReturn(AdvertisingIdResult("fetched", false))
+
+    val advertisingId = advertisingInfo.advertisingId
+
+    assertThat(advertisingId).isEqualTo("fetched")
+    val editor = sharedPreferences.edit()
+    verify(editor).putString(ID_KEY, "fetched")
+    verify(editor).putBoolean(LIMIT_AD_TRACKING_KEY, false)
+    verify(editor).putLong(FETCH_TIME_KEY, now)
+    verify(editor).apply()
+  }
+
+  @Test
+  fun getAdvertisingId_GivenFetchedLimitedResult_DoNotPersistTheRealId() {
+    whenever(advertisingIdClient.getAdvertisingIdResult(any())).doReturn(AdvertisingIdResult("fetched", true))
+
+    val advertisingId = advertisingInfo.advertisingId
+
+    assertThat(advertisingId).isEqualTo(LIMITED_ID)
+    val editor = sharedPreferences.edit()
+    verify(editor).remove(ID_KEY)
+    verify(editor).putBoolean(LIMIT_AD_TRACKING_KEY, true)
+    verify(editor, never()).putString(any(), any())
+  }
+
+  @Test
+  fun getAdvertisingId_GivenFreshPersistedResult_ReturnItWithoutFetching() {
+    givenPersistedResult("persisted", false, now - REFRESH_PERIOD_IN_MILLIS + 1)
+
+    val advertisingId = advertisingInfo.advertisingId
+
+    assertThat(advertisingId).isEqualTo("persisted")
+    assertThat(pendingTasks).isEmpty()
+    verify(advertisingIdClient, never()).getAdvertisingIdResult(any())
+  }
+
+  @Test
+  fun isLimitAdTrackingEnabled_GivenPersistedLimitedResult_ReturnItWithoutFetching() {
+    givenPersistedResult(null, true, now)
+
+    assertThat(advertisingInfo.isLimitAdTrackingEnabled).isTrue()
+    assertThat(advertisingInfo.advertisingId).isEqualTo(LIMITED_ID)
+    verify(advertisingIdClient, never()).getAdvertisingIdResult(any())
+  }
+
+  @Test
+  fun getAdvertisingId_GivenExpiredPersistedResult_ReturnItAndRefreshOnceInBackground() {
+    givenPersistedResult("persisted", false, now - REFRESH_PERIOD_IN_MILLIS)
+    whenever(advertisingIdClient.getAdvertisingIdResult(any())).doReturn(AdvertisingIdResult("reset", false))
+
+    assertThat(advertisingInfo.advertisingId).isEqualTo("persisted")
+    assertThat(advertisingInfo.advertisingId).isEqualTo("persisted")
+    verify(advertisingIdClient, never()).getAdvertisingIdResult(any())
+    assertThat(pendingTasks).hasSize(1)
+
+    pendingTasks.removeFirst().run()
+
+    assertThat(advertisingInfo.advertisingId).isEqualTo("reset")
+    assertThat(pendingTasks).isEmpty()
+    verify(sharedPreferences.edit()).putString(ID_KEY, "reset")
+  }
+
+  @Test
+  fun getAdvertisingId_GivenPersistedResultFromTheFuture_RefreshIt() {
+    givenPersistedResult("persisted", false, now + 1)
+
+    assertThat(advertisingInfo.advertisingId).isEqualTo("persisted")
+    assertThat(pendingTasks).hasSize(1)
+  }
+
+  @Test
+  fun getAdvertisingId_GivenLimitAdTrackingEnabledSinceLastFetch_ReplaceKnownResult() {
+    givenPersistedResult("persisted", false, now)
+    whenever(advertisingIdClient.getAdvertisingIdResult(any())).doReturn(AdvertisingIdResult("persisted", true))
+
+    assertThat(advertisingInfo.advertisingId).isEqualTo("persisted")
+
+    now += REFRESH_PERIOD_IN_MILLIS
+    advertisingInfo.advertisingId
+    pendingTasks.removeFirst().run()
+
+    assertThat(advertisingInfo.advertisingId).isEqualTo(LIMITED_ID)
+    assertThat(advertisingInfo.isLimitAdTrackingEnabled).isTrue()
+  }
+
+  @Test
+  fun getAdvertisingId_GivenFailingRefresh_KeepKnownResultAndRetryLater() {
+    givenPersistedResult("persisted", false, now - REFRESH_PERIOD_IN_MILLIS)
+    doReturn(false).whenever(buildConfigWrapper).preconditionThrowsOnException()
+    whenever(advertisingIdClient.getAdvertisingIdResult(any())).doAnswer { throw IllegalStateException() }
+
+    advertisingInfo.advertisingId
+    pendingTasks.removeFirst().run()
+
+    assertThat(advertisingInfo.advertisingId).isEqualTo("persisted")
+    assertThat(pendingTasks).hasSize(1)
+  }
+
+  private fun givenPersistedResult(advertisingId: String?, isLimitAdTrackingEnabled: Boolean, fetchTimeInMillis: Long) {
+    whenever(sharedPreferences.getString(ID_KEY, null)).doReturn(advertisingId)
+    whenever(sharedPreferences.getBoolean(LIMIT_AD_TRACKING_KEY, false)).doReturn(isLimitAdTrackingEnabled)
+    whenever(sharedPreferences.getLong(FETCH_TIME_KEY, -1)).doReturn(fetchTimeInMillis)
+  }
+
+  private companion object {
+    const val REFRESH_PERIOD_IN_MILLIS = 3_600_000
+    const val LIMITED_ID = "00000000-0000-0000-0000-000000000000"
+    const val ID_KEY = "CriteoCachedAdvertisingId"
+    const val LIMIT_AD_TRACKING_KEY = "CriteoCachedLimitAdTracking"
+    const val FETCH_TIME_KEY = "CriteoCachedAdvertisingIdFetchTime"
+  }
+}
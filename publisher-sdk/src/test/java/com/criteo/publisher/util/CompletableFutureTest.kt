@@ -0,0 +1,74 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.util
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatCode
+import org.junit.Test
+
+class CompletableFutureTest {
+
+  @Test
+  fun whenComplete_GivenCompletedFuture_RunActionImmediately() {
+    val future = CompletableFuture.completedFuture("value")
+    var isRun = false
+
+    future.whenComplete { isRun = true }
+
+    assertThat(isRun).isTrue()
+  }
+
+  @Test
+  fun whenComplete_GivenUncompletedFuture_RunActionsOnlyOnceCompleted() {
+    val future = CompletableFuture<String>()
+    val values = mutableListOf<String>()
+
+    future.whenComplete { values += "first:" + future.get() }
+    future.whenComplete { values += "second:" + future.get() }
+
+    assertThat(values).isEmpty()
+    assertThat(future.isDone).isFalse()
+
+    future.complete("value")
+    future.complete("other")
+
+    assertThat(values).containsExactly("first:value", "second:value")
+    assertThat(future.isDone).isTrue()
+  }
+
+  @Test
+  fun whenComplete_GivenExceptionalCompletion_RunAction() {
+    val future = CompletableFuture<String>()
+    var isRun = false
+    future.whenComplete { isRun = true }
+
+    future.completeExceptionally(IllegalStateException())
+
+    assertThat(isRun).isTrue()
+  }
+
+  @Test
+  fun whenComplete_GivenFailingAction_RunNextActionsAndThrow() {
+    val future = CompletableFuture<String>()
+    var isNextRun = false
+    future.whenComplete { throw IllegalStateException() }
+    future.whenComplete { isNextRun = true }
+
+    assertThatCode { future.complete("value") }.isInstanceOf(IllegalStateException::class.java)
+    assertThat(isNextRun).isTrue()
+  }
+}
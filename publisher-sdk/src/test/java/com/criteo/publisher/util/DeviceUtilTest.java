@@ -17,13 +17,18 @@
 package com.criteo.publisher.util;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import android.content.ComponentCallbacks;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.util.DisplayMetrics;
+import com.criteo.publisher.model.AdSize;
 import org.junit.Rule;
 import org.junit.Test;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
@@ -96,4 +101,44 @@ public class DeviceUtilTest {
     assertThat(isTablet).isTrue();
   }
 
+  @Test
+  public void getScreenGeometry_GivenNoConfigurationChange_ReturnSameSnapshot() throws Exception {
+    DisplayMetrics metrics = new DisplayMetrics();
+    when(context.getResources().getDisplayMetrics()).thenReturn(metrics);
+
+    metrics.density = 2f;
+    metrics.widthPixels = 720;
+    metrics.heightPixels = 1280;
+    ScreenGeometry geometry1 = deviceUtil.getScreenGeometry();
+
+    metrics.widthPixels = 1280;
+    metrics.heightPixels = 720;
+    ScreenGeometry geometry2 = deviceUtil.getScreenGeometry();
+
+    assertThat(geometry1.getSize()).isEqualTo(new AdSize(360, 640));
+    assertThat(geometry2).isSameAs(geometry1);
+  }
+
+  @Test
+  public void getScreenGeometry_GivenConfigurationChange_RefreshSnapshot() throws Exception {
+    ArgumentCaptor<ComponentCallbacks> callbacksCaptor = ArgumentCaptor.forClass(ComponentCallbacks.class);
+    verify(context).registerComponentCallbacks(callbacksCaptor.capture());
+
+    DisplayMetrics metrics = new DisplayMetrics();
+    when(context.getResources().getDisplayMetrics()).thenReturn(metrics);
+
+    metrics.density = 2f;
+    metrics.widthPixels = 720;
+    metrics.heightPixels = 1280;
+    deviceUtil.getScreenGeometry();
+
+    metrics.widthPixels = 1280;
+    metrics.heightPixels = 720;
+    callbacksCaptor.getValue().onConfigurationChanged(new Configuration());
+    ScreenGeometry geometry = deviceUtil.getScreenGeometry();
+
+    assertThat(geometry.getSize()).isEqualTo(new AdSize(640, 360));
+    assertThat(geometry.getOrientation()).isEqualTo(Configuration.ORIENTATION_LANDSCAPE);
+  }
+
 }
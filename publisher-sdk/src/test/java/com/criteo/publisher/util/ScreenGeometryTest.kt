@@ -0,0 +1,58 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.util
+
+import android.content.res.Configuration
+import com.criteo.publisher.model.AdSize
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class ScreenGeometryTest {
+
+  @Test
+  fun new_GivenPortraitSize_ComputeTransposedSizeAndOrientation() {
+    val geometry = ScreenGeometry(AdSize(360, 640))
+
+    assertThat(geometry.transposedSize).isEqualTo(AdSize(640, 360))
+    assertThat(geometry.orientation).isEqualTo(Configuration.ORIENTATION_PORTRAIT)
+  }
+
+  @Test
+  fun new_GivenLandscapeSize_ComputeLandscapeOrientation() {
+    val geometry = ScreenGeometry(AdSize(640, 360))
+
+    assertThat(geometry.orientation).isEqualTo(Configuration.ORIENTATION_LANDSCAPE)
+  }
+
+  @Test
+  fun isTablet_GivenSmallestWidthBelowOrAbove600dp_ReturnIfTablet() {
+    assertThat(ScreenGeometry(AdSize(599, 1000)).isTablet).isFalse()
+    assertThat(ScreenGeometry(AdSize(1000, 599)).isTablet).isFalse()
+    assertThat(ScreenGeometry(AdSize(600, 1000)).isTablet).isTrue()
+    assertThat(ScreenGeometry(AdSize(1000, 600)).isTablet).isTrue()
+  }
+
+  @Test
+  fun isFullScreen_GivenScreenSizeInAnyOrientation_ReturnTrue() {
+    val geometry = ScreenGeometry(AdSize(360, 640))
+
+    assertThat(geometry.isFullScreen(360, 640)).isTrue()
+    assertThat(geometry.isFullScreen(640, 360)).isTrue()
+    assertThat(geometry.isFullScreen(360, 360)).isFalse()
+    assertThat(geometry.isFullScreen(320, 50)).isFalse()
+  }
+}
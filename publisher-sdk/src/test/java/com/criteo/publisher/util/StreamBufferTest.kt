@@ -0,0 +1,145 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.util
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatCode
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import java.nio.charset.Charset
+
+class StreamBufferTest {
+
+  @Test
+  fun readFrom_GivenBinaryContentBiggerThanInitialCapacity_KeepBytesAsTheyAre() {
+    val content = ByteArray(100_000) { it.toByte() }
+    val buffer = StreamBuffer.acquire()
+
+    buffer.readFrom(ByteArrayInputStream(content), StreamBuffer.NO_SIZE_LIMIT)
+
+    val bytes = ByteArray(buffer.size())
+    buffer.asByteBuffer().get(bytes)
+    buffer.release()
+
+    assertThat(bytes).isEqualTo(content)
+  }
+
+  @Test
+  fun readFrom_GivenStreamReturningFewBytesAtOnce_ReadItUntilItsEnd() {
+    val content = "foo\nbar\r\nbaz".toByteArray()
+    val slowStream = object : InputStream() {
+      private val delegate = ByteArrayInputStream(content)
+      override fun read() = delegate.read()
+      override fun read(b: ByteArray, off: Int, len: Int) = delegate.read(b, off, minOf(len, 2))
+    }
+    val buffer = StreamBuffer.acquire()
+
+    buffer.readFrom(slowStream, StreamBuffer.NO_SIZE_LIMIT)
+    val read = buffer.toString(Charsets.UTF_8)
+    buffer.release()
+
+    assertThat(read).isEqualTo("foo\nbar\r\nbaz")
+  }
+
+  @Test
+  fun toString_GivenCharset_DecodeWithIt() {
+    val content = "crème brûlée"
+    val buffer = StreamBuffer.acquire()
+
+    buffer.readFrom(ByteArrayInputStream(content.toByteArray(Charsets.ISO_8859_1)), StreamBuffer.NO_SIZE_LIMIT)
+    val read = buffer.toString(Charset.forName("ISO-8859-1"))
+    buffer.release()
+
+    assertThat(read).isEqualTo(content)
+  }
+
+  @Test
+  fun readFrom_GivenStreamAtMaxSize_ReadIt() {
+    val buffer = StreamBuffer.acquire()
+
+    buffer.readFrom(ByteArrayInputStream(ByteArray(20_000)), 20_000)
+    buffer.release()
+
+    assertThat(buffer.size()).isEqualTo(20_000)
+  }
+
+  @Test
+  fun readFrom_GivenStreamAboveMaxSize_ThrowWithoutReadingItEntirely() {
+    val stream = ByteArrayInputStream(ByteArray(100_000))
+    val buffer = StreamBuffer.acquire()
+
+    assertThatCode { buffer.readFrom(stream, 20_000) }.isInstanceOf(StreamTooLargeException::class.java)
+    buffer.release()
+
+    assertThat(stream.available()).isEqualTo(100_000 - 20_001)
+  }
+
+  @Test
+  fun readFrom_GivenRetainedBufferBiggerThanMaxSize_StillThrow() {
+    val buffer = StreamBuffer.acquire()
+    buffer.readFrom(ByteArrayInputStream(ByteArray(100_000)), StreamBuffer.NO_SIZE_LIMIT)
+
+    assertThatCode {
+      buffer.readFrom(ByteArrayInputStream(ByteArray(11)), 10)
+    }.isInstanceOf(StreamTooLargeException::class.java)
+    buffer.release()
+  }
+
+  @Test
+  fun acquire_GivenReleasedBuffer_ReuseItEmptied() {
+    val buffer = StreamBuffer.acquire()
+    buffer.readFrom(ByteArrayInputStream("foo".toByteArray()), StreamBuffer.NO_SIZE_LIMIT)
+    buffer.release()
+
+    val reusedBuffer = StreamBuffer.acquire()
+    reusedBuffer.release()
+
+    assertThat(reusedBuffer).isSameAs(buffer)
+    assertThat(reusedBuffer.size()).isZero()
+  }
+
+  @Test
+  fun acquire_GivenNotReleasedBuffer_ReturnAnotherOne() {
+    val buffer = StreamBuffer.acquire()
+    val nestedBuffer = StreamBuffer.acquire()
+    buffer.readFrom(ByteArrayInputStream("foo".toByteArray()), StreamBuffer.NO_SIZE_LIMIT)
+    nestedBuffer.readFrom(ByteArrayInputStream("bar".toByteArray()), StreamBuffer.NO_SIZE_LIMIT)
+
+    assertThat(nestedBuffer).isNotSameAs(buffer)
+    assertThat(buffer.toString(Charsets.UTF_8)).isEqualTo("foo")
+    assertThat(nestedBuffer.toString(Charsets.UTF_8)).isEqualTo("bar")
+
+    nestedBuffer.release()
+    buffer.release()
+  }
+
+  @Test
+  fun release_GivenBufferGrownTooMuch_DoNotRetainIt() {
+    val buffer = StreamBuffer.acquire()
+    buffer.readFrom(
+        ByteArrayInputStream(ByteArray(StreamBuffer.MAX_RETAINED_CAPACITY + 1)),
+        StreamBuffer.NO_SIZE_LIMIT
+    )
+    buffer.release()
+
+    val newBuffer = StreamBuffer.acquire()
+    newBuffer.release()
+
+    assertThat(newBuffer).isNotSameAs(buffer)
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.util
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assume.assumeTrue
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import java.io.BufferedReader
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.lang.management.ManagementFactory
+
+/**
+ * Compare the time and allocations of reading creatives of various sizes, between the previous line-based reading and
+ * the pooled byte buffer.
+ */
+@Category(Benchmark::class)
+class StreamReadingBenchmarkTest {
+
+  @Test
+  fun readStream_GivenCreativesOf50KbTo500Kb_PooledBufferReduceAllocations() {
+    val threadMxBean = ManagementFactory.getThreadMXBean()
+    assumeTrue(threadMxBean is com.sun.management.ThreadMXBean)
+    threadMxBean as com.sun.management.ThreadMXBean
+
+    CREATIVE_SIZES_IN_KB.forEach { sizeInKb ->
+      val creative = createCreative(sizeInKb * 1024)
+
+      val lineBasedReading = measure(threadMxBean, creative) { readStreamLineByLine(it) }
+      val pooledReading = measure(threadMxBean, creative) { StreamUtil.readStream(it) }
+
+      assertThat(pooledReading.allocatedBytesPerRead)
+          .describedAs("${sizeInKb}KB creative, pooled: $pooledReading, line-based: $lineBasedReading")
+          .isLessThan(lineBasedReading.allocatedBytesPerRead)
+    }
+  }
+
+  /**
+   * Previous implementation, which also dropped the line breaks
+   */
+  private fun readStreamLineByLine(inputStream: InputStream): String {
+    val response = StringBuilder()
+    BufferedReader(InputStreamReader(inputStream)).use { reader ->
+      var line = reader.readLine()
+      while (line != null) {
+        response.append(line)
+        line = reader.readLine()
+      }
+    }
+    return response.toString()
+  }
+
+  private fun createCreative(sizeInBytes: Int): ByteArray {
+    val line = "  <div class=\"ad\" style=\"width:320px;height:50px\"><img src=\"https://example.com/a.png\"/></div>\n"
+    val creative = StringBuilder(sizeInBytes + line.length)
+    creative.append("<html><body>\n")
+    while (creative.length < sizeInBytes) {
+      creative.append(line)
+    }
+    return creative.toString().toByteArray()
+  }
+
+  private fun measure(
+      threadMxBean: com.sun.management.ThreadMXBean,
+      creative: ByteArray,
+      reading: (InputStream) -> String
+  ): BenchmarkResult {
+    var sink = 0L
+
+    repeat(WARMUP_ITERATIONS) {
+      sink += reading(ByteArrayInputStream(creative)).length
+    }
+
+    val threadId = Thread.currentThread().id
+    val startAllocatedBytes = threadMxBean.getThreadAllocatedBytes(threadId)
+    val startTime = System.nanoTime()
+
+    repeat(MEASURED_ITERATIONS) {
+      sink += reading(ByteArrayInputStream(creative)).length
+    }
+
+    val elapsedNanos = System.nanoTime() - startTime
+    val allocatedBytes = threadMxBean.getThreadAllocatedBytes(threadId) - startAllocatedBytes
+
+    // Use the result, so the JIT does not skip the reading
+    assertThat(sink).isPositive()
+
+    return BenchmarkResult(
+        elapsedNanos / MEASURED_ITERATIONS / 1000,
+        allocatedBytes / MEASURED_ITERATIONS
+    )
+  }
+
+  private data class BenchmarkResult(val microsPerRead: Long, val allocatedBytesPerRead: Long)
+
+  private companion object {
+    val CREATIVE_SIZES_IN_KB = listOf(50, 200, 500)
+
+    const val WARMUP_ITERATIONS = 50
+    const val MEASURED_ITERATIONS = 200
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.criteo.publisher.util
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.io.ByteArrayInputStream
+
+class StreamUtilTest {
+
+  @Test
+  fun readStream_GivenCreative_KeepItAsItIs() {
+    val line = "  <div class=\"ad\"><img src=\"https://example.com/a.png\"/></div>\r\n"
+    val creative = "<html><body>\n" + line.repeat(1_000) + "</body></html>"
+
+    val read = StreamUtil.readStream(ByteArrayInputStream(creative.toByteArray()))
+
+    assertThat(read).isEqualTo(creative)
+  }
+}
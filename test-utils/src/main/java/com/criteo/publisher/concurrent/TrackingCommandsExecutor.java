@@ -51,7 +51,17 @@ public class TrackingCommandsExecutor implements Executor {
       }
     };
 
-    delegate.execute(trackedCommand);
+    Runnable dropHandler = () -> {
+      try {
+        PrioritizedRunnable.notifyDropped(command);
+      } finally {
+        latch.countDown();
+      }
+    };
+
+    // Keep the declared priority, so tracked commands are still prioritized
+    TaskPriority priority = PrioritizedRunnable.getPriorityOf(command);
+    delegate.execute(new PrioritizedRunnable(priority, trackedCommand, dropHandler));
   }
 
   public AsyncResources asAsyncResources() {
@@ -0,0 +1,27 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.criteo.publisher.util;
+
+/**
+ * JUnit category of the tests measuring the time or the allocations of an implementation.
+ * <p>
+ * Their measures depend on the machine and they are slow, so they are excluded from the default
+ * test run. Run them with <code>-Pbenchmark</code>.
+ */
+public interface Benchmark {
+}
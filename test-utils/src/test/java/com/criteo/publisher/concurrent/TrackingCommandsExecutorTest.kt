@@ -56,6 +56,17 @@ class TrackingCommandsExecutorTest {
     executor.waitCommands()
   }
 
+  @Test(timeout = 1000)
+  fun waitCommands_GivenDroppedTask_NotifyItAndStopWaiting() {
+    val droppingExecutor = TrackingCommandsExecutor { PrioritizedRunnable.notifyDropped(it) }
+    var isDropNotified = false
+
+    droppingExecutor.execute(PrioritizedRunnable(TaskPriority.TELEMETRY, Runnable {}, Runnable { isDropNotified = true }))
+
+    droppingExecutor.waitCommands()
+    assertThat(isDropNotified).isTrue()
+  }
+
   private fun newSingleThreadExecutor(): TrackingCommandsExecutor {
     return TrackingCommandsExecutor(Executors.newSingleThreadExecutor())
   }